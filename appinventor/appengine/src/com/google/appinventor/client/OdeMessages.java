@@ -496,6 +496,20 @@ public interface OdeMessages extends Messages {
   @Description("Text for accelerometer sensitivity choice 'strong'")
   String strongAccelerometerSensitivity();
 
+  // Used in editor/youngandroid/properties/YoungAndroidWebCacheModeChoicePropertyEditor.java
+
+  @DefaultMessage("off")
+  @Description("Text for web cache mode choice 'off'")
+  String offWebCacheMode();
+
+  @DefaultMessage("normal")
+  @Description("Text for web cache mode choice 'normal'")
+  String normalWebCacheMode();
+
+  @DefaultMessage("prefer cache")
+  @Description("Text for web cache mode choice 'prefer cache'")
+  String preferCacheWebCacheMode();
+
   // Used in editor/youngandroid/properties/YoungAndroidAlignmentChoicePropertyEditor.java
 
   @DefaultMessage("left")
@@ -0,0 +1,26 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+package com.google.appinventor.client.editor.youngandroid.properties;
+
+import static com.google.appinventor.client.Ode.MESSAGES;
+import com.google.appinventor.client.widgets.properties.ChoicePropertyEditor;
+
+/**
+ * Property editor for the cache mode of the Web component.
+ *
+ */
+public class YoungAndroidWebCacheModeChoicePropertyEditor extends ChoicePropertyEditor {
+
+  // Web cache mode choices
+  private static final Choice[] cacheModes = new Choice[] {
+    new Choice(MESSAGES.offWebCacheMode(), "0"),
+    new Choice(MESSAGES.normalWebCacheMode(), "1"),
+    new Choice(MESSAGES.preferCacheWebCacheMode(), "2")
+  };
+
+  public YoungAndroidWebCacheModeChoicePropertyEditor() {
+    super(cacheModes);
+  }
+}
@@ -255,6 +255,9 @@ public final class YoungAndroidFormUpgrader {
       } else if (componentType.equals("LocationSensor")) {
         srcCompVersion = upgradeLocationSensorProperties(componentProperties, srcCompVersion);
 
+      } else if (componentType.equals("NxtDirectCommands")) {
+        srcCompVersion = upgradeNxtDirectCommandsProperties(componentProperties, srcCompVersion);
+
       } else if (componentType.equals("OrientationSensor")) {
         srcCompVersion = upgradeOrientationSensorProperties(componentProperties, srcCompVersion);
 
@@ -270,6 +273,9 @@ public final class YoungAndroidFormUpgrader {
       } else if (componentType.equals("Sound")) {
         srcCompVersion = upgradeSoundProperties(componentProperties, srcCompVersion);
 
+      } else if (componentType.equals("TinyDB")) {
+        srcCompVersion = upgradeTinyDBProperties(componentProperties, srcCompVersion);
+
       } else if (componentType.equals("TinyWebDB")) {
         srcCompVersion = upgradeTinyWebDBProperties(componentProperties, srcCompVersion);
 
@@ -432,6 +438,12 @@ public final class YoungAndroidFormUpgrader {
       // No properties need to be modified to upgrade to version 5.
       srcCompVersion = 5;
     }
+    if (srcCompVersion < 6) {
+      // The BluetoothClient.ReceiveInBackground, DataReceivedThreshold and DataReceivedInterval
+      // properties and the BluetoothClient.DataReceived event were added.
+      // No properties need to be modified to upgrade to version 6.
+      srcCompVersion = 6;
+    }
     return srcCompVersion;
   }
 
@@ -458,6 +470,12 @@ public final class YoungAndroidFormUpgrader {
       // No properties need to be modified to upgrade to version 5.
       srcCompVersion = 5;
     }
+    if (srcCompVersion < 6) {
+      // The BluetoothServer.ReceiveInBackground, DataReceivedThreshold and DataReceivedInterval
+      // properties and the BluetoothServer.DataReceived event were added.
+      // No properties need to be modified to upgrade to version 6.
+      srcCompVersion = 6;
+    }
     return srcCompVersion;
   }
   private static int upgradeSliderProperties(Map<String, JSONValue> componentProperties,
@@ -780,6 +798,17 @@ public final class YoungAndroidFormUpgrader {
     return srcCompVersion;
   }
 
+  private static int upgradeNxtDirectCommandsProperties(Map<String, JSONValue> componentProperties,
+      int srcCompVersion) {
+    if (srcCompVersion < 2) {
+      // The NxtDirectCommands.CommandsSent, RepliesReceived, and AverageRoundTripTime properties
+      // were added.
+      // No properties need to be modified to upgrade to version 2.
+      srcCompVersion = 2;
+    }
+    return srcCompVersion;
+  }
+
   private static int upgradeOrientationSensorProperties(
       Map<String, JSONValue> componentProperties, int srcCompVersion) {
     if (srcCompVersion < 2) {
@@ -865,6 +894,16 @@ public final class YoungAndroidFormUpgrader {
     return srcCompVersion;
   }
 
+  private static int upgradeTinyDBProperties(Map<String, JSONValue> componentProperties,
+      int srcCompVersion) {
+    if (srcCompVersion < 2) {
+      // The Namespace property and the StoreValues method were added.
+      // No properties need to be modified to upgrade to version 2.
+      srcCompVersion = 2;
+    }
+    return srcCompVersion;
+  }
+
   private static int upgradeTinyWebDBProperties(Map<String, JSONValue> componentProperties,
       int srcCompVersion) {
     if (srcCompVersion < 2) {
@@ -1002,6 +1041,11 @@ public final class YoungAndroidFormUpgrader {
       // No properties need to be modified to upgrade to version 3.
       srcCompVersion = 3;
     }
+    if (srcCompVersion < 4) {
+      // The CacheMode, CacheHits and CacheMisses properties were added.
+      // No properties need to be modified to upgrade to version 4.
+      srcCompVersion = 4;
+    }
     return srcCompVersion;
   }
 
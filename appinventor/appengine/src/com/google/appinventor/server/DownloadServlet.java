@@ -6,12 +6,12 @@
 package com.google.appinventor.server;
 
 import com.google.appinventor.common.utils.StringUtils;
+import com.google.appinventor.server.storage.ProjectSourceZipWriter;
 import com.google.appinventor.server.storage.StorageIo;
 import com.google.appinventor.server.storage.StorageIoInstanceHolder;
 import com.google.appinventor.server.util.CacheHeaders;
 import com.google.appinventor.server.util.CacheHeadersImpl;
 import com.google.appinventor.shared.rpc.ServerLayout;
-import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
 import com.google.appinventor.shared.rpc.project.RawFile;
 import com.google.appinventor.shared.storage.StorageUtil;
 
@@ -33,7 +33,7 @@ public class DownloadServlet extends OdeServlet {
    *    /<baseurl>/download/project-output/<projectId>/{<target>}
    *    /<baseurl>/download/project-source/<projectId>/{<title>}
    *    /<baseurl>/download/user-project-source/<projectIdOrName>/<userIdOrEmail>
-   *    /<baseurl>/download/all-projects-source
+   *    /<baseurl>/download/all-projects-source/{<part>}
    *    /<baseurl>/download/file/<projectId>/<file-path>
    *    /<baseurl>/download/userfile/<file-path>
    */
@@ -64,6 +64,9 @@ public class DownloadServlet extends OdeServlet {
   private static final int USER_PROJECT_USERID_INDEX = 5;
   private static final int SPLIT_LIMIT_USER_PROJECT_SOURCE = 6;
 
+  // Constants used when download kind is "all-projects-source".
+  private static final int ALL_PROJECTS_PART_INDEX = 4;
+
   // Constants used when download kind is "file".
   // Since the file path may contain slashes, it must be the last component in the URI.
   // PROJECT_ID_INDEX = 4 (declared above)
@@ -93,7 +96,9 @@ public class DownloadServlet extends OdeServlet {
     CACHE_HEADERS.setNotCacheable(resp);
     resp.setContentType(CONTENT_TYPE);
 
-    RawFile downloadableFile;
+    RawFile downloadableFile = null;
+    // Project sources are streamed to the response instead of being built in memory.
+    ProjectSourceZipWriter zipWriter = null;
 
     String userId = null;
 
@@ -121,9 +126,8 @@ public class DownloadServlet extends OdeServlet {
         final boolean includeProjectHistory = true;
         String zipName = (projectTitle == null) ? null :
             StringUtils.normalizeForFilename(projectTitle) + ".aia";
-        ProjectSourceZip zipFile = fileExporter.exportProjectSourceZip(userId,
+        zipWriter = fileExporter.openProjectSourceZip(userId,
             projectId, includeProjectHistory, false, zipName);
-        downloadableFile = zipFile.getRawFile();
 
       } else if (downloadKind.equals(ServerLayout.DOWNLOAD_USER_PROJECT_SOURCE)) {
         // Download project source files for the specified user project as a zip.
@@ -172,15 +176,20 @@ public class DownloadServlet extends OdeServlet {
         } else {
           zipName = "u" + projectUserId + "_p" + projectId + ".aia";
         }
-        ProjectSourceZip zipFile = fileExporter.exportProjectSourceZip(projectUserId,
+        zipWriter = fileExporter.openProjectSourceZip(projectUserId,
             projectId, /* include history*/ true, /* include keystore */ true, zipName);
-        downloadableFile = zipFile.getRawFile();
         
       } else if (downloadKind.equals(ServerLayout.DOWNLOAD_ALL_PROJECTS_SOURCE)) {
-        // Download all project source files as a zip of zips.
-        ProjectSourceZip zipFile = fileExporter.exportAllProjectsSourceZip(
-            userId, "all-projects.zip");
-        downloadableFile = zipFile.getRawFile();
+        // Download all project source files as a zip of zips, or one part of
+        // them if a part is given.
+        if (uriComponents.length > ALL_PROJECTS_PART_INDEX) {
+          int part = Integer.parseInt(uriComponents[ALL_PROJECTS_PART_INDEX]);
+          int partCount = fileExporter.getAllProjectsSourceZipPartCount(userId);
+          zipWriter = fileExporter.openAllProjectsSourceZipPart(userId, part,
+              "all-projects-part" + part + "-of-" + partCount + ".zip");
+        } else {
+          zipWriter = fileExporter.openAllProjectsSourceZip(userId, "all-projects.zip");
+        }
 
       } else if (downloadKind.equals(ServerLayout.DOWNLOAD_FILE)) {
         // Download a specific file.
@@ -207,6 +216,22 @@ public class DownloadServlet extends OdeServlet {
       throw CrashReport.createAndLogError(LOG, req, "user=" + userId, e);
     }
 
+    if (zipWriter != null) {
+      String fileName = zipWriter.getFileName();
+
+      // Set http response information. The length isn't known until the zip
+      // has been written, so the response is sent chunked.
+      resp.setStatus(HttpServletResponse.SC_OK);
+      resp.setHeader("content-disposition", "attachment; filename=\"" + fileName + "\"");
+      resp.setContentType(StorageUtil.getContentTypeForFilePath(fileName));
+
+      // Write the zip straight to the response
+      ServletOutputStream out = resp.getOutputStream();
+      zipWriter.writeTo(out);
+      out.close();
+      return;
+    }
+
     String fileName = downloadableFile.getFileName();
     byte[] content = downloadableFile.getContent();
 
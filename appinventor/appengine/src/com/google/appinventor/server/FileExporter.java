@@ -5,6 +5,7 @@
 
 package com.google.appinventor.server;
 
+import com.google.appinventor.server.storage.ProjectSourceZipWriter;
 import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
 import com.google.appinventor.shared.rpc.project.RawFile;
 
@@ -53,6 +54,28 @@ public interface FileExporter {
                                           boolean includeAndroidKeystore, @Nullable String zipName)
       throws IOException;
 
+  /**
+   * Prepares the project source files as a zip that is written straight to
+   * a stream, instead of being built in memory.
+   *
+   * @param userId the userId
+   * @param projectId the project id belonging to the userId
+   * @param includeProjectHistory indicates whether to include a file
+   *        containing the project's history in the zip
+   * @param includeAndroidKeystore indicates whether to include the user's android.keystore file
+   * @param zipName the desired name for the zip, or null for a name to be generated
+   * @return a writer for the zip, which also gives the name of the file and
+   *         the number of zipped files
+   * @throws IllegalArgumentException if download request cannot be fulfilled
+   *         (no source files)
+   * @throws IOException if files cannot be read
+   */
+  ProjectSourceZipWriter openProjectSourceZip(String userId, long projectId,
+                                              boolean includeProjectHistory,
+                                              boolean includeAndroidKeystore,
+                                              @Nullable String zipName)
+      throws IOException;
+
   /**
    * Exports all of the user's projects' source files as a zip of zips.
    *
@@ -65,6 +88,47 @@ public interface FileExporter {
    */
   ProjectSourceZip exportAllProjectsSourceZip(String userId, String zipName) throws IOException;
 
+  /**
+   * Prepares all of the user's projects' source files as a zip of zips that
+   * is written straight to a stream, instead of being built in memory.
+   *
+   * @param userId the userId
+   * @param zipName the desired name for the zip
+   * @return a writer for the zip, which also gives the number of zipped files
+   * @throws IllegalArgumentException if download request cannot be fulfilled
+   *         (no projects)
+   * @throws IOException if files cannot be read
+   */
+  ProjectSourceZipWriter openAllProjectsSourceZip(String userId, String zipName)
+      throws IOException;
+
+  /**
+   * Returns the number of parts in which all of the user's projects can be
+   * downloaded, for accounts with too many projects to download in a single
+   * request.
+   *
+   * @param userId the userId
+   * @return the number of parts, at least 1
+   */
+  int getAllProjectsSourceZipPartCount(String userId);
+
+  /**
+   * Prepares one part of all of the user's projects' source files as a zip of
+   * zips that is written straight to a stream. The projects are split into
+   * parts in a fixed order, so a download that failed can be resumed at the
+   * part that failed.
+   *
+   * @param userId the userId
+   * @param part the part, from 1 to {@link #getAllProjectsSourceZipPartCount}
+   * @param zipName the desired name for the zip
+   * @return a writer for the zip, which also gives the number of zipped files
+   * @throws IllegalArgumentException if download request cannot be fulfilled
+   *         (no such part, or no projects)
+   * @throws IOException if files cannot be read
+   */
+  ProjectSourceZipWriter openAllProjectsSourceZipPart(String userId, int part, String zipName)
+      throws IOException;
+
   /**
    * Exports a specific project file.
    *
@@ -6,7 +6,9 @@
 package com.google.appinventor.server;
 
 import com.google.common.base.Strings;
+import com.google.appinventor.server.flags.Flag;
 import com.google.appinventor.server.storage.ObjectifyStorageIo;
+import com.google.appinventor.server.storage.ProjectSourceZipWriter;
 import com.google.appinventor.server.storage.StorageIo;
 import com.google.appinventor.server.storage.StorageIoInstanceHolder;
 import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
@@ -16,9 +18,8 @@ import com.google.appinventor.shared.storage.StorageUtil;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 import javax.annotation.Nullable;
 
@@ -28,6 +29,10 @@ import javax.annotation.Nullable;
  */
 public final class FileExporterImpl implements FileExporter {
 
+  // Number of projects in each part of a download of all projects in parts.
+  private static final Flag<Integer> allProjectsPartSize =
+      Flag.createFlag("export.all.projects.part.size", 100);
+
   private final StorageIo storageIo = StorageIoInstanceHolder.INSTANCE;
 
   @Override
@@ -71,72 +76,83 @@ public final class FileExporterImpl implements FileExporter {
   }
 
   @Override
-  public ProjectSourceZip exportAllProjectsSourceZip(String userId,
-      String zipName) throws IOException {
-    // Create a zip file for each project's sources.
-    List<Long> projectIds = storageIo.getProjects(userId);
-    if (projectIds.size() == 0) {
-      throw new IllegalArgumentException("No projects to download");
+  public ProjectSourceZipWriter openProjectSourceZip(String userId, long projectId,
+                                                     boolean includeProjectHistory,
+                                                     boolean includeAndroidKeystore,
+                                                     @Nullable String zipName)
+      throws IOException {
+    // Stream project source files as a zip.
+    if (storageIo instanceof ObjectifyStorageIo) {
+      return ((ObjectifyStorageIo)storageIo).openProjectSourceZip(userId, projectId,
+          includeProjectHistory, includeAndroidKeystore, zipName);
+    } else {
+      throw new IllegalArgumentException("Objectify only");
     }
+  }
 
+  @Override
+  public ProjectSourceZip exportAllProjectsSourceZip(String userId,
+      String zipName) throws IOException {
+    ProjectSourceZipWriter writer = openAllProjectsSourceZip(userId, zipName);
     ByteArrayOutputStream zipFile = new ByteArrayOutputStream();
-    ZipOutputStream out = new ZipOutputStream(zipFile);
-    int count = 0;
-    String metadata = "";
-    for (Long projectId : projectIds) {
-      try {
-        ProjectSourceZip projectSourceZip =
-            exportProjectSourceZip(userId, projectId, false, false, null);
-        byte[] data = projectSourceZip.getContent();
-        String name = projectSourceZip.getFileName();
-
-        // If necessary, rename duplicate projects
-        while (true) {
-          try {
-            out.putNextEntry(new ZipEntry(name));
-            break;
-          } catch (IOException e) {
-            name = "duplicate-" + name;
-          }
-        }
-        metadata += projectSourceZip.getMetadata() + "\n";
-
-        out.write(data, 0, data.length);
-        out.closeEntry();
-        count++;
-      } catch (IllegalArgumentException e) {
-        System.err.println("No files found for userid: " + userId +
-            " for projectid: " + projectId);
-        continue;
-      } catch (IOException e) {
-        System.err.println("IOException while reading files found for userid: " +
-            userId + " for projectid: " + projectId);
-        continue;
-      }
-    }
-    if (count == 0) {
-      throw new IllegalArgumentException("No files to download");
-    }
+    writer.writeTo(zipFile);
 
-    List<String> userFiles = storageIo.getUserFiles(userId);
-    if (userFiles.contains(StorageUtil.ANDROID_KEYSTORE_FILENAME)) {
-      byte[] androidKeystoreBytes =
-          storageIo.downloadRawUserFile(userId, StorageUtil.ANDROID_KEYSTORE_FILENAME);
-      if (androidKeystoreBytes.length > 0) {
-        out.putNextEntry(new ZipEntry(StorageUtil.ANDROID_KEYSTORE_FILENAME));
-        out.write(androidKeystoreBytes, 0, androidKeystoreBytes.length);
-        out.closeEntry();
-        count++;
-      }
+    // Package the big zip file up as a ProjectSourceZip and return it.  The
+    // file count and metadata leave out the projects that couldn't be read.
+    ProjectSourceZip projectSourceZip =
+        new ProjectSourceZip(zipName, zipFile.toByteArray(), writer.getFileCount());
+    projectSourceZip.setMetadata(writer.getMetadata());
+    return projectSourceZip;
+  }
+
+  @Override
+  public ProjectSourceZipWriter openAllProjectsSourceZip(String userId, String zipName)
+      throws IOException {
+    return openAllProjectsSourceZip(userId, getSortedProjects(userId), zipName);
+  }
+
+  @Override
+  public int getAllProjectsSourceZipPartCount(String userId) {
+    int projectCount = storageIo.getProjects(userId).size();
+    int partSize = allProjectsPartSize.get();
+    return Math.max(1, (projectCount + partSize - 1) / partSize);
+  }
+
+  @Override
+  public ProjectSourceZipWriter openAllProjectsSourceZipPart(String userId, int part,
+      String zipName) throws IOException {
+    List<Long> projectIds = getSortedProjects(userId);
+    int partSize = allProjectsPartSize.get();
+    int start = (part - 1) * partSize;
+    if (part < 1 || (start >= projectIds.size() && part > 1)) {
+      throw new IllegalArgumentException("No part " + part + " to download");
     }
+    int end = Math.min(start + partSize, projectIds.size());
+    return openAllProjectsSourceZip(userId, projectIds.subList(start, end), zipName);
+  }
 
-    out.close();
+  private ProjectSourceZipWriter openAllProjectsSourceZip(String userId, List<Long> projectIds,
+      String zipName) throws IOException {
+    if (projectIds.size() == 0) {
+      throw new IllegalArgumentException("No projects to download");
+    }
+    // Download a zip file for each project's sources.
+    if (storageIo instanceof ObjectifyStorageIo) {
+      return ((ObjectifyStorageIo)storageIo).openAllProjectsSourceZip(userId, projectIds,
+          zipName);
+    } else {
+      throw new IllegalArgumentException("Objectify only");
+    }
+  }
 
-    // Package the big zip file up as a ProjectSourceZip and return it.
-    byte[] content = zipFile.toByteArray();
-    ProjectSourceZip projectSourceZip = new ProjectSourceZip(zipName, content, count);
-    projectSourceZip.setMetadata(metadata);
-    return projectSourceZip;
+  /*
+   * Returns the user's projects in a fixed order, so that the parts of a
+   * download in parts don't change between requests.
+   */
+  private List<Long> getSortedProjects(String userId) {
+    List<Long> projectIds = new ArrayList<Long>(storageIo.getProjects(userId));
+    Collections.sort(projectIds);
+    return projectIds;
   }
 
   @Override
@@ -18,8 +18,12 @@ import com.google.appinventor.shared.rpc.project.ProjectService;
 import com.google.appinventor.shared.rpc.project.UserProject;
 import com.google.appinventor.shared.rpc.project.youngandroid.YoungAndroidProjectNode;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 /**
@@ -108,11 +112,7 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
   public List<UserProject> getProjectInfos() {
     String userId = userInfoProvider.getUserId();
     List<Long> projectIds = storageIo.getProjects(userId);
-    List<UserProject> projectInfos = Lists.newArrayListWithExpectedSize(projectIds.size());
-    for (Long projectId : projectIds) {
-      projectInfos.add(makeUserProject(userId, projectId));
-    }
-    return projectInfos;
+    return storageIo.getUserProjects(userId, projectIds);
   }
 
   /**
@@ -231,14 +231,29 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
    */
   @Override
   public List<FileDescriptorWithContent> load(List<FileDescriptor> files) {
-    List<FileDescriptorWithContent> result = Lists.newArrayList();
     final String userId = userInfoProvider.getUserId();
+    // Load the files of each project together
+    Map<Long, List<String>> fileIdsByProject = Maps.newLinkedHashMap();
+    for (FileDescriptor file : files) {
+      List<String> fileIds = fileIdsByProject.get(file.getProjectId());
+      if (fileIds == null) {
+        fileIds = Lists.newArrayList();
+        fileIdsByProject.put(file.getProjectId(), fileIds);
+      }
+      fileIds.add(file.getFileId());
+    }
+    Map<Long, Iterator<String>> contentsByProject = Maps.newHashMap();
+    for (Map.Entry<Long, List<String>> entry : fileIdsByProject.entrySet()) {
+      long projectId = entry.getKey();
+      contentsByProject.put(projectId, getProjectRpcImpl(userId, projectId)
+          .load(userId, projectId, entry.getValue()).iterator());
+    }
+
+    List<FileDescriptorWithContent> result = Lists.newArrayList();
     for (FileDescriptor file : files) {
       long projectId = file.getProjectId();
-      String fileId = file.getFileId();
-      result.add(new FileDescriptorWithContent(
-          projectId, fileId,
-          getProjectRpcImpl(userId, projectId).load(userId, projectId, fileId)));
+      result.add(new FileDescriptorWithContent(projectId, file.getFileId(),
+          contentsByProject.get(projectId).next()));
     }
     return result;
   }
@@ -271,11 +286,26 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
   @Override
   public long save(List<FileDescriptorWithContent> filesAndContent) {
     final String userId = userInfoProvider.getUserId();
-    long date = 0;
+    // Save the files of each project together
+    Map<Long, Map<String, String>> contentsByProject = Maps.newLinkedHashMap();
+    long lastProjectId = 0;
     for (FileDescriptorWithContent fileAndContent : filesAndContent) {
-     long projectId = fileAndContent.getProjectId();
-     date = getProjectRpcImpl(userId, projectId).
-         save(userId, projectId, fileAndContent.getFileId(), fileAndContent.getContent());
+      lastProjectId = fileAndContent.getProjectId();
+      Map<String, String> contents = contentsByProject.get(lastProjectId);
+      if (contents == null) {
+        contents = Maps.newLinkedHashMap();
+        contentsByProject.put(lastProjectId, contents);
+      }
+      contents.put(fileAndContent.getFileId(), fileAndContent.getContent());
+    }
+    long date = 0;
+    for (Map.Entry<Long, Map<String, String>> entry : contentsByProject.entrySet()) {
+      long projectId = entry.getKey();
+      long projectDate = getProjectRpcImpl(userId, projectId).
+          save(userId, projectId, entry.getValue());
+      if (projectId == lastProjectId) {
+        date = projectDate;
+      }
     }
     return date;
   }
@@ -328,13 +358,7 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
   }
 
   private UserProject makeUserProject(String userId, long projectId) {
-    // TODO(user): note that multiple calls like this on the data store
-    // can be really inefficient. Make a storagIo.getProject() method to get
-    // all of this at once?
-    return new UserProject(projectId, storageIo.getProjectName(userId, projectId),
-                           storageIo.getProjectType(userId, projectId),
-                           storageIo.getProjectDateCreated(userId, projectId),
-                           storageIo.getProjectDateModified(userId, projectId));
+    return storageIo.getUserProjects(userId, Collections.singletonList(projectId)).get(0);
   }
 
   /*
@@ -68,16 +68,18 @@ public class ReceiveBuildServlet extends OdeServlet {
           break;
         }
         String fileName = zipEntry.getName();
-        byte[] fileBytes = ByteStreams.toByteArray(zipInputStream);
         if (StorageUtil.ANDROID_KEYSTORE_FILENAME.equals(fileName)) {
           LOG.info("Saving android.keystore for user: " + userId);
+          byte[] fileBytes = ByteStreams.toByteArray(zipInputStream);
           storageIo.addFilesToUser(userId, StorageUtil.ANDROID_KEYSTORE_FILENAME);
           storageIo.uploadRawUserFile(userId, fileName, fileBytes);
         } else {
+          // Each entry is saved as it is read from the request, so that a large
+          // APK is written straight to storage instead of being held in memory.
           String filePath = buildFileDirPath + "/" + fileName;
           LOG.info("Saving build output files: " + filePath);
           storageIo.addOutputFilesToProject(userId, projectId, filePath);
-          storageIo.uploadRawFile(projectId, filePath, userId, fileBytes);
+          storageIo.uploadRawFileFromStream(projectId, filePath, userId, zipInputStream);
         }
       }
     } finally {
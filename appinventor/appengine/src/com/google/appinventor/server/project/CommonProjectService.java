@@ -14,6 +14,7 @@ import com.google.appinventor.shared.storage.StorageUtil;
 import com.google.appinventor.shared.util.Base64Util;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * The base class for classes that provide project services for a specific
@@ -147,6 +148,19 @@ public abstract class CommonProjectService {
     return storageIo.downloadFile(userId, projectId, fileId, StorageUtil.DEFAULT_CHARSET);
   }
 
+  /**
+   * Loads the contents of several files of a project at once.
+   *
+   * @param userId the user id
+   * @param projectId  project root node ID
+   * @param fileIds  project nodes whose sources should be loaded
+   *
+   * @return  the contents, in the order of {@code fileIds}
+   */
+  public List<String> load(String userId, long projectId, List<String> fileIds) {
+    return storageIo.downloadFiles(userId, projectId, fileIds, StorageUtil.DEFAULT_CHARSET);
+  }
+
   /**
    * Loads the raw content of the associated file.
    *
@@ -190,6 +204,18 @@ public abstract class CommonProjectService {
         content, StorageUtil.DEFAULT_CHARSET);
   }
 
+  /**
+   * Saves the contents of several files of a project at once.
+   *
+   * @param userId the user id
+   * @param projectId  project root node ID
+   * @param contents  contents to be saved, keyed by project node
+   * @return modification date for project
+   */
+  public long save(String userId, long projectId, Map<String, String> contents) {
+    return storageIo.uploadFiles(projectId, userId, contents, StorageUtil.DEFAULT_CHARSET);
+  }
+
   /**
    * Invokes a build command for the project.
    *
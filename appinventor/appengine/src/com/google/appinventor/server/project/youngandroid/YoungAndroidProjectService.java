@@ -19,6 +19,7 @@ import com.google.appinventor.server.flags.Flag;
 import com.google.appinventor.server.project.CommonProjectService;
 import com.google.appinventor.server.project.utils.Security;
 import com.google.appinventor.server.properties.json.ServerJsonParser;
+import com.google.appinventor.server.storage.ProjectSourceZipWriter;
 import com.google.appinventor.server.storage.StorageIo;
 import com.google.appinventor.shared.properties.json.JSONParser;
 import com.google.appinventor.shared.rpc.RpcResult;
@@ -49,6 +50,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
 import com.google.common.collect.Maps;
 import com.google.common.io.CharStreams;
+import com.google.common.io.CountingOutputStream;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -510,7 +512,8 @@ public final class YoungAndroidProjectService extends CommonProjectService {
       storageIo.deleteFile(userId, projectId, buildOutputFile);
     }
     URL buildServerUrl = null;
-    ProjectSourceZip zipFile = null;
+    // Counts the bytes of the zip as it is streamed to the build server.
+    CountingOutputStream zipOutputStream = null;
     try {
       buildServerUrl = new URL(getBuildServerUrlStr(
           user.getUserEmail(),
@@ -521,14 +524,15 @@ public final class YoungAndroidProjectService extends CommonProjectService {
       connection.setDoOutput(true);
       connection.setRequestMethod("POST");
 
-      BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(connection.getOutputStream());
       FileExporter fileExporter = new FileExporterImpl();
-      zipFile = fileExporter.exportProjectSourceZip(userId, projectId, false,
-          /* includeAndroidKeystore */ true,
+      ProjectSourceZipWriter zipWriter = fileExporter.openProjectSourceZip(userId, projectId,
+          false, /* includeAndroidKeystore */ true,
           projectName + ".aia");
-      bufferedOutputStream.write(zipFile.getContent());
-      bufferedOutputStream.flush();
-      bufferedOutputStream.close();
+      BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(connection.getOutputStream());
+      zipOutputStream = new CountingOutputStream(bufferedOutputStream);
+      zipWriter.writeTo(zipOutputStream);
+      zipOutputStream.flush();
+      zipOutputStream.close();
 
       int responseCode = 0;
       try {
@@ -589,8 +593,8 @@ public final class YoungAndroidProjectService extends CommonProjectService {
       // In particular, we often see RequestTooLargeException (if the zip is too
       // big) and ApiProxyException. There may be others.
       Throwable wrappedException = e;
-      if (e instanceof ApiProxy.RequestTooLargeException && zipFile != null) {
-        int zipFileLength = zipFile.getContent().length;
+      if (e instanceof ApiProxy.RequestTooLargeException && zipOutputStream != null) {
+        long zipFileLength = zipOutputStream.getCount();
         if (zipFileLength >= (5 * 1024 * 1024) /* 5 MB */) {
           wrappedException = new IllegalArgumentException(
               "Sorry, can't package projects larger than 5MB."
@@ -5,6 +5,7 @@
 
 package com.google.appinventor.server.storage;
 
+import com.google.appengine.api.ThreadManager;
 import com.google.appengine.api.blobstore.BlobKey;
 import com.google.appengine.api.blobstore.BlobstoreInputStream;
 import com.google.appengine.api.blobstore.BlobstoreServiceFactory;
@@ -19,6 +20,7 @@ import com.google.appengine.api.memcache.Expiration;
 import com.google.appinventor.server.CrashReport;
 import com.google.appinventor.server.FileExporter;
 import com.google.appinventor.server.flags.Flag;
+import com.google.appinventor.server.storage.ProjectMetadataCache.ProjectMetadata;
 import com.google.appinventor.server.storage.StoredData.FeedbackData;
 import com.google.appinventor.server.storage.StoredData.FileData;
 import com.google.appinventor.server.storage.StoredData.MotdData;
@@ -33,11 +35,13 @@ import com.google.appinventor.shared.rpc.project.Project;
 import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
 import com.google.appinventor.shared.rpc.project.RawFile;
 import com.google.appinventor.shared.rpc.project.TextFile;
+import com.google.appinventor.shared.rpc.project.UserProject;
 import com.google.appinventor.shared.rpc.user.User;
 import com.google.appinventor.shared.storage.StorageUtil;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
 import com.google.common.io.ByteStreams;
 
 import com.googlecode.objectify.Key;
@@ -45,6 +49,7 @@ import com.googlecode.objectify.Objectify;
 import com.googlecode.objectify.ObjectifyService;
 import com.googlecode.objectify.Query;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -52,10 +57,24 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.channels.Channels;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
@@ -83,8 +102,23 @@ public class ObjectifyStorageIo implements  StorageIo {
   // TODO(user): need a way to modify this. Also, what is really a good value?
   private static final int MAX_JOB_RETRIES = 10;
 
+  // Size of the chunks in which blobs are copied into an exported zip.
+  private static final int BLOB_COPY_BUFFER_SIZE = 64 * 1024;
+
+  // Maximum number of blobs read at the same time by a request that reads many blobs.
+  private static final Flag<Integer> blobReadConcurrency =
+      Flag.createFlag("blob.read.concurrency", 8);
+
+  // Number of projects looked up together when exporting many projects.
+  private static final int EXPORT_LOOKUP_BATCH_SIZE = 25;
+
+  // Number of projects between progress messages when exporting many projects.
+  private static final int EXPORT_PROGRESS_INTERVAL = 50;
+
   private final MemcacheService memcache = MemcacheServiceFactory.getMemcacheService();
 
+  private final ProjectMetadataCache projectMetadataCache = new ProjectMetadataCache(memcache);
+
   // Use this class to define the work of a job that can be retried. The
   // "datastore" argument to run() is the Objectify object for this job
   // (created with ObjectifyService.beginTransaction()). Note that all operations
@@ -436,6 +470,7 @@ public class ObjectifyStorageIo implements  StorageIo {
           datastore.delete(projectKey);
         }
       });
+      projectMetadataCache.invalidate(projectId);
       // have to delete the blobs outside of the user and project jobs
       for (String blobPath: blobPaths) {
         deleteBlobstoreFile(blobPath);
@@ -512,72 +547,66 @@ public class ObjectifyStorageIo implements  StorageIo {
       throw CrashReport.createAndLogError(LOG, null,
           collectUserProjectErrorInfo(userId, projectId), e);
     }
+    projectMetadataCache.invalidate(projectId);
   }
 
-  @Override
-  public String getProjectType(final String userId, final long projectId) {
-    final Result<String> projectType = new Result<String>();
+  /**
+   * Forgets the project metadata cached in this process. The local datastore
+   * used by tests reuses project ids, so tests call this between runs.
+   */
+  @VisibleForTesting
+  public static void clearLocalProjectMetadataCache() {
+    ProjectMetadataCache.clearLocal();
+  }
+
+  /*
+   * Returns the metadata of the given project, from the cache if possible, or
+   * null if the project doesn't exist.
+   */
+  private ProjectMetadata getProjectMetadata(final String userId, final long projectId) {
+    ProjectMetadata metadata = projectMetadataCache.get(projectId);
+    if (metadata != null) {
+      return metadata;
+    }
+    final Result<ProjectMetadata> result = new Result<ProjectMetadata>();
     try {
       runJobWithRetries(new JobRetryHelper() {
         @Override
         public void run(Objectify datastore) {
           ProjectData pd = datastore.find(projectKey(projectId));
-          if (pd != null) {
-            projectType.t = pd.type;
-          } else {
-            projectType.t = "";
-          }
+          result.t = (pd != null) ? makeProjectMetadata(pd) : null;
         }
       });
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null,
           collectUserProjectErrorInfo(userId, projectId), e);
     }
-    return projectType.t;
+    if (result.t != null) {
+      projectMetadataCache.put(projectId, result.t);
+    }
+    return result.t;
+  }
+
+  private static ProjectMetadata makeProjectMetadata(ProjectData pd) {
+    return new ProjectMetadata(pd.name, pd.type, pd.history, pd.dateCreated, pd.dateModified);
+  }
+
+  @Override
+  public String getProjectType(final String userId, final long projectId) {
+    ProjectMetadata metadata = getProjectMetadata(userId, projectId);
+    return (metadata != null) ? metadata.type : "";
   }
 
   @Override
   public String getProjectName(final String userId, final long projectId) {
-    final Result<String> projectName = new Result<String>();
-    try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          ProjectData pd = datastore.find(projectKey(projectId));
-          if (pd != null) {
-            projectName.t = pd.name;
-          } else {
-            projectName.t = "";
-          }
-        }
-      });
-    } catch (ObjectifyException e) {
-      throw CrashReport.createAndLogError(LOG, null,
-          collectUserProjectErrorInfo(userId, projectId), e);
-    }
-    return projectName.t;
+    ProjectMetadata metadata = getProjectMetadata(userId, projectId);
+    return (metadata != null) ? metadata.name : "";
   }
 
   @Override
   public long getProjectDateModified(final String userId, final long projectId) {
-    final Result<Long> modDate = new Result<Long>();
-    try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          ProjectData pd = datastore.find(projectKey(projectId));
-          if (pd != null) {
-            modDate.t = pd.dateModified;
-          } else {
-            modDate.t = Long.valueOf(0);
-          }
-        }
-      });
-    } catch (ObjectifyException e) {
-      throw CrashReport.createAndLogError(LOG, null,
-          collectUserProjectErrorInfo(userId, projectId), e);
-    }
-    return modDate.t;
+    ProjectMetadata metadata = getProjectMetadata(userId, projectId);
+    return (metadata != null) ? metadata.dateModified : 0;
   }
 
   @Override
@@ -587,46 +616,53 @@ public class ObjectifyStorageIo implements  StorageIo {
           collectUserProjectErrorInfo(userId, projectId),
           new UnauthorizedAccessException(userId, projectId, null));
     }
-    final Result<String> projectHistory = new Result<String>();
-    try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          ProjectData pd = datastore.find(projectKey(projectId));
-          if (pd != null) {
-            projectHistory.t = pd.history;
-          } else {
-            projectHistory.t = "";
-          }
-        }
-      });
-    } catch (ObjectifyException e) {
-      throw CrashReport.createAndLogError(LOG, null,
-          collectUserProjectErrorInfo(userId, projectId), e);
-    }
-    return projectHistory.t;
+    ProjectMetadata metadata = getProjectMetadata(userId, projectId);
+    return (metadata != null) ? metadata.history : "";
   }
 
   @Override
   public long getProjectDateCreated(final String userId, final long projectId) {
-    final Result<Long> dateCreated = new Result<Long>();
-    try {
-      runJobWithRetries(new JobRetryHelper() {
-        @Override
-        public void run(Objectify datastore) {
-          ProjectData pd = datastore.find(projectKey(projectId));
-          if (pd != null) {
-            dateCreated.t = pd.dateCreated;
-          } else {
-            dateCreated.t = Long.valueOf(0);
-          }
+    ProjectMetadata metadata = getProjectMetadata(userId, projectId);
+    return (metadata != null) ? metadata.dateCreated : 0;
+  }
+
+  @Override
+  public List<UserProject> getUserProjects(final String userId, List<Long> projectIds) {
+    Map<Long, ProjectMetadata> metadatas = projectMetadataCache.getAll(projectIds);
+    List<Key<ProjectData>> missingKeys = new ArrayList<Key<ProjectData>>();
+    for (long projectId : projectIds) {
+      if (!metadatas.containsKey(projectId)) {
+        missingKeys.add(projectKey(projectId));
+      }
+    }
+    if (!missingKeys.isEmpty()) {
+      // One batch get for the projects that aren't cached. The projects are in
+      // different entity groups, so this is done without a transaction; gets
+      // by key are consistent anyway.
+      Map<Long, ProjectMetadata> loaded = new HashMap<Long, ProjectMetadata>();
+      try {
+        Objectify datastore = ObjectifyService.begin();
+        for (ProjectData pd : datastore.get(missingKeys).values()) {
+          loaded.put(pd.id, makeProjectMetadata(pd));
         }
-      });
-    } catch (ObjectifyException e) {
-      throw CrashReport.createAndLogError(LOG, null,
-          collectUserProjectErrorInfo(userId, projectId), e);
+      } catch (RuntimeException e) {
+        throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
+      }
+      projectMetadataCache.putAll(loaded);
+      metadatas.putAll(loaded);
+    }
+
+    List<UserProject> userProjects = new ArrayList<UserProject>(projectIds.size());
+    for (long projectId : projectIds) {
+      ProjectMetadata metadata = metadatas.get(projectId);
+      if (metadata != null) {
+        userProjects.add(new UserProject(projectId, metadata.name, metadata.type,
+            metadata.dateCreated, metadata.dateModified));
+      } else {
+        userProjects.add(new UserProject(projectId, "", "", 0, 0));
+      }
     }
-    return dateCreated.t;
+    return userProjects;
   }
 
   @Override
@@ -824,6 +860,9 @@ public class ObjectifyStorageIo implements  StorageIo {
       throw CrashReport.createAndLogError(LOG, null,
           collectProjectErrorInfo(userId, projectId, fileNames[0]), e);
     }
+    if (changeModDate) {
+      projectMetadataCache.invalidate(projectId);
+    }
   }
 
   @Override
@@ -894,6 +933,9 @@ public class ObjectifyStorageIo implements  StorageIo {
       throw CrashReport.createAndLogError(LOG, null,
           collectProjectErrorInfo(userId, projectId, fileNames[0]), e);
     }
+    if (changeModDate) {
+      projectMetadataCache.invalidate(projectId);
+    }
   }
 
   @Override
@@ -1001,6 +1043,11 @@ public class ObjectifyStorageIo implements  StorageIo {
     }
   }
 
+  /*
+   * Sets the project's modification date. This runs inside a transaction, so
+   * the caller has to invalidate the cached project metadata after the
+   * transaction has committed.
+   */
   private long updateProjectModDate(Objectify datastore, long projectId) {
     long modDate = System.currentTimeMillis();
     ProjectData pd = datastore.find(projectKey(projectId));
@@ -1069,6 +1116,155 @@ public class ObjectifyStorageIo implements  StorageIo {
       throw CrashReport.createAndLogError(LOG, null,
           collectProjectErrorInfo(userId, projectId, fileName), e);
     }
+    projectMetadataCache.invalidate(projectId);
+    return modTime.t;
+  }
+
+  @Override
+  public long uploadRawFileFromStream(final long projectId, final String fileName,
+      final String userId, InputStream content) throws IOException {
+    if (!useBlobstoreForFile(fileName)) {
+      // The content is stored in the datastore, so it has to fit in memory anyway.
+      return uploadRawFile(projectId, fileName, userId, ByteStreams.toByteArray(content));
+    }
+    // The stream can only be read once, so the blob is written before the job
+    // starts instead of inside it, and the job only points the file at it.
+    final String newBlobstorePath;
+    try {
+      newBlobstorePath = uploadToBlobstore(content, makeBlobName(projectId, fileName));
+    } catch (BlobWriteException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, fileName), e);
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, fileName), e);
+    }
+    final Result<Long> modTime = new Result<Long>();
+    final Result<String> oldBlobstorePath = new Result<String>();
+    boolean committed = false;
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          oldBlobstorePath.t = null;
+          FileData fd = datastore.find(projectFileKey(projectKey(projectId), fileName));
+          Preconditions.checkState(fd != null);
+          if (fd.isBlob) {
+            // mark the old blobstore blob for deletion
+            oldBlobstorePath.t = fd.blobstorePath;
+          }
+          fd.isBlob = true;
+          fd.blobstorePath = newBlobstorePath;
+          // If the content was previously stored in the datastore, clear it out.
+          fd.content = null;
+          datastore.put(fd);
+          modTime.t = updateProjectModDate(datastore, projectId);
+        }
+      });
+      committed = true;
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, fileName), e);
+    } finally {
+      if (!committed) {
+        deleteBlobstoreFile(newBlobstorePath);
+      }
+    }
+    projectMetadataCache.invalidate(projectId);
+    // As in uploadRawFile, the old blob is deleted outside of the job.
+    if (oldBlobstorePath.t != null) {
+      deleteBlobstoreFile(oldBlobstorePath.t);
+    }
+    return modTime.t;
+  }
+
+  @Override
+  public long uploadFiles(final long projectId, final String userId,
+      Map<String, String> contents, String encoding) {
+    final Map<String, byte[]> rawContents = new LinkedHashMap<String, byte[]>();
+    String fileName = null;
+    try {
+      for (Map.Entry<String, String> entry : contents.entrySet()) {
+        fileName = entry.getKey();
+        rawContents.put(fileName, entry.getValue().getBytes(encoding));
+      }
+    } catch (UnsupportedEncodingException e) {
+      throw CrashReport.createAndLogError(LOG, null, "Unsupported file content encoding,"
+          + collectProjectErrorInfo(null, projectId, fileName), e);
+    }
+
+    final Result<Long> modTime = new Result<Long>();
+    // Blobs replaced by the upload, and blobs written by attempts that failed
+    final List<String> oldBlobstorePaths = new ArrayList<String>();
+    final List<String> failedBlobstorePaths = new ArrayList<String>();
+    try {
+      // All of the files are in the project's entity group, so they are read
+      // and written with one batch get and one batch put, and the project's
+      // modification date is updated once.
+      runJobWithRetries(new JobRetryHelper() {
+        final List<String> newBlobstorePaths = new ArrayList<String>();
+
+        @Override
+        public void run(Objectify datastore) throws ObjectifyException {
+          oldBlobstorePaths.clear();
+          Key<ProjectData> projectKey = projectKey(projectId);
+          List<Key<FileData>> fileKeys = new ArrayList<Key<FileData>>();
+          for (String fileName : rawContents.keySet()) {
+            fileKeys.add(projectFileKey(projectKey, fileName));
+          }
+          Map<Key<FileData>, FileData> fds = datastore.get(fileKeys);
+          List<FileData> changed = new ArrayList<FileData>();
+          for (Map.Entry<String, byte[]> entry : rawContents.entrySet()) {
+            String fileName = entry.getKey();
+            FileData fd = fds.get(projectFileKey(projectKey, fileName));
+            Preconditions.checkState(fd != null);
+            if (fd.isBlob) {
+              // mark the old blobstore blob for deletion
+              oldBlobstorePaths.add(fd.blobstorePath);
+            }
+            if (useBlobstoreForFile(fileName)) {
+              fd.isBlob = true;
+              try {
+                fd.blobstorePath = uploadToBlobstore(entry.getValue(),
+                    makeBlobName(projectId, fileName));
+              } catch (BlobWriteException e) {
+                // Note that this makes the BlobWriteException fatal. The job will
+                // not be retried if we get this exception.
+                onNonFatalError();
+                throw CrashReport.createAndLogError(LOG, null,
+                    collectProjectErrorInfo(userId, projectId, fileName), e);
+              }
+              newBlobstorePaths.add(fd.blobstorePath);
+              // If the content was previously stored in the datastore, clear it out.
+              fd.content = null;
+            } else {
+              fd.content = entry.getValue();
+            }
+            changed.add(fd);
+          }
+          datastore.put(changed);
+          modTime.t = updateProjectModDate(datastore, projectId);
+        }
+
+        @Override
+        public void onNonFatalError() {
+          failedBlobstorePaths.addAll(newBlobstorePaths);
+          newBlobstorePaths.clear();
+        }
+      });
+      // As in uploadRawFile, the old blobs are deleted outside of the job.
+      for (String oldBlobstorePath : oldBlobstorePaths) {
+        deleteBlobstoreFile(oldBlobstorePath);
+      }
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, null), e);
+    } finally {
+      for (String failedBlobstorePath : failedBlobstorePaths) {
+        deleteBlobstoreFile(failedBlobstorePath);
+      }
+    }
+    projectMetadataCache.invalidate(projectId);
     return modTime.t;
   }
 
@@ -1089,6 +1285,11 @@ public class ObjectifyStorageIo implements  StorageIo {
 
   private String uploadToBlobstore(byte[] content, String name)
       throws BlobWriteException, ObjectifyException {
+    return uploadToBlobstore(new ByteArrayInputStream(content), name);
+  }
+
+  private String uploadToBlobstore(InputStream content, String name)
+      throws BlobWriteException, ObjectifyException {
     // Create a new Blob file with generic mime-type "application/octet-stream"
     AppEngineFile blobstoreFile = null;
     try {
@@ -1098,7 +1299,7 @@ public class ObjectifyStorageIo implements  StorageIo {
       FileWriteChannel blobstoreWriteChannel = fileService.openWriteChannel(blobstoreFile, true);
 
       OutputStream blobstoreOutputStream = Channels.newOutputStream(blobstoreWriteChannel);
-      ByteStreams.copy(ByteStreams.newInputStreamSupplier(content), blobstoreOutputStream);
+      ByteStreams.copy(content, blobstoreOutputStream);
       blobstoreOutputStream.flush();
       blobstoreOutputStream.close();
       blobstoreWriteChannel.closeFinally();
@@ -1145,6 +1346,7 @@ public class ObjectifyStorageIo implements  StorageIo {
       throw CrashReport.createAndLogError(LOG, null,
           collectProjectErrorInfo(userId, projectId, fileName), e);
     }
+    projectMetadataCache.invalidate(projectId);
     if (oldBlobstorePath.t != null) {
       deleteBlobstoreFile(oldBlobstorePath.t);
     }
@@ -1207,6 +1409,66 @@ public class ObjectifyStorageIo implements  StorageIo {
     return result.t;
   }
 
+  @Override
+  public List<String> downloadFiles(final String userId, final long projectId,
+      final List<String> fileNames, String encoding) {
+    if (!getProjects(userId).contains(projectId)) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId),
+          new UnauthorizedAccessException(userId, projectId, null));
+    }
+    final Result<Map<Key<FileData>, FileData>> fds = new Result<Map<Key<FileData>, FileData>>();
+    final List<Key<FileData>> fileKeys = new ArrayList<Key<FileData>>();
+    for (String fileName : fileNames) {
+      fileKeys.add(projectFileKey(projectKey(projectId), fileName));
+    }
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          fds.t = datastore.get(fileKeys);
+        }
+      });
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId), e);
+    }
+
+    // read the blobs outside of the job, several at a time
+    List<String> blobstorePaths = new ArrayList<String>();
+    for (int i = 0; i < fileNames.size(); i++) {
+      FileData fileData = fds.t.get(fileKeys.get(i));
+      if (fileData == null) {
+        throw CrashReport.createAndLogError(LOG, null,
+            collectProjectErrorInfo(userId, projectId, fileNames.get(i)),
+            new FileNotFoundException("No data for " + fileNames.get(i)));
+      }
+      if (fileData.isBlob) {
+        blobstorePaths.add(fileData.blobstorePath);
+      }
+    }
+    BlobPrefetcher prefetcher = new BlobPrefetcher(blobstorePaths, blobReadConcurrency.get());
+    List<String> contents = new ArrayList<String>(fileNames.size());
+    String fileName = null;
+    try {
+      for (int i = 0; i < fileNames.size(); i++) {
+        fileName = fileNames.get(i);
+        FileData fileData = fds.t.get(fileKeys.get(i));
+        byte[] content = fileData.isBlob ? prefetcher.next() : fileData.content;
+        contents.add(new String(content, encoding));
+      }
+    } catch (BlobReadException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, fileName), e);
+    } catch (UnsupportedEncodingException e) {
+      throw CrashReport.createAndLogError(LOG, null, "Unsupported file content encoding, "
+          + collectProjectErrorInfo(userId, projectId, fileName), e);
+    } finally {
+      prefetcher.shutdown();
+    }
+    return contents;
+  }
+
   // Note: this must be called outside of any transaction, since getBlobKey()
   // uses the current transaction and it will most likely have the wrong
   // entity group!
@@ -1225,6 +1487,49 @@ public class ObjectifyStorageIo implements  StorageIo {
     }
   }
 
+  /**
+   * Copies the contents of a blob to the given stream, a chunk at a time,
+   * so that the blob is never held in memory as a whole.
+   */
+  private void copyBlobstoreData(String blobstorePath, OutputStream out)
+      throws IOException {
+    AppEngineFile blobstoreFile = new AppEngineFile(blobstorePath);
+    BlobKey blobKey = fileService.getBlobKey(blobstoreFile);
+    if (blobKey == null) {
+      throw new BlobReadException("getBlobKey() returned null for " + blobstorePath);
+    }
+    InputStream blobInputStream;
+    try {
+      blobInputStream = new BlobstoreInputStream(blobKey);
+    } catch (IOException e) {
+      throw new BlobReadException(e, "Error trying to read blob from " + blobstorePath
+          + ", blobkey = " + blobKey);
+    }
+    try {
+      byte[] buffer = new byte[BLOB_COPY_BUFFER_SIZE];
+      while (true) {
+        int n;
+        try {
+          n = blobInputStream.read(buffer);
+        } catch (IOException e) {
+          throw new BlobReadException(e, "Error trying to read blob from " + blobstorePath
+              + ", blobkey = " + blobKey);
+        }
+        if (n == -1) {
+          break;
+        }
+        // Errors writing to the stream are the caller's, not blob errors
+        out.write(buffer, 0, n);
+      }
+    } finally {
+      try {
+        blobInputStream.close();
+      } catch (IOException e) {
+        // Everything has been read already
+      }
+    }
+  }
+
   /**
    *  Exports project files as a zip archive
    * @param userId a user Id (the request is made on behalf of this user)
@@ -1236,12 +1541,38 @@ public class ObjectifyStorageIo implements  StorageIo {
    * @return  project with the content as requested by params.
    */
   @Override
-  public ProjectSourceZip exportProjectSourceZip(final String userId, final long projectId,
-                                                 final boolean includeProjectHistory,
-                                                 final boolean includeAndroidKeystore,
+  public ProjectSourceZip exportProjectSourceZip(String userId, long projectId,
+                                                 boolean includeProjectHistory,
+                                                 boolean includeAndroidKeystore,
                                                  @Nullable String zipName) throws IOException {
-    final Result<Integer> fileCount = new Result<Integer>();
-    fileCount.t = 0;
+    ProjectSourceZipWriter writer = openProjectSourceZip(userId, projectId,
+        includeProjectHistory, includeAndroidKeystore, zipName);
+    ByteArrayOutputStream zipFile = new ByteArrayOutputStream();
+    writer.writeTo(zipFile);
+    ProjectSourceZip projectSourceZip =
+        new ProjectSourceZip(writer.getFileName(), zipFile.toByteArray(), writer.getFileCount());
+    projectSourceZip.setMetadata(writer.getMetadata());
+    return projectSourceZip;
+  }
+
+  /**
+   *  Prepares the export of project files as a zip archive that is written
+   *  straight to a stream. The datastore is read here; the blobs are only
+   *  read, a chunk at a time, while the zip is being written.
+   * @param userId a user Id (the request is made on behalf of this user)
+   * @param projectId  project ID
+   * @param includeProjectHistory  whether or not to include the project history
+   * @param includeAndroidKeystore  whether or not to include the Android keystore
+   * @param zipName  the name of the zip file, if a specific one is desired
+
+   * @return  a writer for the project with the content as requested by params.
+   */
+  @Override
+  public ProjectSourceZipWriter openProjectSourceZip(final String userId, final long projectId,
+                                                     final boolean includeProjectHistory,
+                                                     final boolean includeAndroidKeystore,
+                                                     @Nullable String zipName)
+      throws IOException {
     final Result<String> projectHistory = new Result<String>();
     projectHistory.t = null;
     // We collect up all the file data for the project in a transaction but
@@ -1251,10 +1582,8 @@ public class ObjectifyStorageIo implements  StorageIo {
     final List<FileData> fileData = new ArrayList<FileData>();
     final Result<String> projectName = new Result<String>();
     projectName.t = null;
-    String fileName = null;
-
-    ByteArrayOutputStream zipFile = new ByteArrayOutputStream();
-    final ZipOutputStream out = new ZipOutputStream(zipFile);
+    final Result<byte[]> androidKeystore = new Result<byte[]>();
+    androidKeystore.t = null;
 
     try {
       runJobWithRetries(new JobRetryHelper() {
@@ -1282,88 +1611,380 @@ public class ObjectifyStorageIo implements  StorageIo {
           }
         }
       });
-
-      // Process the file contents outside of the job since we can't read
-      // blobs in the job.
-      for (FileData fd : fileData) {
-        fileName = fd.fileName;
-        byte[] data;
-        if (fd.isBlob) {
-          try {
-            data = getBlobstoreBytes(fd.blobstorePath);
-          } catch (BlobReadException e) {
-            throw CrashReport.createAndLogError(LOG, null,
-                collectProjectErrorInfo(userId, projectId, fileName), e);
-          }
-        } else {
-          data = fd.content;
-        }
-        out.putNextEntry(new ZipEntry(fileName));
-        out.write(data, 0, data.length);
-        out.closeEntry();
-        fileCount.t++;
-      }
-      if (projectHistory.t != null) {
-        byte[] data = projectHistory.t.getBytes(StorageUtil.DEFAULT_CHARSET);
-        out.putNextEntry(new ZipEntry(FileExporter.REMIX_INFORMATION_FILE_PATH));
-        out.write(data, 0, data.length);
-        out.closeEntry();
-        fileCount.t++;
-      }
     } catch (ObjectifyException e) {
       CrashReport.createAndLogError(LOG, null,
-          collectProjectErrorInfo(userId, projectId, fileName), e);
+          collectProjectErrorInfo(userId, projectId, null), e);
       throw new IOException("Reflecting exception for userid " + userId +
           " projectId " + projectId + ", original exception " + e.getMessage());
     } catch (RuntimeException e) {
       CrashReport.createAndLogError(LOG, null,
-          collectProjectErrorInfo(userId, projectId, fileName), e);
+          collectProjectErrorInfo(userId, projectId, null), e);
       throw new IOException("Reflecting exception for userid " + userId +
           " projectId " + projectId + ", original exception " + e.getMessage());
     }
 
-    if (fileCount.t == 0) {
-      // can't close out since will get a ZipException due to the lack of files
+    if (fileData.isEmpty()) {
+      // Nothing has been written yet, so the caller can still report this
       throw new IllegalArgumentException("No files to download");
     }
 
     if (includeAndroidKeystore) {
-      try {
-        runJobWithRetries(new JobRetryHelper() {
-            @Override
-            public void run(Objectify datastore) {
+      androidKeystore.t = getAndroidKeystore(userId);
+    }
+
+    final int fileCount = fileData.size() + (projectHistory.t != null ? 1 : 0) +
+        (androidKeystore.t != null ? 1 : 0);
+    final String fileName = (zipName == null) ? projectName.t + ".aia" : zipName;
+
+    return new ProjectSourceZipWriter() {
+      @Override
+      public String getFileName() {
+        return fileName;
+      }
+
+      @Override
+      public int getFileCount() {
+        return fileCount;
+      }
+
+      @Override
+      public String getMetadata() {
+        return projectName.t;
+      }
+
+      @Override
+      public void writeTo(OutputStream stream) throws IOException {
+        // The zip stream is finished rather than closed, so the caller's
+        // stream stays open.
+        ZipOutputStream out = new ZipOutputStream(stream);
+        String fileName = null;
+        try {
+          for (FileData fd : fileData) {
+            fileName = fd.fileName;
+            out.putNextEntry(new ZipEntry(fileName));
+            if (fd.isBlob) {
               try {
-                Key<UserData> userKey = userKey(userId);
-                for (UserFileData ufd : datastore.query(UserFileData.class).ancestor(userKey)) {
-                  if (ufd.fileName.equals(StorageUtil.ANDROID_KEYSTORE_FILENAME) &&
-                      (ufd.content.length > 0)) {
-                    out.putNextEntry(new ZipEntry(StorageUtil.ANDROID_KEYSTORE_FILENAME));
-                    out.write(ufd.content, 0, ufd.content.length);
-                    out.closeEntry();
-                    fileCount.t++;
-                  }
-                }
-              } catch (IOException e) {
+                copyBlobstoreData(fd.blobstorePath, out);
+              } catch (BlobReadException e) {
                 throw CrashReport.createAndLogError(LOG, null,
-                    collectProjectErrorInfo(userId, projectId,
-                        StorageUtil.ANDROID_KEYSTORE_FILENAME), e);
+                    collectProjectErrorInfo(userId, projectId, fileName), e);
               }
+            } else {
+              out.write(fd.content, 0, fd.content.length);
             }
-          });
-      } catch (ObjectifyException e) {
-        throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
+            out.closeEntry();
+          }
+          if (projectHistory.t != null) {
+            fileName = FileExporter.REMIX_INFORMATION_FILE_PATH;
+            byte[] data = projectHistory.t.getBytes(StorageUtil.DEFAULT_CHARSET);
+            out.putNextEntry(new ZipEntry(fileName));
+            out.write(data, 0, data.length);
+            out.closeEntry();
+          }
+          if (androidKeystore.t != null) {
+            fileName = StorageUtil.ANDROID_KEYSTORE_FILENAME;
+            out.putNextEntry(new ZipEntry(fileName));
+            out.write(androidKeystore.t, 0, androidKeystore.t.length);
+            out.closeEntry();
+          }
+          out.finish();
+        } catch (RuntimeException e) {
+          CrashReport.createAndLogError(LOG, null,
+              collectProjectErrorInfo(userId, projectId, fileName), e);
+          throw new IOException("Reflecting exception for userid " + userId +
+              " projectId " + projectId + ", original exception " + e.getMessage());
+        }
+      }
+    };
+  }
+
+  /**
+   *  Prepares the export of the source files of many projects as a zip of
+   *  project zips, written straight to a stream.
+   *
+   *  The projects and their files are looked up in batches, with the queries
+   *  for each batch running at the same time, and blobs are read by several
+   *  threads ahead of the writer. Each project zip is written straight into
+   *  the outer zip; only the blobs of the project being written (and those
+   *  being read ahead) are held in memory.
+   * @param userId a user Id (the request is made on behalf of this user)
+   * @param projectIds  the projects to export, in the order they are written
+   * @param zipName  the name of the zip file
+   * @return  a writer for the zip of zips, which also includes the Android
+   *          keystore. Its file count and metadata cover the projects that
+   *          were found until it has written them, and then only those that
+   *          could be read.
+   * @throws IllegalArgumentException if none of the projects has source files
+   */
+  public ProjectSourceZipWriter openAllProjectsSourceZip(final String userId,
+                                                         List<Long> projectIds,
+                                                         final String zipName)
+      throws IOException {
+    final List<ExportedProject> projects;
+    try {
+      projects = lookupExportedProjects(userId, projectIds);
+    } catch (RuntimeException e) {
+      CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
+      throw new IOException("Reflecting exception for userid " + userId +
+          ", original exception " + e.getMessage());
+    }
+    if (projects.isEmpty()) {
+      throw new IllegalArgumentException("No files to download");
+    }
+    final byte[] androidKeystore = getAndroidKeystore(userId);
+
+    StringBuilder metadata = new StringBuilder();
+    for (ExportedProject project : projects) {
+      metadata.append(project.name).append('\n');
+    }
+    final String foundMetadata = metadata.toString();
+
+    return new ProjectSourceZipWriter() {
+      // The projects in the zip; all those found, until writeTo skips those
+      // that can't be read.
+      private int projectCount = projects.size();
+      private String allMetadata = foundMetadata;
+
+      @Override
+      public String getFileName() {
+        return zipName;
+      }
+
+      @Override
+      public int getFileCount() {
+        return projectCount + (androidKeystore != null ? 1 : 0);
+      }
+
+      @Override
+      public String getMetadata() {
+        return allMetadata;
+      }
+
+      @Override
+      public void writeTo(OutputStream stream) throws IOException {
+        List<String> blobstorePaths = new ArrayList<String>();
+        for (ExportedProject project : projects) {
+          for (FileData fd : project.files) {
+            if (fd.isBlob) {
+              blobstorePaths.add(fd.blobstorePath);
+            }
+          }
+        }
+        BlobPrefetcher prefetcher = new BlobPrefetcher(blobstorePaths,
+            blobReadConcurrency.get());
+        ZipOutputStream out = new ZipOutputStream(stream);
+        Set<String> names = new HashSet<String>();
+        long start = System.currentTimeMillis();
+        int written = 0;
+        StringBuilder writtenMetadata = new StringBuilder();
+        try {
+          for (ExportedProject project : projects) {
+            // Read all of the project's blobs before starting its entry, so
+            // that a project whose blobs can't be read is skipped, as before,
+            // rather than leaving a broken entry.
+            List<byte[]> blobs = new ArrayList<byte[]>();
+            BlobReadException failure = null;
+            for (FileData fd : project.files) {
+              if (fd.isBlob) {
+                try {
+                  blobs.add(prefetcher.next());
+                } catch (BlobReadException e) {
+                  failure = e;
+                }
+              }
+            }
+            if (failure != null) {
+              CrashReport.createAndLogError(LOG, null,
+                  collectProjectErrorInfo(userId, project.projectId, null), failure);
+              continue;
+            }
+
+            // If necessary, rename duplicate projects
+            String name = project.name + ".aia";
+            while (!names.add(name)) {
+              name = "duplicate-" + name;
+            }
+            out.putNextEntry(new ZipEntry(name));
+            ZipOutputStream projectOut = new ZipOutputStream(out);
+            Iterator<byte[]> blobIterator = blobs.iterator();
+            for (FileData fd : project.files) {
+              byte[] data = fd.isBlob ? blobIterator.next() : fd.content;
+              projectOut.putNextEntry(new ZipEntry(fd.fileName));
+              projectOut.write(data, 0, data.length);
+              projectOut.closeEntry();
+            }
+            projectOut.finish();
+            out.closeEntry();
+
+            written++;
+            writtenMetadata.append(project.name).append('\n');
+            if (written % EXPORT_PROGRESS_INTERVAL == 0) {
+              LOG.info("Exported " + written + " of " + projects.size() + " projects for userid "
+                  + userId + " in " + (System.currentTimeMillis() - start) + " ms");
+            }
+          }
+          if (written == 0) {
+            throw new IOException("No project of userid " + userId + " could be read");
+          }
+          projectCount = written;
+          allMetadata = writtenMetadata.toString();
+          if (androidKeystore != null) {
+            out.putNextEntry(new ZipEntry(StorageUtil.ANDROID_KEYSTORE_FILENAME));
+            out.write(androidKeystore, 0, androidKeystore.length);
+            out.closeEntry();
+          }
+          out.finish();
+        } catch (RuntimeException e) {
+          CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
+          throw new IOException("Reflecting exception for userid " + userId +
+              ", original exception " + e.getMessage());
+        } finally {
+          prefetcher.shutdown();
+        }
+        LOG.info("Exported " + written + " projects for userid " + userId + " in "
+            + (System.currentTimeMillis() - start) + " ms");
+      }
+    };
+  }
+
+  /*
+   * Looks up the projects' names and source files for an export, skipping
+   * projects that don't exist or have no source files.
+   */
+  private List<ExportedProject> lookupExportedProjects(String userId, List<Long> projectIds) {
+    // Read without transactions: each project is in its own entity group, and
+    // ancestor queries are consistent anyway.
+    Objectify datastore = ObjectifyService.begin();
+    List<ExportedProject> projects = new ArrayList<ExportedProject>();
+    for (List<Long> batch : Lists.partition(projectIds, EXPORT_LOOKUP_BATCH_SIZE)) {
+      List<Key<ProjectData>> projectKeys = new ArrayList<Key<ProjectData>>();
+      for (long projectId : batch) {
+        projectKeys.add(projectKey(projectId));
+      }
+      Map<Key<ProjectData>, ProjectData> projectDatas = datastore.get(projectKeys);
+      // Start all of the queries before reading any of them, so that they run
+      // at the same time.
+      List<Iterator<FileData>> queries = new ArrayList<Iterator<FileData>>();
+      for (Key<ProjectData> projectKey : projectKeys) {
+        queries.add(datastore.query(FileData.class).ancestor(projectKey).iterator());
+      }
+      for (int i = 0; i < projectKeys.size(); i++) {
+        long projectId = batch.get(i);
+        ProjectData pd = projectDatas.get(projectKeys.get(i));
+        ExportedProject project = new ExportedProject(projectId, pd == null ? null : pd.name);
+        Iterator<FileData> query = queries.get(i);
+        while (query.hasNext()) {
+          FileData fd = query.next();
+          if (fd.role.equals(FileData.RoleEnum.SOURCE) &&
+              !fd.fileName.equals(FileExporter.REMIX_INFORMATION_FILE_PATH)) {
+            project.files.add(fd);
+          }
+        }
+        if (pd == null || project.files.isEmpty()) {
+          LOG.info("No files found for userid: " + userId + " for projectid: " + projectId);
+          continue;
+        }
+        projects.add(project);
       }
     }
+    return projects;
+  }
 
-    out.close();
+  /*
+   * Returns the user's Android keystore, or null if the user doesn't have one.
+   */
+  private byte[] getAndroidKeystore(final String userId) {
+    final Result<byte[]> androidKeystore = new Result<byte[]>();
+    androidKeystore.t = null;
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+          @Override
+          public void run(Objectify datastore) {
+            Key<UserData> userKey = userKey(userId);
+            for (UserFileData ufd : datastore.query(UserFileData.class).ancestor(userKey)) {
+              if (ufd.fileName.equals(StorageUtil.ANDROID_KEYSTORE_FILENAME) &&
+                  (ufd.content.length > 0)) {
+                androidKeystore.t = ufd.content;
+              }
+            }
+          }
+        });
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
+    }
+    return androidKeystore.t;
+  }
 
-    if (zipName == null) {
-      zipName = projectName.t + ".aia";
+  // A project being exported, with its source files.
+  private static class ExportedProject {
+    final long projectId;
+    final String name;
+    final List<FileData> files = new ArrayList<FileData>();
+
+    ExportedProject(long projectId, String name) {
+      this.projectId = projectId;
+      this.name = name;
+    }
+  }
+
+  // Reads blobs ahead of the caller, on several request threads, and hands
+  // them out in order. Without request threads (for example in tests), each
+  // blob is read when it is asked for.
+  private class BlobPrefetcher {
+    private final Iterator<String> blobstorePaths;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+    private final ExecutorService executor;
+    private final int concurrency;
+
+    BlobPrefetcher(List<String> blobstorePaths, int concurrency) {
+      this.blobstorePaths = blobstorePaths.iterator();
+      this.concurrency = concurrency;
+      ThreadFactory threadFactory = null;
+      if (concurrency > 1 && !blobstorePaths.isEmpty()) {
+        try {
+          threadFactory = ThreadManager.currentRequestThreadFactory();
+        } catch (RuntimeException e) {
+          // Not in a request
+        }
+      }
+      executor = (threadFactory == null) ? null :
+          Executors.newFixedThreadPool(concurrency, threadFactory);
+    }
+
+    /**
+     * Returns the contents of the next blob, in the order the paths were given.
+     */
+    byte[] next() throws BlobReadException {
+      if (executor == null) {
+        return getBlobstoreBytes(blobstorePaths.next());
+      }
+      while (pending.size() < concurrency && blobstorePaths.hasNext()) {
+        final String blobstorePath = blobstorePaths.next();
+        pending.add(executor.submit(new Callable<byte[]>() {
+          @Override
+          public byte[] call() throws BlobReadException {
+            return getBlobstoreBytes(blobstorePath);
+          }
+        }));
+      }
+      try {
+        return pending.removeFirst().get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new BlobReadException(e, "Interrupted while reading blob");
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof BlobReadException) {
+          throw (BlobReadException) e.getCause();
+        }
+        throw new BlobReadException(e, "Error trying to read blob");
+      }
+    }
+
+    void shutdown() {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
     }
-    ProjectSourceZip projectSourceZip =
-        new ProjectSourceZip(zipName, zipFile.toByteArray(), fileCount.t);
-    projectSourceZip.setMetadata(projectName.t);
-    return projectSourceZip;
   }
 
   @Override
@@ -0,0 +1,180 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+
+package com.google.appinventor.server.storage;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A read-through cache of the metadata of projects (name, type, history and
+ * dates), in two tiers: a small cache in this instance, in front of memcache.
+ *
+ * The cache is filled by {@link ObjectifyStorageIo} after it reads a
+ * ProjectData, and must be invalidated whenever a ProjectData changes.
+ * Because the entries in other instances can't be invalidated, the entries
+ * in this instance only live for a few seconds. After an invalidation the
+ * project can't be put back into the cache for a short while, so that a
+ * read that started before the change can't put the old metadata back.
+ *
+ */
+final class ProjectMetadataCache {
+
+  /**
+   * The cached metadata of a project.
+   */
+  static final class ProjectMetadata implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final String name;
+    final String type;
+    final String history;
+    final long dateCreated;
+    final long dateModified;
+
+    ProjectMetadata(String name, String type, String history, long dateCreated,
+        long dateModified) {
+      this.name = name;
+      this.type = type;
+      this.history = history;
+      this.dateCreated = dateCreated;
+      this.dateModified = dateModified;
+    }
+  }
+
+  private static final String MEMCACHE_KEY_PREFIX = "ProjectMetadata|";
+
+  // How long entries live in this instance and in memcache.
+  private static final int LOCAL_EXPIRATION_SECONDS = 10;
+  private static final int MEMCACHE_EXPIRATION_SECONDS = 600;
+
+  // How long a project can't be put back into the cache after an invalidation.
+  private static final int HOLD_MILLIS = 2000;
+
+  private static final int MAX_LOCAL_ENTRIES = 1000;
+
+  // The tiers in this instance are shared by all ProjectMetadataCaches.
+  private static final Cache<Long, ProjectMetadata> localCache = CacheBuilder.newBuilder()
+      .maximumSize(MAX_LOCAL_ENTRIES)
+      .expireAfterWrite(LOCAL_EXPIRATION_SECONDS, TimeUnit.SECONDS)
+      .build();
+
+  // Projects that were invalidated in this instance in the last HOLD_MILLIS.
+  private static final Cache<Long, Boolean> heldProjects = CacheBuilder.newBuilder()
+      .expireAfterWrite(HOLD_MILLIS, TimeUnit.MILLISECONDS)
+      .build();
+
+  private final MemcacheService memcache;
+
+  ProjectMetadataCache(MemcacheService memcache) {
+    this.memcache = memcache;
+  }
+
+  /**
+   * Returns the cached metadata of the given project, or null if it isn't
+   * cached.
+   */
+  ProjectMetadata get(long projectId) {
+    ProjectMetadata metadata = localCache.getIfPresent(projectId);
+    if (metadata == null) {
+      metadata = (ProjectMetadata) memcache.get(memcacheKey(projectId));
+      if (metadata != null) {
+        putLocal(projectId, metadata);
+      }
+    }
+    return metadata;
+  }
+
+  /**
+   * Returns the cached metadata of the given projects. Projects that aren't
+   * cached are left out.
+   */
+  Map<Long, ProjectMetadata> getAll(Collection<Long> projectIds) {
+    Map<Long, ProjectMetadata> result = new HashMap<Long, ProjectMetadata>();
+    List<String> memcacheKeys = new ArrayList<String>();
+    for (long projectId : projectIds) {
+      ProjectMetadata metadata = localCache.getIfPresent(projectId);
+      if (metadata != null) {
+        result.put(projectId, metadata);
+      } else {
+        memcacheKeys.add(memcacheKey(projectId));
+      }
+    }
+    if (!memcacheKeys.isEmpty()) {
+      for (Map.Entry<String, Object> entry : memcache.getAll(memcacheKeys).entrySet()) {
+        long projectId = Long.parseLong(entry.getKey().substring(MEMCACHE_KEY_PREFIX.length()));
+        ProjectMetadata metadata = (ProjectMetadata) entry.getValue();
+        putLocal(projectId, metadata);
+        result.put(projectId, metadata);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Caches the metadata of the given project, as just read from the datastore.
+   */
+  void put(long projectId, ProjectMetadata metadata) {
+    putLocal(projectId, metadata);
+    // Only add, so that we never overwrite newer metadata, and memcache
+    // refuses the add while the project is held after an invalidation.
+    memcache.put(memcacheKey(projectId), metadata,
+        Expiration.byDeltaSeconds(MEMCACHE_EXPIRATION_SECONDS),
+        MemcacheService.SetPolicy.ADD_ONLY_IF_NOT_PRESENT);
+  }
+
+  /**
+   * Caches the metadata of the given projects, as just read from the datastore.
+   */
+  void putAll(Map<Long, ProjectMetadata> metadatas) {
+    Map<String, ProjectMetadata> memcacheEntries = new HashMap<String, ProjectMetadata>();
+    for (Map.Entry<Long, ProjectMetadata> entry : metadatas.entrySet()) {
+      putLocal(entry.getKey(), entry.getValue());
+      memcacheEntries.put(memcacheKey(entry.getKey()), entry.getValue());
+    }
+    if (!memcacheEntries.isEmpty()) {
+      memcache.putAll(memcacheEntries, Expiration.byDeltaSeconds(MEMCACHE_EXPIRATION_SECONDS),
+          MemcacheService.SetPolicy.ADD_ONLY_IF_NOT_PRESENT);
+    }
+  }
+
+  /**
+   * Removes the given project from the cache, because its metadata changed or
+   * it was deleted.
+   */
+  void invalidate(long projectId) {
+    heldProjects.put(projectId, Boolean.TRUE);
+    localCache.invalidate(projectId);
+    memcache.delete(memcacheKey(projectId), HOLD_MILLIS);
+  }
+
+  /**
+   * Removes all projects from the cache in this instance.
+   */
+  static void clearLocal() {
+    localCache.invalidateAll();
+    heldProjects.invalidateAll();
+  }
+
+  private void putLocal(long projectId, ProjectMetadata metadata) {
+    if (heldProjects.getIfPresent(projectId) == null) {
+      localCache.put(projectId, metadata);
+    }
+  }
+
+  private static String memcacheKey(long projectId) {
+    return MEMCACHE_KEY_PREFIX + projectId;
+  }
+}
@@ -0,0 +1,45 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+
+package com.google.appinventor.server.storage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A project source zip that is written straight to a stream instead of
+ * being built in memory.
+ *
+ * The project's files have already been looked up when a
+ * ProjectSourceZipWriter is returned, so the name and number of files are
+ * known before anything is written. The contents of the files are only read
+ * while the zip is being written. A zip of many projects leaves out those
+ * whose files cannot be read, so its file count and metadata are only final
+ * once it has been written.
+ */
+public interface ProjectSourceZipWriter {
+  /**
+   * Returns the name of the zip file.
+   */
+  String getFileName();
+
+  /**
+   * Returns the number of files in the zip file.
+   */
+  int getFileCount();
+
+  /**
+   * Returns the metadata of the zip file (the project name).
+   */
+  String getMetadata();
+
+  /**
+   * Writes the zip file to the given stream. The stream is not closed.
+   *
+   * @param out the stream to write to
+   * @throws IOException if the files cannot be read or written
+   */
+  void writeTo(OutputStream out) throws IOException;
+}
@@ -8,10 +8,13 @@ package com.google.appinventor.server.storage;
 import com.google.appinventor.shared.rpc.Motd;
 import com.google.appinventor.shared.rpc.project.Project;
 import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
+import com.google.appinventor.shared.rpc.project.UserProject;
 import com.google.appinventor.shared.rpc.user.User;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 import javax.annotation.Nullable;
@@ -174,6 +177,16 @@ public interface StorageIo {
    */
   long getProjectDateCreated(String userId, long projectId);
 
+  /**
+   * Returns the name, type and dates of several projects at once.
+   * @param userId a user Id (the request is made on behalf of this user)
+   * @param projectIds  project ids
+   *
+   * @return  the projects, in the order of {@code projectIds}; projects that
+   *          don't exist have an empty name and type and zero dates
+   */
+  List<UserProject> getUserProjects(String userId, List<Long> projectIds);
+
   // Non-project-specific file management
 
   /**
@@ -327,6 +340,30 @@ public interface StorageIo {
    */
   long uploadRawFile(long projectId, String fileId, String userId, byte[] content);
 
+  /**
+   * Uploads a file, reading its content from a stream. Files that are kept in
+   * the blobstore are written to it as they are read, without holding the
+   * whole content in memory. The stream is read to its end but not closed.
+   * @param projectId  project ID
+   * @param fileId  file ID
+   * @param userId the user who owns the file
+   * @param content  stream of the file content
+   * @return modification date for project
+   * @throws IOException if the content cannot be read
+   */
+  long uploadRawFileFromStream(long projectId, String fileId, String userId, InputStream content)
+      throws IOException;
+
+  /**
+   * Uploads several files of a project at once.
+   * @param projectId  project ID
+   * @param userId the user who owns the files
+   * @param contents  file contents, keyed by file ID
+   * @param encoding encoding of contents
+   * @return modification date for project
+   */
+  long uploadFiles(long projectId, String userId, Map<String, String> contents, String encoding);
+
   /**
    * Deletes a file.
    * @param userId a user Id (the request is made on behalf of this user)
@@ -357,6 +394,18 @@ public interface StorageIo {
    */
   byte[] downloadRawFile(String userId, long projectId, String fileId);
 
+  /**
+   * Downloads several text files of a project at once.
+   * @param userId a user Id (the request is made on behalf of this user)
+   * @param projectId  project ID
+   * @param fileIds  file IDs
+   * @param encoding  encoding of text files
+   *
+   * @return  text file contents, in the order of {@code fileIds}
+   */
+  List<String> downloadFiles(String userId, long projectId, List<String> fileIds,
+      String encoding);
+
   // MOTD management
 
   /**
@@ -381,6 +430,24 @@ public interface StorageIo {
                                           boolean includeAndroidKeystore,
                                           @Nullable String zipName) throws IOException;
 
+  /**
+   *  Prepares the export of project files as a zip archive that is written
+   *  straight to a stream, without building the archive or reading any whole
+   *  file into memory.
+   * @param userId a user Id (the request is made on behalf of this user)
+   * @param projectId  project ID
+   * @param includeProjectHistory  whether or not to include the project history
+   * @param includeAndroidKeystore  whether or not to include the Android keystore
+   * @param zipName  the name of the zip file, if a specific one is desired
+
+   * @return  a writer for the project with the content as requested by params.
+   * @throws IllegalArgumentException if the project has no source files
+   */
+  ProjectSourceZipWriter openProjectSourceZip(String userId, long projectId,
+                                              boolean includeProjectHistory,
+                                              boolean includeAndroidKeystore,
+                                              @Nullable String zipName) throws IOException;
+
   /**
    * Find a user's id given their email address. Note that this query is case
    * sensitive!
@@ -95,7 +95,7 @@ public class ServerLayout {
 
   /**
    * Relative path within {@link com.google.appinventor.server.DownloadServlet}
-   * for downloading all of a user's projects' sources.
+   * for downloading all of a user's projects' sources, optionally in parts.
    */
   public static final String DOWNLOAD_ALL_PROJECTS_SOURCE = "all-projects-source";
 
@@ -5,7 +5,7 @@
 
 package com.google.appinventor.server;
 
-import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
+import com.google.appinventor.server.storage.ProjectSourceZipWriter;
 import com.google.appinventor.shared.rpc.project.RawFile;
 import com.riq.MockHttpServletRequest;
 import com.riq.MockHttpServletResponse;
@@ -17,6 +17,7 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
 import static junit.framework.Assert.assertEquals;
@@ -42,8 +43,8 @@ public class DownloadServletTest {
   private static final String DUMMY_ZIP_FILENAME_WITH_TITLE = "MyProjectTitle123.aia";
   private static final String DOWNLOAD_URL = "http://localhost/baseUrl/download/";
 
-  private ProjectSourceZip dummyZip;
-  private ProjectSourceZip dummyZipWithTitle;
+  private ProjectSourceZipWriter dummyZip;
+  private ProjectSourceZipWriter dummyZipWithTitle;
   private RawFile dummyApk;
   private RawFile dummyFile;
 
@@ -59,12 +60,35 @@ public class DownloadServletTest {
     exporterMock = PowerMock.createNiceMock(FileExporterImpl.class);
     PowerMock.expectNew(FileExporterImpl.class).andReturn(exporterMock).anyTimes();
 
-    dummyZip = new ProjectSourceZip(DUMMY_ZIP_FILENAME, new byte[] {}, 2);
-    dummyZipWithTitle = new ProjectSourceZip(DUMMY_ZIP_FILENAME_WITH_TITLE, new byte[] {}, 2);
+    dummyZip = createDummyZipWriter(DUMMY_ZIP_FILENAME);
+    dummyZipWithTitle = createDummyZipWriter(DUMMY_ZIP_FILENAME_WITH_TITLE);
     dummyApk = new RawFile(DUMMY_APK_FILENAME, new byte[] {});
     dummyFile = new RawFile(DUMMY_FILENAME, new byte[] {});
   }
 
+  private static ProjectSourceZipWriter createDummyZipWriter(final String fileName) {
+    return new ProjectSourceZipWriter() {
+      @Override
+      public String getFileName() {
+        return fileName;
+      }
+
+      @Override
+      public int getFileCount() {
+        return 2;
+      }
+
+      @Override
+      public String getMetadata() {
+        return "";
+      }
+
+      @Override
+      public void writeTo(OutputStream out) {
+      }
+    };
+  }
+
   private void checkResponseHeader(MockHttpServletResponse response, String header) {
     List cd = (List) response.getHeader("content-disposition");
     assertEquals(header, cd.get(0));
@@ -75,7 +99,7 @@ public class DownloadServletTest {
   public void testDownloadProjectSourceZipWithoutTitle() throws Exception {
     MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
         "project-source/1234");
-    expect(exporterMock.exportProjectSourceZip(USER_ID, PROJECT_ID, true, false, null))
+    expect(exporterMock.openProjectSourceZip(USER_ID, PROJECT_ID, true, false, null))
         .andReturn(dummyZip);
     PowerMock.replayAll();
     DownloadServlet download = new DownloadServlet();
@@ -90,8 +114,8 @@ public class DownloadServletTest {
   public void testDownloadProjectSourceZipWithTitle() throws IOException {
     MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
         "project-source/1234/My Project Title 123");
-    expect(exporterMock.exportProjectSourceZip(USER_ID, PROJECT_ID, true, false,
-                                               "MyProjectTitle123.aia"))
+    expect(exporterMock.openProjectSourceZip(USER_ID, PROJECT_ID, true, false,
+                                             "MyProjectTitle123.aia"))
         .andReturn(dummyZipWithTitle);
     PowerMock.replayAll();
     DownloadServlet download = new DownloadServlet();
@@ -107,7 +131,7 @@ public class DownloadServletTest {
     IllegalArgumentException expectedException = new IllegalArgumentException();
     MockHttpServletRequest request = new MockHttpServletRequest(DOWNLOAD_URL +
         "project-source/12345");
-    expect(exporterMock.exportProjectSourceZip(USER_ID, 12345L, true, false, null))
+    expect(exporterMock.openProjectSourceZip(USER_ID, 12345L, true, false, null))
         .andThrow(expectedException);
     PowerMock.replayAll();
     DownloadServlet download = new DownloadServlet();
@@ -5,6 +5,7 @@
 
 package com.google.appinventor.server;
 
+import com.google.appinventor.server.storage.ProjectSourceZipWriter;
 import com.google.appinventor.server.storage.StorageIo;
 import com.google.appinventor.server.storage.StorageIoInstanceHolder;
 import com.google.appinventor.server.storage.UnauthorizedAccessException;
@@ -124,6 +125,32 @@ public class FileExporterImplTest extends LocalDatastoreTestCase {
         StorageUtil.DEFAULT_CHARSET));
   }
 
+  public void testOpenProjectSourceZipStreamsSameZip() throws IOException {
+    ProjectSourceZip project = exporter.exportProjectSourceZip(USER_ID, projectId,
+        true, false, null);
+    ProjectSourceZipWriter writer = exporter.openProjectSourceZip(USER_ID, projectId,
+        true, false, null);
+    assertEquals(project.getFileName(), writer.getFileName());
+    assertEquals(project.getFileCount(), writer.getFileCount());
+    assertEquals(PROJECT_NAME, writer.getMetadata());
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writer.writeTo(out);
+    // The stream is left open, so more can be written after the zip
+    out.write(0);
+    byte[] streamed = out.toByteArray();
+    assertTrue(Arrays.equals(project.getContent(),
+        Arrays.copyOf(streamed, streamed.length - 1)));
+  }
+
+  public void testOpenProjectSourceZipWithNonExistingProject() throws IOException {
+    try {
+      exporter.openProjectSourceZip(USER_ID, projectId + 1, false, false, null);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // Reported before anything is written
+    }
+  }
+
   public void testExportProjectSourceZipWithNonExistingProject() throws IOException {
     try {
       exporter.exportProjectSourceZip(USER_ID, projectId + 1, false, false, null);
@@ -166,5 +193,52 @@ public class FileExporterImplTest extends LocalDatastoreTestCase {
     }
   }
 
-  // TODO(user): Add test of exportAllProjectsSourceZip().
+  public void testExportAllProjectsSourceZip() throws IOException {
+    Project project2 = new Project(PROJECT_NAME);
+    project2.setProjectType(FAKE_PROJECT_TYPE);
+    project2.addTextFile(new TextFile(FORM1_QUALIFIED_NAME, FORM1_CONTENT));
+    storageIo.createProject(USER_ID, project2, SETTINGS);
+
+    ProjectSourceZip zip = exporter.exportAllProjectsSourceZip(USER_ID, "all-projects.zip");
+    assertEquals("all-projects.zip", zip.getFileName());
+    assertEquals(2, zip.getFileCount());
+    assertEquals(PROJECT_NAME + "\n" + PROJECT_NAME + "\n", zip.getMetadata());
+
+    ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(zip.getContent()));
+    Map<String, byte[]> content = new HashMap<String, byte[]>();
+    ZipEntry zipEntry;
+    while ((zipEntry = zis.getNextEntry()) != null) {
+      content.put(zipEntry.getName(), ByteStreams.toByteArray(zis));
+    }
+    assertEquals(2, content.size());
+    assertTrue(content.containsKey(PROJECT_NAME + ".aia"));
+    // Projects with the same name are renamed
+    assertTrue(content.containsKey("duplicate-" + PROJECT_NAME + ".aia"));
+
+    // The project zips are written into the outer zip
+    Map<String, byte[]> projectContent = new HashMap<String, byte[]>();
+    for (byte[] projectZip : content.values()) {
+      ZipInputStream projectZis = new ZipInputStream(new ByteArrayInputStream(projectZip));
+      while ((zipEntry = projectZis.getNextEntry()) != null) {
+        projectContent.put(zipEntry.getName(), ByteStreams.toByteArray(projectZis));
+      }
+    }
+    assertEquals(FORM1_CONTENT, new String(projectContent.get(FORM1_QUALIFIED_NAME),
+        StorageUtil.DEFAULT_CHARSET));
+    assertTrue(Arrays.equals(IMAGE_CONTENT, projectContent.get(IMAGE1_NAME)));
+  }
+
+  public void testOpenAllProjectsSourceZipPart() throws IOException {
+    assertEquals(1, exporter.getAllProjectsSourceZipPartCount(USER_ID));
+    ProjectSourceZipWriter writer =
+        exporter.openAllProjectsSourceZipPart(USER_ID, 1, "all-projects-part1-of-1.zip");
+    assertEquals("all-projects-part1-of-1.zip", writer.getFileName());
+    assertEquals(1, writer.getFileCount());
+    try {
+      exporter.openAllProjectsSourceZipPart(USER_ID, 2, "all-projects-part2-of-1.zip");
+      fail();
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
 }
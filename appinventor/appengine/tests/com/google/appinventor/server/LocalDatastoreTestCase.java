@@ -6,6 +6,7 @@
 package com.google.appinventor.server;
 
 import com.google.appinventor.common.testutils.TestUtils;
+import com.google.appinventor.server.storage.ObjectifyStorageIo;
 
 import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
 import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
@@ -35,6 +36,8 @@ public abstract class LocalDatastoreTestCase extends TestCase {
   public void tearDown() throws Exception {
     super.tearDown();
     helper.tearDown();
+    // The next test's datastore reuses project ids.
+    ObjectifyStorageIo.clearLocalProjectMetadataCache();
   }
 
   /**
@@ -22,17 +22,21 @@ import com.google.appinventor.server.storage.StoredData.ProjectData;
 import com.google.appinventor.shared.rpc.project.Project;
 import com.google.appinventor.shared.rpc.project.RawFile;
 import com.google.appinventor.shared.rpc.project.TextFile;
+import com.google.appinventor.shared.rpc.project.UserProject;
 import com.google.appinventor.shared.rpc.project.youngandroid.YoungAndroidProjectNode;
 import com.google.appinventor.shared.rpc.user.User;
 import com.google.appinventor.shared.storage.StorageUtil;
 
+import java.io.ByteArrayInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.ConcurrentModificationException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Tests for {@link ObjectifyStorageIo}.
@@ -353,6 +357,73 @@ public class ObjectifyStorageIoTest extends LocalDatastoreTestCase {
     oldModificationDate = modificationDate;
   }
 
+  public void testGetUserProjects() {
+    final String USER_ID = "1150";
+    storage.getUser(USER_ID);
+    long projectId1 = createProject(USER_ID, PROJECT_NAME, FAKE_PROJECT_TYPE, FORM_QUALIFIED_NAME);
+    long projectId2 = createProject(USER_ID, "Project2", FAKE_PROJECT_TYPE, FORM_QUALIFIED_NAME);
+    // Cache the first project
+    assertEquals(PROJECT_NAME, storage.getProjectName(USER_ID, projectId1));
+
+    List<UserProject> userProjects =
+        storage.getUserProjects(USER_ID, Arrays.asList(projectId2, projectId1, projectId2 + 1));
+    assertEquals(3, userProjects.size());
+    assertEquals(projectId2, userProjects.get(0).getProjectId());
+    assertEquals("Project2", userProjects.get(0).getProjectName());
+    assertEquals(FAKE_PROJECT_TYPE, userProjects.get(0).getProjectType());
+    assertEquals(projectId1, userProjects.get(1).getProjectId());
+    assertEquals(PROJECT_NAME, userProjects.get(1).getProjectName());
+    assertEquals(storage.getProjectDateModified(USER_ID, projectId1),
+        userProjects.get(1).getDateModified());
+    // Projects that don't exist
+    assertEquals("", userProjects.get(2).getProjectName());
+    assertEquals(0, userProjects.get(2).getDateCreated());
+
+    // The cached metadata is invalidated when the project changes
+    long modificationDate = storage.uploadFile(projectId1, FORM_QUALIFIED_NAME, USER_ID,
+        FILE_CONTENT1, StorageUtil.DEFAULT_CHARSET);
+    userProjects = storage.getUserProjects(USER_ID, Arrays.asList(projectId1));
+    assertEquals(modificationDate, userProjects.get(0).getDateModified());
+
+    storage.deleteProject(USER_ID, projectId1);
+    assertEquals("", storage.getProjectName(USER_ID, projectId1));
+  }
+
+  public void testUploadDownloadFiles() {
+    final String USER_ID = "1175";
+    storage.getUser(USER_ID);
+    long projectId = createProject(USER_ID, PROJECT_NAME, FAKE_PROJECT_TYPE, FORM_QUALIFIED_NAME);
+    storage.addSourceFilesToProject(USER_ID, projectId, false, FILE_NAME1, FILE_NAME2);
+    long oldModificationDate = storage.getProjectDateModified(USER_ID, projectId);
+
+    Map<String, String> contents = new LinkedHashMap<String, String>();
+    contents.put(FILE_NAME1, FILE_CONTENT1);
+    // note: FILE_NAME2 is stored in blobstore
+    contents.put(FILE_NAME2, FILE_CONTENT2);
+    long modificationDate = storage.uploadFiles(projectId, USER_ID, contents,
+        StorageUtil.DEFAULT_CHARSET);
+    assertTrue(oldModificationDate < modificationDate);
+    assertEquals(modificationDate, storage.getProjectDateModified(USER_ID, projectId));
+
+    List<String> downloaded = storage.downloadFiles(USER_ID, projectId,
+        Arrays.asList(FILE_NAME2, FORM_QUALIFIED_NAME, FILE_NAME1), StorageUtil.DEFAULT_CHARSET);
+    assertEquals(Arrays.asList(FILE_CONTENT2, "", FILE_CONTENT1), downloaded);
+
+    // Uploading again replaces the blob
+    contents.put(FILE_NAME2, FILE_CONTENT1);
+    storage.uploadFiles(projectId, USER_ID, contents, StorageUtil.DEFAULT_CHARSET);
+    assertEquals(FILE_CONTENT1,
+        storage.downloadFile(USER_ID, projectId, FILE_NAME2, StorageUtil.DEFAULT_CHARSET));
+
+    try {
+      storage.downloadFiles(USER_ID, projectId, Arrays.asList(FILE_NAME1, "missing"),
+          StorageUtil.DEFAULT_CHARSET);
+      fail();
+    } catch (RuntimeException e) {
+      // expected
+    }
+  }
+
   public void testAddRemoveFile() {
     final String USER_ID = "1200";
     storage.getUser(USER_ID);
@@ -488,6 +559,35 @@ public class ObjectifyStorageIoTest extends LocalDatastoreTestCase {
     // TODO(sharon): should test large blob files (e.g., >2MB (chunk size), >4MB (row size));
   }
 
+  public void testUploadRawFileFromStream() throws IOException {
+    final String USER_ID = "1310";
+    final String BUILD_OUTPUT_FILE_NAME = "build/Android/build.out";
+    final byte[] BUILD_OUTPUT_CONTENT = "{\"result\":0}".getBytes();
+    storage.getUser(USER_ID);
+    long projectId = createProject(
+        USER_ID, PROJECT_NAME, YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE,
+        FORM_QUALIFIED_NAME);
+    storage.addOutputFilesToProject(USER_ID, projectId, APK_FILE_NAME1, BUILD_OUTPUT_FILE_NAME);
+    storage.uploadRawFileFromStream(projectId, APK_FILE_NAME1, USER_ID,
+        new ByteArrayInputStream(APK_FILE_CONTENT));
+    storage.uploadRawFileFromStream(projectId, BUILD_OUTPUT_FILE_NAME, USER_ID,
+        new ByteArrayInputStream(BUILD_OUTPUT_CONTENT));
+
+    assertTrue(storage.isBlobFile(projectId, APK_FILE_NAME1));
+    assertFalse(storage.isBlobFile(projectId, BUILD_OUTPUT_FILE_NAME));
+    assertTrue(Arrays.equals(APK_FILE_CONTENT,
+        storage.downloadRawFile(USER_ID, projectId, APK_FILE_NAME1)));
+    assertTrue(Arrays.equals(BUILD_OUTPUT_CONTENT,
+        storage.downloadRawFile(USER_ID, projectId, BUILD_OUTPUT_FILE_NAME)));
+
+    // Uploading again replaces the blob.
+    byte[] newApkContent = "new apk content".getBytes();
+    storage.uploadRawFileFromStream(projectId, APK_FILE_NAME1, USER_ID,
+        new ByteArrayInputStream(newApkContent));
+    assertTrue(Arrays.equals(newApkContent,
+        storage.downloadRawFile(USER_ID, projectId, APK_FILE_NAME1)));
+  }
+
   public void testOldBlockFilesInDatastoreStillWork() {
     // Create new storage object that forces storage in the datastore
     ObjectifyStorageIo oldStyleStorage = new ObjectifyStorageIo() {
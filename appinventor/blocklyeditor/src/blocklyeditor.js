@@ -172,7 +172,13 @@ Blockly.Block.prototype.customContextMenu = function(options) {
     var yailText;
     //Blockly.Yail.blockToCode1 returns a string if the block is a statement
     //and an array if the block is a value
-    var yailTextOrArray = Blockly.Yail.blockToCode1(myBlock);
+    var yailTextOrArray;
+    Blockly.Yail.forRepl = true;
+    try {
+      yailTextOrArray = Blockly.Yail.blockToCode1(myBlock);
+    } finally {
+      Blockly.Yail.forRepl = false;
+    }
     var dialog;
     if (window.parent.ReplState.state != Blockly.ReplMgr.rsState.CONNECTED) {
       dialog = new goog.ui.Dialog(null, true);
@@ -32,6 +32,7 @@ Blockly.Yail.YAIL_ADD_TO_LIST = "(add-to-list ";
 Blockly.Yail.YAIL_BEGIN = "(begin ";
 Blockly.Yail.YAIL_CALL_COMPONENT_METHOD = "(call-component-method ";
 Blockly.Yail.YAIL_CALL_COMPONENT_TYPE_METHOD = "(call-component-type-method ";
+Blockly.Yail.YAIL_CALL_COMPONENT_METHOD_WITH_TYPE = "(call-component-method-with-type ";
 Blockly.Yail.YAIL_CALL_YAIL_PRIMITIVE = "(call-yail-primitive ";
 Blockly.Yail.YAIL_CLEAR_FORM = "(clear-current-form)";
 Blockly.Yail.YAIL_CLOSE_COMBINATION = ")";
@@ -83,6 +84,12 @@ Blockly.Yail.YAIL_HEX_PREFIX = "#x";
 Blockly.Yail.INTEGER_REGEXP = "^[\\s]*[-+]?[0-9]+[\\s]*$";
 Blockly.Yail.FLONUM_REGEXP = "^[\\s]*[-+]?([0-9]*)((\\.[0-9]+)|[0-9]\\.)[\\s]*$";
 
+/**
+ * True while code is generated for the REPL. That code runs on the installed Companion,
+ * whose runtime may be older than the one apks are built with.
+ */
+Blockly.Yail.forRepl = false;
+
 
 /**
  * Generate the Yail code for this blocks workspace, given its associated form specification.
@@ -94,6 +101,7 @@ Blockly.Yail.FLONUM_REGEXP = "^[\\s]*[-+]?([0-9]*)((\\.[0-9]+)|[0-9]\\.)[\\s]*$"
  * @returns {String} the generated code if there were no errors.
  */
 Blockly.Yail.getFormYail = function(formJson, packageName, forRepl) {
+  Blockly.Yail.forRepl = forRepl;
   var jsonObject = JSON.parse(formJson); 
   // TODO: check for JSON parse error
   var componentNames = [];
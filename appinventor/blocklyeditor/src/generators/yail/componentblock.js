@@ -157,9 +157,19 @@ Blockly.Yail.methodHelper = function(methodBlock, name, methodName, generic) {
         // TODO(hal, andrew): check for empty socket and generate error if necessary
         + Blockly.Yail.valueToCode(methodBlock, 'COMPONENT', Blockly.Yail.ORDER_NONE)
         + Blockly.Yail.YAIL_SPACER;
+  } else if (Blockly.Yail.forRepl) {
+    // The installed Companion may not know call-component-method-with-type.
+    callPrefix = Blockly.Yail.YAIL_CALL_COMPONENT_METHOD;
+    name = methodBlock.getTitleValue("COMPONENT_SELECTOR");
   } else {
-    callPrefix = Blockly.Yail.YAIL_CALL_COMPONENT_METHOD; 
     name = methodBlock.getTitleValue("COMPONENT_SELECTOR");
+    // The type of the component is known, so the runtime can call the method directly.
+    // As for a generic block, the type of the component follows the prefix.
+    callPrefix = Blockly.Yail.YAIL_CALL_COMPONENT_METHOD_WITH_TYPE
+        + Blockly.Yail.YAIL_QUOTE
+        + name
+        + Blockly.Yail.YAIL_SPACER;
+    name = methodBlock.typeName;
   }
 
   var args = [];
@@ -126,7 +126,13 @@ Blockly.ReplMgr.buildYail = function() {
             block.type != "procedures_defnoreturn" &&
             block.type != "procedures_defreturn")
             continue;
-        var tempyail = Blockly.Yail.blockToCode(block);
+        var tempyail;
+        Blockly.Yail.forRepl = true;
+        try {
+            tempyail = Blockly.Yail.blockToCode(block);
+        } finally {
+            Blockly.Yail.forRepl = false;
+        }
         if (phoneState.blockYail[block.id] != tempyail) { // Only send changed yail
             this.putYail(tempyail, block, success, failure);
             phoneState.blockYail[block.id] = tempyail;
@@ -197,6 +203,9 @@ Blockly.ReplMgr.putYail = (function() {
     var context;
     var conn;                   // XMLHttpRequest Object sending to Phone
     var rxhr;                   // XMLHttpRequest Object listening for returns
+    var events;                 // EventSource Object receiving pushed returns
+    var canstream = true;       // False if the Companion has no event stream
+    var lastEventId = null;     // Id of the last event received from the Companion
     var phonereceiving = false;
     var engine = {
         // Enqueue form for the phone
@@ -318,6 +327,10 @@ Blockly.ReplMgr.putYail = (function() {
         },
         "receivefromphone" : function() {
             phonereceiving = true;
+            if (window.EventSource && canstream) {
+                engine.streamfromphone();
+                return;
+            }
             console.log("receivefromphone called.");
             rxhr = goog.net.XmlHttp();
             rxhr.open('POST', rs.rurl, true); // We post to avoid caching issues
@@ -334,10 +347,47 @@ Blockly.ReplMgr.putYail = (function() {
             };
             rxhr.send("IGNORED=STUFF");
         },
+        // Have the Companion push return values as they are produced. The
+        // browser reconnects by itself if the connection drops, and the
+        // Companion then resends the values we missed. Companions without
+        // an event stream are polled instead.
+        "streamfromphone" : function() {
+            console.log("streamfromphone called.");
+            var url = rs.baseurl + '_events';
+            if (lastEventId !== null) {
+                url += '?lastEventId=' + lastEventId;
+            }
+            var opened = false;
+            events = new EventSource(url);
+            events.onopen = function() {
+                opened = true;
+            };
+            events.onmessage = function(e) {
+                lastEventId = e.lastEventId;
+                var json = goog.json.parse(e.data);
+                if (json.status == 'OK') {
+                    context.processRetvals(json.values);
+                }
+            };
+            events.onerror = function() {
+                if (!opened) {
+                    console.log("streamfromphone: no event stream, polling instead.");
+                    events.close();
+                    events = null;
+                    canstream = false;
+                    engine.receivefromphone();
+                }
+            };
+        },
         "reset" : function() {
             if (rxhr)
                 rxhr.abort();
             rxhr = null;
+            if (events)
+                events.close();
+            events = null;
+            canstream = true;
+            lastEventId = null;
 //            if (conn)  // This seems to cause disconnects on project switch
 //                conn.abort();
 //            conn = null;
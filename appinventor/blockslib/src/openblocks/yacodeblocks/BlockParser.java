@@ -540,8 +540,19 @@ public class BlockParser {
           .append(YAIL_QUOTE)  // the expected type of the component
           .append(parts[0]);
     } else {
-      code.append(YAIL_CALL_COMPONENT_METHOD)
-          .append(YAIL_QUOTE).append(parts[0]); // the name of the component
+      // The REPL keeps the reflective call, since the installed Companion may not know
+      // call-component-method-with-type.
+      String componentType = forRepl ? "" : getComponentType(parts[0]);
+      if (componentType.length() > 0) {
+        // The type of the component is known, so the runtime can call the method directly.
+        code.append(YAIL_CALL_COMPONENT_METHOD_WITH_TYPE)
+            .append(YAIL_QUOTE).append(parts[0]) // the name of the component
+            .append(YAIL_SPACER)
+            .append(YAIL_QUOTE).append(componentType); // the type of the component
+      } else {
+        code.append(YAIL_CALL_COMPONENT_METHOD)
+            .append(YAIL_QUOTE).append(parts[0]); // the name of the component
+      }
     }
     code.append(YAIL_SPACER).append(YAIL_QUOTE).append(parts[1]) // the method
         .append(YAIL_SPACER).append(YAIL_OPEN_COMBINATION).append(YAIL_LIST_CONSTRUCTOR)
@@ -1266,6 +1277,15 @@ public class BlockParser {
     return code;
   }
 
+  /**
+   * Returns the type of the named component, for example "Button", or the
+   * empty string if there is no component with that name.
+   */
+  private String getComponentType(String componentName) {
+    return WorkspaceControllerHolder.get().getComponentBlockManager().getGenusFromComponentName(
+        componentName);
+  }
+
   private String getPropertyType(String componentName, String property) {
     String componentGenus =
         WorkspaceControllerHolder.get().getComponentBlockManager().getGenusFromComponentName(
@@ -1389,6 +1409,8 @@ public class BlockParser {
   private static final String YAIL_BEGIN = "(begin ";
   private static final String YAIL_CALL_COMPONENT_METHOD = "(call-component-method ";
   private static final String YAIL_CALL_COMPONENT_TYPE_METHOD = "(call-component-type-method ";
+  private static final String YAIL_CALL_COMPONENT_METHOD_WITH_TYPE =
+      "(call-component-method-with-type ";
   private static final String YAIL_CALL_YAIL_PRIMITIVE = "(call-yail-primitive ";
   private static final String YAIL_CLOSE_COMBINATION = ")\n";
   private static final String YAIL_CLOSE = ")";
@@ -1428,7 +1450,8 @@ public class BlockParser {
   // These operations cannot be used in variable definitions because they reference
   // components and definitions are currently run before the components are created.
   private static final String [] forbiddenInVariableDef = {
-    YAIL_CALL_COMPONENT_METHOD, YAIL_CALL_COMPONENT_TYPE_METHOD, YAIL_GET_COMPONENT,
+    YAIL_CALL_COMPONENT_METHOD, YAIL_CALL_COMPONENT_TYPE_METHOD,
+    YAIL_CALL_COMPONENT_METHOD_WITH_TYPE, YAIL_GET_COMPONENT,
     YAIL_GET_PROPERTY, YAIL_SET_AND_COERCE_PROPERTY, YAIL_GET_COMPONENT_TYPE_PROPERTY,
     YAIL_SET_AND_COERCE_COMPONENT_TYPE_PROPERTY,
     YAIL_GET_VARIABLE
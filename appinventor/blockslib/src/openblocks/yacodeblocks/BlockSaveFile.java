@@ -444,6 +444,9 @@ public class BlockSaveFile {
       } else if (genus.equals("LocationSensor")) {
         blkCompVersion = upgradeLocationSensorBlocks(blkCompVersion, componentName);
 
+      } else if (genus.equals("NxtDirectCommands")) {
+        blkCompVersion = upgradeNxtDirectCommandsBlocks(blkCompVersion, componentName);
+
       } else if (genus.equals("OrientationSensor")) {
         blkCompVersion = upgradeOrientationSensorBlocks(blkCompVersion, componentName);
 
@@ -468,6 +471,9 @@ public class BlockSaveFile {
       }  else if (genus.equals("Notifier")) {
         blkCompVersion = upgradeNotifierBlocks(blkCompVersion, componentName);
 
+      } else if (genus.equals("TinyDB")) {
+        blkCompVersion = upgradeTinyDBBlocks(blkCompVersion, componentName);
+
       } else if (genus.equals("TinyWebDB")) {
         blkCompVersion = upgradeTinyWebDBBlocks(blkCompVersion, componentName);
 
@@ -625,6 +631,12 @@ public class BlockSaveFile {
       // No blocks need to be modified to upgrade to version 5.
       blkCompVersion = 5;
     }
+    if (blkCompVersion < 6) {
+      // The BluetoothClient.ReceiveInBackground, DataReceivedThreshold and DataReceivedInterval
+      // properties and the BluetoothClient.DataReceived event were added.
+      // No blocks need to be modified to upgrade to version 6.
+      blkCompVersion = 6;
+    }
     return blkCompVersion;
   }
 
@@ -655,6 +667,12 @@ public class BlockSaveFile {
       // No blocks need to be modified to upgrade to version 5.
       blkCompVersion = 5;
     }
+    if (blkCompVersion < 6) {
+      // The BluetoothServer.ReceiveInBackground, DataReceivedThreshold and DataReceivedInterval
+      // properties and the BluetoothServer.DataReceived event were added.
+      // No blocks need to be modified to upgrade to version 6.
+      blkCompVersion = 6;
+    }
     return blkCompVersion;
   }
 
@@ -970,6 +988,16 @@ public class BlockSaveFile {
     return blkCompVersion;
   }
 
+  private int upgradeNxtDirectCommandsBlocks(int blkCompVersion, String componentName) {
+    if (blkCompVersion < 2) {
+      // The NxtDirectCommands.CommandsSent, RepliesReceived, and AverageRoundTripTime properties
+      // were added.
+      // No blocks need to be modified to upgrade to version 2.
+      blkCompVersion = 2;
+    }
+    return blkCompVersion;
+  }
+
   private int upgradeOrientationSensorBlocks(int blkCompVersion, String componentName) {
     if (blkCompVersion < 2) {
       // The Yaw property was renamed to Azimuth.
@@ -1129,6 +1157,15 @@ public class BlockSaveFile {
     return blkCompVersion;
   }
 
+  private int upgradeTinyDBBlocks(int blkCompVersion, String componentName) {
+    if (blkCompVersion < 2) {
+      // The Namespace property and the StoreValues method were added.
+      // No blocks need to be modified to upgrade to version 2.
+      blkCompVersion = 2;
+    }
+    return blkCompVersion;
+  }
+
   private int upgradeTinyWebDBBlocks(int blkCompVersion, String componentName) {
     if (blkCompVersion < 2) {
       // Look for TinyWebDB-ShowAlert method blocks for this component.
@@ -1296,6 +1333,11 @@ public class BlockSaveFile {
       // Blocks related to this component have now been upgraded to version 3.
       blkCompVersion = 3;
     }
+    if (blkCompVersion < 4) {
+      // The CacheMode, CacheHits and CacheMisses properties were added.
+      // No blocks need to be modified to upgrade to version 4.
+      blkCompVersion = 4;
+    }
     return blkCompVersion;
   }
 
@@ -0,0 +1,274 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+package com.google.appinventor.buildserver;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * An on-disk cache of the outputs of the build stages (YAIL, class files, classes.dex, the AAPT
+ * package and the signed APK), so that building a project again without changes doesn't redo
+ * the work.
+ *
+ * <p>Each entry is keyed by a SHA-1 hash of everything that goes into the stage that produced it:
+ * the project files the stage reads, the keys of the stages it depends on, and the tools and
+ * runtime files it uses. A stage only runs again if one of its inputs changed. When the total size
+ * of the entries exceeds the limit, the least recently used entries are evicted.</p>
+ */
+final class BuildCache {
+
+  /**
+   * Builds the cache key for one stage from the stage's inputs.
+   */
+  final class KeyBuilder {
+    private final String stage;
+    private final Hasher hasher = Hashing.sha1().newHasher();
+
+    private KeyBuilder(String stage) {
+      this.stage = stage;
+    }
+
+    KeyBuilder putString(String value) {
+      hasher.putInt(value.length());
+      hasher.putString(value, Charsets.UTF_8);
+      return this;
+    }
+
+    /**
+     * Adds the contents of a file, or a marker if it doesn't exist.
+     */
+    KeyBuilder putFile(File file) throws IOException {
+      return putString(file.isFile() ? Files.hash(file, Hashing.sha1()).toString() : "-");
+    }
+
+    /**
+     * Adds the contents of a runtime file or tool. Unlike project files, these stay in place for
+     * the whole server run, so their hashes are remembered.
+     */
+    KeyBuilder putResource(String path) throws IOException {
+      return putString(hashResource(new File(path)));
+    }
+
+    /**
+     * Adds the names and contents of all files below a directory.
+     */
+    KeyBuilder putDirectory(File dir) throws IOException {
+      File[] files = dir.listFiles();
+      if (files == null) {
+        return putString("-");
+      }
+      Arrays.sort(files);
+      putString("[");
+      for (File file : files) {
+        putString(file.getName());
+        if (file.isDirectory()) {
+          putDirectory(file);
+        } else {
+          putFile(file);
+        }
+      }
+      return putString("]");
+    }
+
+    String build() {
+      return stage + "-" + hasher.hash().toString();
+    }
+  }
+
+  // Logging support
+  private static final Logger LOG = Logger.getLogger(BuildCache.class.getName());
+
+  // Prefix of entries that are still being written.
+  private static final String TMP_PREFIX = "tmp-";
+
+  private final File cacheDir;
+  private final long maxSizeBytes;
+
+  // The entries and their sizes, least recently used first. Guarded by this.
+  private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(16, 0.75f,
+      true);
+  private long sizeBytes;
+
+  // Hashes of the runtime files we have already looked at, keyed by path, length and modification
+  // time. The runtime files are extracted once per server run, so this saves rehashing them per
+  // build.
+  private final ConcurrentMap<String, String> fileHashes = new ConcurrentHashMap<String, String>();
+
+  private final AtomicInteger hitCount = new AtomicInteger(0);
+  private final AtomicInteger missCount = new AtomicInteger(0);
+  private final AtomicInteger evictionCount = new AtomicInteger(0);
+
+  /**
+   * Creates a BuildCache that stores its entries in the given directory. Entries left there by an
+   * earlier server run are kept.
+   *
+   * @param cacheDir the cache directory; it is created if it doesn't exist
+   * @param maxSizeBytes the maximum total size of the entries
+   */
+  BuildCache(File cacheDir, long maxSizeBytes) {
+    Preconditions.checkArgument(maxSizeBytes > 0);
+    this.cacheDir = cacheDir;
+    this.maxSizeBytes = maxSizeBytes;
+    if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+      throw new IllegalStateException("Unable to create build cache directory " + cacheDir);
+    }
+    File[] files = cacheDir.listFiles();
+    // Oldest first, so that the least recently used entries are evicted first.
+    Arrays.sort(files, new Comparator<File>() {
+      @Override
+      public int compare(File file1, File file2) {
+        long modified1 = file1.lastModified();
+        long modified2 = file2.lastModified();
+        return (modified1 < modified2) ? -1 : ((modified1 == modified2) ? 0 : 1);
+      }
+    });
+    for (File file : files) {
+      if (file.getName().startsWith(TMP_PREFIX)) {
+        // Left over from a server that was killed while storing an entry.
+        FileUtils.deleteQuietly(file);
+      } else {
+        long size = FileUtils.sizeOf(file);
+        entries.put(file.getName(), size);
+        sizeBytes += size;
+      }
+    }
+    evict();
+  }
+
+  /**
+   * Starts building the cache key for the given stage.
+   */
+  KeyBuilder newKey(String stage) {
+    return new KeyBuilder(stage);
+  }
+
+  /**
+   * Copies the cached output for the given key to the given target.
+   *
+   * @param key the cache key
+   * @param target the file to write, or the directory to fill if the output is a directory
+   * @return {@code true} on a cache hit, {@code false} if there is no entry for the key
+   */
+  boolean restore(String key, File target) throws IOException {
+    // Hold the lock while copying so that the entry can't be evicted under us.
+    synchronized (this) {
+      File entry = new File(cacheDir, key);
+      if (entries.get(key) == null || !entry.exists()) {
+        missCount.incrementAndGet();
+        return false;
+      }
+      if (entry.isDirectory()) {
+        FileUtils.copyDirectory(entry, target);
+      } else {
+        Files.copy(entry, target);
+      }
+      // Record the use on disk too, so that the order survives a restart.
+      entry.setLastModified(System.currentTimeMillis());
+    }
+    hitCount.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Stores a copy of the given file or directory as the output for the given key.
+   */
+  void store(String key, File source) throws IOException {
+    File tmp = new File(cacheDir, TMP_PREFIX + key + "-" + Thread.currentThread().getId());
+    try {
+      if (source.isDirectory()) {
+        FileUtils.copyDirectory(source, tmp);
+      } else {
+        Files.copy(source, tmp);
+      }
+      long size = FileUtils.sizeOf(tmp);
+      synchronized (this) {
+        if (entries.get(key) != null) {
+          // Another build stored the same output in the meantime.
+          return;
+        }
+        File entry = new File(cacheDir, key);
+        FileUtils.deleteQuietly(entry);
+        if (!tmp.renameTo(entry)) {
+          throw new IOException("Unable to rename " + tmp + " to " + entry);
+        }
+        entries.put(key, size);
+        sizeBytes += size;
+        evict();
+      }
+    } finally {
+      FileUtils.deleteQuietly(tmp);
+    }
+  }
+
+  File getCacheDirectory() {
+    return cacheDir;
+  }
+
+  long getMaxSizeBytes() {
+    return maxSizeBytes;
+  }
+
+  synchronized long getSizeBytes() {
+    return sizeBytes;
+  }
+
+  synchronized int getEntryCount() {
+    return entries.size();
+  }
+
+  int getHitCount() {
+    return hitCount.get();
+  }
+
+  int getMissCount() {
+    return missCount.get();
+  }
+
+  int getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  /*
+   * Removes the least recently used entries until the cache fits. The caller must hold the lock.
+   */
+  private void evict() {
+    Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+    while (sizeBytes > maxSizeBytes && it.hasNext()) {
+      Map.Entry<String, Long> entry = it.next();
+      FileUtils.deleteQuietly(new File(cacheDir, entry.getKey()));
+      sizeBytes -= entry.getValue();
+      it.remove();
+      evictionCount.incrementAndGet();
+      LOG.info("Evicted build cache entry " + entry.getKey());
+    }
+  }
+
+  private String hashResource(File file) throws IOException {
+    String fileKey = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+    String hash = fileHashes.get(fileKey);
+    if (hash == null) {
+      hash = Files.hash(file, Hashing.sha1()).toString();
+      fileHashes.put(fileKey, hash);
+    }
+    return hash;
+  }
+}
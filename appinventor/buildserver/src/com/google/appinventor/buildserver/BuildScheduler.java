@@ -0,0 +1,356 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+package com.google.appinventor.buildserver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Schedules build tasks on a limited number of threads.
+ *
+ * <p>When all threads are busy, tasks wait in a bounded queue instead of being rejected. Users
+ * take turns, so one user with several builds can't delay everybody else, and each user may only
+ * have a limited number of tasks waiting. A task that has waited
+ * longer than the maximum wait time is dropped and its expiration callback is run instead.</p>
+ *
+ * <p>With a queue size of 0, the scheduler behaves like the old NonQueuingExecutor: tasks are
+ * rejected as soon as all threads are busy.</p>
+ */
+final class BuildScheduler {
+
+  /**
+   * A snapshot of a waiting task, for reporting.
+   */
+  static final class QueuedBuild {
+    private final int position;
+    private final String userName;
+    private final long waitedMillis;
+    private final long estimatedStartMillis;
+
+    private QueuedBuild(int position, String userName, long waitedMillis,
+        long estimatedStartMillis) {
+      this.position = position;
+      this.userName = userName;
+      this.waitedMillis = waitedMillis;
+      this.estimatedStartMillis = estimatedStartMillis;
+    }
+
+    /**
+     * Returns the position in the queue, starting at 1 for the next task to start.
+     */
+    int getPosition() {
+      return position;
+    }
+
+    String getUserName() {
+      return userName;
+    }
+
+    long getWaitedMillis() {
+      return waitedMillis;
+    }
+
+    /**
+     * Returns the estimated start time, in milliseconds since the epoch, or 0 if there is not
+     * enough information for an estimate yet.
+     */
+    long getEstimatedStartMillis() {
+      return estimatedStartMillis;
+    }
+  }
+
+  /*
+   * A task in the queue.
+   */
+  private static final class Entry {
+    final String userName;
+    final Runnable task;
+    final Runnable onExpired;
+    final long enqueuedMillis;
+
+    Entry(String userName, Runnable task, Runnable onExpired, long enqueuedMillis) {
+      this.userName = userName;
+      this.task = task;
+      this.onExpired = onExpired;
+      this.enqueuedMillis = enqueuedMillis;
+    }
+  }
+
+  // Logging support
+  private static final Logger LOG = Logger.getLogger(BuildScheduler.class.getName());
+
+  // How often to look for tasks that have waited too long.
+  private static final long EXPIRATION_CHECK_INTERVAL_MILLIS = 1000;
+
+  // Weight of the most recent build in the average build duration.
+  private static final double BUILD_DURATION_WEIGHT = 0.2;
+
+  // The maximum number of active tasks. 0 means unlimited.
+  private final int maxActiveTasks;
+  // The maximum number of waiting tasks, in total and per user.
+  private final int maxQueuedTasks;
+  private final int maxQueuedTasksPerUser;
+  // The maximum time a task may wait. 0 means forever.
+  private final long maxWaitMillis;
+
+  private final ExecutorService threads;
+  private final ScheduledExecutorService expirationChecker;
+
+  // The waiting tasks, a queue per user, in the order in which the users take turns. Guarded by
+  // this.
+  private final LinkedHashMap<String, Deque<Entry>> users =
+      new LinkedHashMap<String, Deque<Entry>>();
+  private int queuedTaskCount;
+  private int activeTaskCount;
+  // Moving average of the build duration, 0 until a build has completed. Guarded by this.
+  private double averageBuildMillis;
+
+  private final AtomicInteger completedTaskCount = new AtomicInteger(0);
+  private final AtomicInteger expiredTaskCount = new AtomicInteger(0);
+  private final AtomicInteger rejectedTaskCount = new AtomicInteger(0);
+
+  /**
+   * Creates a BuildScheduler.
+   *
+   * @param maxActiveTasks the maximum number of active tasks, 0 for unlimited
+   * @param maxQueuedTasks the maximum number of waiting tasks
+   * @param maxQueuedTasksPerUser the maximum number of waiting tasks per user
+   * @param maxWaitMillis the maximum time a task may wait, 0 for no limit
+   */
+  BuildScheduler(int maxActiveTasks, int maxQueuedTasks, int maxQueuedTasksPerUser,
+      long maxWaitMillis) {
+    this.maxActiveTasks = maxActiveTasks;
+    this.maxQueuedTasks = maxQueuedTasks;
+    this.maxQueuedTasksPerUser = maxQueuedTasksPerUser;
+    this.maxWaitMillis = maxWaitMillis;
+    threads = Executors.newCachedThreadPool(new ThreadFactory() {
+      private final AtomicInteger threadCount = new AtomicInteger(0);
+      @Override
+      public Thread newThread(Runnable runnable) {
+        return new Thread(runnable, "Build-" + threadCount.incrementAndGet());
+      }
+    });
+    if (maxWaitMillis > 0 && maxQueuedTasks > 0) {
+      expirationChecker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "BuildExpiration");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+      expirationChecker.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          expireTasks();
+        }
+      }, EXPIRATION_CHECK_INTERVAL_MILLIS, EXPIRATION_CHECK_INTERVAL_MILLIS,
+          TimeUnit.MILLISECONDS);
+    } else {
+      expirationChecker = null;
+    }
+  }
+
+  /**
+   * Starts the given task now if a thread is available and otherwise queues it.
+   *
+   * @param userName the user the task builds for
+   * @param task the task
+   * @param onExpired run instead of the task if the task waits longer than the maximum wait time
+   * @throws RejectedExecutionException if the queue, or the user's share of it, is full
+   */
+  void execute(String userName, Runnable task, Runnable onExpired) {
+    synchronized (this) {
+      if (maxActiveTasks == 0 || activeTaskCount < maxActiveTasks) {
+        start(task);
+        return;
+      }
+      if (queuedTaskCount >= maxQueuedTasks) {
+        rejectedTaskCount.incrementAndGet();
+        throw new RejectedExecutionException("The build server is currently at maximum capacity.");
+      }
+      Deque<Entry> userEntries = users.get(userName);
+      if (userEntries == null) {
+        userEntries = new ArrayDeque<Entry>();
+        users.put(userName, userEntries);
+      }
+      if (userEntries.size() >= maxQueuedTasksPerUser) {
+        if (userEntries.isEmpty()) {
+          users.remove(userName);
+        }
+        rejectedTaskCount.incrementAndGet();
+        throw new RejectedExecutionException("You already have the maximum number of builds " +
+            "waiting on this build server.");
+      }
+      userEntries.addLast(new Entry(userName, task, onExpired, System.currentTimeMillis()));
+      queuedTaskCount++;
+    }
+  }
+
+  int getMaxActiveTasks() {
+    return maxActiveTasks;
+  }
+
+  int getMaxQueuedTasks() {
+    return maxQueuedTasks;
+  }
+
+  synchronized int getActiveTaskCount() {
+    return activeTaskCount;
+  }
+
+  synchronized int getQueuedTaskCount() {
+    return queuedTaskCount;
+  }
+
+  int getCompletedTaskCount() {
+    return completedTaskCount.get();
+  }
+
+  int getExpiredTaskCount() {
+    return expiredTaskCount.get();
+  }
+
+  int getRejectedTaskCount() {
+    return rejectedTaskCount.get();
+  }
+
+  synchronized long getAverageBuildMillis() {
+    return (long) averageBuildMillis;
+  }
+
+  /**
+   * Returns the waiting tasks in the order in which they will start, unless users who have no
+   * tasks waiting arrive in the meantime.
+   */
+  synchronized List<QueuedBuild> getQueue() {
+    long now = System.currentTimeMillis();
+    List<QueuedBuild> queue = new ArrayList<QueuedBuild>(queuedTaskCount);
+    LinkedHashMap<String, Deque<Entry>> copy = copyUsers();
+    int slots = Math.max(1, maxActiveTasks);
+    Entry entry;
+    while ((entry = takeNext(copy)) != null) {
+      int position = queue.size();
+      long estimatedStartMillis = 0;
+      if (averageBuildMillis > 0) {
+        // Every group of 'slots' tasks ahead of this one has to wait for one build to finish.
+        estimatedStartMillis = now + (long) ((position / slots + 1) * averageBuildMillis);
+      }
+      queue.add(new QueuedBuild(position + 1, entry.userName, now - entry.enqueuedMillis,
+          estimatedStartMillis));
+    }
+    return queue;
+  }
+
+  /*
+   * Starts a task. The caller must hold the lock.
+   */
+  private void start(final Runnable task) {
+    activeTaskCount++;
+    try {
+      threads.execute(new Runnable() {
+        @Override
+        public void run() {
+          long start = System.currentTimeMillis();
+          try {
+            task.run();
+          } finally {
+            completedTaskCount.incrementAndGet();
+            finished(System.currentTimeMillis() - start);
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      activeTaskCount--;
+      throw e;
+    }
+  }
+
+  private synchronized void finished(long buildMillis) {
+    activeTaskCount--;
+    averageBuildMillis = (averageBuildMillis == 0)
+        ? buildMillis
+        : BUILD_DURATION_WEIGHT * buildMillis + (1 - BUILD_DURATION_WEIGHT) * averageBuildMillis;
+    Entry entry = takeNext(users);
+    if (entry != null) {
+      queuedTaskCount--;
+      start(entry.task);
+    }
+  }
+
+  /*
+   * Removes and returns the next task to start, or null if there are none. The user whose turn it
+   * is goes to the back of the line.
+   */
+  private static Entry takeNext(LinkedHashMap<String, Deque<Entry>> users) {
+    Iterator<Map.Entry<String, Deque<Entry>>> it = users.entrySet().iterator();
+    if (!it.hasNext()) {
+      return null;
+    }
+    Map.Entry<String, Deque<Entry>> first = it.next();
+    Deque<Entry> userEntries = first.getValue();
+    Entry entry = userEntries.removeFirst();
+    it.remove();
+    if (!userEntries.isEmpty()) {
+      users.put(first.getKey(), userEntries);
+    }
+    return entry;
+  }
+
+  private LinkedHashMap<String, Deque<Entry>> copyUsers() {
+    LinkedHashMap<String, Deque<Entry>> copy = new LinkedHashMap<String, Deque<Entry>>();
+    for (Map.Entry<String, Deque<Entry>> user : users.entrySet()) {
+      copy.put(user.getKey(), new ArrayDeque<Entry>(user.getValue()));
+    }
+    return copy;
+  }
+
+  private void expireTasks() {
+    List<Entry> expired = new ArrayList<Entry>();
+    synchronized (this) {
+      long oldest = System.currentTimeMillis() - maxWaitMillis;
+      Iterator<Deque<Entry>> usersIt = users.values().iterator();
+      while (usersIt.hasNext()) {
+        Deque<Entry> userEntries = usersIt.next();
+        Iterator<Entry> entriesIt = userEntries.iterator();
+        while (entriesIt.hasNext()) {
+          Entry entry = entriesIt.next();
+          if (entry.enqueuedMillis < oldest) {
+            entriesIt.remove();
+            expired.add(entry);
+          }
+        }
+        if (userEntries.isEmpty()) {
+          usersIt.remove();
+        }
+      }
+      queuedTaskCount -= expired.size();
+    }
+    for (Entry entry : expired) {
+      expiredTaskCount.incrementAndGet();
+      LOG.info("Build for " + entry.userName + " expired after waiting " +
+          (System.currentTimeMillis() - entry.enqueuedMillis) + " ms");
+      try {
+        entry.onExpired.run();
+      } catch (RuntimeException e) {
+        LOG.log(Level.WARNING, "Exception while expiring build", e);
+      }
+    }
+  }
+}
@@ -74,6 +74,18 @@ public class BuildServer {
       usage = "Maximum number of builds that can run in parallel. O means unlimited.")
     int maxSimultaneousBuilds = 0;  // The default is unlimited.
 
+    @Option(name = "--maxQueuedBuilds",
+      usage = "Maximum number of builds that can wait for a free build slot. 0 means builds are rejected when all slots are busy.")
+    int maxQueuedBuilds = 20;
+
+    @Option(name = "--maxQueuedBuildsPerUser",
+      usage = "Maximum number of builds that a single user can have waiting for a free build slot.")
+    int maxQueuedBuildsPerUser = 2;
+
+    @Option(name = "--maxBuildWaitSeconds",
+      usage = "Maximum time that a build can wait for a free build slot, in seconds. 0 means no limit.")
+    int maxBuildWaitSeconds = 300;
+
     @Option(name = "--port",
       usage = "The port number to bind to on the local machine.")
     int port = 9990;
@@ -83,6 +95,34 @@ public class BuildServer {
       handler = StringArrayOptionHandler.class)
     String[] requiredHosts = null;
 
+    @Option(name = "--dexCacheDir",
+      usage = "Directory in which to cache the dexed runtime and library jars. If not specified, they are dexed on every build.")
+    String dexCacheDir = null;
+
+    @Option(name = "--buildCacheDir",
+      usage = "Directory in which to cache the outputs of the build stages, so that unchanged projects are not rebuilt from scratch. If not specified, every stage runs on every build.")
+    String buildCacheDir = null;
+
+    @Option(name = "--buildCacheMaxMb",
+      usage = "Maximum size of the build cache, in MB. The least recently used outputs are evicted first.")
+    int buildCacheMaxMb = 2048;
+
+    @Option(name = "--yailGeneratorThreads",
+      usage = "Number of forms for which YAIL can be generated in parallel inside the build server. 0 means YAIL is generated in a separate process for each form.")
+    int yailGeneratorThreads = 0;
+
+    @Option(name = "--kawaWorkers",
+      usage = "Number of long-lived Kawa compiler processes shared by all builds. 0 means every build starts its own Kawa process.")
+    int kawaWorkers = 0;
+
+    @Option(name = "--kawaWorkerMaxJobs",
+      usage = "Number of builds after which a long-lived Kawa compiler process is replaced.")
+    int kawaWorkerMaxJobs = 50;
+
+    @Option(name = "--callbackAttempts",
+      usage = "Number of times the build result is sent to the App Engine server before giving up.")
+    int callbackAttempts = 5;
+
     @Option(name = "--debug",
       usage = "Turn on debugging, which enables the non-async calls of the buildserver.")
     boolean debug = false;
@@ -94,6 +134,12 @@ public class BuildServer {
   // Logging support
   private static final Logger LOG = Logger.getLogger(BuildServer.class.getName());
 
+  // Backoff between attempts to send the build result to the callback URL.
+  private static final long CALLBACK_INITIAL_BACKOFF_MILLIS = 1000;
+  private static final long CALLBACK_MAX_BACKOFF_MILLIS = 30000;
+
+  private static final int CALLBACK_BUFFER_SIZE = 64 * 1024;
+
   private static final MediaType APK_MEDIA_TYPE =
     new MediaType("application", "vnd.android.package-archive",
       ImmutableMap.of("charset", "utf-8"));
@@ -118,11 +164,14 @@ public class BuildServer {
   //The number of failed build requests for this server run
   private static int maximumActiveBuildTasks = 0;
 
-  // The build executor used to limit the number of simultaneous builds.
-  // NOTE(lizlooney) - the buildExecutor must be created after the command line options are
+  // The number of build requests that waited too long in the queue and were dropped
+  private static final AtomicInteger expiredAsyncBuildRequests = new AtomicInteger(0);
+
+  // The build scheduler used to limit the number of simultaneous builds and queue the rest.
+  // NOTE(lizlooney) - the buildScheduler must be created after the command line options are
   // processed in main(). If it is created here, the number of simultaneous builds will always be
   // the default value, even if the --maxSimultaneousBuilds option is on the command line.
-  private static NonQueuingExecutor buildExecutor;
+  private static BuildScheduler buildScheduler;
 
   // The input zip file. It will be deleted in cleanUp.
   private File inputZip;
@@ -187,18 +236,80 @@ public class BuildServer {
     variables.put("rejected-async-build-requests", rejectedAsyncBuildRequests.get() + "");
     variables.put("successful-async-build-requests", successfulBuildRequests.get() + "");
     variables.put("failed-async-build-requests", failedBuildRequests.get() + "");
+    variables.put("expired-async-build-requests", expiredAsyncBuildRequests.get() + "");
 
     // Build tasks
-    int max = buildExecutor.getMaxActiveTasks();
+    int max = buildScheduler.getMaxActiveTasks();
     if (max == 0) {
       variables.put("maximum-simultaneous-build-tasks-allowed", "unlimited");
     } else {
       variables.put("maximum-simultaneous-build-tasks-allowed", max + "");
     }
-    variables.put("completed-build-tasks", buildExecutor.getCompletedTaskCount() + "");
-    maximumActiveBuildTasks = Math.max(maximumActiveBuildTasks, buildExecutor.getActiveTaskCount());
+    variables.put("completed-build-tasks", buildScheduler.getCompletedTaskCount() + "");
+    maximumActiveBuildTasks = Math.max(maximumActiveBuildTasks, buildScheduler.getActiveTaskCount());
     variables.put("maximum-simultaneous-build-tasks-occurred", maximumActiveBuildTasks + "");
-    variables.put("active-build-tasks", buildExecutor.getActiveTaskCount() + "");
+    variables.put("active-build-tasks", buildScheduler.getActiveTaskCount() + "");
+    variables.put("average-build-time-in-ms", buildScheduler.getAverageBuildMillis() + "");
+
+    // Build queue
+    variables.put("maximum-queued-build-tasks-allowed", buildScheduler.getMaxQueuedTasks() + "");
+    variables.put("queued-build-tasks", buildScheduler.getQueuedTaskCount() + "");
+    variables.put("rejected-build-tasks", buildScheduler.getRejectedTaskCount() + "");
+    variables.put("expired-build-tasks", buildScheduler.getExpiredTaskCount() + "");
+    for (BuildScheduler.QueuedBuild queuedBuild : buildScheduler.getQueue()) {
+      long estimatedStart = queuedBuild.getEstimatedStartMillis();
+      variables.put("queued-build-" + queuedBuild.getPosition(),
+        "user: " + queuedBuild.getUserName() +
+        ", waited-in-ms: " + queuedBuild.getWaitedMillis() +
+        ", estimated-start: " +
+        (estimatedStart == 0 ? "unknown" : dateTimeFormat.format(new Date(estimatedStart))));
+    }
+
+    // YAIL generation
+    if (commandLineOptions.yailGeneratorThreads == 0) {
+      variables.put("yail-generator-threads", "separate process per form");
+    } else {
+      variables.put("yail-generator-threads", commandLineOptions.yailGeneratorThreads + "");
+    }
+
+    // Kawa compiler processes
+    KawaCompilerPool kawaCompilerPool = Compiler.getKawaCompilerPoolIfStarted();
+    if (commandLineOptions.kawaWorkers == 0) {
+      variables.put("kawa-compiler-workers", "separate process per build");
+    } else {
+      variables.put("kawa-compiler-workers", commandLineOptions.kawaWorkers + "");
+    }
+    if (kawaCompilerPool != null) {
+      variables.put("kawa-compiler-workers-live", kawaCompilerPool.getLiveWorkerCount() + "");
+      variables.put("kawa-compiler-workers-idle", kawaCompilerPool.getIdleWorkerCount() + "");
+      variables.put("kawa-compiler-workers-started", kawaCompilerPool.getStartedWorkerCount() + "");
+      variables.put("kawa-compiler-workers-retired", kawaCompilerPool.getRetiredWorkerCount() + "");
+      variables.put("kawa-compiler-jobs-completed", kawaCompilerPool.getCompletedJobCount() + "");
+    }
+
+    // Dex cache
+    DexCache dexCache = Compiler.getDexCache();
+    if (dexCache == null) {
+      variables.put("dex-cache", "disabled");
+    } else {
+      variables.put("dex-cache", dexCache.getCacheDirectory().getAbsolutePath());
+      variables.put("dex-cache-hits", dexCache.getHitCount() + "");
+      variables.put("dex-cache-misses", dexCache.getMissCount() + "");
+    }
+
+    // Build cache
+    BuildCache buildCache = Compiler.getBuildCache();
+    if (buildCache == null) {
+      variables.put("build-cache", "disabled");
+    } else {
+      variables.put("build-cache", buildCache.getCacheDirectory().getAbsolutePath());
+      variables.put("build-cache-max-size", buildCache.getMaxSizeBytes() + "");
+      variables.put("build-cache-size", buildCache.getSizeBytes() + "");
+      variables.put("build-cache-entries", buildCache.getEntryCount() + "");
+      variables.put("build-cache-hits", buildCache.getHitCount() + "");
+      variables.put("build-cache-misses", buildCache.getMissCount() + "");
+      variables.put("build-cache-evictions", buildCache.getEvictionCount() + "");
+    }
 
     StringBuilder html = new StringBuilder();
     html.append("<html><body><tt>");
@@ -311,6 +422,10 @@ public class BuildServer {
    * The status code returned here will be seen by the server in YoungAndroidProjectService.build
    * as connection.getResponseCode().
    *
+   * If all build slots are busy, the build waits in a queue. Users take turns so that one user
+   * can't hold up everybody else. If the build waits too long, we'll post back a failing build.out
+   * instead.
+   *
    * @param userName  The user name to be used in making the CN entry in the generated keystore.
    * @param gitBuildVersion  The value of GitBuildId.getVersion() sent from
    *     YoungAndroidProjectService.build.
@@ -383,34 +498,7 @@ public class BuildServer {
               LOG.info("START NEW BUILD " + count);
               checkMemory();
               buildAndCreateZip(userName, inputZipFile);
-              // Send zip back to the callbackUrl
-              LOG.info("CallbackURL: " + callbackUrlStr);
-              URL callbackUrl = new URL(callbackUrlStr);
-              HttpURLConnection connection = (HttpURLConnection) callbackUrl.openConnection();
-              connection.setDoOutput(true);
-              connection.setRequestMethod("POST");
-              // Make sure we aren't misinterpreted as
-              // form-url-encoded
-              connection.addRequestProperty("Content-Type","application/zip; charset=utf-8");
-              connection.setConnectTimeout(60000);
-              connection.setReadTimeout(60000);
-              BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(connection.getOutputStream());
-              try {
-                BufferedInputStream bufferedInputStream = new BufferedInputStream(
-                  new FileInputStream(outputZip));
-                try {
-                  ByteStreams.copy(bufferedInputStream,bufferedOutputStream);
-                  checkMemory();
-                  bufferedOutputStream.flush();
-                } finally {
-                  bufferedInputStream.close();
-                }
-              } finally {
-                bufferedOutputStream.close();
-              }
-              if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {LOG.severe("Bad Response Code!: "+ connection.getResponseCode());
-                // TODO(user) Maybe do some retries
-              }
+              sendZipToCallback(callbackUrlStr);
             } catch (Exception e) {
               // TODO(user): Maybe send a failure callback
               LOG.severe("Exception: " + e.getMessage()+ " and the length is of inputZip is "+ inputZip.length());
@@ -421,11 +509,28 @@ public class BuildServer {
             }
           }
         };
+      Runnable expiredTask = new Runnable() {
+          @Override
+          public void run() {
+            // The build waited too long for a free build slot. Tell the callback so that the user
+            // isn't left waiting for a build that will never happen.
+            expiredAsyncBuildRequests.incrementAndGet();
+            try {
+              createZip(inputZipFile, Result.createFailingResult("",
+                "The build server was busy for too long. Please try again later."));
+              sendZipToCallback(callbackUrlStr);
+            } catch (Exception e) {
+              LOG.severe("Exception: " + e.getMessage() + " while reporting an expired build");
+            } finally {
+              cleanUp();
+            }
+          }
+        };
       try {
-        buildExecutor.execute(buildTask);
+        buildScheduler.execute(userName, buildTask, expiredTask);
       } catch (RejectedExecutionException e) {
         // This request was rejected because all threads in the build
-        // executor are busy.
+        // scheduler are busy and the queue, or this user's share of it, is full.
         rejectedAsyncBuildRequests.incrementAndGet();
         cleanUp();
         // Here, we use SERVICE_UNAVAILABLE (response code 503), which
@@ -434,7 +539,7 @@ public class BuildServer {
         // overloading or maintenance of the server. The implication
         // is that this is a temporary condition which will be
         // alleviated after some delay."
-        return Response.status(Response.Status.SERVICE_UNAVAILABLE).type(MediaType.TEXT_PLAIN_TYPE).entity("The build server is currently at maximum capacity.").build();
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE).type(MediaType.TEXT_PLAIN_TYPE).entity(e.getMessage()).build();
       }
     }
     return Response.ok().type(MediaType.TEXT_PLAIN_TYPE)
@@ -444,22 +549,28 @@ public class BuildServer {
   private void buildAndCreateZip(String userName, File inputZipFile)
     throws IOException, JSONException {
     Result buildResult = build(userName, inputZipFile);
-    boolean buildSucceeded = buildResult.succeeded();
+    if (buildResult.succeeded()) {
+      successfulBuildRequests.getAndIncrement();
+    } else {
+      LOG.severe("Build " + buildCount.get() + " Failed: " + buildResult.getResult() + " " + buildResult.getError());
+      failedBuildRequests.getAndIncrement();
+    }
+    createZip(inputZipFile, buildResult);
+  }
+
+  private void createZip(File inputZipFile, Result buildResult)
+    throws IOException, JSONException {
     outputZip = File.createTempFile(inputZipFile.getName(), ".zip");
     outputZip.deleteOnExit();  // In case build server is killed before cleanUp executes.
     ZipOutputStream zipOutputStream =
       new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(outputZip)));
-    if (buildSucceeded) {
+    if (buildResult.succeeded()) {
       if (outputKeystore != null) {
         zipOutputStream.putNextEntry(new ZipEntry(outputKeystore.getName()));
         Files.copy(outputKeystore, zipOutputStream);
       }
       zipOutputStream.putNextEntry(new ZipEntry(outputApk.getName()));
       Files.copy(outputApk, zipOutputStream);
-      successfulBuildRequests.getAndIncrement();
-    } else {
-      LOG.severe("Build " + buildCount.get() + " Failed: " + buildResult.getResult() + " " + buildResult.getError());
-      failedBuildRequests.getAndIncrement();
     }
     zipOutputStream.putNextEntry(new ZipEntry("build.out"));
     String buildOutputJson = genBuildOutput(buildResult);
@@ -470,6 +581,81 @@ public class BuildServer {
     zipOutputStream.close();
   }
 
+  private void sendZipToCallback(String callbackUrlStr) throws IOException {
+    // Send zip back to the callbackUrl, retrying with exponential backoff if
+    // the App Engine server can't be reached or is temporarily failing.
+    LOG.info("CallbackURL: " + callbackUrlStr);
+    URL callbackUrl = new URL(callbackUrlStr);
+    long backoffMillis = CALLBACK_INITIAL_BACKOFF_MILLIS;
+    for (int attempt = 1; ; attempt++) {
+      boolean lastAttempt = attempt >= commandLineOptions.callbackAttempts;
+      try {
+        int responseCode = postZipToCallback(callbackUrl);
+        if (responseCode == HttpURLConnection.HTTP_OK) {
+          return;
+        }
+        LOG.severe("Bad Response Code!: " + responseCode);
+        if (responseCode < HttpURLConnection.HTTP_INTERNAL_ERROR || lastAttempt) {
+          // The server rejected the result; sending it again won't help.
+          return;
+        }
+      } catch (IOException e) {
+        if (lastAttempt) {
+          throw e;
+        }
+        LOG.warning("Sending the build result failed: " + e);
+      }
+      LOG.info("Retrying callback in " + backoffMillis + "ms (attempt " + (attempt + 1) +
+        " of " + commandLineOptions.callbackAttempts + ")");
+      try {
+        Thread.sleep(backoffMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while retrying the callback");
+      }
+      backoffMillis = Math.min(backoffMillis * 2, CALLBACK_MAX_BACKOFF_MILLIS);
+    }
+  }
+
+  /*
+   * Posts the output zip to the callback URL once and returns the response code.
+   *
+   * The zip is streamed from disk with a fixed length, so it is never held in
+   * memory and the App Engine front end, which doesn't accept chunked request
+   * bodies, still gets a Content-Length.
+   */
+  private int postZipToCallback(URL callbackUrl) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) callbackUrl.openConnection();
+    try {
+      connection.setDoOutput(true);
+      connection.setRequestMethod("POST");
+      // Make sure we aren't misinterpreted as
+      // form-url-encoded
+      connection.addRequestProperty("Content-Type","application/zip; charset=utf-8");
+      connection.setFixedLengthStreamingMode(outputZip.length());
+      connection.setConnectTimeout(60000);
+      connection.setReadTimeout(60000);
+      BufferedOutputStream bufferedOutputStream =
+        new BufferedOutputStream(connection.getOutputStream(), CALLBACK_BUFFER_SIZE);
+      try {
+        BufferedInputStream bufferedInputStream = new BufferedInputStream(
+          new FileInputStream(outputZip), CALLBACK_BUFFER_SIZE);
+        try {
+          ByteStreams.copy(bufferedInputStream,bufferedOutputStream);
+          checkMemory();
+          bufferedOutputStream.flush();
+        } finally {
+          bufferedInputStream.close();
+        }
+      } finally {
+        bufferedOutputStream.close();
+      }
+      return connection.getResponseCode();
+    } finally {
+      connection.disconnect();
+    }
+  }
+
   private String genBuildOutput(Result buildResult) throws JSONException {
     JSONObject buildOutputJsonObj = new JSONObject();
     buildOutputJsonObj.put("result", buildResult.getResult());
@@ -544,8 +730,24 @@ public class BuildServer {
       System.exit(1);
     }
 
-    // Now that the command line options have been processed, we can create the buildExecutor.
-    buildExecutor = new NonQueuingExecutor(commandLineOptions.maxSimultaneousBuilds);
+    // Now that the command line options have been processed, we can create the buildScheduler.
+    buildScheduler = new BuildScheduler(commandLineOptions.maxSimultaneousBuilds,
+      commandLineOptions.maxQueuedBuilds, commandLineOptions.maxQueuedBuildsPerUser,
+      commandLineOptions.maxBuildWaitSeconds * 1000L);
+
+    if (commandLineOptions.dexCacheDir != null) {
+      Compiler.setDexCacheDirectory(new File(commandLineOptions.dexCacheDir));
+      LOG.info("Dex cache directory = " + commandLineOptions.dexCacheDir);
+    }
+    if (commandLineOptions.buildCacheDir != null) {
+      Compiler.setBuildCache(new File(commandLineOptions.buildCacheDir),
+        commandLineOptions.buildCacheMaxMb * 1024L * 1024L);
+      LOG.info("Build cache directory = " + commandLineOptions.buildCacheDir);
+    }
+
+    ProjectBuilder.setInProcessYailGenerators(commandLineOptions.yailGeneratorThreads);
+    Compiler.setKawaCompilerWorkers(commandLineOptions.kawaWorkers,
+      commandLineOptions.kawaWorkerMaxJobs, commandLineOptions.childProcessRamMb - 200);
 
     int port = commandLineOptions.port;
     SelectorThread threadSelector = GrizzlyServerFactory.create("http://localhost:" + port + "/");
@@ -557,6 +759,7 @@ public class BuildServer {
       LOG.info("Maximum simultanous builds = unlimited!");
     } else {
       LOG.info("Maximum simultanous builds = " + commandLineOptions.maxSimultaneousBuilds);
+      LOG.info("Maximum queued builds = " + commandLineOptions.maxQueuedBuilds);
     }
     LOG.info("Visit: http://" + hostAddress + ":" + port +
       "/buildserver/health for server health");
@@ -55,6 +55,7 @@ public final class Compiler {
   public static int currentProgress = 10;
 
   // Kawa and DX processes can use a lot of memory. We only launch one Kawa or DX process at a time.
+  // (The warm Kawa compiler processes of the KawaCompilerPool are bounded by the pool instead.)
   private static final Object SYNC_KAWA_OR_DX = new Object();
 
   // TODO(sharon): temporary until we add support for new activities
@@ -151,6 +152,23 @@ public final class Compiler {
   private static final ConcurrentMap<String, File> resources =
       new ConcurrentHashMap<String, File>();
 
+  // Cache of pre-dexed runtime and library jars, shared by all builds. If null, every build dexes
+  // the runtime and library jars together with the project classes.
+  private static volatile DexCache dexCache;
+
+  // Configuration of the pool of warm Kawa compiler processes. If kawaWorkers is 0, every build
+  // starts its own Kawa process.
+  private static int kawaWorkers;
+  private static int kawaWorkerMaxJobs;
+  private static int kawaWorkerRamMb;
+  // Created by the first build that needs it, because its class path depends on the extracted
+  // runtime files. Guarded by Compiler.class.
+  private static KawaCompilerPool kawaCompilerPool;
+
+  // Cache of the outputs of the build stages, shared by all builds. If null, every stage runs on
+  // every build.
+  private static volatile BuildCache buildCache;
+
   // TODO(user,lizlooney): i18n here and in lines below that call String.format(...)
   private static final String ERROR_IN_STAGE =
       "Error: Your build failed due to an error in the %s stage, " +
@@ -175,6 +193,10 @@ public final class Compiler {
   private Set<String> nativeLibrariesNeeded; // Set of component native libraries
   private Set<String> assetsNeeded; // Set of component assets
   private File libsDir; // The directory that will contain any native libraries for packaging
+  // Build cache keys of the stages that have run, or null if the build cache is not used.
+  private String classesKey;
+  private String dexKey;
+  private String packageKey;
 
   /*
    * Generate the set of Android permissions needed by this project.
@@ -553,15 +575,9 @@ public final class Compiler {
 
     // Invoke dx on class files
     out.println("________Invoking DX");
-    // TODO(markf): Running DX is now pretty slow (~25 sec overhead the first time and ~15 sec
-    // overhead for subsequent runs).  I think it's because of the need to dx the entire
-    // kawa runtime every time.  We should probably only do that once and then copy all the
-    // kawa runtime dx files into the generated classes.dex (which would only contain the
-    // files compiled for this project).
-    // Aargh.  It turns out that there's no way to manipulate .dex files to do the above.  An
-    // Android guy suggested an alternate approach of shipping the kawa runtime .dex file as
-    // data with the application and then creating a new DexClassLoader using that .dex file
-    // and with the original app class loader as the parent of the new one.
+    // Running DX over the entire kawa runtime and the component libraries costs ~15-25 sec per
+    // build. When the dex cache is enabled (see setDexCacheDirectory), those jars are dexed once
+    // and dx only has to dex the classes compiled for this project and merge in the cached ones.
     File tmpDir = createDirectory(buildDir, "tmp");
     String dexedClasses = tmpDir.getAbsolutePath() + File.separator + "classes.dex";
     if (!compiler.runDx(classesDir, dexedClasses)) {
@@ -579,25 +595,31 @@ public final class Compiler {
     }
     setProgress(90);
 
-    // Seal the apk with ApkBuilder
-    out.println("________Invoking ApkBuilder");
     String apkAbsolutePath = deployDir.getAbsolutePath() + File.separatorChar +
         project.getProjectName() + ".apk";
-    if (!compiler.runApkBuilder(apkAbsolutePath, tmpPackageName, dexedClasses)) {
-      return false;
-    }
-    setProgress(95);
+    String apkKey = compiler.getApkKey(keystoreFilePath);
+    if (compiler.restoreFromBuildCache(apkKey, new File(apkAbsolutePath))) {
+      out.println("________Reusing the signed apk file from an earlier build");
+    } else {
+      // Seal the apk with ApkBuilder
+      out.println("________Invoking ApkBuilder");
+      if (!compiler.runApkBuilder(apkAbsolutePath, tmpPackageName, dexedClasses)) {
+        return false;
+      }
+      setProgress(95);
 
-    // Sign the apk file
-    out.println("________Signing the apk file");
-    if (!compiler.runJarSigner(apkAbsolutePath, keystoreFilePath)) {
-      return false;
-    }
+      // Sign the apk file
+      out.println("________Signing the apk file");
+      if (!compiler.runJarSigner(apkAbsolutePath, keystoreFilePath)) {
+        return false;
+      }
 
-    // ZipAlign the apk file
-    out.println("________ZipAligning the apk file");
-    if (!compiler.runZipAlign(apkAbsolutePath, tmpDir)) {
-      return false;
+      // ZipAlign the apk file
+      out.println("________ZipAligning the apk file");
+      if (!compiler.runZipAlign(apkAbsolutePath, tmpDir)) {
+        return false;
+      }
+      compiler.storeInBuildCache(apkKey, new File(apkAbsolutePath));
     }
 
     setProgress(100);
@@ -767,6 +789,21 @@ public final class Compiler {
       System.out.println("Libraries Classpath = " + classpath);
 
       String yailRuntime = getResource(YAIL_RUNTIME);
+      String classPrefix = Signatures.getPackageName(project.getMainClass()) + ".";
+      classesKey = getClassesKey(classPrefix, sourceFileNames);
+      if (restoreFromBuildCache(classesKey, classesDir)) {
+        out.println("Reusing the class files from an earlier build");
+        return checkClassFiles(classFileNames);
+      }
+
+      KawaCompilerPool pool = getKawaCompilerPool();
+      if (pool != null) {
+        if (!compileWithKawaCompilerPool(pool, classesDir, classPrefix, sourceFileNames)) {
+          return false;
+        }
+        return checkAndCacheClassFiles(classesDir, classFileNames);
+      }
+
       List<String> kawaCommandArgs = Lists.newArrayList();
       int mx = childProcessRamMb - 200;
       Collections.addAll(kawaCommandArgs,
@@ -776,7 +813,7 @@ public final class Compiler {
           "kawa.repl",
           "-f", yailRuntime,
           "-d", classesDir.getAbsolutePath(),
-          "-P", Signatures.getPackageName(project.getMainClass()) + ".",
+          "-P", classPrefix,
           "-C");
       // TODO(lizlooney) - we are currently using (and have always used) absolute paths for the
       // source file names. The resulting .class files contain references to the source file names,
@@ -807,27 +844,99 @@ public final class Compiler {
       out.println(kawaCompileTimeMessage);
       LOG.info(kawaCompileTimeMessage);
 
-      // Check that all of the class files were created.
-      // If they weren't, return with an error.
-      for (String classFileName : classFileNames) {
-        File classFile = new File(classFileName);
-        if (!classFile.exists()) {
-          LOG.log(Level.INFO, "Can't find class file: " + classFileName);
-          String screenName = classFileName.substring(classFileName.lastIndexOf('/') + 1,
-              classFileName.lastIndexOf('.'));
-          userErrors.print(String.format(COMPILATION_ERROR, screenName));
-          return false;
-        }
-      }
+      return checkAndCacheClassFiles(classesDir, classFileNames);
     } catch (IOException e) {
       e.printStackTrace();
       userErrors.print(String.format(ERROR_IN_STAGE, "compile"));
       return false;
     }
+  }
+
+  /*
+   * Compiles the given YAIL files with a warm Kawa compiler process from the pool. Returns false
+   * if the compile stage itself failed.
+   */
+  private boolean compileWithKawaCompilerPool(KawaCompilerPool pool, File classesDir,
+      String classPrefix, List<String> sourceFileNames) throws IOException {
+    long start = System.currentTimeMillis();
+    KawaCompilerPool.CompileResult result;
+    try {
+      result = pool.compile(classesDir, classPrefix, sourceFileNames);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      userErrors.print(String.format(ERROR_IN_STAGE, "compile"));
+      return false;
+    }
+    if (!result.finished()) {
+      LOG.log(Level.SEVERE, "Kawa compile has failed.");
+    }
+    System.out.print(result.getOutput());
+    out.print(result.getErrors());
+    String kawaCompileTimeMessage = "Kawa compile time: " +
+        ((System.currentTimeMillis() - start) / 1000.0) + " seconds";
+    out.println(kawaCompileTimeMessage);
+    LOG.info(kawaCompileTimeMessage);
+    return true;
+  }
 
+  /*
+   * Checks that all of the class files were created. If they weren't, reports an error.
+   */
+  private boolean checkClassFiles(List<String> classFileNames) {
+    for (String classFileName : classFileNames) {
+      File classFile = new File(classFileName);
+      if (!classFile.exists()) {
+        LOG.log(Level.INFO, "Can't find class file: " + classFileName);
+        String screenName = classFileName.substring(classFileName.lastIndexOf('/') + 1,
+            classFileName.lastIndexOf('.'));
+        userErrors.print(String.format(COMPILATION_ERROR, screenName));
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /*
+   * Checks that all of the class files were created and, if so, stores them in the build cache.
+   */
+  private boolean checkAndCacheClassFiles(File classesDir, List<String> classFileNames) {
+    if (!checkClassFiles(classFileNames)) {
+      return false;
+    }
+    storeInBuildCache(classesKey, classesDir);
     return true;
   }
 
+  /*
+   * Returns the pool of warm Kawa compiler processes, creating it if necessary, or null if builds
+   * should start their own Kawa process.
+   */
+  private KawaCompilerPool getKawaCompilerPool() throws IOException {
+    synchronized (Compiler.class) {
+      if (kawaWorkers == 0) {
+        return null;
+      }
+      if (kawaCompilerPool == null) {
+        // The workers are shared by all builds, so their class path has every component library.
+        Set<String> allLibraries = Sets.newHashSet();
+        for (Set<String> libraries : componentLibraries.values()) {
+          allLibraries.addAll(libraries);
+        }
+        String classpath =
+            getResource(KAWA_RUNTIME) + File.pathSeparator +
+            getResource(ACRA_RUNTIME) + File.pathSeparator +
+            getResource(SIMPLE_ANDROID_RUNTIME_JAR) + File.pathSeparator;
+        for (String library : allLibraries) {
+          classpath += getResource(RUNTIME_FILES_DIR + library) + File.pathSeparator;
+        }
+        classpath += getResource(ANDROID_RUNTIME);
+        kawaCompilerPool = new KawaCompilerPool(kawaWorkers, kawaWorkerMaxJobs,
+            kawaWorkerRamMb, classpath, getResource(YAIL_RUNTIME));
+      }
+      return kawaCompilerPool;
+    }
+  }
+
   private boolean runJarSigner(String apkAbsolutePath, String keystoreAbsolutePath) {
     // TODO(user): maybe make a command line flag for the jarsigner location
     String javaHome = System.getProperty("java.home");
@@ -954,42 +1063,61 @@ public final class Compiler {
   }
 
   private boolean runDx(File classesDir, String dexedClasses) {
-    int mx = childProcessRamMb - 200;
-
-    List<String> commandLineList = new ArrayList<String>();
-    commandLineList.add(System.getProperty("java.home") + "/bin/java");
-    commandLineList.add("-mx" + mx + "M");
-    commandLineList.add("-jar");
-    commandLineList.add(getResource(DX_JAR));
-    commandLineList.add("--dex");
-    commandLineList.add("--positions=lines");
-    commandLineList.add("--output=" + dexedClasses);
-    commandLineList.add(classesDir.getAbsolutePath());
-    commandLineList.add(getResource(SIMPLE_ANDROID_RUNTIME_JAR));
-    commandLineList.add(getResource(KAWA_RUNTIME));
-    commandLineList.add(getResource(ACRA_RUNTIME));
+    List<String> inputJars = new ArrayList<String>();
+    inputJars.add(getResource(SIMPLE_ANDROID_RUNTIME_JAR));
+    inputJars.add(getResource(KAWA_RUNTIME));
+    inputJars.add(getResource(ACRA_RUNTIME));
 
     // Add libraries to command line arguments
     System.out.println("Libraries needed command line n = " + librariesNeeded.size());
     for (String library : librariesNeeded) {
-      commandLineList.add(getResource(RUNTIME_FILES_DIR + library));
+      inputJars.add(getResource(RUNTIME_FILES_DIR + library));
     }
 
-    System.out.println("Libraries command line = " + commandLineList);
-
-    // Convert command line to an array
-    String[] dxCommandLine = new String[commandLineList.size()];
-    commandLineList.toArray(dxCommandLine);
+    dexKey = getDexKey(inputJars);
+    if (restoreFromBuildCache(dexKey, new File(dexedClasses))) {
+      out.println("Reusing classes.dex from an earlier build");
+      return true;
+    }
 
-   long startDx = System.currentTimeMillis();
-    // Using System.err and System.out on purpose. Don't want to pollute build messages with
-    // tools output
-    boolean dxSuccess;
-    synchronized (SYNC_KAWA_OR_DX) {
-      setProgress(50);
-      dxSuccess = Execution.execute(null, dxCommandLine, System.out, System.err);
-      setProgress(75);
+    long startDx = System.currentTimeMillis();
+    // If the dex cache is enabled, replace each runtime and library jar with its pre-dexed form,
+    // so that dx only has to dex the classes compiled for this project and merge the rest.
+    DexCache cache = dexCache;
+    if (cache != null) {
+      File dxJar = new File(getResource(DX_JAR));
+      DexCache.Dexer dexer = new DexCache.Dexer() {
+        @Override
+        public boolean dex(File inputJar, File outputJar) {
+          return executeDx(outputJar.getAbsolutePath(), inputJar.getAbsolutePath());
+        }
+      };
+      try {
+        for (int i = 0; i < inputJars.size(); i++) {
+          File dexedJar = cache.getDexedJar(new File(inputJars.get(i)), dxJar, dexer);
+          if (dexedJar == null) {
+            LOG.warning("YAIL compiler - DX execution failed for " + inputJars.get(i));
+            err.println("YAIL compiler - DX execution failed.");
+            userErrors.print(String.format(ERROR_IN_STAGE, "DX"));
+            return false;
+          }
+          inputJars.set(i, dexedJar.getAbsolutePath());
+        }
+      } catch (IOException e) {
+        e.printStackTrace();
+        userErrors.print(String.format(ERROR_IN_STAGE, "DX"));
+        return false;
+      }
     }
+
+    List<String> dxInputs = new ArrayList<String>();
+    dxInputs.add(classesDir.getAbsolutePath());
+    dxInputs.addAll(inputJars);
+    System.out.println("Libraries command line = " + dxInputs);
+
+    setProgress(50);
+    boolean dxSuccess = executeDx(dexedClasses, dxInputs.toArray(new String[dxInputs.size()]));
+    setProgress(75);
     if (!dxSuccess) {
       LOG.warning("YAIL compiler - DX execution failed.");
       err.println("YAIL compiler - DX execution failed.");
@@ -1001,9 +1129,38 @@ public final class Compiler {
     out.println(dxTimeMessage);
     LOG.info(dxTimeMessage);
 
+    storeInBuildCache(dexKey, new File(dexedClasses));
     return true;
   }
 
+  /*
+   * Runs dx on the given inputs, writing the result to output. If output ends in .jar, dx writes a
+   * jar containing classes.dex. Inputs that are already dexed are merged into the output.
+   */
+  private boolean executeDx(String output, String... inputs) {
+    int mx = childProcessRamMb - 200;
+
+    List<String> commandLineList = new ArrayList<String>();
+    commandLineList.add(System.getProperty("java.home") + "/bin/java");
+    commandLineList.add("-mx" + mx + "M");
+    commandLineList.add("-jar");
+    commandLineList.add(getResource(DX_JAR));
+    commandLineList.add("--dex");
+    commandLineList.add("--positions=lines");
+    commandLineList.add("--output=" + output);
+    Collections.addAll(commandLineList, inputs);
+
+    // Convert command line to an array
+    String[] dxCommandLine = new String[commandLineList.size()];
+    commandLineList.toArray(dxCommandLine);
+
+    // Using System.err and System.out on purpose. Don't want to pollute build messages with
+    // tools output
+    synchronized (SYNC_KAWA_OR_DX) {
+      return Execution.execute(null, dxCommandLine, System.out, System.err);
+    }
+  }
+
   private boolean runAaptPackage(File manifestFile, File resDir, String tmpPackageName) {
     // Need to make sure assets directory exists otherwise aapt will fail.
     createDirectory(project.getAssetsDirectory());
@@ -1021,6 +1178,11 @@ public final class Compiler {
       userErrors.print(String.format(ERROR_IN_STAGE, "AAPT"));
       return false;
     }
+    packageKey = getPackageKey(aaptTool, manifestFile, resDir);
+    if (restoreFromBuildCache(packageKey, new File(tmpPackageName))) {
+      out.println("Reusing the AAPT package from an earlier build");
+      return true;
+    }
     String[] aaptPackageCommandLine = {
         getResource(aaptTool),
         "package",
@@ -1046,6 +1208,7 @@ public final class Compiler {
     out.println(aaptTimeMessage);
     LOG.info(aaptTimeMessage);
 
+    storeInBuildCache(packageKey, new File(tmpPackageName));
     return true;
   }
 
@@ -1136,6 +1299,186 @@ public final class Compiler {
     }
   }
 
+  /**
+   * Enables the cache of pre-dexed runtime and library jars.
+   *
+   * @param cacheDir the directory in which to keep the dexed jars, or {@code null} to disable
+   *     the cache
+   */
+  static void setDexCacheDirectory(File cacheDir) {
+    dexCache = (cacheDir == null) ? null : new DexCache(cacheDir);
+  }
+
+  static DexCache getDexCache() {
+    return dexCache;
+  }
+
+  /**
+   * Makes builds compile YAIL with a pool of warm Kawa compiler processes.
+   *
+   * @param numWorkers the number of Kawa compiler processes, or 0 to start a new Kawa process for
+   *     every build
+   * @param maxJobsPerWorker the number of builds after which a Kawa compiler process is replaced
+   * @param workerRamMb the maximum ram that can be used by a Kawa compiler process, in MB
+   */
+  static synchronized void setKawaCompilerWorkers(int numWorkers, int maxJobsPerWorker,
+      int workerRamMb) {
+    kawaWorkers = numWorkers;
+    kawaWorkerMaxJobs = maxJobsPerWorker;
+    kawaWorkerRamMb = workerRamMb;
+    kawaCompilerPool = null;
+  }
+
+  static synchronized KawaCompilerPool getKawaCompilerPoolIfStarted() {
+    return kawaCompilerPool;
+  }
+
+  /**
+   * Enables the cache of build stage outputs.
+   *
+   * @param cacheDir the directory in which to keep the outputs, or {@code null} to disable the
+   *     cache
+   * @param maxSizeBytes the maximum total size of the cached outputs
+   */
+  static void setBuildCache(File cacheDir, long maxSizeBytes) {
+    buildCache = (cacheDir == null) ? null : new BuildCache(cacheDir, maxSizeBytes);
+  }
+
+  static BuildCache getBuildCache() {
+    return buildCache;
+  }
+
+  /*
+   * Returns the build cache key of the class files, which depend on the YAIL sources, the class
+   * prefix, the YAIL runtime and the class path.
+   */
+  private String getClassesKey(String classPrefix, List<String> sourceFileNames) {
+    BuildCache cache = buildCache;
+    if (cache == null) {
+      return null;
+    }
+    try {
+      BuildCache.KeyBuilder key = cache.newKey("classes")
+          .putString(classPrefix)
+          .putResource(getResource(YAIL_RUNTIME))
+          .putResource(getResource(KAWA_RUNTIME))
+          .putResource(getResource(ACRA_RUNTIME))
+          .putResource(getResource(SIMPLE_ANDROID_RUNTIME_JAR))
+          .putResource(getResource(ANDROID_RUNTIME));
+      for (String library : Sets.newTreeSet(librariesNeeded)) {
+        key.putString(library).putResource(getResource(RUNTIME_FILES_DIR + library));
+      }
+      for (String sourceFileName : sourceFileNames) {
+        // The generated class names depend on the path below src, but not on the temp directory.
+        key.putString(sourceFileName.substring(sourceFileName.indexOf("/../src/") + 8))
+            .putFile(new File(sourceFileName));
+      }
+      return key.build();
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Unable to compute the build cache key of the class files", e);
+      return null;
+    }
+  }
+
+  /*
+   * Returns the build cache key of classes.dex, which depends on the class files, dx and the
+   * runtime and library jars.
+   */
+  private String getDexKey(List<String> inputJars) {
+    BuildCache cache = buildCache;
+    if (cache == null || classesKey == null) {
+      return null;
+    }
+    try {
+      BuildCache.KeyBuilder key = cache.newKey("dex")
+          .putString(classesKey)
+          .putResource(getResource(DX_JAR));
+      for (String inputJar : inputJars) {
+        key.putResource(inputJar);
+      }
+      return key.build();
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Unable to compute the build cache key of classes.dex", e);
+      return null;
+    }
+  }
+
+  /*
+   * Returns the build cache key of the AAPT package, which depends on aapt, the manifest, the
+   * resources and the assets.
+   */
+  private String getPackageKey(String aaptTool, File manifestFile, File resDir) {
+    BuildCache cache = buildCache;
+    if (cache == null) {
+      return null;
+    }
+    try {
+      return cache.newKey("package")
+          .putResource(getResource(aaptTool))
+          .putResource(getResource(ANDROID_RUNTIME))
+          .putFile(manifestFile)
+          .putDirectory(resDir)
+          .putDirectory(project.getAssetsDirectory())
+          .build();
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Unable to compute the build cache key of the AAPT package", e);
+      return null;
+    }
+  }
+
+  /*
+   * Returns the build cache key of the signed apk, which depends on classes.dex, the AAPT package,
+   * the native libraries and the keystore.
+   */
+  private String getApkKey(String keystoreFilePath) {
+    BuildCache cache = buildCache;
+    if (cache == null || dexKey == null || packageKey == null) {
+      return null;
+    }
+    try {
+      return cache.newKey("apk")
+          .putString(dexKey)
+          .putString(packageKey)
+          .putDirectory(libsDir)
+          .putFile(new File(keystoreFilePath))
+          .build();
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Unable to compute the build cache key of the apk", e);
+      return null;
+    }
+  }
+
+  /*
+   * Copies the output of a stage from the build cache. Returns false if the stage has to run.
+   */
+  private boolean restoreFromBuildCache(String key, File target) {
+    BuildCache cache = buildCache;
+    if (cache == null || key == null) {
+      return false;
+    }
+    try {
+      return cache.restore(key, target);
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Unable to restore " + key + " from the build cache", e);
+      return false;
+    }
+  }
+
+  /*
+   * Stores the output of a stage in the build cache. A failure only costs the next build time.
+   */
+  private void storeInBuildCache(String key, File source) {
+    BuildCache cache = buildCache;
+    if (cache == null || key == null) {
+      return;
+    }
+    try {
+      cache.store(key, source);
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Unable to store " + key + " in the build cache", e);
+    }
+  }
+
   /*
    *  Loads permissions and information on component libraries and assets.
    */
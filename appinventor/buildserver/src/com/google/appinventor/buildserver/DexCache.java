@@ -0,0 +1,132 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+package com.google.appinventor.buildserver;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * A content-addressed, on-disk cache of the dexed form of runtime and library jars.
+ *
+ * <p>The runtime jars (AndroidRuntime.jar, kawa.jar, acra, and the component libraries) are the
+ * same for almost every build, yet dexing them accounts for most of the time spent in DX. The
+ * cache stores the output of {@code dx --dex} for each jar under a key made from the SHA-1 hash of
+ * the jar and the SHA-1 hash of dx.jar itself, so a new version of either invalidates the entry.
+ * The per-project classes are then dexed together with the cached jars, which dx merges into the
+ * final classes.dex.</p>
+ */
+final class DexCache {
+
+  /**
+   * Produces the dexed form of a jar. Implemented by the {@link Compiler}, which knows how to
+   * invoke dx.
+   */
+  interface Dexer {
+    /**
+     * Dexes the given jar into the given output file, which ends in ".jar".
+     *
+     * @return {@code true} if dx succeeded, {@code false} otherwise
+     */
+    boolean dex(File inputJar, File outputJar);
+  }
+
+  // Logging support
+  private static final Logger LOG = Logger.getLogger(DexCache.class.getName());
+
+  private final File cacheDir;
+
+  // Hashes of the files we have already looked at, keyed by path, length and modification time.
+  // The runtime jars are extracted once per server run, so this saves rehashing them per build.
+  private final ConcurrentMap<String, String> fileHashes = new ConcurrentHashMap<String, String>();
+
+  // One lock per cache key, so that two builds never dex the same jar at the same time.
+  private final ConcurrentMap<String, Object> keyLocks = new ConcurrentHashMap<String, Object>();
+
+  private final AtomicInteger hitCount = new AtomicInteger(0);
+  private final AtomicInteger missCount = new AtomicInteger(0);
+
+  /**
+   * Creates a DexCache that stores its entries in the given directory.
+   *
+   * @param cacheDir the cache directory; it is created if it doesn't exist
+   */
+  DexCache(File cacheDir) {
+    this.cacheDir = cacheDir;
+    if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+      throw new IllegalStateException("Unable to create dex cache directory " + cacheDir);
+    }
+  }
+
+  /**
+   * Returns the dexed form of the given jar, dexing it with the given dexer if it is not already
+   * in the cache.
+   *
+   * @param jar the jar to dex
+   * @param dxJar dx.jar, whose hash becomes part of the cache key
+   * @param dexer used to dex the jar on a cache miss
+   * @return the cached dexed jar, or {@code null} if dx failed
+   */
+  File getDexedJar(File jar, File dxJar, Dexer dexer) throws IOException {
+    String key = hash(jar) + "-" + hash(dxJar);
+    Object newLock = new Object();
+    Object lock = keyLocks.putIfAbsent(key, newLock);
+    if (lock == null) {
+      lock = newLock;
+    }
+    synchronized (lock) {
+      File cachedJar = new File(cacheDir, key + ".jar");
+      if (cachedJar.exists()) {
+        hitCount.incrementAndGet();
+        return cachedJar;
+      }
+      missCount.incrementAndGet();
+      LOG.info("Dex cache miss for " + jar.getName() + ", key " + key);
+      // dx decides on the output format by the file extension, so the temp file must end in .jar.
+      File tmpJar = File.createTempFile(key + "-", ".jar", cacheDir);
+      try {
+        if (!dexer.dex(jar, tmpJar)) {
+          return null;
+        }
+        // Renaming within the cache directory is atomic, so another server process sharing the
+        // directory never sees a partially written entry.
+        if (!tmpJar.renameTo(cachedJar) && !cachedJar.exists()) {
+          throw new IOException("Unable to rename " + tmpJar + " to " + cachedJar);
+        }
+        return cachedJar;
+      } finally {
+        tmpJar.delete();
+      }
+    }
+  }
+
+  File getCacheDirectory() {
+    return cacheDir;
+  }
+
+  int getHitCount() {
+    return hitCount.get();
+  }
+
+  int getMissCount() {
+    return missCount.get();
+  }
+
+  private String hash(File file) throws IOException {
+    String fileKey = file.getAbsolutePath() + ":" + file.length() + ":" + file.lastModified();
+    String hash = fileHashes.get(fileKey);
+    if (hash == null) {
+      hash = Files.hash(file, Hashing.sha1()).toString();
+      fileHashes.put(fileKey, hash);
+    }
+    return hash;
+  }
+}
@@ -0,0 +1,328 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+package com.google.appinventor.buildserver;
+
+import com.google.common.base.Preconditions;
+import com.google.common.io.ByteStreams;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A pool of long-lived Kawa compiler processes (see {@link KawaCompilerWorker}).
+ *
+ * <p>Each worker has the YAIL runtime already loaded and compiled, so a build only pays for
+ * compiling its own YAIL files. The number of workers bounds the number of simultaneous Kawa
+ * compilations. A worker is replaced after it has compiled a given number of jobs, when its heap is
+ * nearly full, and when a compilation fails (Kawa exits the process on compile errors). The
+ * replacement is started in the background, so that the next build doesn't have to wait for it
+ * to load the runtime.</p>
+ */
+final class KawaCompilerPool {
+
+  /**
+   * The result of one compile job.
+   */
+  static final class CompileResult {
+    private final boolean finished;
+    private final String output;
+    private final String errors;
+
+    private CompileResult(boolean finished, String output, String errors) {
+      this.finished = finished;
+      this.output = output;
+      this.errors = errors;
+    }
+
+    /**
+     * Returns whether Kawa ran to completion. The caller still has to check that all the expected
+     * class files were produced.
+     */
+    boolean finished() {
+      return finished;
+    }
+
+    /**
+     * Returns what Kawa wrote to stdout.
+     */
+    String getOutput() {
+      return output;
+    }
+
+    /**
+     * Returns what Kawa wrote to stderr, which includes the compiler warnings and errors.
+     */
+    String getErrors() {
+      return errors;
+    }
+  }
+
+  // Logging support
+  private static final Logger LOG = Logger.getLogger(KawaCompilerPool.class.getName());
+
+  // A worker whose heap is fuller than this after a job is replaced.
+  private static final double MAX_HEAP_USAGE = 0.8;
+
+  private final int numWorkers;
+  private final int maxJobsPerWorker;
+  private final int workerRamMb;
+  private final String classpath;
+  private final String yailRuntime;
+
+  // Idle workers, and the number of workers that are idle, busy or starting. Guarded by this.
+  private final Deque<Worker> idleWorkers = new ArrayDeque<Worker>();
+  private int liveWorkerCount;
+
+  private final AtomicInteger startedWorkerCount = new AtomicInteger(0);
+  private final AtomicInteger retiredWorkerCount = new AtomicInteger(0);
+  private final AtomicInteger completedJobCount = new AtomicInteger(0);
+
+  /**
+   * Creates a KawaCompilerPool. Workers are started when they are first needed.
+   *
+   * @param numWorkers the maximum number of worker processes
+   * @param maxJobsPerWorker the number of jobs after which a worker is replaced
+   * @param workerRamMb the maximum heap size of a worker, in MB
+   * @param classpath the class path used for compiling YAIL
+   * @param yailRuntime the path of runtime.scm
+   */
+  KawaCompilerPool(int numWorkers, int maxJobsPerWorker, int workerRamMb, String classpath,
+      String yailRuntime) {
+    Preconditions.checkArgument(numWorkers > 0);
+    Preconditions.checkArgument(maxJobsPerWorker > 0);
+    this.numWorkers = numWorkers;
+    this.maxJobsPerWorker = maxJobsPerWorker;
+    this.workerRamMb = workerRamMb;
+    this.classpath = classpath;
+    this.yailRuntime = yailRuntime;
+  }
+
+  /**
+   * Compiles the given YAIL files, waiting for a worker if they are all busy.
+   *
+   * @param classesDir the directory in which to put the class files
+   * @param classPrefix the class name prefix for the compiled files
+   * @param sourceFiles the absolute paths of the YAIL files
+   */
+  CompileResult compile(File classesDir, String classPrefix, List<String> sourceFiles)
+      throws IOException, InterruptedException {
+    Worker worker = acquireWorker();
+    boolean keepWorker = false;
+    try {
+      CompileResult result = worker.compile(classesDir, classPrefix, sourceFiles);
+      completedJobCount.incrementAndGet();
+      keepWorker = result.finished() && !worker.shouldRetire();
+      return result;
+    } finally {
+      releaseWorker(worker, keepWorker);
+    }
+  }
+
+  int getNumWorkers() {
+    return numWorkers;
+  }
+
+  synchronized int getLiveWorkerCount() {
+    return liveWorkerCount;
+  }
+
+  synchronized int getIdleWorkerCount() {
+    return idleWorkers.size();
+  }
+
+  int getStartedWorkerCount() {
+    return startedWorkerCount.get();
+  }
+
+  int getRetiredWorkerCount() {
+    return retiredWorkerCount.get();
+  }
+
+  int getCompletedJobCount() {
+    return completedJobCount.get();
+  }
+
+  private Worker acquireWorker() throws IOException, InterruptedException {
+    synchronized (this) {
+      while (idleWorkers.isEmpty() && liveWorkerCount >= numWorkers) {
+        wait();
+      }
+      if (!idleWorkers.isEmpty()) {
+        return idleWorkers.pop();
+      }
+      // Reserve a slot for the new worker. Starting it takes a while, so do it outside the lock.
+      liveWorkerCount++;
+    }
+    boolean started = false;
+    try {
+      Worker worker = new Worker();
+      started = true;
+      return worker;
+    } finally {
+      if (!started) {
+        synchronized (this) {
+          liveWorkerCount--;
+          notifyAll();
+        }
+      }
+    }
+  }
+
+  private void releaseWorker(Worker worker, boolean keepWorker) {
+    if (keepWorker) {
+      synchronized (this) {
+        idleWorkers.push(worker);
+        notifyAll();
+      }
+      return;
+    }
+    worker.stop();
+    retiredWorkerCount.incrementAndGet();
+    // The replacement takes over the retired worker's slot.
+    startWorkerInBackground();
+  }
+
+  /*
+   * Starts a worker in a slot that the caller has already reserved, and makes it idle when it is
+   * ready. If the worker can't be started, the slot is freed again.
+   */
+  private void startWorkerInBackground() {
+    Thread thread = new Thread("KawaCompilerWorkerStarter") {
+      @Override
+      public void run() {
+        Worker worker = null;
+        try {
+          worker = new Worker();
+        } catch (IOException e) {
+          LOG.log(Level.WARNING, "Unable to start a Kawa compiler worker", e);
+        }
+        synchronized (KawaCompilerPool.this) {
+          if (worker != null) {
+            idleWorkers.push(worker);
+          } else {
+            liveWorkerCount--;
+          }
+          KawaCompilerPool.this.notifyAll();
+        }
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /*
+   * One worker process.
+   */
+  private class Worker {
+    private final Process process;
+    private final DataOutputStream toWorker;
+    private final DataInputStream fromWorker;
+    private int jobCount;
+    private long usedHeap;
+    private long maxHeap;
+
+    Worker() throws IOException {
+      String[] commandLine = {
+          System.getProperty("java.home") + "/bin/java",
+          "-mx" + workerRamMb + "M",
+          "-cp", getWorkerClasspathEntry() + File.pathSeparator + classpath,
+          KawaCompilerWorker.class.getName(),
+          yailRuntime
+      };
+      long start = System.currentTimeMillis();
+      process = Runtime.getRuntime().exec(commandLine);
+      toWorker = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+      fromWorker = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+      drainInBackground(process.getErrorStream());
+      try {
+        String ready = fromWorker.readUTF();
+        if (!ready.equals(KawaCompilerWorker.READY)) {
+          throw new IOException("Unexpected greeting from Kawa compiler worker: " + ready);
+        }
+      } catch (IOException e) {
+        process.destroy();
+        throw e;
+      }
+      int count = startedWorkerCount.incrementAndGet();
+      LOG.info("Started Kawa compiler worker " + count + " in " +
+          ((System.currentTimeMillis() - start) / 1000.0) + " seconds");
+    }
+
+    CompileResult compile(File classesDir, String classPrefix, List<String> sourceFiles)
+        throws IOException {
+      jobCount++;
+      toWorker.writeUTF(classesDir.getAbsolutePath());
+      toWorker.writeUTF(classPrefix);
+      toWorker.writeInt(sourceFiles.size());
+      for (String sourceFile : sourceFiles) {
+        toWorker.writeUTF(sourceFile);
+      }
+      toWorker.flush();
+
+      boolean finished = fromWorker.readBoolean();
+      usedHeap = fromWorker.readLong();
+      maxHeap = fromWorker.readLong();
+      String output = new String(readBytes(), PathUtil.DEFAULT_CHARSET);
+      String errors = new String(readBytes(), PathUtil.DEFAULT_CHARSET);
+      return new CompileResult(finished, output, errors);
+    }
+
+    boolean shouldRetire() {
+      return jobCount >= maxJobsPerWorker || usedHeap > maxHeap * MAX_HEAP_USAGE;
+    }
+
+    void stop() {
+      try {
+        // Closing stdin tells the worker to exit.
+        toWorker.close();
+      } catch (IOException e) {
+        // The worker is already gone.
+      }
+      process.destroy();
+    }
+
+    private byte[] readBytes() throws IOException {
+      byte[] bytes = new byte[fromWorker.readInt()];
+      fromWorker.readFully(bytes);
+      return bytes;
+    }
+  }
+
+  private static String getWorkerClasspathEntry() throws IOException {
+    try {
+      return new File(KawaCompilerWorker.class.getProtectionDomain().getCodeSource()
+          .getLocation().toURI()).getAbsolutePath();
+    } catch (URISyntaxException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private static void drainInBackground(final InputStream input) {
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          ByteStreams.copy(input, System.err);
+        } catch (IOException e) {
+          LOG.log(Level.WARNING, "____I/O Redirection failure: ", e);
+        }
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+  }
+}
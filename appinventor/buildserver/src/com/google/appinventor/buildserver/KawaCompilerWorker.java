@@ -0,0 +1,192 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+package com.google.appinventor.buildserver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Entry point of a long-lived Kawa compiler process, managed by {@link KawaCompilerPool}.
+ *
+ * <p>The worker loads the YAIL runtime (runtime.scm) and compiles it once, when it starts. It
+ * then reads compile jobs from stdin and answers each of them on stdout, so the JVM start-up and
+ * the runtime compilation are paid once per worker instead of once per build.</p>
+ *
+ * <p>Protocol (using {@link DataInputStream}/{@link DataOutputStream}):
+ * <ul>
+ *   <li>On start-up the worker writes the UTF string "READY".</li>
+ *   <li>A job is the UTF strings classes directory and class prefix, followed by an int count and
+ *       that many UTF source file paths.</li>
+ *   <li>The answer is a boolean (whether the compilation finished), the used and the maximum heap
+ *       size as longs, and the bytes written to stdout and to stderr during the job, each as an
+ *       int length followed by the bytes.</li>
+ * </ul>
+ * Kawa calls System.exit when a source file has errors. A shutdown hook then sends the answer for
+ * the job in progress, and the pool replaces the worker.</p>
+ *
+ * <p>The worker runs with only the Kawa compilation class path and the class path entry of this
+ * class, so it must not depend on any other library.</p>
+ */
+public final class KawaCompilerWorker {
+  static final String READY = "READY";
+
+  private final DataOutputStream protocolOut;
+  private final File runtimeClassesDir;
+
+  // The output of the job in progress, or null between jobs. Guarded by this.
+  private ByteArrayOutputStream jobOut;
+  private ByteArrayOutputStream jobErr;
+
+  private KawaCompilerWorker(DataOutputStream protocolOut, File runtimeClassesDir) {
+    this.protocolOut = protocolOut;
+    this.runtimeClassesDir = runtimeClassesDir;
+  }
+
+  /**
+   * Runs a worker.
+   *
+   * @param args the path of runtime.scm
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 1) {
+      System.err.println("KawaCompilerWorker error - expected exactly 1 command line argument");
+      System.exit(-1);
+    }
+    String yailRuntime = args[0];
+
+    // Keep the real stdout for the protocol. Anything else written to stdout ends up in the output
+    // of the job in progress.
+    DataOutputStream protocolOut =
+        new DataOutputStream(new BufferedOutputStream(System.out));
+    System.setOut(System.err);
+
+    // Load the runtime, as "kawa.repl -f runtime.scm" does, and compile it once.
+    kawa.repl.processArgs(new String[] { "-f", yailRuntime }, 0, 2);
+    File runtimeClassesDir = Files.createTempDirectory("runtime").toFile();
+    compile(runtimeClassesDir, "", new String[] { yailRuntime });
+
+    final KawaCompilerWorker worker = new KawaCompilerWorker(protocolOut, runtimeClassesDir);
+    Runtime.getRuntime().addShutdownHook(new Thread() {
+      @Override
+      public void run() {
+        worker.finishJob(false);
+        deleteDirectory(worker.runtimeClassesDir);
+      }
+    });
+
+    protocolOut.writeUTF(READY);
+    protocolOut.flush();
+    worker.serve(new DataInputStream(new BufferedInputStream(System.in)));
+  }
+
+  private void serve(DataInputStream protocolIn) throws IOException {
+    while (true) {
+      String classesDir;
+      try {
+        classesDir = protocolIn.readUTF();
+      } catch (EOFException e) {
+        // The pool closed our stdin. We're done.
+        return;
+      }
+      String classPrefix = protocolIn.readUTF();
+      int count = protocolIn.readInt();
+      List<String> sourceFiles = new ArrayList<String>(count);
+      for (int i = 0; i < count; i++) {
+        sourceFiles.add(protocolIn.readUTF());
+      }
+
+      startJob();
+      boolean success = false;
+      try {
+        File classesDirFile = new File(classesDir);
+        compile(classesDirFile, classPrefix, sourceFiles.toArray(new String[count]));
+        copyDirectory(runtimeClassesDir, classesDirFile);
+        success = true;
+      } catch (Throwable e) {
+        e.printStackTrace();
+      } finally {
+        finishJob(success);
+      }
+    }
+  }
+
+  private static void compile(File classesDir, String classPrefix, String[] sourceFiles) {
+    String[] kawaArgs = new String[sourceFiles.length + 5];
+    kawaArgs[0] = "-d";
+    kawaArgs[1] = classesDir.getAbsolutePath();
+    kawaArgs[2] = "-P";
+    kawaArgs[3] = classPrefix;
+    kawaArgs[4] = "-C";
+    System.arraycopy(sourceFiles, 0, kawaArgs, 5, sourceFiles.length);
+    kawa.repl.processArgs(kawaArgs, 0, kawaArgs.length);
+  }
+
+  private synchronized void startJob() {
+    jobOut = new ByteArrayOutputStream();
+    jobErr = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(jobOut, true));
+    System.setErr(new PrintStream(jobErr, true));
+  }
+
+  private synchronized void finishJob(boolean success) {
+    if (jobOut == null) {
+      return;
+    }
+    System.out.flush();
+    System.err.flush();
+    try {
+      Runtime runtime = Runtime.getRuntime();
+      protocolOut.writeBoolean(success);
+      protocolOut.writeLong(runtime.totalMemory() - runtime.freeMemory());
+      protocolOut.writeLong(runtime.maxMemory());
+      writeBytes(jobOut.toByteArray());
+      writeBytes(jobErr.toByteArray());
+      protocolOut.flush();
+    } catch (IOException e) {
+      // The pool is gone. There is nobody to tell.
+    }
+    jobOut = null;
+    jobErr = null;
+  }
+
+  private void writeBytes(byte[] bytes) throws IOException {
+    protocolOut.writeInt(bytes.length);
+    protocolOut.write(bytes);
+  }
+
+  private static void deleteDirectory(File dir) {
+    for (File file : dir.listFiles()) {
+      if (file.isDirectory()) {
+        deleteDirectory(file);
+      } else {
+        file.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  private static void copyDirectory(File fromDir, File toDir) throws IOException {
+    for (File from : fromDir.listFiles()) {
+      File to = new File(toDir, from.getName());
+      if (from.isDirectory()) {
+        to.mkdirs();
+        copyDirectory(from, to);
+      } else {
+        Files.copy(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+  }
+}
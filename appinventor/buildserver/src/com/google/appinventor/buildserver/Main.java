@@ -44,6 +44,22 @@ public final class Main {
     @Option(name = "--childProcessRamMb",
             usage = "Maximum ram that can be used by a child processes, in MB.")
     int childProcessRamMb = 2048;
+
+    @Option(name = "--dexCacheDir",
+            usage = "Directory in which to cache the dexed runtime and library jars.")
+    File dexCacheDir = null;
+
+    @Option(name = "--buildCacheDir",
+            usage = "Directory in which to cache the outputs of the build stages.")
+    File buildCacheDir = null;
+
+    @Option(name = "--buildCacheMaxMb",
+            usage = "Maximum size of the build cache, in MB.")
+    int buildCacheMaxMb = 2048;
+
+    @Option(name = "--yailGeneratorThreads",
+            usage = "Generate YAIL inside this process, with this many forms in parallel.")
+    int yailGeneratorThreads = 0;
   }
 
   private static CommandLineOptions commandLineOptions = new CommandLineOptions();
@@ -70,6 +86,16 @@ public final class Main {
       System.exit(1);
     }
 
+    if (commandLineOptions.dexCacheDir != null) {
+      Compiler.setDexCacheDirectory(commandLineOptions.dexCacheDir);
+    }
+    if (commandLineOptions.buildCacheDir != null) {
+      Compiler.setBuildCache(commandLineOptions.buildCacheDir,
+          commandLineOptions.buildCacheMaxMb * 1024L * 1024L);
+    }
+
+    ProjectBuilder.setInProcessYailGenerators(commandLineOptions.yailGeneratorThreads);
+
     ProjectBuilder projectBuilder = new ProjectBuilder();
     ZipFile zip = null;
     try {
@@ -12,6 +12,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.io.Files;
 import com.google.common.io.InputSupplier;
@@ -22,12 +23,19 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Enumeration;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -68,9 +76,40 @@ public final class ProjectBuilder {
   private static final String CODEBLOCKS_SOURCE_EXTENSION =
       YoungAndroidConstants.CODEBLOCKS_SOURCE_EXTENSION;
 
+  // Must match the character encoding that YailGenerator uses to read its input files.
+  private static final Charset YAIL_GENERATOR_CHARSET = Charset.forName(PathUtil.DEFAULT_CHARSET);
+
   private static final String ALL_COMPONENT_TYPES =
       Compiler.RUNTIME_FILES_DIR + "simple_components.txt";
 
+  private static final String YAIL_GENERATOR_JAR =
+      Compiler.RUNTIME_FILES_DIR + "YailGenerator.jar";
+
+  // Pool used to generate YAIL inside this JVM. If null, YailGenerator is run as a separate
+  // process for each form.
+  private static volatile YailGeneratorPool yailGeneratorPool;
+
+  /**
+   * Makes YAIL generation run inside this JVM, with at most the given number of forms generated
+   * in parallel.
+   *
+   * @param numWorkers the number of YailGenerator workers, or 0 to run YailGenerator as a
+   *     separate process for each form
+   */
+  static void setInProcessYailGenerators(int numWorkers) {
+    if (numWorkers <= 0) {
+      yailGeneratorPool = null;
+    } else {
+      try {
+        URL yailGeneratorJar =
+            new File(Compiler.getResource(YAIL_GENERATOR_JAR)).toURI().toURL();
+        yailGeneratorPool = new YailGeneratorPool(yailGeneratorJar, numWorkers);
+      } catch (MalformedURLException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
   public File getOutputApk() {
     return outputApk;
   }
@@ -212,6 +251,7 @@ public final class ProjectBuilder {
             return input.endsWith(FORM_PROPERTIES_EXTENSION) || input.endsWith(YAIL_EXTENSION);
           }
         });
+    List<String> rootNames = Lists.newArrayList();
     for (String sourceFile : formAndYailSourceFiles) {
       if (sourceFile.endsWith(FORM_PROPERTIES_EXTENSION)) {
         String rootPath = sourceFile.substring(0, sourceFile.length()
@@ -220,8 +260,78 @@ public final class ProjectBuilder {
         // Note: Famous last words: The following contains() makes this method O(n**2) but n should
         // be pretty small.
         if (!sourceFiles.contains(yailFilePath)) {
-          generateYail(rootPath);
+          rootNames.add(rootPath);
+        }
+      }
+    }
+
+    // Reuse the YAIL generated by an earlier build for forms that haven't changed.
+    Map<String, String> yailKeys = Maps.newHashMap();
+    BuildCache cache = Compiler.getBuildCache();
+    if (cache != null) {
+      for (Iterator<String> it = rootNames.iterator(); it.hasNext(); ) {
+        String rootName = it.next();
+        String key = getYailKey(cache, rootName);
+        if (cache.restore(key, new File(rootName + YAIL_EXTENSION))) {
+          it.remove();
+        } else {
+          yailKeys.put(rootName, key);
+        }
+      }
+    }
+
+    YailGeneratorPool pool = yailGeneratorPool;
+    if (pool == null) {
+      for (String rootName : rootNames) {
+        File yailFile = writeYail(rootName, runYailGeneratorProcess(rootName));
+        storeYail(cache, yailKeys.get(rootName), yailFile);
+      }
+    } else {
+      // Queue all the forms first so that they are generated in parallel.
+      List<Future<YailGeneratorPool.YailGenerationResult>> results = Lists.newArrayList();
+      for (String rootName : rootNames) {
+        results.add(pool.submit(
+            Files.toString(new File(rootName + FORM_PROPERTIES_EXTENSION), YAIL_GENERATOR_CHARSET),
+            Files.toString(new File(rootName + CODEBLOCKS_SOURCE_EXTENSION),
+                YAIL_GENERATOR_CHARSET),
+            rootName + YAIL_EXTENSION));
+      }
+      for (int i = 0; i < rootNames.size(); i++) {
+        YailGeneratorPool.YailGenerationResult result;
+        try {
+          result = results.get(i).get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while generating YAIL");
+        } catch (ExecutionException e) {
+          throw new RuntimeException(e.getCause());
         }
+        String rootName = rootNames.get(i);
+        File yailFile = writeYail(rootName, result);
+        storeYail(cache, yailKeys.get(rootName), yailFile);
+      }
+    }
+  }
+
+  /*
+   * Returns the build cache key of a form's YAIL, which depends on the form's .scm and .blk files,
+   * its path below src (which determines the package name) and the YailGenerator.
+   */
+  private static String getYailKey(BuildCache cache, String rootName) throws IOException {
+    return cache.newKey("yail")
+        .putString(rootName.substring(rootName.indexOf("/src/") + 5))
+        .putFile(new File(rootName + FORM_PROPERTIES_EXTENSION))
+        .putFile(new File(rootName + CODEBLOCKS_SOURCE_EXTENSION))
+        .putResource(Compiler.getResource(YAIL_GENERATOR_JAR))
+        .build();
+  }
+
+  private static void storeYail(BuildCache cache, String key, File yailFile) {
+    if (cache != null && key != null) {
+      try {
+        cache.store(key, yailFile);
+      } catch (IOException e) {
+        LOG.log(Level.WARNING, "Unable to store " + key + " in the build cache", e);
       }
     }
   }
@@ -412,7 +522,11 @@ public final class ProjectBuilder {
     return new Project(projectRoot.getAbsolutePath() + "/" + PROJECT_PROPERTIES_FILE_NAME);
   }
 
-  private File generateYail(String rootName) throws IOException, YailGenerationException {
+  /*
+   * Runs YailGenerator in a separate process, converting its exit code to a result.
+   */
+  private YailGeneratorPool.YailGenerationResult runYailGeneratorProcess(String rootName)
+      throws IOException {
     String formPropertiesPath = rootName + FORM_PROPERTIES_EXTENSION;
     String codeblocksSourcePath = rootName + CODEBLOCKS_SOURCE_EXTENSION;
     String yailPath = rootName + YAIL_EXTENSION;
@@ -421,7 +535,7 @@ public final class ProjectBuilder {
       System.getProperty("java.home") + "/bin/java",
       "-mx1024M",
       "-jar",
-      Compiler.getResource(Compiler.RUNTIME_FILES_DIR + "YailGenerator.jar"),
+      Compiler.getResource(YAIL_GENERATOR_JAR),
       new File(formPropertiesPath).getAbsolutePath(),
       new File(codeblocksSourcePath).getAbsolutePath(),
       yailPath
@@ -430,25 +544,39 @@ public final class ProjectBuilder {
     StringBuffer err = new StringBuffer();
     int exitValue = Execution.execute(null, commandLine, out, err);
     if (exitValue == 0) {
-      String generatedYailString = out.toString();
-      File generatedYailFile = new File(yailPath);
-      Files.write(generatedYailString, generatedYailFile, Charsets.UTF_8);
-      return generatedYailFile;
+      return YailGeneratorPool.YailGenerationResult.success(out.toString());
+    }
+    String message = "\n -- err is " + err.toString()
+        + "\n -- out is" + out.toString();
+    if (exitValue == 1) {
+      // Failed to generate yail for legitimate reasons, such as empty sockets.
+      return YailGeneratorPool.YailGenerationResult.yailGenerationError(message);
     } else {
-      String formName = PathUtil.trimOffExtension(PathUtil.basename(formPropertiesPath));
-      if (exitValue == 1) {
-        // Failed to generate yail for legitimate reasons, such as empty sockets.
+      // Any other exit value is unexpected.
+      return YailGeneratorPool.YailGenerationResult.unexpectedFailure(
+          " exited with code " + exitValue + message);
+    }
+  }
+
+  /*
+   * Writes the generated YAIL for a form, or throws if YAIL generation failed.
+   */
+  private File writeYail(String rootName, YailGeneratorPool.YailGenerationResult result)
+      throws IOException, YailGenerationException {
+    String formName = PathUtil.trimOffExtension(
+        PathUtil.basename(rootName + FORM_PROPERTIES_EXTENSION));
+    switch (result.getStatus()) {
+      case SUCCESS:
+        File generatedYailFile = new File(rootName + YAIL_EXTENSION);
+        Files.write(result.getYail(), generatedYailFile, Charsets.UTF_8);
+        return generatedYailFile;
+      case YAIL_GENERATION_ERROR:
         throw new YailGenerationException("Unable to generate code for " + formName + "."
-            + "\n -- err is " + err.toString()
-            + "\n -- out is" + out.toString(),
+            + result.getMessage(),
             formName);
-      } else {
-        // Any other exit value is unexpected.
+      default:
         throw new RuntimeException("YailGenerator for form " + formName
-            + " exited with code " + exitValue
-            + "\n -- err is " + err.toString()
-            + "\n -- out is" + out.toString());
-      }
+            + result.getMessage());
     }
   }
 
@@ -0,0 +1,260 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+package com.google.appinventor.buildserver;
+
+import com.google.common.base.Preconditions;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the YailGenerator inside the build server's JVM on a bounded pool of worker threads.
+ *
+ * <p>The blocks library that YailGenerator is built on keeps its workspace, blocks and
+ * complaints in static fields, so two forms can't be loaded into the same copy of it at the same
+ * time. Each worker therefore loads YailGenerator.jar in its own class loader, which gives it a
+ * private copy of that static state. A worker keeps its class loader between forms, so the
+ * language definition and component database are only loaded once per worker instead of once
+ * per form.</p>
+ *
+ * <p>The blocks library prints to System.out and System.err. YailGenerator's main method
+ * discards that output by replacing System.out and System.err, which a build server running
+ * several workers can't do. Instead, System.out and System.err are filtered so that whatever a
+ * worker prints while it generates YAIL is discarded.</p>
+ */
+final class YailGeneratorPool {
+
+  /**
+   * The outcome of generating the YAIL for one form. The statuses correspond to the exit codes of
+   * the YailGenerator process: 0 for success, 1 for a legitimate failure (such as an empty socket)
+   * and anything else for an unexpected failure.
+   */
+  static final class YailGenerationResult {
+    enum Status {
+      SUCCESS,
+      YAIL_GENERATION_ERROR,
+      UNEXPECTED_FAILURE
+    }
+
+    private final Status status;
+    private final String yail;
+    private final String message;
+
+    private YailGenerationResult(Status status, String yail, String message) {
+      this.status = status;
+      this.yail = yail;
+      this.message = message;
+    }
+
+    static YailGenerationResult success(String yail) {
+      return new YailGenerationResult(Status.SUCCESS, yail, "");
+    }
+
+    static YailGenerationResult yailGenerationError(String message) {
+      return new YailGenerationResult(Status.YAIL_GENERATION_ERROR, null, message);
+    }
+
+    static YailGenerationResult unexpectedFailure(String message) {
+      return new YailGenerationResult(Status.UNEXPECTED_FAILURE, null, message);
+    }
+
+    Status getStatus() {
+      return status;
+    }
+
+    /**
+     * Returns the generated YAIL, or {@code null} if generation failed.
+     */
+    String getYail() {
+      return yail;
+    }
+
+    /**
+     * Returns the error message if generation failed.
+     */
+    String getMessage() {
+      return message;
+    }
+  }
+
+  // Logging support
+  private static final Logger LOG = Logger.getLogger(YailGeneratorPool.class.getName());
+
+  private static final String YAIL_GENERATOR_CLASS =
+      "com.google.appinventor.yailgenerator.YailGenerator";
+  private static final String YAIL_GENERATION_EXCEPTION_CLASS =
+      "openblocks.yacodeblocks.YailGenerationException";
+
+  // Whether the current thread is generating YAIL and its output should be discarded.
+  private static final ThreadLocal<Boolean> discardOutput = new ThreadLocal<Boolean>();
+
+  private final URL yailGeneratorJar;
+  private final String yailGeneratorClassName;
+  private final String yailGenerationExceptionClassName;
+  private final int numWorkers;
+  private final ExecutorService executor;
+
+  // The YailGenerator.generateYail method as loaded by the current worker's class loader.
+  private final ThreadLocal<Method> workerGenerateYail = new ThreadLocal<Method>();
+
+  /**
+   * Creates a YailGeneratorPool.
+   *
+   * @param yailGeneratorJar the location of YailGenerator.jar
+   * @param numWorkers the number of forms that may be generated at the same time
+   */
+  YailGeneratorPool(URL yailGeneratorJar, int numWorkers) {
+    this(yailGeneratorJar, YAIL_GENERATOR_CLASS, YAIL_GENERATION_EXCEPTION_CLASS, numWorkers);
+  }
+
+  // For tests
+  YailGeneratorPool(URL yailGeneratorJar, String yailGeneratorClassName,
+      String yailGenerationExceptionClassName, int numWorkers) {
+    Preconditions.checkArgument(numWorkers > 0);
+    this.yailGeneratorJar = yailGeneratorJar;
+    this.yailGeneratorClassName = yailGeneratorClassName;
+    this.yailGenerationExceptionClassName = yailGenerationExceptionClassName;
+    this.numWorkers = numWorkers;
+    filterSystemOutput();
+    final AtomicInteger workerCount = new AtomicInteger(0);
+    executor = Executors.newFixedThreadPool(numWorkers, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "YailGenerator-" + workerCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  int getNumWorkers() {
+    return numWorkers;
+  }
+
+  /**
+   * Queues the generation of the YAIL for one form.
+   *
+   * @param formPropertiesSource the contents of the form's .scm file
+   * @param codeblocksSource the contents of the form's .blk file, or the empty string
+   * @param yailPath the path of the .yail file, used in the generated prelude
+   * @return a future for the result; the future never fails, failures are reported in the result
+   */
+  Future<YailGenerationResult> submit(final String formPropertiesSource,
+      final String codeblocksSource, final String yailPath) {
+    return executor.submit(new Callable<YailGenerationResult>() {
+      @Override
+      public YailGenerationResult call() {
+        return generate(formPropertiesSource, codeblocksSource, yailPath);
+      }
+    });
+  }
+
+  private YailGenerationResult generate(String formPropertiesSource, String codeblocksSource,
+      String yailPath) {
+    try {
+      String yail;
+      discardOutput.set(Boolean.TRUE);
+      try {
+        Method generateYail = getGenerateYailMethod();
+        yail = (String) generateYail.invoke(null, formPropertiesSource, codeblocksSource,
+            yailPath);
+      } finally {
+        discardOutput.remove();
+      }
+      return YailGenerationResult.success(yail);
+    } catch (InvocationTargetException e) {
+      Throwable cause = e.getCause();
+      if (cause.getClass().getName().equals(yailGenerationExceptionClassName)) {
+        // Failed to generate yail for legitimate reasons, such as empty sockets.
+        return YailGenerationResult.yailGenerationError(cause.getMessage());
+      }
+      // The blocks library may have been left in a bad state. Start over with a fresh copy.
+      LOG.log(Level.WARNING, "YailGenerator failed unexpectedly", cause);
+      workerGenerateYail.remove();
+      return YailGenerationResult.unexpectedFailure(stackTraceToString(cause));
+    } catch (Throwable e) {
+      LOG.log(Level.WARNING, "Unable to run YailGenerator", e);
+      workerGenerateYail.remove();
+      return YailGenerationResult.unexpectedFailure(stackTraceToString(e));
+    }
+  }
+
+  private Method getGenerateYailMethod() throws Exception {
+    Method generateYail = workerGenerateYail.get();
+    if (generateYail == null) {
+      // Use the parent of the system class loader so that none of the blocks library classes,
+      // and none of its static state, are shared with the build server or with other workers.
+      ClassLoader classLoader = new URLClassLoader(new URL[] { yailGeneratorJar },
+          ClassLoader.getSystemClassLoader().getParent());
+      Class<?> yailGeneratorClass = Class.forName(yailGeneratorClassName, true, classLoader);
+      generateYail = yailGeneratorClass.getMethod("generateYail",
+          String.class, String.class, String.class);
+      workerGenerateYail.set(generateYail);
+    }
+    return generateYail;
+  }
+
+  /*
+   * Replaces System.out and System.err with streams that discard the output of threads that are
+   * generating YAIL, unless that has already been done.
+   */
+  private static synchronized void filterSystemOutput() {
+    if (!(System.out instanceof WorkerOutputFilter)) {
+      System.setOut(new WorkerOutputFilter(System.out));
+    }
+    if (!(System.err instanceof WorkerOutputFilter)) {
+      System.setErr(new WorkerOutputFilter(System.err));
+    }
+  }
+
+  /*
+   * A PrintStream that passes output on to another stream, except when the current thread is
+   * generating YAIL.
+   */
+  private static final class WorkerOutputFilter extends PrintStream {
+    WorkerOutputFilter(final PrintStream out) {
+      super(new OutputStream() {
+        @Override
+        public void write(int b) {
+          if (discardOutput.get() == null) {
+            out.write(b);
+          }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+          if (discardOutput.get() == null) {
+            out.write(b, off, len);
+          }
+        }
+
+        @Override
+        public void flush() {
+          out.flush();
+        }
+      }, true);
+    }
+  }
+
+  private static String stackTraceToString(Throwable e) {
+    StringWriter stringWriter = new StringWriter();
+    e.printStackTrace(new PrintWriter(stringWriter));
+    return stringWriter.toString();
+  }
+}
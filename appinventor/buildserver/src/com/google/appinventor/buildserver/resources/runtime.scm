@@ -90,6 +90,7 @@
          (existing-component (lookup-in-current-form-environment component-name))
          (component-to-add (make component-type container)))
     (add-to-current-form-environment component-name component-to-add)
+    (invalidate-event-handlers)
     (add-init-thunk component-name
      (lambda ()
        (when init-props-thunk (init-props-thunk))
@@ -193,7 +194,9 @@
 ;;; (get-property 'Label1 'Text)
 (define (get-property component prop-name)
   (let ((component (coerce-to-component-and-verify component)))
-    (sanitize-component-data (invoke component prop-name))))
+    (sanitize-component-data
+     (com.google.appinventor.components.runtime.util.ComponentInvoker:getProperty
+      component prop-name))))
 
 (define (coerce-to-component-and-verify possible-component)
   (let ((component (coerce-to-component possible-component)))
@@ -212,7 +215,9 @@
                  component-type
                  (*:getSimpleName (*:getClass possible-component)))
          "Problem with application")
-        (sanitize-component-data (invoke component prop-name)))))
+        (sanitize-component-data
+         (com.google.appinventor.components.runtime.util.ComponentInvoker:getProperty
+          component prop-name)))))
 
 (define (set-and-coerce-property-and-check! possible-component comp-type prop-sym property-value property-type)
   (let ((component (coerce-to-component-of-type possible-component comp-type)))
@@ -396,49 +401,51 @@
 
 
        ;; For the HandlesEventDispatching interface
+       (define (lookupComponent componentName :: java.lang.String)
+         :: com.google.appinventor.components.runtime.Component
+         (let ((component (lookup-in-form-environment (string->symbol componentName) #!null)))
+           (if (instance? component com.google.appinventor.components.runtime.Component)
+               component
+               #!null)))
+
+       ;; For the HandlesEventDispatching interface
+       (define (lookupHandler componentName :: java.lang.String
+                              eventName :: java.lang.String) :: java.lang.Object
+         (lookup-in-form-environment
+          (string->symbol
+           (com.google.appinventor.components.runtime.EventDispatcher:makeFullEventName
+            componentName eventName))
+          #!null))
+
+       ;; For the HandlesEventDispatching interface
+       ;; The EventDispatcher has already checked that componentObject is
+       ;; the component bound to registeredComponentName, and looked up
+       ;; the handler with lookupHandler.  It looks them up again when
+       ;; components are added, removed or renamed, which gives us the
+       ;; late binding that we want for event handlers and component
+       ;; names.
        (define (dispatchEvent componentObject :: com.google.appinventor.components.runtime.Component
                               registeredComponentName :: java.lang.String
                               eventName :: java.lang.String
+                              handler :: java.lang.Object
                               args :: java.lang.Object[]) :: boolean
-           ;; Check that the component object that generated the event
-           ;; matches the component object associated with the
-           ;; component name that registered the event.  This is
-           ;; necessary, in part, due to the late binding that we want
-           ;; for event handlers and component names.
-           (let ((registeredObject (string->symbol registeredComponentName)))
-                 (if (is-bound-in-form-environment registeredObject)
-                     (if (eq? (lookup-in-form-environment registeredObject) componentObject)
-                        (let ((handler (lookup-handler registeredComponentName eventName)))
-                                ;; Note: This try-catch was originally part of the
-                                ;; generated handler from define-event.  It was moved
-                                ;; here because Kawa seems be unable to eval a
-                                ;; try-catch without compiling it and we can't support
-                                ;; compilation in anything (e.g. define-event) that
-                                ;; might get sent to the REPL!
-                                (try-catch
-                                 (begin
-                                   (apply handler (gnu.lists.LList:makeList args 0))
-                                   #t)
-                                 (exception java.lang.Throwable
-                                  (begin
-                                    (android-log-form (exception:getMessage))
+         ;; Note: This try-catch was originally part of the
+         ;; generated handler from define-event.  It was moved
+         ;; here because Kawa seems be unable to eval a
+         ;; try-catch without compiling it and we can't support
+         ;; compilation in anything (e.g. define-event) that
+         ;; might get sent to the REPL!
+         (try-catch
+          (begin
+            (apply handler (gnu.lists.LList:makeList args 0))
+            #t)
+          (exception java.lang.Throwable
+           (begin
+             (android-log-form (exception:getMessage))
 ;;; Comment out the line below to inhibit a stack trace on a RunTimeError
-                                    (exception:printStackTrace)
-                                    (process-exception exception)
-                                    #f))))
-                        #f)
-                     ;; else unregister event for registeredComponentName
-                     (begin
-                       (com.google.appinventor.components.runtime.EventDispatcher:unregisterEventForDelegation
-                         (as com.google.appinventor.components.runtime.HandlesEventDispatching (this))
-                         registeredComponentName eventName)
-                       #f))))
-
-       (define (lookup-handler componentName eventName)
-         (lookup-in-form-environment
-          (string->symbol
-           (com.google.appinventor.components.runtime.EventDispatcher:makeFullEventName
-            componentName eventName))))
+             (exception:printStackTrace)
+             (process-exception exception)
+             #f))))
 
        ;; This defines the Simple Form's abstract $define method. The Simple Form
        ;; implementation will call this to cause initialization.
@@ -787,6 +794,7 @@
 (module-name com.google.youngandroid.runtime)
 (module-static #t)
 
+(define-alias ComponentInvoker <com.google.appinventor.components.runtime.util.ComponentInvoker>)
 (define-alias CsvUtil <com.google.appinventor.components.runtime.util.CsvUtil>)
 (define-alias Double <java.lang.Double>)
 (define-alias Float <java.lang.Float>)
@@ -866,14 +874,82 @@
   (let ((coerced-args (coerce-args method-name arglist typelist)))
     (let ((result
            (if (all-coercible? coerced-args)
-               (apply invoke
-                      `(,(lookup-in-current-form-environment component-name)
-                        ,method-name
-                        ,@coerced-args))
+               (ComponentInvoker:invoke (lookup-in-current-form-environment component-name)
+                                        method-name
+                                        (list->arguments coerced-args))
                (generate-runtime-type-error method-name arglist))))
       ;; TODO(markf): this should probably be generalized but for now this is OK, I think
       (sanitize-component-data result))))
 
+;;; CALL-COMPONENT-METHOD-WITH-TYPE
+;;; Like call-component-method, for a component whose type is known when the
+;;; YAIL is generated.  This is a macro, so that a compiled app calls the
+;;; method directly instead of looking it up by reflection on every call, and
+;;; coerces each argument with the coercion for its type, or not at all if
+;;; the argument is a literal of that type.
+;;; For example:
+;;;  (call-component-method-with-type 'Sound1 'Sound 'Vibrate (*list-for-runtime* duration) '(number))
+;;; The types are compared as symbols, and not as identifiers, because a
+;;; procedure parameter can have the same name as a type.
+
+(define-syntax call-component-method-with-type
+  (lambda (stx)
+    (syntax-case stx (quote *list-for-runtime*)
+      ((_ (quote component-name) (quote component-type) (quote method-name)
+          (*list-for-runtime* arg ...) (quote (type ...)))
+       (= (length (syntax-object->datum #'(arg ...)))
+          (length (syntax-object->datum #'(type ...))))
+       #'(invoke-component-method-with-type component-name component-type method-name
+                                            () () ((arg type) ...)))
+      ;; Leave anything else to the reflective call, which reports the
+      ;; wrong number of arguments.
+      ((_ component-name component-type method-name arglist typelist)
+       #'(call-component-method component-name method-name arglist typelist)))))
+
+;;; Binds each argument to a variable, and its coercion to another, and then
+;;; calls the method with the coerced arguments.  The arguments are all
+;;; evaluated before any of them is coerced, as in call-component-method.
+(define-syntax invoke-component-method-with-type
+  (syntax-rules ()
+    ((_ component-name component-type method-name ((value arg) ...) ((coerced coercion) ...) ())
+     (let ((value arg) ...)
+       (let ((coerced coercion) ...)
+         (if (and (not (eq? coerced *non-coercible-value*)) ...)
+             (let ((component :: (gen-simple-component-type component-type)
+                              (lookup-in-current-form-environment 'component-name)))
+               (sanitize-component-data (invoke component 'method-name coerced ...)))
+             (generate-runtime-type-error 'method-name (list value ...))))))
+    ((_ component-name component-type method-name (value-binding ...) (coerced-binding ...)
+        ((arg type) rest ...))
+     (invoke-component-method-with-type component-name component-type method-name
+                                        (value-binding ... (value arg))
+                                        (coerced-binding ... (coerced (coerce-arg-of-type value arg type)))
+                                        (rest ...)))))
+
+;;; (coerce-arg-of-type value literal type) is (coerce-arg value 'type), with
+;;; the coercion chosen when the macro is expanded.  literal is the
+;;; expression that value was bound to; if it is a literal of the given type,
+;;; value needs no coercion.
+(define-syntax coerce-arg-of-type
+  (lambda (stx)
+    (syntax-case stx ()
+      ((_ value literal type)
+       (let ((type-name (syntax-object->datum #'type))
+             (literal-value (syntax-object->datum #'literal)))
+         (cond
+          ((or (and (eq? type-name 'number) (number? literal-value))
+               (and (eq? type-name 'text) (string? literal-value))
+               (and (eq? type-name 'boolean) (boolean? literal-value)))
+           #'value)
+          ((eq? type-name 'number) #'(coerce-to-number (sanitize-atomic value)))
+          ((eq? type-name 'text) #'(coerce-to-text (sanitize-atomic value)))
+          ((eq? type-name 'boolean) #'(coerce-to-boolean (sanitize-atomic value)))
+          ((eq? type-name 'list) #'(coerce-to-yail-list (sanitize-atomic value)))
+          ((eq? type-name 'InstantInTime) #'(coerce-to-instant (sanitize-atomic value)))
+          ((eq? type-name 'component) #'(coerce-to-component (sanitize-atomic value)))
+          ((eq? type-name 'any) #'(sanitize-atomic value))
+          (else #'(coerce-to-component-of-type (sanitize-atomic value) 'type))))))))
+
 ;;; CALL-COMPONENT-TYPE-METHOD
 ;;; Call the component method for the given component object with the given list of args,
 ;;; coercing to the given types.
@@ -894,10 +970,9 @@
                                      (list (get-display-representation possible-component)))
         (let ((result
                (if (all-coercible? coerced-args)
-                   (apply invoke
-                          `(,component-value
-                            ,method-name
-                            ,@coerced-args))
+                   (ComponentInvoker:invoke component-value
+                                            method-name
+                                            (list->arguments coerced-args))
                    (generate-runtime-type-error method-name arglist))))
           ;; TODO(markf): this should probably be generalized but for now this is OK, I think
           (sanitize-component-data result)))))
@@ -1061,7 +1136,7 @@
   (let ((coerced-arg (coerce-arg property-value property-type)))
     (android-log (format #f "coerced property value was: ~A " coerced-arg))
     (if (all-coercible? (list coerced-arg))
-        (invoke comp prop-name coerced-arg)
+        (ComponentInvoker:setProperty comp prop-name coerced-arg)
         (generate-runtime-type-error prop-name (list property-value)))))
 
 
@@ -1151,22 +1226,21 @@
   (let ((component (coerce-to-component arg)))
     (if (eq? component *non-coercible-value*)
         *non-coercible-value*
-        ;; We have to trick the Kawa compiler into not open-coding "instance?"
-        ;; or else we get a ClassCastException here.
-        (if (apply instance? (list arg (type->class type)))
+        ;; The class of each type is looked up once and remembered.
+        (if (ComponentInvoker:isComponentOfType arg type)
             component
             *non-coercible-value*))))
 
+;;; The class of the component type with the given name, or #!null if there
+;;; is none.  The classes are remembered, so only the first lookup of a type
+;;; builds its class name.
 (define (type->class type-name)
-  ;; TODO(sharon):
-  ;; Note that the following will have to change when we have the CDK and
-  ;; components may be defined in packages other than
-  ;; com.google.appinventor.components.runtime
-  (symbol-append
-   'com.google.appinventor.components.runtime.
-   (if (eq? type-name 'Screen)
-       'Form
-       type-name)))
+  (ComponentInvoker:getComponentClass type-name))
+
+;;; The arguments in the given list, as the array that ComponentInvoker
+;;; takes.
+(define (list->arguments args :: gnu.lists.LList)
+  (args:toArray))
 
 (define (coerce-to-number arg)
   (cond
@@ -1680,8 +1754,12 @@ list, use the make-yail-list constructor with no arguments.
 
 
 ;; Implements the Blocks length operation
+;; YailLists keep an index of their items, so this, and getting, setting,
+;; removing, and inserting items, don't walk the list.  The index is only
+;; kept up to date if items are added and removed through the YailList
+;; methods, so the list operations below don't use set-cdr! on yail lists.
 (define (yail-list-length yail-list)
-  (length (yail-list-contents yail-list)))
+  (*:size (as YailList yail-list)))
 
 ;; These are removed, to simplify the API to lists
 ;; ;; Implements the Blocks first operation
@@ -1726,7 +1804,7 @@ list, use the make-yail-list constructor with no arguments.
                  len
                  (get-display-representation yail-list))
          "Select list item: List index too large")
-    (list-ref (yail-list-contents yail-list) (- index 1)))))
+    (*:getObject (as YailList yail-list) (- index 1)))))
 
 
 ;; Implements the Blocks set list item operation
@@ -1745,7 +1823,7 @@ list, use the make-yail-list constructor with no arguments.
                  len
                  (get-display-representation yail-list))
          "List index too large")))
-  (set-car! (list-tail (yail-list-contents yail-list) (- index 1)) value))
+  (*:setObject (as YailList yail-list) (- index 1) value))
 
 
 
@@ -1776,8 +1854,7 @@ list, use the make-yail-list constructor with no arguments.
                    len
                    (get-display-representation yail-list))
            "List index too large"))
-      (let ((pair-pointing-to-deletion (list-tail yail-list (- index2 1))))
-        (set-cdr! pair-pointing-to-deletion (cddr pair-pointing-to-deletion))))))
+      (*:removeObject (as YailList yail-list) (- index2 1)))))
 
 
 ;; Implements the Blocks insert list item operation
@@ -1806,11 +1883,7 @@ list, use the make-yail-list constructor with no arguments.
                    (get-display-representation yail-list)
                    len+1)
            "List index too large"))
-      (let ((contents (yail-list-contents yail-list)))
-        (if (= index2 1)
-            (set-yail-list-contents! yail-list (cons item contents))
-            (let ((at-item (list-tail contents (- index2 2))))
-              (set-cdr! at-item (cons item (cdr at-item)))))))))
+      (*:insertObject (as YailList yail-list) (- index2 1) item))))
 
 ;; Extends list A by appending the elements of list B to it
 ;; Modifies list A
@@ -1820,14 +1893,7 @@ list, use the make-yail-list constructor with no arguments.
   ;; between the augmented list and the source of the added elements.
   ;; But like Python, we do a shallow copy, so that substructure is
   ;; shared.
-  (define (list-copy l)
-    (if (null? l)
-    '()
-    (cons (car l) (list-copy (cdr l)))))
-  ;; We have to operate on the yail-list itself, not the contents, because
-  ;; the contents might be empty
-  (set-cdr! (list-tail yail-list-A (length (yail-list-contents yail-list-A)))
-        (list-copy (yail-list-contents yail-list-B))))
+  (*:appendList (as YailList yail-list-A) (as YailList yail-list-B)))
 
 
 ;; Extend list A by appending the items to it
@@ -2308,13 +2374,23 @@ list, use the make-yail-list constructor with no arguments.
   (let* ((component-symbol (string->symbol component-name))
          (component-object (lookup-in-current-form-environment component-symbol)))
     (delete-from-current-form-environment component-symbol)
+    (invalidate-event-handlers)
     (when (not (eq? *this-form* #!null))
       (*:deleteComponent *this-form* component-object))))
 
 (define (rename-component old-component-name new-component-name)
   (rename-in-current-form-environment
    (string->symbol old-component-name)
-   (string->symbol new-component-name)))
+   (string->symbol new-component-name))
+  (invalidate-event-handlers))
+
+;; The EventDispatcher keeps the event handlers of each component once it
+;; has looked them up.  Tell it to look them up again when the components
+;; in the form environment change.
+(define (invalidate-event-handlers)
+  (when (not (eq? *this-form* #!null))
+    (com.google.appinventor.components.runtime.EventDispatcher:invalidateHandlers
+     (as com.google.appinventor.components.runtime.HandlesEventDispatching *this-form*))))
 
 ;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;;
 ;;;; End Support for REPL
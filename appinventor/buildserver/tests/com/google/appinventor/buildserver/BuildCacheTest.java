@@ -0,0 +1,112 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+package com.google.appinventor.buildserver;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Tests BuildCache class.
+ */
+public class BuildCacheTest extends TestCase {
+  private File tmpDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    tmpDir = Files.createTempDir();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtils.deleteDirectory(tmpDir);
+  }
+
+  public void testKeyDependsOnContentsNotLocation() throws Exception {
+    BuildCache cache = new BuildCache(new File(tmpDir, "cache"), 1024 * 1024);
+    File first = writeFile("first/Screen1.scm", "form");
+    File second = writeFile("second/Screen1.scm", "form");
+    File changed = writeFile("third/Screen1.scm", "changed form");
+
+    String firstKey = cache.newKey("yail").putFile(first).build();
+    assertEquals(firstKey, cache.newKey("yail").putFile(second).build());
+    assertFalse(firstKey.equals(cache.newKey("yail").putFile(changed).build()));
+    assertFalse(firstKey.equals(cache.newKey("classes").putFile(first).build()));
+  }
+
+  public void testDirectoryKeyIncludesFileNames() throws Exception {
+    BuildCache cache = new BuildCache(new File(tmpDir, "cache"), 1024 * 1024);
+    writeFile("assets1/kitty.png", "meow");
+    writeFile("assets2/cat.png", "meow");
+
+    assertFalse(cache.newKey("package").putDirectory(new File(tmpDir, "assets1")).build().equals(
+        cache.newKey("package").putDirectory(new File(tmpDir, "assets2")).build()));
+  }
+
+  public void testStoreAndRestoreFile() throws Exception {
+    BuildCache cache = new BuildCache(new File(tmpDir, "cache"), 1024 * 1024);
+    File apk = writeFile("build/Hello.apk", "apk contents");
+    File restored = new File(tmpDir, "restored.apk");
+
+    assertFalse(cache.restore("apk-1", restored));
+    cache.store("apk-1", apk);
+    assertTrue(cache.restore("apk-1", restored));
+
+    assertEquals("apk contents", Files.toString(restored, Charsets.UTF_8));
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+  }
+
+  public void testStoreAndRestoreDirectory() throws Exception {
+    BuildCache cache = new BuildCache(new File(tmpDir, "cache"), 1024 * 1024);
+    writeFile("classes/appinventor/Screen1.class", "screen1");
+    writeFile("classes/appinventor/Screen2.class", "screen2");
+    cache.store("classes-1", new File(tmpDir, "classes"));
+
+    File restored = new File(tmpDir, "restored");
+    restored.mkdirs();
+    assertTrue(cache.restore("classes-1", restored));
+    assertEquals("screen2",
+        Files.toString(new File(restored, "appinventor/Screen2.class"), Charsets.UTF_8));
+  }
+
+  public void testEntriesSurviveANewCacheInstance() throws Exception {
+    File cacheDir = new File(tmpDir, "cache");
+    new BuildCache(cacheDir, 1024 * 1024).store("yail-1", writeFile("Screen1.yail", "yail"));
+
+    BuildCache cache = new BuildCache(cacheDir, 1024 * 1024);
+    assertEquals(1, cache.getEntryCount());
+    assertTrue(cache.restore("yail-1", new File(tmpDir, "restored.yail")));
+  }
+
+  public void testLeastRecentlyUsedEntryIsEvicted() throws Exception {
+    BuildCache cache = new BuildCache(new File(tmpDir, "cache"), 25);
+    cache.store("a", writeFile("a", "0123456789"));
+    cache.store("b", writeFile("b", "0123456789"));
+    // Use a, so that b is the least recently used.
+    assertTrue(cache.restore("a", new File(tmpDir, "restored")));
+    cache.store("c", writeFile("c", "0123456789"));
+
+    assertEquals(2, cache.getEntryCount());
+    assertEquals(20, cache.getSizeBytes());
+    assertEquals(1, cache.getEvictionCount());
+    assertFalse(cache.restore("b", new File(tmpDir, "restored")));
+    assertTrue(cache.restore("a", new File(tmpDir, "restored")));
+    assertTrue(cache.restore("c", new File(tmpDir, "restored")));
+  }
+
+  private File writeFile(String name, String contents) throws IOException {
+    File file = new File(tmpDir, name);
+    Files.createParentDirs(file);
+    Files.write(contents, file, Charsets.UTF_8);
+    return file;
+  }
+}
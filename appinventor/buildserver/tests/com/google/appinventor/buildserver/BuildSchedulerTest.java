@@ -0,0 +1,159 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+package com.google.appinventor.buildserver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests BuildScheduler class.
+ */
+public class BuildSchedulerTest extends TestCase {
+  private static final long NO_EXPIRATION = 0;
+
+  public void testAdditionalTaskIsRejectedWithoutQueue() throws Exception {
+    // Create the BuildScheduler with capacity 10 and no queue.
+    int maxCapacity = 10;
+    BuildScheduler scheduler = new BuildScheduler(maxCapacity, 0, 0, NO_EXPIRATION);
+
+    // Execute the maximum number of tasks, which will all wait until I release them.
+    CountDownLatch signal = new CountDownLatch(1);
+    for (int i = 0; i < maxCapacity; i++) {
+      scheduler.execute("user" + i, new TaskThatWaitsForSignal(signal), new TaskThatDoesNothing());
+    }
+
+    // Now the scheduler should be at maximum capacity.
+    assertEquals(maxCapacity, scheduler.getActiveTaskCount());
+
+    // Try to execute another task. We expect it to be rejected.
+    try {
+      scheduler.execute("another", new TaskThatDoesNothing(), new TaskThatDoesNothing());
+      fail();
+    } catch (RejectedExecutionException e) {
+      // expected
+    }
+    assertEquals(1, scheduler.getRejectedTaskCount());
+
+    signal.countDown();
+  }
+
+  public void testQueuedTasksRunInTurnOrder() throws Exception {
+    BuildScheduler scheduler = new BuildScheduler(1, 10, 10, NO_EXPIRATION);
+    CountDownLatch signal = new CountDownLatch(1);
+    scheduler.execute("busy", new TaskThatWaitsForSignal(signal), new TaskThatDoesNothing());
+
+    List<String> order = Collections.synchronizedList(new ArrayList<String>());
+    CountDownLatch done = new CountDownLatch(4);
+    scheduler.execute("alice", new TaskThatRecords(order, "alice-1", done),
+        new TaskThatDoesNothing());
+    scheduler.execute("alice", new TaskThatRecords(order, "alice-2", done),
+        new TaskThatDoesNothing());
+    scheduler.execute("alice", new TaskThatRecords(order, "alice-3", done),
+        new TaskThatDoesNothing());
+    scheduler.execute("bob", new TaskThatRecords(order, "bob-1", done),
+        new TaskThatDoesNothing());
+
+    assertEquals(4, scheduler.getQueuedTaskCount());
+    List<BuildScheduler.QueuedBuild> queue = scheduler.getQueue();
+    assertEquals(4, queue.size());
+    assertEquals(1, queue.get(0).getPosition());
+    assertEquals("alice", queue.get(0).getUserName());
+    assertEquals("bob", queue.get(1).getUserName());
+    // No build has finished yet, so there is no estimate.
+    assertEquals(0, queue.get(0).getEstimatedStartMillis());
+
+    signal.countDown();
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertEquals(4, order.size());
+    assertEquals("alice-1", order.get(0));
+    assertEquals("bob-1", order.get(1));
+    assertEquals("alice-2", order.get(2));
+    assertEquals("alice-3", order.get(3));
+  }
+
+  public void testUserCannotFillQueue() throws Exception {
+    BuildScheduler scheduler = new BuildScheduler(1, 10, 2, NO_EXPIRATION);
+    CountDownLatch signal = new CountDownLatch(1);
+    scheduler.execute("busy", new TaskThatWaitsForSignal(signal), new TaskThatDoesNothing());
+
+    scheduler.execute("alice", new TaskThatDoesNothing(), new TaskThatDoesNothing());
+    scheduler.execute("alice", new TaskThatDoesNothing(), new TaskThatDoesNothing());
+    try {
+      scheduler.execute("alice", new TaskThatDoesNothing(), new TaskThatDoesNothing());
+      fail();
+    } catch (RejectedExecutionException e) {
+      // expected
+    }
+    // Other users can still queue.
+    scheduler.execute("bob", new TaskThatDoesNothing(), new TaskThatDoesNothing());
+    assertEquals(3, scheduler.getQueuedTaskCount());
+
+    signal.countDown();
+  }
+
+  public void testQueuedTaskExpires() throws Exception {
+    BuildScheduler scheduler = new BuildScheduler(1, 10, 10, 100);
+    CountDownLatch signal = new CountDownLatch(1);
+    scheduler.execute("busy", new TaskThatWaitsForSignal(signal), new TaskThatDoesNothing());
+
+    List<String> order = Collections.synchronizedList(new ArrayList<String>());
+    CountDownLatch expired = new CountDownLatch(1);
+    scheduler.execute("alice", new TaskThatRecords(order, "ran", new CountDownLatch(1)),
+        new TaskThatRecords(order, "expired", expired));
+
+    assertTrue(expired.await(10, TimeUnit.SECONDS));
+    assertEquals(0, scheduler.getQueuedTaskCount());
+    assertEquals(1, scheduler.getExpiredTaskCount());
+    assertEquals(Collections.singletonList("expired"), order);
+
+    signal.countDown();
+  }
+
+  private static class TaskThatWaitsForSignal implements Runnable {
+    private final CountDownLatch signal;
+    private TaskThatWaitsForSignal(CountDownLatch signal) {
+      this.signal = signal;
+    }
+
+    @Override
+    public void run() {
+      try {
+        // Wait for the signal.
+        signal.await();
+      } catch (InterruptedException e) {
+        // ignored
+      }
+    }
+  }
+
+  private static class TaskThatRecords implements Runnable {
+    private final List<String> record;
+    private final String name;
+    private final CountDownLatch done;
+    private TaskThatRecords(List<String> record, String name, CountDownLatch done) {
+      this.record = record;
+      this.name = name;
+      this.done = done;
+    }
+
+    @Override
+    public void run() {
+      record.add(name);
+      done.countDown();
+    }
+  }
+
+  private static class TaskThatDoesNothing implements Runnable {
+    @Override
+    public void run() {
+    }
+  }
+}
@@ -0,0 +1,112 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+package com.google.appinventor.buildserver;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Tests DexCache class.
+ *
+ */
+public class DexCacheTest extends TestCase {
+  private File tmpDir;
+  private File dxJar;
+  private CountingDexer dexer;
+
+  @Override
+  protected void setUp() throws Exception {
+    tmpDir = Files.createTempDir();
+    dxJar = writeFile("dx.jar", "dx version 1");
+    dexer = new CountingDexer();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    FileUtils.deleteDirectory(tmpDir);
+  }
+
+  public void testSecondLookupIsAHit() throws Exception {
+    DexCache cache = new DexCache(new File(tmpDir, "cache"));
+    File jar = writeFile("kawa.jar", "kawa classes");
+
+    File first = cache.getDexedJar(jar, dxJar, dexer);
+    File second = cache.getDexedJar(jar, dxJar, dexer);
+
+    assertNotNull(first);
+    assertEquals(first, second);
+    assertEquals("dexed kawa classes", Files.toString(first, Charsets.UTF_8));
+    assertEquals(1, dexer.count);
+    assertEquals(1, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+  }
+
+  public void testEntriesSurviveANewCacheInstance() throws Exception {
+    File cacheDir = new File(tmpDir, "cache");
+    File jar = writeFile("kawa.jar", "kawa classes");
+    new DexCache(cacheDir).getDexedJar(jar, dxJar, dexer);
+
+    DexCache cache = new DexCache(cacheDir);
+    cache.getDexedJar(jar, dxJar, dexer);
+    assertEquals(1, dexer.count);
+    assertEquals(1, cache.getHitCount());
+  }
+
+  public void testNewDxVersionIsAMiss() throws Exception {
+    DexCache cache = new DexCache(new File(tmpDir, "cache"));
+    File jar = writeFile("kawa.jar", "kawa classes");
+    cache.getDexedJar(jar, dxJar, dexer);
+
+    File newDxJar = writeFile("dx2.jar", "dx version 2");
+    cache.getDexedJar(jar, newDxJar, dexer);
+    assertEquals(2, dexer.count);
+    assertEquals(2, cache.getMissCount());
+  }
+
+  public void testFailedDexIsNotCached() throws Exception {
+    DexCache cache = new DexCache(new File(tmpDir, "cache"));
+    File jar = writeFile("kawa.jar", "kawa classes");
+    dexer.fail = true;
+    assertNull(cache.getDexedJar(jar, dxJar, dexer));
+
+    dexer.fail = false;
+    assertNotNull(cache.getDexedJar(jar, dxJar, dexer));
+    assertEquals(2, dexer.count);
+    assertEquals(1, new File(tmpDir, "cache").listFiles().length);
+  }
+
+  private File writeFile(String name, String content) throws IOException {
+    File file = new File(tmpDir, name);
+    Files.write(content, file, Charsets.UTF_8);
+    return file;
+  }
+
+  private static class CountingDexer implements DexCache.Dexer {
+    int count;
+    boolean fail;
+
+    @Override
+    public boolean dex(File inputJar, File outputJar) {
+      count++;
+      if (fail) {
+        return false;
+      }
+      try {
+        Files.write("dexed " + Files.toString(inputJar, Charsets.UTF_8), outputJar,
+            Charsets.UTF_8);
+        return true;
+      } catch (IOException e) {
+        return false;
+      }
+    }
+  }
+}
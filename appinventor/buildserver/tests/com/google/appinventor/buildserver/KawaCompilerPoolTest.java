@@ -0,0 +1,106 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+package com.google.appinventor.buildserver;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests KawaCompilerPool class, with real worker processes.
+ */
+public class KawaCompilerPoolTest extends TestCase {
+  private File tempDir;
+  private KawaCompilerPool pool;
+
+  @Override
+  protected void setUp() throws Exception {
+    tempDir = Files.createTempDir();
+    // A small stand-in for runtime.scm, so that the workers start quickly.
+    File runtime = writeFile("runtime.scm", "(define (twice x) (* 2 x))\n");
+    String kawaJar = new File(kawa.repl.class.getProtectionDomain().getCodeSource()
+        .getLocation().toURI()).getAbsolutePath();
+    pool = new KawaCompilerPool(1, 10, 256, kawaJar, runtime.getAbsolutePath());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    deleteDirectory(tempDir);
+  }
+
+  public void testSuccessfulCompile() throws Exception {
+    File classesDir = compileAndCheck("Good", "(define (answer) (twice 21))\n");
+    assertTrue(new File(classesDir, "Good.class").exists());
+    // The runtime, which the worker compiled when it started, is copied for every job.
+    assertTrue(new File(classesDir, "runtime.class").exists());
+  }
+
+  public void testFailingCompile() throws Exception {
+    KawaCompilerPool.CompileResult result = compile("Bad", "(define (broken x)\n");
+    assertFalse(result.finished());
+    assertTrue(result.getErrors().length() > 0);
+    assertEquals(1, pool.getRetiredWorkerCount());
+
+    // The worker is replaced in the background, and the next build gets the replacement.
+    waitForIdleWorker();
+    assertEquals(2, pool.getStartedWorkerCount());
+    assertEquals(1, pool.getLiveWorkerCount());
+    compileAndCheck("Good", "(define (answer) (twice 21))\n");
+    assertEquals(2, pool.getStartedWorkerCount());
+  }
+
+  public void testWorkerIsReused() throws Exception {
+    compileAndCheck("First", "(define (first) (twice 1))\n");
+    compileAndCheck("Second", "(define (second) (twice 2))\n");
+    assertEquals(1, pool.getStartedWorkerCount());
+    assertEquals(0, pool.getRetiredWorkerCount());
+    assertEquals(2, pool.getCompletedJobCount());
+    assertEquals(1, pool.getIdleWorkerCount());
+  }
+
+  private File compileAndCheck(String name, String source) throws Exception {
+    KawaCompilerPool.CompileResult result = compile(name, source);
+    assertTrue(result.getErrors(), result.finished());
+    return new File(tempDir, name + "-classes");
+  }
+
+  private KawaCompilerPool.CompileResult compile(String name, String source) throws Exception {
+    File sourceFile = writeFile(name + ".scm", source);
+    File classesDir = new File(tempDir, name + "-classes");
+    classesDir.mkdirs();
+    return pool.compile(classesDir, "",
+        Collections.singletonList(sourceFile.getAbsolutePath()));
+  }
+
+  private void waitForIdleWorker() throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 30000;
+    while (pool.getIdleWorkerCount() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+    assertEquals(1, pool.getIdleWorkerCount());
+  }
+
+  private File writeFile(String name, String contents) throws IOException {
+    File file = new File(tempDir, name);
+    Files.write(contents, file, Charsets.UTF_8);
+    return file;
+  }
+
+  private static void deleteDirectory(File dir) {
+    for (File file : dir.listFiles()) {
+      if (file.isDirectory()) {
+        deleteDirectory(file);
+      } else {
+        file.delete();
+      }
+    }
+    dir.delete();
+  }
+}
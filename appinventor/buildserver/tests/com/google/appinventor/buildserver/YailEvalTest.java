@@ -191,6 +191,104 @@ public class YailEvalTest extends TestCase {
   }
 
 
+  public void testTypedArgCoercions() throws Throwable {
+    // A procedure parameter may have the same name as a type.
+    String schemeString = "(let ((text \"12\")) (coerce-arg-of-type text text number))";
+    assertEquals(12, ((IntNum) scheme.eval(schemeString)).intValue());
+    schemeString = "(let ((x 7)) (coerce-arg-of-type x x text))";
+    assertEquals("7", scheme.eval(schemeString).toString());
+    schemeString = "(coerce-arg-of-type \"abc\" \"abc\" text)";
+    assertEquals("abc", scheme.eval(schemeString).toString());
+    schemeString = "(eq? (coerce-arg-of-type \"abc\" \"abc\" number) *non-coercible-value*)";
+    assertTrue((Boolean) scheme.eval(schemeString));
+  }
+
+  public void testCoercionFailureOnTypedMethodCall() throws Throwable {
+    String schemeString =
+        "(call-component-method-with-type 'Screen1 'Form 'BackgroundColor " +
+        "(*list-for-runtime* \"foo\") '(number))";
+    try {
+      scheme.eval(schemeString);
+      fail();
+    } catch (YailRuntimeError e) {
+      // expected
+    }
+  }
+
+  public void testTypedMethodCall() throws Throwable {
+    // Clock's methods are static, so the component itself isn't needed.
+    String schemeString = "(begin (add-to-current-form-environment 'Clock1 #!null) " +
+        "(call-component-method-with-type 'Clock1 'Clock 'Duration (*list-for-runtime* " +
+        "(call-component-method-with-type 'Clock1 'Clock 'MakeInstantFromMillis " +
+        "(*list-for-runtime* 1000) '(number)) " +
+        "(call-component-method-with-type 'Clock1 'Clock 'MakeInstantFromMillis " +
+        "(*list-for-runtime* (string-append \"50\" \"00\")) '(number))) " +
+        "'(InstantInTime InstantInTime)))";
+    assertEquals(4000, ((Number) scheme.eval(schemeString)).intValue());
+  }
+
+  public void testComponentInvoker() throws Throwable {
+    String schemeString = "(let ((counter (java.util.concurrent.atomic.AtomicInteger 5))) " +
+        "(com.google.appinventor.components.runtime.util.ComponentInvoker:invoke " +
+        "counter 'addAndGet (list->arguments (list (/ 6 2)))))";
+    assertEquals(8, ((Number) scheme.eval(schemeString)).intValue());
+    // A String parameter takes a Scheme string.
+    schemeString = "(com.google.appinventor.components.runtime.util.ComponentInvoker:invoke " +
+        "\"abc\" 'concat (list->arguments (list (string-append \"d\" \"e\"))))";
+    assertEquals("abcde", scheme.eval(schemeString).toString());
+    assertNull(scheme.eval("(type->class 'NoSuchComponent)"));
+    assertTrue((Boolean) scheme.eval("(eq? (type->class 'Component) (type->class 'Component))"));
+  }
+
+  // Microbenchmarks of the calls that the generic component blocks make.
+  // They report the time per call, and only check that the old and new ways
+  // of calling give the same results.
+
+  private static final int BENCHMARK_WARMUP = 20000;
+  private static final int BENCHMARK_ITERATIONS = 200000;
+
+  /*
+   * Evaluates the given expression the given number of times, with counter
+   * bound to an AtomicInteger, and returns the final value of the counter.
+   */
+  private int runBenchmark(String name, String expression) throws Throwable {
+    String loop = "(lambda (n) " +
+        "(let ((counter (java.util.concurrent.atomic.AtomicInteger 0))) " +
+        "(let loop ((i 0)) (when (< i n) " + expression + " (loop (+ i 1)))) " +
+        "(counter:get)))";
+    gnu.mapping.Procedure procedure = (gnu.mapping.Procedure) scheme.eval(loop);
+    procedure.apply1(BENCHMARK_WARMUP);
+    long start = System.nanoTime();
+    Object result = procedure.apply1(BENCHMARK_ITERATIONS);
+    long elapsed = System.nanoTime() - start;
+    System.out.println(String.format("%s: %.1f ns/op", name,
+        (double) elapsed / BENCHMARK_ITERATIONS));
+    return ((Number) result).intValue();
+  }
+
+  public void testBenchmarkMethodCall() throws Throwable {
+    int invoked = runBenchmark("invoke",
+        "(apply invoke (list counter 'addAndGet 2))");
+    int cached = runBenchmark("ComponentInvoker:invoke",
+        "(com.google.appinventor.components.runtime.util.ComponentInvoker:invoke " +
+        "counter 'addAndGet (list->arguments (list 2)))");
+    assertEquals(2 * BENCHMARK_ITERATIONS, invoked);
+    assertEquals(invoked, cached);
+  }
+
+  public void testBenchmarkTypeCheck() throws Throwable {
+    // The counter isn't a component, so it counts the checks that fail.
+    int applied = runBenchmark("instance? of a symbol-append'ed class",
+        "(if (not (apply instance? (list counter " +
+        "(symbol-append 'com.google.appinventor.components.runtime. 'Component)))) " +
+        "(counter:incrementAndGet))");
+    int cached = runBenchmark("ComponentInvoker:isComponentOfType",
+        "(if (not (com.google.appinventor.components.runtime.util.ComponentInvoker:" +
+        "isComponentOfType counter 'Component)) (counter:incrementAndGet))");
+    assertEquals(BENCHMARK_ITERATIONS, applied);
+    assertEquals(applied, cached);
+  }
+
   public void testYailEqual() throws Throwable {
     assertTrue((Boolean) scheme.eval(
     "(yail-equal? \"1\" 1)"));
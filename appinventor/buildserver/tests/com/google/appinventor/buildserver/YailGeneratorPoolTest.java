@@ -0,0 +1,110 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+package com.google.appinventor.buildserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.net.URL;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests YailGeneratorPool class.
+ */
+public class YailGeneratorPoolTest extends TestCase {
+  /**
+   * Stands in for YailGenerator. Each worker loads its own copy of this class, so the number of
+   * calls counts the calls made with one class loader.
+   */
+  public static class FakeYailGenerator {
+    private static int calls;
+
+    public static String generateYail(String formPropertiesSource, String codeblocksSource,
+        String yailPath) throws FakeYailGenerationException {
+      calls++;
+      System.out.println("output from the blocks library");
+      System.err.println("more output from the blocks library");
+      if (formPropertiesSource.equals("error")) {
+        throw new FakeYailGenerationException("empty socket");
+      }
+      if (formPropertiesSource.equals("crash")) {
+        throw new IllegalStateException("crash");
+      }
+      return yailPath + ":" + calls;
+    }
+  }
+
+  /**
+   * Stands in for YailGenerationException.
+   */
+  public static class FakeYailGenerationException extends Exception {
+    public FakeYailGenerationException(String message) {
+      super(message);
+    }
+  }
+
+  private PrintStream saveSystemOut;
+  private PrintStream saveSystemErr;
+  private ByteArrayOutputStream out;
+  private YailGeneratorPool pool;
+
+  @Override
+  protected void setUp() throws Exception {
+    saveSystemOut = System.out;
+    saveSystemErr = System.err;
+    out = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(out, true));
+    System.setErr(new PrintStream(out, true));
+    URL classes = FakeYailGenerator.class.getProtectionDomain().getCodeSource().getLocation();
+    pool = new YailGeneratorPool(classes, FakeYailGenerator.class.getName(),
+        FakeYailGenerationException.class.getName(), 1);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    System.setOut(saveSystemOut);
+    System.setErr(saveSystemErr);
+  }
+
+  private YailGeneratorPool.YailGenerationResult generate(String formPropertiesSource)
+      throws Exception {
+    return pool.submit(formPropertiesSource, "", "Screen1.yail").get();
+  }
+
+  public void testWorkerIsReused() throws Exception {
+    YailGeneratorPool.YailGenerationResult result = generate("form");
+    assertEquals(YailGeneratorPool.YailGenerationResult.Status.SUCCESS, result.getStatus());
+    assertEquals("Screen1.yail:1", result.getYail());
+    // The worker still has the same class loader, and therefore the same static state.
+    assertEquals("Screen1.yail:2", generate("form").getYail());
+  }
+
+  public void testYailGenerationError() throws Exception {
+    YailGeneratorPool.YailGenerationResult result = generate("error");
+    assertEquals(YailGeneratorPool.YailGenerationResult.Status.YAIL_GENERATION_ERROR,
+        result.getStatus());
+    assertNull(result.getYail());
+    assertEquals("empty socket", result.getMessage());
+    // A legitimate failure doesn't cost the worker its class loader.
+    assertEquals("Screen1.yail:2", generate("form").getYail());
+  }
+
+  public void testUnexpectedFailure() throws Exception {
+    YailGeneratorPool.YailGenerationResult result = generate("crash");
+    assertEquals(YailGeneratorPool.YailGenerationResult.Status.UNEXPECTED_FAILURE,
+        result.getStatus());
+    assertNull(result.getYail());
+    assertTrue(result.getMessage().contains("IllegalStateException: crash"));
+    // The worker starts over with a fresh class loader.
+    assertEquals("Screen1.yail:1", generate("form").getYail());
+  }
+
+  public void testOutputIsDiscarded() throws Exception {
+    generate("form");
+    System.out.print("build server output");
+    System.out.flush();
+    assertEquals("build server output", out.toString());
+  }
+}
@@ -59,23 +59,27 @@ public class YailGeneratorTest extends TestCase {
         "\n" +
         "(set-and-coerce-property! 'Screen1 'Scrollable #t 'boolean)\n" +
         "\n" +
-        "(set-var! StoredValue  (call-component-method 'TinyDB1 'GetValue (*list-for-runtime* " +
+        "(set-var! StoredValue  (call-component-method-with-type 'TinyDB1 " +
+        "'TinyDB 'GetValue (*list-for-runtime* " +
         "123)\n" +
         " '( text)\n" +
         ")\n" +
         ")\n" +
         "\n" +
-        " (call-component-method 'TinyDB1 'GetValue (*list-for-runtime* \"text\")\n" +
+        " (call-component-method-with-type 'TinyDB1 " +
+        "'TinyDB 'GetValue (*list-for-runtime* \"text\")\n" +
         " '( text)\n" +
         ")\n" +
         "\n" +
-        "(call-component-method 'TinyDB1 'StoreValue (*list-for-runtime* \"FavoriteNumber\" " +
+        "(call-component-method-with-type 'TinyDB1 " +
+        "'TinyDB 'StoreValue (*list-for-runtime* \"FavoriteNumber\" " +
         "(get-var MyFavoriteNumber)\n" +
         ")\n" +
         " '( text any)\n" +
         ")\n" +
         "\n" +
-        "(call-component-method 'TinyDB1 'StoreValue (*list-for-runtime* \"product\" " +
+        "(call-component-method-with-type 'TinyDB1 " +
+        "'TinyDB 'StoreValue (*list-for-runtime* \"product\" " +
         "(call-yail-primitive * (*list-for-runtime* 3 (get-var MyFavoriteNumber)\n" +
         ")\n" +
         " '( number number)\n" +
@@ -88,13 +92,15 @@ public class YailGeneratorTest extends TestCase {
     assertContainsYailFragment(yail,
         "(define-event Screen1 ErrorOccurred( component  functionName  errorNumber  message )\n" +
         " (set-this-form)\n" +
-        " (call-component-method 'TinyDB1 'StoreValue (*list-for-runtime* 123 (lexical-value " +
+        " (call-component-method-with-type 'TinyDB1 " +
+        "'TinyDB 'StoreValue (*list-for-runtime* 123 (lexical-value " +
         "message)\n" +
         ")\n" +
         " '( text any)\n" +
         ")\n" +
         "\n" +
-        "(call-component-method 'TinyDB1 'StoreValue (*list-for-runtime* \"text\" (get-property " +
+        "(call-component-method-with-type 'TinyDB1 " +
+        "'TinyDB 'StoreValue (*list-for-runtime* \"text\" (get-property " +
         "'Screen1 'BackgroundImage)\n" +
         ")\n" +
         " '( text any)\n" +
@@ -156,8 +162,10 @@ public class YailGeneratorTest extends TestCase {
   private void checkCatSurveyScreen1Yail(String yail) {
     assertContainsYailFragment(yail,
         "(def (IncrementVoteValue Tag )\n" +
-        "(call-component-method 'TinyDB1 'StoreValue (*list-for-runtime* (lexical-value Tag)\n" +
-        " (call-yail-primitive + (*list-for-runtime* (call-component-method 'TinyDB1 'GetValue " +
+        "(call-component-method-with-type 'TinyDB1 " +
+        "'TinyDB 'StoreValue (*list-for-runtime* (lexical-value Tag)\n" +
+        " (call-yail-primitive + (*list-for-runtime* (call-component-method-with-type 'TinyDB1 " +
+        "'TinyDB 'GetValue " +
         "(*list-for-runtime* (lexical-value Tag)\n" +
         ")\n" +
         " '( text)\n" +
@@ -194,7 +202,8 @@ public class YailGeneratorTest extends TestCase {
     assertContainsYailFragment(yail,
         "(def (InitializeVoteValues TagPrefix3 )\n" +
         "(foreach  Vote3  (begin (if (call-yail-primitive string=? (*list-for-runtime* " +
-        "(call-component-method 'TinyDB1 'GetValue (*list-for-runtime* ((get-var MakeTag) " +
+        "(call-component-method-with-type 'TinyDB1 " +
+        "'TinyDB 'GetValue (*list-for-runtime* ((get-var MakeTag) " +
         "(lexical-value TagPrefix3)\n" +
         " (lexical-value Vote3)\n" +
         ")\n" +
@@ -204,7 +213,8 @@ public class YailGeneratorTest extends TestCase {
         " \"\")\n" +
         " '( text text)\n" +
         " \"text=\")\n" +
-        " (begin (call-component-method 'TinyDB1 'StoreValue (*list-for-runtime* " +
+        " (begin (call-component-method-with-type 'TinyDB1 " +
+        "'TinyDB 'StoreValue (*list-for-runtime* " +
         "((get-var MakeTag) (lexical-value TagPrefix3)\n" +
         " (lexical-value Vote3)\n" +
         ")\n" +
@@ -224,13 +234,15 @@ public class YailGeneratorTest extends TestCase {
         " )\n");
     assertContainsYailFragment(yail,
         "(def (GetScore TagPrefix2 )\n" +
-        " (call-yail-primitive - (*list-for-runtime* (call-component-method 'TinyDB1 'GetValue " +
+        " (call-yail-primitive - (*list-for-runtime* (call-component-method-with-type 'TinyDB1 " +
+        "'TinyDB 'GetValue " +
         "(*list-for-runtime* ((get-var MakeTag) (lexical-value TagPrefix2)\n" +
         " \"Yes\")\n" +
         ")\n" +
         " '( text)\n" +
         ")\n" +
-        " (call-component-method 'TinyDB1 'GetValue (*list-for-runtime* ((get-var MakeTag) " +
+        " (call-component-method-with-type 'TinyDB1 " +
+        "'TinyDB 'GetValue (*list-for-runtime* ((get-var MakeTag) " +
         "(lexical-value TagPrefix2)\n" +
         " \"No\")\n" +
         ")\n" +
@@ -48,6 +48,13 @@ public class PropertyTypeConstants {
    */
   public static final String PROPERTY_TYPE_ACCELEROMETER_SENSITIVITY = "accelerometer_sensitivity";
 
+  /**
+   * Web cache modes.
+   * @see
+   * com.google.appinventor.client.editor.youngandroid.properties.YoungAndroidWebCacheModeChoicePropertyEditor
+   */
+  public static final String PROPERTY_TYPE_WEB_CACHE_MODE = "web_cache_mode";
+
   /**
    * Button shapes.
    * @see
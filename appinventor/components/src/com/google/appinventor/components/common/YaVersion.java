@@ -235,8 +235,17 @@ public class YaVersion {
   // - NOTIFIER_COMPONENT_VERSION was incremented to 3.
   // For YOUNG_ANDROID_VERSION 82:
   // - ACCELEROMETERSENSOR_COMPONENT_VERSION was incremented to 3;
-
-    public static final int YOUNG_ANDROID_VERSION = 82;
+  // For YOUNG_ANDROID_VERSION 83:
+  // - WEB_COMPONENT_VERSION was incremented to 4.
+  // For YOUNG_ANDROID_VERSION 84:
+  // - TINYDB_COMPONENT_VERSION was incremented to 2.
+  // For YOUNG_ANDROID_VERSION 85:
+  // - BLUETOOTHCLIENT_COMPONENT_VERSION was incremented to 6.
+  // - BLUETOOTHSERVER_COMPONENT_VERSION was incremented to 6.
+  // For YOUNG_ANDROID_VERSION 86:
+  // - NXT_DIRECT_COMMANDS_COMPONENT_VERSION was incremented to 2.
+
+    public static final int YOUNG_ANDROID_VERSION = 86;
 
   // ............................... Blocks Language Version Number ...............................
 
@@ -345,7 +354,10 @@ public class YaVersion {
   // - The BluetoothClient.DelimiterByte property was added.
   // For BLUETOOTHCLIENT_COMPONENT_VERSION 5:
   // - The BluetoothClient.Secure property was added.
-  public static final int BLUETOOTHCLIENT_COMPONENT_VERSION = 5;
+  // For BLUETOOTHCLIENT_COMPONENT_VERSION 6:
+  // - The BluetoothClient.ReceiveInBackground, DataReceivedThreshold and DataReceivedInterval
+  //   properties and the BluetoothClient.DataReceived event were added.
+  public static final int BLUETOOTHCLIENT_COMPONENT_VERSION = 6;
 
   // For BLUETOOTHSERVER_COMPONENT_VERSION 2:
   // - The BluetoothServer.Enabled property was added.
@@ -355,7 +367,10 @@ public class YaVersion {
   // - The BluetoothServer.DelimiterByte property was added.
   // For BLUETOOTHSERVER_COMPONENT_VERSION 5:
   // - The BluetoothServer.Secure property was added.
-  public static final int BLUETOOTHSERVER_COMPONENT_VERSION = 5;
+  // For BLUETOOTHSERVER_COMPONENT_VERSION 6:
+  // - The BluetoothServer.ReceiveInBackground, DataReceivedThreshold and DataReceivedInterval
+  //   properties and the BluetoothServer.DataReceived event were added.
+  public static final int BLUETOOTHSERVER_COMPONENT_VERSION = 6;
 
   // For BUTTON_COMPONENT_VERSION 2:
   // - The Alignment property was renamed to TextAlignment.
@@ -475,7 +490,9 @@ public class YaVersion {
 
   public static final int NXT_COLORSENSOR_COMPONENT_VERSION = 1;
 
-  public static final int NXT_DIRECT_COMMANDS_COMPONENT_VERSION = 1;
+  // For NXT_DIRECT_COMMANDS_COMPONENT_VERSION 2:
+  // - The CommandsSent, RepliesReceived, and AverageRoundTripTime properties were added.
+  public static final int NXT_DIRECT_COMMANDS_COMPONENT_VERSION = 2;
 
   public static final int NXT_DRIVE_COMPONENT_VERSION = 1;
 
@@ -586,7 +603,9 @@ public class YaVersion {
   //   instead of a boolean
   public static final int TEXTING_COMPONENT_VERSION = 3;
 
-  public static final int TINYDB_COMPONENT_VERSION = 1;
+  // For TINYDB_COMPONENT_VERSION 2:
+  // - The Namespace property and the StoreValues method were added.
+  public static final int TINYDB_COMPONENT_VERSION = 2;
 
   // For TINYWEBDB_COMPONENT_VERSION 2:
   // - The TinyWebDB.ShowAlert method was removed. Notifier.ShowAlert should be used instead.
@@ -640,7 +659,9 @@ public class YaVersion {
   //   method was added.
   // For WEB_COMPONENT_VERSION 3:
   // - PUT and DELETE Actions added (PutText, PutTextWithEncoding, PutFile, and Delete).
-  public static final int WEB_COMPONENT_VERSION = 3;
+  // For WEB_COMPONENT_VERSION 4:
+  // - The CacheMode, CacheHits and CacheMisses properties were added.
+  public static final int WEB_COMPONENT_VERSION = 4;
 
   // For WEBVIEWER_COMPONENT_VERSION 2:
   // - The CanGoForward and CanGoBack methods were added
@@ -96,6 +96,25 @@ public final class Ball extends Sprite {
         <= radius * radius;
   }
 
+  @Override
+  double rowLeft(double qy) {
+    double halfWidth = rowHalfWidth(qy);
+    return Double.isNaN(halfWidth) ? Double.POSITIVE_INFINITY : xLeft + radius - halfWidth;
+  }
+
+  @Override
+  double rowRight(double qy) {
+    double halfWidth = rowHalfWidth(qy);
+    return Double.isNaN(halfWidth) ? Double.NEGATIVE_INFINITY : xLeft + radius + halfWidth;
+  }
+
+  // Returns half the width of the ball on the row at qy, or NaN if the row
+  // doesn't cross the ball.
+  private double rowHalfWidth(double qy) {
+    double dy = qy - (yTop + radius);
+    return Math.sqrt(radius * radius - dy * dy);
+  }
+
 
   // Additional properties
 
@@ -44,6 +44,10 @@ public final class BluetoothClient extends BluetoothConnectionBase {
   private final List<Component> attachedComponents = new ArrayList<Component>();
   private Set<Integer> acceptableDeviceClasses;
 
+  // The transport shared by the LEGO MINDSTORMS NXT components that use this
+  // client, created when one of them first needs it.
+  private NxtTransport nxtTransport;
+
   /**
    * Creates a new BluetoothClient.
    */
@@ -82,6 +86,17 @@ public final class BluetoothClient extends BluetoothConnectionBase {
     return true;
   }
 
+  /**
+   * Returns the transport for the LEGO MINDSTORMS NXT components that use
+   * this client.
+   */
+  NxtTransport getNxtTransport() {
+    if (nxtTransport == null) {
+      nxtTransport = new NxtTransport(this);
+    }
+    return nxtTransport;
+  }
+
   void detachComponent(Component component) {
     attachedComponents.remove(component);
     if (attachedComponents.isEmpty()) {
@@ -17,6 +17,8 @@ import com.google.appinventor.components.runtime.util.ErrorMessages;
 import com.google.appinventor.components.runtime.util.SdkLevel;
 import com.google.appinventor.components.runtime.util.YailList;
 
+import android.os.Handler;
+import android.os.SystemClock;
 import android.util.Log;
 
 import java.io.BufferedInputStream;
@@ -29,6 +31,7 @@ import java.io.UnsupportedEncodingException;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * An abstract base class for the BluetoothClient and BluetoothServer
@@ -46,13 +49,30 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
 
   private ByteOrder byteOrder;
   private String encoding;
-  private byte delimiter;
+  private volatile byte delimiter;
   protected boolean secure;
 
   private Object connectedBluetoothSocket;
   private InputStream inputStream;
   private OutputStream outputStream;
 
+  // The size of the buffer that bytes received in the background are kept in.
+  private static final int RECEIVE_BUFFER_SIZE = 16384;
+  // The most bytes the receiving thread reads from the connection at once.
+  private static final int RECEIVE_CHUNK_SIZE = 1024;
+
+  private boolean receiveInBackground;
+  private volatile int dataReceivedThreshold;
+  private volatile int dataReceivedInterval;
+  // The bytes received in the background, while a connection that was made
+  // with ReceiveInBackground set is open; otherwise null.
+  private volatile BluetoothReceiveBuffer receiveBuffer;
+  private Handler androidUIHandler;
+  // Whether a DataReceived event has been posted to the UI thread and hasn't
+  // been dispatched yet.
+  private final AtomicBoolean dataReceivedPending = new AtomicBoolean();
+  private volatile long lastDataReceivedTime;
+
   /**
    * Creates a new BluetoothConnectionBase.
    */
@@ -69,6 +89,9 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
     CharacterEncoding("UTF-8");
     DelimiterByte(0);
     Secure(true);
+    ReceiveInBackground(false);
+    DataReceivedThreshold(0);
+    DataReceivedInterval(100);
   }
 
   /**
@@ -165,6 +188,9 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
         BluetoothReflection.getInputStream(connectedBluetoothSocket));
     outputStream = new BufferedOutputStream(
         BluetoothReflection.getOutputStream(connectedBluetoothSocket));
+    if (receiveInBackground) {
+      startReceiving();
+    }
     fireAfterConnectEvent();
   }
 
@@ -173,6 +199,12 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
    */
   @SimpleFunction(description = "Disconnect from the connected Bluetooth device.")
   public final void Disconnect() {
+    if (receiveBuffer != null) {
+      // Closing the buffer tells the receiving thread that the errors it
+      // gets when the socket is closed are expected.
+      receiveBuffer.close();
+      receiveBuffer = null;
+    }
     if (connectedBluetoothSocket != null) {
       fireBeforeDisconnectEvent();
       try {
@@ -300,6 +332,89 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
     return delimiter;
   }
 
+  /**
+   * Returns whether bytes are received in the background.
+   */
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR,
+      description = "Whether bytes are received in the background, as soon as they arrive. " +
+      "When this is true, the DataReceived event is triggered as data arrives, and the " +
+      "Receive blocks return data that has already arrived instead of waiting for it. " +
+      "Changes take effect the next time a connection is made.")
+  public boolean ReceiveInBackground() {
+    return receiveInBackground;
+  }
+
+  /**
+   * Specifies whether bytes are received in the background.  Changes take
+   * effect the next time a connection is made.
+   *
+   * @param receiveInBackground {@code true} to receive bytes in the
+   *        background
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN,
+      defaultValue = "False")
+  @SimpleProperty
+  public void ReceiveInBackground(boolean receiveInBackground) {
+    this.receiveInBackground = receiveInBackground;
+  }
+
+  /**
+   * Returns the number of received bytes that triggers the DataReceived
+   * event, or 0 if only the delimiter byte triggers it.
+   */
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR,
+      description = "When ReceiveInBackground is true, the DataReceived event is triggered " +
+      "when the delimiter byte is received, or when at least this many bytes are waiting to " +
+      "be received. If this is 0, only the delimiter byte triggers the event.")
+  public int DataReceivedThreshold() {
+    return dataReceivedThreshold;
+  }
+
+  /**
+   * Specifies the number of received bytes that triggers the DataReceived
+   * event, or 0 if only the delimiter byte triggers it.
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+      defaultValue = "0")
+  @SimpleProperty
+  public void DataReceivedThreshold(int threshold) {
+    dataReceivedThreshold = Math.max(threshold, 0);
+  }
+
+  /**
+   * Returns the minimum time between two DataReceived events, in
+   * milliseconds.
+   */
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR,
+      description = "The minimum time between two DataReceived events, in milliseconds. " +
+      "Data that arrives sooner is reported by the next event.")
+  public int DataReceivedInterval() {
+    return dataReceivedInterval;
+  }
+
+  /**
+   * Specifies the minimum time between two DataReceived events, in
+   * milliseconds.
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_NON_NEGATIVE_INTEGER,
+      defaultValue = "100")
+  @SimpleProperty
+  public void DataReceivedInterval(int interval) {
+    dataReceivedInterval = Math.max(interval, 0);
+  }
+
+  /**
+   * Indicates that bytes have been received in the background.
+   *
+   * @param numberOfBytes the number of bytes waiting to be received
+   */
+  @SimpleEvent(description = "Indicates that data has been received in the background, when " +
+      "ReceiveInBackground is true. numberOfBytes is the number of bytes that can be received " +
+      "without waiting.")
+  public void DataReceived(int numberOfBytes) {
+    EventDispatcher.dispatchEvent(this, "DataReceived", numberOfBytes);
+  }
+
   /**
    * Converts the given text to bytes and writes them to the output stream.
    *
@@ -536,6 +651,10 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
       return 0;
     }
 
+    BluetoothReceiveBuffer buffer = receiveBuffer;
+    if (buffer != null) {
+      return buffer.available();
+    }
     try {
       return inputStream.available();
     } catch (IOException e) {
@@ -558,7 +677,7 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
   public String ReceiveText(int numberOfBytes) {
     byte[] bytes = read("ReceiveText", numberOfBytes);
     try {
-      if (numberOfBytes < 0) {
+      if (numberOfBytes < 0 && bytes.length > 0) {
         // bytes contains a trailing delimiter byte that we ignore when converting to String.
         return new String(bytes, 0, bytes.length - 1, encoding);
       } else {
@@ -734,6 +853,9 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
    * If numberOfBytes is negative, this method reads until a delimiter byte
    * value is read. The delimiter byte is included in the returned array.
    *
+   * If bytes are received in the background, this method doesn't wait: it
+   * returns an empty array if the bytes haven't all arrived yet.
+   *
    * @param functionName the name of the SimpleFunction calling this method
    * @param numberOfBytes the number of bytes to read; a negative number
    *        indicates to read until a delimiter byte value is read
@@ -745,6 +867,14 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
       return new byte[0];
     }
 
+    BluetoothReceiveBuffer receivedBytes = receiveBuffer;
+    if (receivedBytes != null) {
+      byte[] bytes = (numberOfBytes >= 0)
+          ? receivedBytes.read(numberOfBytes)
+          : receivedBytes.readThrough(delimiter);
+      return (bytes != null) ? bytes : new byte[0];
+    }
+
     ByteArrayOutputStream buffer = new ByteArrayOutputStream();
 
     if (numberOfBytes >= 0) {
@@ -792,6 +922,104 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
     return buffer.toByteArray();
   }
 
+  /*
+   * Starts a thread that reads bytes from the connection into a new receive
+   * buffer, until the connection is closed.
+   */
+  private void startReceiving() {
+    if (androidUIHandler == null) {
+      androidUIHandler = new Handler();
+    }
+    final BluetoothReceiveBuffer buffer = new BluetoothReceiveBuffer(RECEIVE_BUFFER_SIZE);
+    final InputStream in = inputStream;
+    receiveBuffer = buffer;
+    Thread thread = new Thread(new Runnable() {
+      public void run() {
+        byte[] chunk = new byte[RECEIVE_CHUNK_SIZE];
+        try {
+          while (true) {
+            int count = in.read(chunk);
+            if (count == -1) {
+              postReceiveError(buffer, ErrorMessages.ERROR_BLUETOOTH_END_OF_STREAM);
+              return;
+            }
+            boolean delimited = false;
+            for (int i = 0; i < count; i++) {
+              if (chunk[i] == delimiter) {
+                delimited = true;
+                break;
+              }
+            }
+            int written = 0;
+            while (true) {
+              written += buffer.write(chunk, written, count - written);
+              int available = buffer.available();
+              int threshold = dataReceivedThreshold;
+              if (delimited || (threshold > 0 && available >= threshold)
+                  || available == buffer.capacity()) {
+                // A full buffer triggers the event too, so that the app reads
+                // some bytes even if no delimiter fits in the buffer.
+                scheduleDataReceived(buffer);
+              }
+              if (written == count) {
+                break;
+              }
+              if (!buffer.awaitSpace()) {
+                return;
+              }
+            }
+          }
+        } catch (IOException e) {
+          postReceiveError(buffer, ErrorMessages.ERROR_BLUETOOTH_UNABLE_TO_READ, e.getMessage());
+        } catch (InterruptedException e) {
+          // The app is going away.
+        }
+      }
+    }, logTag + " receiver");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /*
+   * Posts a DataReceived event to the UI thread, unless one is already
+   * posted, no sooner than DataReceivedInterval after the last one.
+   */
+  private void scheduleDataReceived(final BluetoothReceiveBuffer buffer) {
+    if (!dataReceivedPending.compareAndSet(false, true)) {
+      return;
+    }
+    long delay = lastDataReceivedTime + dataReceivedInterval - SystemClock.uptimeMillis();
+    androidUIHandler.postDelayed(new Runnable() {
+      public void run() {
+        dataReceivedPending.set(false);
+        lastDataReceivedTime = SystemClock.uptimeMillis();
+        // The connection may have been closed since the event was posted.
+        int available = buffer.available();
+        if (buffer == receiveBuffer && available > 0) {
+          DataReceived(available);
+        }
+      }
+    }, Math.max(delay, 0));
+  }
+
+  /*
+   * Reports an error of the receiving thread on the UI thread, unless it
+   * happened because the connection was closed.
+   */
+  private void postReceiveError(final BluetoothReceiveBuffer buffer, final int errorNumber,
+      final Object... messageArgs) {
+    if (buffer.isClosed()) {
+      return;
+    }
+    androidUIHandler.post(new Runnable() {
+      public void run() {
+        if (buffer == receiveBuffer) {
+          bluetoothError("ReceiveInBackground", errorNumber, messageArgs);
+        }
+      }
+    });
+  }
+
   // OnDestroyListener implementation
 
   @Override
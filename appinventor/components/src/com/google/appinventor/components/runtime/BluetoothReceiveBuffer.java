@@ -0,0 +1,116 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+
+package com.google.appinventor.components.runtime;
+
+/**
+ * A fixed-size ring buffer of the bytes that a {@link BluetoothConnectionBase}
+ * has received in the background, but that the app hasn't read yet.
+ *
+ * <p>One thread writes the bytes it reads from the connection, and waits
+ * while the buffer is full.  The app reads whole values from the buffer,
+ * and never waits: if the bytes of a value haven't all arrived, nothing is
+ * read.</p>
+ */
+final class BluetoothReceiveBuffer {
+  private final byte[] bytes;
+
+  // The rest is guarded by the buffer.
+
+  // The index of the oldest byte.
+  private int start;
+  // The number of bytes in the buffer.
+  private int size;
+  private boolean closed;
+
+  BluetoothReceiveBuffer(int capacity) {
+    bytes = new byte[capacity];
+  }
+
+  int capacity() {
+    return bytes.length;
+  }
+
+  synchronized int available() {
+    return size;
+  }
+
+  synchronized boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Copies as many of the given bytes into the buffer as fit, without
+   * waiting.  Nothing is copied once the buffer is closed.
+   *
+   * @return the number of bytes that were copied
+   */
+  synchronized int write(byte[] src, int offset, int length) {
+    if (closed) {
+      return 0;
+    }
+    int count = Math.min(length, bytes.length - size);
+    int end = (start + size) % bytes.length;
+    // The bytes may wrap around the end of the array.
+    int firstPart = Math.min(count, bytes.length - end);
+    System.arraycopy(src, offset, bytes, end, firstPart);
+    System.arraycopy(src, offset + firstPart, bytes, 0, count - firstPart);
+    size += count;
+    return count;
+  }
+
+  /**
+   * Waits until the buffer isn't full, or is closed.
+   *
+   * @return false if the buffer was closed
+   */
+  synchronized boolean awaitSpace() throws InterruptedException {
+    while (!closed && size == bytes.length) {
+      wait();
+    }
+    return !closed;
+  }
+
+  /**
+   * Removes and returns the given number of bytes, or returns null and
+   * removes nothing if fewer bytes are in the buffer.
+   */
+  synchronized byte[] read(int count) {
+    if (count > size) {
+      return null;
+    }
+    byte[] result = new byte[count];
+    int firstPart = Math.min(count, bytes.length - start);
+    System.arraycopy(bytes, start, result, 0, firstPart);
+    System.arraycopy(bytes, 0, result, firstPart, count - firstPart);
+    start = (start + count) % bytes.length;
+    size -= count;
+    notifyAll();
+    return result;
+  }
+
+  /**
+   * Removes and returns the bytes up to and including the first occurrence
+   * of the given delimiter, or returns null and removes nothing if the
+   * delimiter isn't in the buffer.
+   */
+  synchronized byte[] readThrough(byte delimiter) {
+    for (int i = 0; i < size; i++) {
+      if (bytes[(start + i) % bytes.length] == delimiter) {
+        return read(i + 1);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Discards the bytes in the buffer, and makes the writer stop waiting.
+   */
+  synchronized void close() {
+    closed = true;
+    size = 0;
+    notifyAll();
+  }
+}
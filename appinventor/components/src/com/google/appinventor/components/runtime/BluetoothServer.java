@@ -14,7 +14,6 @@ import com.google.appinventor.components.annotations.SimpleProperty;
 import com.google.appinventor.components.annotations.UsesPermissions;
 import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.common.YaVersion;
-import com.google.appinventor.components.runtime.util.AsynchUtil;
 import com.google.appinventor.components.runtime.util.BluetoothReflection;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
 import com.google.appinventor.components.runtime.util.SdkLevel;
@@ -111,7 +110,9 @@ public final class BluetoothServer extends BluetoothConnectionBase {
       return;
     }
 
-    AsynchUtil.runAsynchronously(new Runnable() {
+    // accept blocks until a client connects, which may be never, so it gets a
+    // thread of its own rather than one from the AsynchUtil pool.
+    Thread thread = new Thread(new Runnable() {
       public void run() {
         Object acceptedBluetoothSocket = null;
 
@@ -153,7 +154,9 @@ public final class BluetoothServer extends BluetoothConnectionBase {
           });
         }
       }
-    });
+    }, logTag + " accepter");
+    thread.setDaemon(true);
+    thread.start();
   }
 
   /**
@@ -32,6 +32,7 @@ import android.graphics.PorterDuff;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.drawable.BitmapDrawable;
+import android.os.Handler;
 import android.text.TextUtils;
 import android.util.Log;
 import android.view.GestureDetector;
@@ -117,6 +118,12 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
   // sorted by increasing sprite.Z().
   private final List<Sprite> sprites;
 
+  // Finds the sprites that may be colliding with a sprite that has changed.
+  private final SpriteGrid spriteGrid = new SpriteGrid();
+
+  // Moves the enabled sprites, once per frame.
+  private final SpriteClock spriteClock;
+
   // Handle touches and drags
   private final MotionEventParser motionEventParser;
 
@@ -655,6 +662,7 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     FontSize(Component.FONT_DEFAULT_SIZE);
 
     sprites = new LinkedList<Sprite>();
+    spriteClock = new SpriteClock(this, new Handler());
     motionEventParser = new MotionEventParser();
     mGestureDetector = new GestureDetector(context, new FlingGestureListener());
   }
@@ -695,12 +703,14 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     for (int i = 0; i < sprites.size(); i++) {
       if (sprites.get(i).Z() > sprite.Z()) {
         sprites.add(i, sprite);
+        spriteGrid.setSprites(sprites);
         return;
       }
     }
 
     // Add to end if it has the highest Z value.
     sprites.add(sprite);
+    spriteGrid.setSprites(sprites);
   }
 
   /**
@@ -710,6 +720,7 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
    */
   void removeSprite(Sprite sprite) {
     sprites.remove(sprite);
+    spriteGrid.setSprites(sprites);
   }
 
   /**
@@ -719,7 +730,8 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
    * @param Sprite the Sprite whose Z property has changed
    */
   void changeSpriteLayer(Sprite sprite) {
-    removeSprite(sprite);
+    // Not removeSprite(), so that spriteGrid keeps the sprite's place.
+    sprites.remove(sprite);
     addSprite(sprite);
     view.invalidate();
   }
@@ -762,6 +774,44 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     findSpriteCollisions(sprite);
   }
 
+  /**
+   * Indicates that sprites have moved in the animation loop, triggering a
+   * single invalidation of the view and a check for collisions of each of
+   * them.
+   *
+   * @param movedSprites the sprites that have moved in this frame
+   */
+  void registerChanges(List<Sprite> movedSprites) {
+    if (movedSprites.isEmpty()) {
+      return;
+    }
+    view.invalidate();
+    for (Sprite sprite : movedSprites) {
+      findSpriteCollisions(sprite);
+    }
+  }
+
+  // Methods for moving sprites
+
+  /**
+   * Starts moving the given sprite on each of its intervals, or restarts the
+   * wait for its next move if it is already moving.
+   *
+   * @param sprite the sprite that has been enabled
+   */
+  void scheduleSprite(Sprite sprite) {
+    spriteClock.schedule(sprite);
+  }
+
+  /**
+   * Stops moving the given sprite.
+   *
+   * @param sprite the sprite that has been disabled
+   */
+  void unscheduleSprite(Sprite sprite) {
+    spriteClock.unschedule(sprite);
+  }
+
 
   // Methods for detecting collisions
 
@@ -781,7 +831,12 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
    * @param movedSprite the sprite that has just changed position
    */
   protected void findSpriteCollisions(Sprite movedSprite) {
-    for (Sprite sprite : sprites) {
+    // Only the sprites near movedSprite, or registered as colliding with it,
+    // can start or stop colliding with it.  They are returned in the order of
+    // sprites, so the events are raised in the same order as if every sprite
+    // were checked.
+    spriteGrid.update(movedSprite);
+    for (Sprite sprite : spriteGrid.getCandidates(movedSprite)) {
       if (sprite != movedSprite) {
         // Check whether we already raised an event for their collision.
         if (movedSprite.CollidingWith(sprite)) {
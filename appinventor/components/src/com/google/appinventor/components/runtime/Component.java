@@ -39,6 +39,13 @@ public interface Component {
   static final int ACCELEROMETER_SENSITIVITY_MODERATE = 2;
   static final int ACCELEROMETER_SENSITIVITY_STRONG = 3;
 
+  /*
+   * Web cache modes.
+   */
+  static final int WEB_CACHE_MODE_OFF = 0;
+  static final int WEB_CACHE_MODE_NORMAL = 1;
+  static final int WEB_CACHE_MODE_PREFER_CACHE = 2;
+
   /*
    * Button Styles.
    */
@@ -9,6 +9,7 @@ import android.util.Log;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Set;
 
@@ -55,9 +56,23 @@ public class EventDispatcher {
     }
   }
 
+  /*
+   * The handler of a registered event, as resolved by the dispatchDelegate.
+   */
+  private static final class EventHandler {
+    private final String componentId;
+    private final Object handler;
+
+    private EventHandler(String componentId, Object handler) {
+      this.componentId = componentId;
+      this.handler = handler;
+    }
+  }
+
   /*
    * Each EventRegistry is associated with one dispatchDelegate.
-   * It contains all the event closures for a single form.
+   * It contains all the event closures for a single form, and a table of
+   * their resolved handlers.
    */
   private static final class EventRegistry {
     private final HandlesEventDispatching dispatchDelegate;
@@ -69,6 +84,17 @@ public class EventDispatcher {
     private final HashMap<String, Set<EventClosure>> eventClosuresMap =
         new HashMap<String, Set<EventClosure>>();
 
+    // Mapping of components to the handlers of their events, by event name.
+    // This lets us dispatch an event with two hash lookups, instead of asking
+    // the dispatchDelegate to look up every component that registered a
+    // handler for an event of the same name.
+    private final Map<Component, Map<String, EventHandler>> handlerTable =
+        new IdentityHashMap<Component, Map<String, EventHandler>>();
+
+    // Whether handlerTable has to be built again before it is used, because
+    // the components known to the dispatchDelegate changed.
+    private boolean handlerTableStale = true;
+
     EventRegistry(HandlesEventDispatching dispatchDelegate) {
       this.dispatchDelegate = dispatchDelegate;
     }
@@ -115,6 +141,11 @@ public class EventDispatcher {
     }
 
     eventClosures.add(new EventClosure(componentId, eventName));
+    // The handler may be a new definition, so resolve it even if the event
+    // closure was already registered.
+    if (!er.handlerTableStale) {
+      resolveHandler(er, componentId, eventName);
+    }
     if (DEBUG) {
       Log.i("EventDispatcher", "Registered event closure for " +
           componentId + "." + eventName);
@@ -150,6 +181,12 @@ public class EventDispatcher {
       }
       eventClosures.remove(eventClosure);
     }
+    for (Map<String, EventHandler> handlers : er.handlerTable.values()) {
+      EventHandler eventHandler = handlers.get(eventName);
+      if (eventHandler != null && eventHandler.componentId.equals(componentId)) {
+        handlers.remove(eventName);
+      }
+    }
   }
 
   /**
@@ -160,6 +197,24 @@ public class EventDispatcher {
   public static void unregisterAllEventsForDelegation() {
     for (EventRegistry er : mapDispatchDelegateToEventRegistry.values()) {
       er.eventClosuresMap.clear();
+      er.handlerTable.clear();
+      er.handlerTableStale = true;
+    }
+  }
+
+  /**
+   * Notes that components were added to, removed from or renamed in the
+   * given dispatchDelegate, so that the handlers of its events have to be
+   * resolved again.
+   *
+   * @param dispatchDelegate  object responsible for dispatching the events
+   */
+  // Don't delete this method. It's called from runtime.scm.
+  public static void invalidateHandlers(HandlesEventDispatching dispatchDelegate) {
+    EventRegistry er = mapDispatchDelegateToEventRegistry.get(dispatchDelegate);
+    if (er != null) {
+      er.handlerTable.clear();
+      er.handlerTableStale = true;
     }
   }
 
@@ -174,6 +229,7 @@ public class EventDispatcher {
     EventRegistry er = removeEventRegistry(dispatchDelegate);
     if (er != null) {
       er.eventClosuresMap.clear();
+      er.handlerTable.clear();
     }
   }
 
@@ -192,42 +248,58 @@ public class EventDispatcher {
     HandlesEventDispatching dispatchDelegate = component.getDispatchDelegate();
     if (dispatchDelegate.canDispatchEvent(component, eventName)) {
       EventRegistry er = getEventRegistry(dispatchDelegate);
-      Set<EventClosure> eventClosures = er.eventClosuresMap.get(eventName);
-      if (eventClosures != null && eventClosures.size() > 0) {
-        dispatched = delegateDispatchEvent(dispatchDelegate, eventClosures, component, args);
+      if (er.handlerTableStale) {
+        buildHandlerTable(er);
+      }
+      Map<String, EventHandler> handlers = er.handlerTable.get(component);
+      EventHandler eventHandler = (handlers == null) ? null : handlers.get(eventName);
+      if (eventHandler != null) {
+        dispatched = dispatchDelegate.dispatchEvent(component, eventHandler.componentId,
+            eventName, eventHandler.handler, args);
+        if (DEBUG && dispatched) {
+          Log.i("EventDispatcher", "Successfully dispatched event " +
+              eventHandler.componentId + "." + eventName);
+        }
       }
     }
     return dispatched;
   }
 
   /**
-   * Delegates the dispatch of an event to the dispatch delegate.
-   *
-   * @param eventClosures set of event closures matching the event name
-   * @param component the component that generated the event
-   * @param args  arguments to event handler
+   * Resolves the handlers of all the registered event closures.
    */
-  private static boolean delegateDispatchEvent(HandlesEventDispatching dispatchDelegate,
-                                               Set<EventClosure> eventClosures,
-                                               Component component, Object... args) {
-    // The event closures set will contain all event closures matching the event name.
-    // We depend on the delegate's dispatchEvent method to check the registered event closure and
-    // only dispatch the event if the registered component matches the component that generated the
-    // event.  This should only be true for one (or zero) of the closures.
-    boolean dispatched = false;
-    for (EventClosure eventClosure : eventClosures) {
-      if (dispatchDelegate.dispatchEvent(component,
-                                         eventClosure.componentId,
-                                         eventClosure.eventName,
-                                         args)) {
-        if (DEBUG) {
-          Log.i("EventDispatcher", "Successfully dispatched event " +
-              eventClosure.componentId + "." + eventClosure.eventName);
-        }
-        dispatched = true;  // break here or keep iterating through loop?
+  private static void buildHandlerTable(EventRegistry er) {
+    er.handlerTable.clear();
+    for (Set<EventClosure> eventClosures : er.eventClosuresMap.values()) {
+      for (EventClosure eventClosure : eventClosures) {
+        resolveHandler(er, eventClosure.componentId, eventClosure.eventName);
       }
     }
-    return dispatched;
+    er.handlerTableStale = false;
+  }
+
+  /**
+   * Resolves the component and handler of an event closure, and adds the
+   * handler to the handler table.  An event closure whose component or
+   * handler isn't defined yet is left out of the table; it is resolved again
+   * when the table is rebuilt after components change.
+   */
+  private static void resolveHandler(EventRegistry er, String componentId, String eventName) {
+    Component component = er.dispatchDelegate.lookupComponent(componentId);
+    Object handler = er.dispatchDelegate.lookupHandler(componentId, eventName);
+    if (component == null || handler == null) {
+      if (DEBUG) {
+        Log.i("EventDispatcher", "Could not resolve event closure for " +
+            componentId + "." + eventName);
+      }
+      return;
+    }
+    Map<String, EventHandler> handlers = er.handlerTable.get(component);
+    if (handlers == null) {
+      handlers = new HashMap<String, EventHandler>();
+      er.handlerTable.put(component, handlers);
+    }
+    handlers.put(eventName, new EventHandler(componentId, handler));
   }
 
   // Don't delete this method. It's called from runtime.scm.
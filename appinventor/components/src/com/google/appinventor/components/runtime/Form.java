@@ -52,6 +52,7 @@ import com.google.appinventor.components.runtime.collect.Maps;
 import com.google.appinventor.components.runtime.collect.Sets;
 import com.google.appinventor.components.runtime.util.AlignmentUtil;
 import com.google.appinventor.components.runtime.util.AnimationUtil;
+import com.google.appinventor.components.runtime.util.AsynchUtil;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
 import com.google.appinventor.components.runtime.util.FullScreenVideoUtil;
 import com.google.appinventor.components.runtime.util.JsonUtil;
@@ -420,6 +421,9 @@ public class Form extends Activity
     // Unregister events for components in this form.
     EventDispatcher.removeDispatchDelegate(this);
 
+    // Stop the background calls made by components in this form.
+    AsynchUtil.cancelTasks(this);
+
     for (OnDestroyListener onDestroyListener : onDestroyListeners) {
       onDestroyListener.onDestroy();
     }
@@ -486,8 +490,26 @@ public class Form extends Activity
    * respectively.  The actual implementation appears in {@code runtime.scm}.
    */
   @Override
+  public Component lookupComponent(String componentName) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * A trivial implementation; the actual implementation appears in
+   * {@code runtime.scm}.
+   */
+  @Override
+  public Object lookupHandler(String componentName, String eventName) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * A trivial implementation; the actual implementation appears in
+   * {@code runtime.scm}.
+   */
+  @Override
   public boolean dispatchEvent(Component component, String componentName, String eventName,
-      Object[] args) {
+      Object handler, Object[] args) {
     throw new UnsupportedOperationException();
   }
 
@@ -1246,6 +1268,9 @@ public class Form extends Activity
       // forms in the app (when we support them), non-UI threads, etc.  We might need to be
       // careful about this is we ever support services that start up on boot (since it might
       // mean that the only way to restart that service) is to reboot but that's a long way off.
+      // Neither onPause nor onStop is called before System.exit, so the values that TinyDB
+      // hasn't written yet are written now.
+      TinyDBStore.flushAll();
       System.exit(0);
     }
   }
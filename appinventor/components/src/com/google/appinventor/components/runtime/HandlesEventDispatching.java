@@ -14,6 +14,28 @@ package com.google.appinventor.components.runtime;
 public interface HandlesEventDispatching {
   public boolean canDispatchEvent(Component component, String eventName);
 
+  /**
+   * Returns the component registered under the given name, or null if the
+   * name isn't bound to a component.
+   */
+  public Component lookupComponent(String componentName);
+
+  /**
+   * Returns the handler for the given event of the component registered
+   * under the given name, or null if there is no such handler.
+   */
+  public Object lookupHandler(String componentName, String eventName);
+
+  /**
+   * Calls a handler that was returned by {@link #lookupHandler}.
+   *
+   * @param component  the component raising the event
+   * @param componentName  the name the component is registered under
+   * @param eventName  name of event being raised
+   * @param handler  the handler of the event
+   * @param args  arguments to the event handler
+   * @return whether the handler ran without an error
+   */
   public boolean dispatchEvent(Component component, String componentName, String eventName,
-      Object[] args);
+      Object handler, Object[] args);
 }
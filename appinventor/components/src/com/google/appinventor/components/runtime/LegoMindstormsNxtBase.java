@@ -75,6 +75,9 @@ public class LegoMindstormsNxtBase extends AndroidNonvisibleComponent
   // TODO(lizlooney) - allow communication via USB if possible.
   protected BluetoothClient bluetooth;
 
+  // The poller that this component has added to the sweep of its transport,
+  // if any.
+  private NxtTransport.Poller poller;
 
   /**
    * Creates a new LegoMindstormsNxtBase.
@@ -116,6 +119,9 @@ public class LegoMindstormsNxtBase extends AndroidNonvisibleComponent
   @SimpleProperty(userVisible = false)
   public void BluetoothClient(BluetoothClient bluetoothClient) {
     if (bluetooth != null) {
+      if (poller != null) {
+        getTransport().removePoller(poller);
+      }
       bluetooth.removeBluetoothConnectionListener(this);
       bluetooth.detachComponent(this);
       bluetooth = null;
@@ -125,6 +131,9 @@ public class LegoMindstormsNxtBase extends AndroidNonvisibleComponent
       bluetooth = bluetoothClient;
       bluetooth.attachComponent(this, Collections.singleton(TOY_ROBOT));
       bluetooth.addBluetoothConnectionListener(this);
+      if (poller != null) {
+        getTransport().addPoller(poller);
+      }
       if (bluetooth.IsConnected()) {
         // We missed the real afterConnect event.
         afterConnect(bluetooth);
@@ -164,12 +173,25 @@ public class LegoMindstormsNxtBase extends AndroidNonvisibleComponent
   }
 
   protected final byte[] getInputValues(String functionName, int port) {
+    byte[] command = getInputValuesCommand(port);
+    byte[] returnPackage = sendCommandAndReceiveReturnPackage(functionName, command);
+    return checkInputValues(functionName, returnPackage);
+  }
+
+  protected final byte[] getInputValuesCommand(int port) {
     byte[] command = new byte[3];
     command[0] = (byte) 0x00;  // Direct command telegram, response required
     command[1] = (byte) 0x07;  // GETINPUTVALUES command
     copyUBYTEValueToBytes(port, command, 2);
-    byte[] returnPackage = sendCommandAndReceiveReturnPackage(functionName, command);
-    if (evaluateStatus(functionName, returnPackage, command[1])) {
+    return command;
+  }
+
+  /*
+   * Returns the given return package of a GETINPUTVALUES command if it is
+   * valid, or null otherwise.
+   */
+  protected final byte[] checkInputValues(String functionName, byte[] returnPackage) {
+    if (evaluateStatus(functionName, returnPackage, (byte) 0x07)) {
       if (returnPackage.length == 16) {
         return returnPackage;
       } else {
@@ -256,34 +278,73 @@ public class LegoMindstormsNxtBase extends AndroidNonvisibleComponent
           ErrorMessages.ERROR_NXT_NOT_CONNECTED_TO_ROBOT);
       return false;
     }
+    if (bluetooth.ReceiveInBackground()) {
+      // The return packages would go to the DataReceived event instead.
+      form.dispatchErrorOccurredEvent(this, functionName,
+          ErrorMessages.ERROR_NXT_RECEIVE_IN_BACKGROUND);
+      return false;
+    }
     return true;
   }
 
   protected final byte[] sendCommandAndReceiveReturnPackage(String functionName, byte[] command) {
-    sendCommand(functionName, command);
-    return receiveReturnPackage(functionName);
+    byte[] returnPackage = getTransport().request(functionName, command);
+    checkReturnPackage(functionName, returnPackage);
+    return returnPackage;
   }
 
+  /*
+   * Sends a command that doesn't need a response.  The command is written
+   * together with the other commands sent before the UI thread is done with
+   * its current work, unless a command that needs a response is sent first.
+   */
   protected final void sendCommand(String functionName, byte[] command) {
-    byte[] header = new byte[2];
-    copyUWORDValueToBytes(command.length, header, 0);
-    bluetooth.write(functionName, header);
-    bluetooth.write(functionName, command);
-  }
-
-  private byte[] receiveReturnPackage(String functionName) {
-    byte[] header = bluetooth.read(functionName, 2);
-    if (header.length == 2) {
-      int length = getUWORDValueFromBytes(header, 0);
-      byte[] returnPackage = bluetooth.read(functionName, length);
-      if (returnPackage.length >= 3) {
-        return returnPackage;
-      }
+    getTransport().send(functionName, command);
+  }
+
+  /*
+   * Dispatches an error if the given return package is empty, which is what
+   * the transport returns when no valid return package was received.
+   */
+  protected final void checkReturnPackage(String functionName, byte[] returnPackage) {
+    if (returnPackage.length == 0) {
+      form.dispatchErrorOccurredEvent(this, functionName,
+          ErrorMessages.ERROR_NXT_INVALID_RETURN_PACKAGE);
+    }
+  }
+
+  /*
+   * Returns the transport for the BluetoothClient, which must be set.
+   */
+  protected final NxtTransport getTransport() {
+    return bluetooth.getNxtTransport();
+  }
+
+  /*
+   * Adds the given poller to the sweep of the transport, in place of the
+   * poller that was added before, if any.
+   */
+  protected final void startPolling(NxtTransport.Poller poller) {
+    if (poller == this.poller) {
+      return;
     }
+    stopPolling();
+    this.poller = poller;
+    if (bluetooth != null) {
+      getTransport().addPoller(poller);
+    }
+  }
 
-    form.dispatchErrorOccurredEvent(this, functionName,
-        ErrorMessages.ERROR_NXT_INVALID_RETURN_PACKAGE);
-    return new byte[0];
+  /*
+   * Removes the poller that was added with startPolling, if any.
+   */
+  protected final void stopPolling() {
+    if (poller != null) {
+      if (bluetooth != null) {
+        getTransport().removePoller(poller);
+      }
+      poller = null;
+    }
   }
 
   protected final boolean evaluateStatus(String functionName, byte[] returnPackage, byte command) {
@@ -320,7 +381,7 @@ public class LegoMindstormsNxtBase extends AndroidNonvisibleComponent
       // Real status bytes received from the NXT are unsigned.
       // -1 is returned from getStatus when the returnPackage is not even big enough to contain a
       // status byte. In that case, we've already called form.dispatchErrorOccurredEvent from
-      // receiveReturnPackage.
+      // checkReturnPackage.
     } else {
       String errorMessage = ERROR_MESSAGES.get(status);
       if (errorMessage != null) {
@@ -522,13 +583,16 @@ public class LegoMindstormsNxtBase extends AndroidNonvisibleComponent
 
   @Override
   public void beforeDisconnect(BluetoothConnectionBase bluetoothConnection) {
-    // Subclasses may wish to do something.
+    // Subclasses may wish to do something, and then call this to write the
+    // commands they have sent before the connection is closed.
+    getTransport().flush();
   }
 
   // Deleteable implementation
 
   @Override
   public void onDelete() {
+    stopPolling();
     if (bluetooth != null) {
       bluetooth.removeBluetoothConnectionListener(this);
       bluetooth.detachComponent(this);
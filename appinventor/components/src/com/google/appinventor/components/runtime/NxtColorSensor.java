@@ -17,8 +17,6 @@ import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
 
-import android.os.Handler;
-
 import java.util.HashMap;
 import java.util.Map;
 
@@ -67,8 +65,7 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
   }
 
   private boolean detectColor;
-  private Handler handler;
-  private final Runnable sensorReader;
+  private final NxtTransport.Poller sensorReader;
 
   // Fields related to detecting color
   private int previousColor;
@@ -88,57 +85,59 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
    */
   public NxtColorSensor(ComponentContainer container) {
     super(container, "NxtColorSensor");
-    handler = new Handler();
     previousState = State.UNKNOWN;
     previousColor = Component.COLOR_NONE;
-    sensorReader = new Runnable() {
-      public void run() {
-        if (bluetooth != null && bluetooth.IsConnected()) {
-          if (detectColor) {
-            // Detecting color
-            SensorValue<Integer> sensorValue = getColorValue("");
-            if (sensorValue.valid) {
-              int currentColor = sensorValue.value;
-
-              if (currentColor != previousColor) {
-                ColorChanged(currentColor);
-              }
+    sensorReader = new NxtTransport.Poller() {
+      @Override
+      byte[] getCommand() {
+        return getInputValuesCommand(port);
+      }
 
-              previousColor = currentColor;
+      @Override
+      void onReply(byte[] returnPackage) {
+        checkReturnPackage("", returnPackage);
+        byte[] inputValues = checkInputValues("", returnPackage);
+        if (detectColor) {
+          // Detecting color
+          SensorValue<Integer> sensorValue = getColorValue(inputValues);
+          if (sensorValue.valid) {
+            int currentColor = sensorValue.value;
+
+            if (currentColor != previousColor) {
+              ColorChanged(currentColor);
             }
 
-          } else {
-            // Detecting light
-            SensorValue<Integer> sensorValue = getLightValue("");
-            if (sensorValue.valid) {
-              State currentState;
-              if (sensorValue.value < bottomOfRange) {
-                currentState = State.BELOW_RANGE;
-              } else if (sensorValue.value > topOfRange) {
-                currentState = State.ABOVE_RANGE;
-              } else {
-                currentState = State.WITHIN_RANGE;
-              }
+            previousColor = currentColor;
+          }
 
-              if (currentState != previousState) {
-                if (currentState == State.BELOW_RANGE && belowRangeEventEnabled) {
-                  BelowRange();
-                }
-                if (currentState == State.WITHIN_RANGE && withinRangeEventEnabled) {
-                  WithinRange();
-                }
-                if (currentState == State.ABOVE_RANGE && aboveRangeEventEnabled) {
-                  AboveRange();
-                }
-              }
+        } else {
+          // Detecting light
+          SensorValue<Integer> sensorValue = getLightValue(inputValues);
+          if (sensorValue.valid) {
+            State currentState;
+            if (sensorValue.value < bottomOfRange) {
+              currentState = State.BELOW_RANGE;
+            } else if (sensorValue.value > topOfRange) {
+              currentState = State.ABOVE_RANGE;
+            } else {
+              currentState = State.WITHIN_RANGE;
+            }
 
-              previousState = currentState;
+            if (currentState != previousState) {
+              if (currentState == State.BELOW_RANGE && belowRangeEventEnabled) {
+                BelowRange();
+              }
+              if (currentState == State.WITHIN_RANGE && withinRangeEventEnabled) {
+                WithinRange();
+              }
+              if (currentState == State.ABOVE_RANGE && aboveRangeEventEnabled) {
+                AboveRange();
+              }
             }
+
+            previousState = currentState;
           }
         }
-        if (isHandlerNeeded()) {
-          handler.post(sensorReader);
-        }
       }
     };
 
@@ -206,21 +205,21 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
       defaultValue = "True")
   @SimpleProperty
   public void DetectColor(boolean detectColor) {
-    boolean handlerWasNeeded = isHandlerNeeded();
+    boolean pollingWasNeeded = isPollingNeeded();
 
     this.detectColor = detectColor;
     if (bluetooth != null && bluetooth.IsConnected()) {
       initializeSensor("DetectColor");
     }
 
-    boolean handlerIsNeeded = isHandlerNeeded();
-    if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+    boolean pollingIsNeeded = isPollingNeeded();
+    if (pollingWasNeeded && !pollingIsNeeded) {
+      stopPolling();
     }
     previousColor = Component.COLOR_NONE;
     previousState = State.UNKNOWN;
-    if (!handlerWasNeeded && handlerIsNeeded) {
-      handler.post(sensorReader);
+    if (!pollingWasNeeded && pollingIsNeeded) {
+      startPolling(sensorReader);
     }
   }
 
@@ -249,7 +248,10 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
   }
 
   private SensorValue<Integer> getColorValue(String functionName) {
-    byte[] returnPackage = getInputValues(functionName, port);
+    return getColorValue(getInputValues(functionName, port));
+  }
+
+  private SensorValue<Integer> getColorValue(byte[] returnPackage) {
     if (returnPackage != null) {
       boolean valid = getBooleanValueFromBytes(returnPackage, 4);
       if (valid) {
@@ -283,17 +285,17 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
   @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN, defaultValue = "False")
   @SimpleProperty
   public void ColorChangedEventEnabled(boolean enabled) {
-    boolean handlerWasNeeded = isHandlerNeeded();
+    boolean pollingWasNeeded = isPollingNeeded();
 
     colorChangedEventEnabled = enabled;
 
-    boolean handlerIsNeeded = isHandlerNeeded();
-    if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+    boolean pollingIsNeeded = isPollingNeeded();
+    if (pollingWasNeeded && !pollingIsNeeded) {
+      stopPolling();
     }
-    if (!handlerWasNeeded && handlerIsNeeded) {
+    if (!pollingWasNeeded && pollingIsNeeded) {
       previousColor = Component.COLOR_NONE;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -329,7 +331,10 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
   }
 
   private SensorValue<Integer> getLightValue(String functionName) {
-    byte[] returnPackage = getInputValues(functionName, port);
+    return getLightValue(getInputValues(functionName, port));
+  }
+
+  private SensorValue<Integer> getLightValue(byte[] returnPackage) {
     if (returnPackage != null) {
       boolean valid = getBooleanValueFromBytes(returnPackage, 4);
       if (valid) {
@@ -406,17 +411,17 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
   @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN, defaultValue = "False")
   @SimpleProperty
   public void BelowRangeEventEnabled(boolean enabled) {
-    boolean handlerWasNeeded = isHandlerNeeded();
+    boolean pollingWasNeeded = isPollingNeeded();
 
     belowRangeEventEnabled = enabled;
 
-    boolean handlerIsNeeded = isHandlerNeeded();
-    if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+    boolean pollingIsNeeded = isPollingNeeded();
+    if (pollingWasNeeded && !pollingIsNeeded) {
+      stopPolling();
     }
-    if (!handlerWasNeeded && handlerIsNeeded) {
+    if (!pollingWasNeeded && pollingIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -448,17 +453,17 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
   @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN, defaultValue = "False")
   @SimpleProperty
   public void WithinRangeEventEnabled(boolean enabled) {
-    boolean handlerWasNeeded = isHandlerNeeded();
+    boolean pollingWasNeeded = isPollingNeeded();
 
     withinRangeEventEnabled = enabled;
 
-    boolean handlerIsNeeded = isHandlerNeeded();
-    if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+    boolean pollingIsNeeded = isPollingNeeded();
+    if (pollingWasNeeded && !pollingIsNeeded) {
+      stopPolling();
     }
-    if (!handlerWasNeeded && handlerIsNeeded) {
+    if (!pollingWasNeeded && pollingIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -487,17 +492,17 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
   @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN, defaultValue = "False")
   @SimpleProperty
   public void AboveRangeEventEnabled(boolean enabled) {
-    boolean handlerWasNeeded = isHandlerNeeded();
+    boolean pollingWasNeeded = isPollingNeeded();
 
     aboveRangeEventEnabled = enabled;
 
-    boolean handlerIsNeeded = isHandlerNeeded();
-    if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+    boolean pollingIsNeeded = isPollingNeeded();
+    if (pollingWasNeeded && !pollingIsNeeded) {
+      stopPolling();
     }
-    if (!handlerWasNeeded && handlerIsNeeded) {
+    if (!pollingWasNeeded && pollingIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -544,7 +549,7 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
     }
   }
 
-  private boolean isHandlerNeeded() {
+  private boolean isPollingNeeded() {
     if (detectColor) {
       return colorChangedEventEnabled;
     } else {
@@ -556,7 +561,7 @@ public class NxtColorSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
   @Override
   public void onDelete() {
-    handler.removeCallbacks(sensorReader);
+    stopPolling();
     super.onDelete();
   }
 }
@@ -6,8 +6,10 @@
 package com.google.appinventor.components.runtime;
 
 import com.google.appinventor.components.annotations.DesignerComponent;
+import com.google.appinventor.components.annotations.PropertyCategory;
 import com.google.appinventor.components.annotations.SimpleFunction;
 import com.google.appinventor.components.annotations.SimpleObject;
+import com.google.appinventor.components.annotations.SimpleProperty;
 import com.google.appinventor.components.annotations.UsesPermissions;
 import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.common.YaVersion;
@@ -48,6 +50,39 @@ public class NxtDirectCommands extends LegoMindstormsNxtBase {
     super(container, "NxtDirectCommands");
   }
 
+  /**
+   * Returns the number of commands that have been sent to the robot over the
+   * BluetoothClient, by this and the other LEGO MINDSTORMS NXT components.
+   */
+  @SimpleProperty(description = "The number of commands that have been sent to the robot " +
+      "over the BluetoothClient, by all the NXT components that use it.",
+      category = PropertyCategory.BEHAVIOR)
+  public int CommandsSent() {
+    return (bluetooth != null) ? (int) getTransport().getCommandsSent() : 0;
+  }
+
+  /**
+   * Returns the number of return packages that have been received from the
+   * robot over the BluetoothClient.
+   */
+  @SimpleProperty(description = "The number of return packages that have been received from " +
+      "the robot over the BluetoothClient.",
+      category = PropertyCategory.BEHAVIOR)
+  public int RepliesReceived() {
+    return (bluetooth != null) ? (int) getTransport().getRepliesReceived() : 0;
+  }
+
+  /**
+   * Returns the average time, in milliseconds, between sending commands that
+   * need a response and receiving their return packages.
+   */
+  @SimpleProperty(description = "The average time, in milliseconds, between sending commands " +
+      "that need a response and receiving their return packages.",
+      category = PropertyCategory.BEHAVIOR)
+  public double AverageRoundTripTime() {
+    return (bluetooth != null) ? getTransport().getAverageRoundTripTime() : 0;
+  }
+
   // TODO(user, lizlooney) - Add a property for a "helper program", like MotorControl21.rxe. If
   // set, then the Connect method would automatically take care of checking for, downloading (if
   // necessary) and starting the helper program. This would minimize the programming blocks for a
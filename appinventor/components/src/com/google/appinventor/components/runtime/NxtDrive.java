@@ -73,6 +73,7 @@ public class NxtDrive extends LegoMindstormsNxtBase {
             MODE_BRAKE, REGULATION_MODE_IDLE, 0, MOTOR_RUN_STATE_IDLE, 0);
       }
     }
+    super.beforeDisconnect(bluetoothConnection);
   }
 
   /**
@@ -16,8 +16,6 @@ import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
 
-import android.os.Handler;
-
 /**
  * A component that provides a high-level interface to a light sensor on a LEGO
  * MINDSTORMS NXT robot.
@@ -37,8 +35,7 @@ public class NxtLightSensor extends LegoMindstormsNxtSensor implements Deleteabl
   private static final int DEFAULT_BOTTOM_OF_RANGE = 256;
   private static final int DEFAULT_TOP_OF_RANGE = 767;
 
-  private Handler handler;
-  private final Runnable sensorReader;
+  private final NxtTransport.Poller sensorReader;
   private State previousState;
   private int bottomOfRange;
   private int topOfRange;
@@ -52,39 +49,41 @@ public class NxtLightSensor extends LegoMindstormsNxtSensor implements Deleteabl
    */
   public NxtLightSensor(ComponentContainer container) {
     super(container, "NxtLightSensor");
-    handler = new Handler();
     previousState = State.UNKNOWN;
-    sensorReader = new Runnable() {
-      public void run() {
-        if (bluetooth != null && bluetooth.IsConnected()) {
-          SensorValue<Integer> sensorValue = getLightValue("");
-          if (sensorValue.valid) {
-            State currentState;
-            if (sensorValue.value < bottomOfRange) {
-              currentState = State.BELOW_RANGE;
-            } else if (sensorValue.value > topOfRange) {
-              currentState = State.ABOVE_RANGE;
-            } else {
-              currentState = State.WITHIN_RANGE;
-            }
+    sensorReader = new NxtTransport.Poller() {
+      @Override
+      byte[] getCommand() {
+        return getInputValuesCommand(port);
+      }
 
-            if (currentState != previousState) {
-              if (currentState == State.BELOW_RANGE && belowRangeEventEnabled) {
-                BelowRange();
-              }
-              if (currentState == State.WITHIN_RANGE && withinRangeEventEnabled) {
-                WithinRange();
-              }
-              if (currentState == State.ABOVE_RANGE && aboveRangeEventEnabled) {
-                AboveRange();
-              }
-            }
+      @Override
+      void onReply(byte[] returnPackage) {
+        checkReturnPackage("", returnPackage);
+        byte[] inputValues = checkInputValues("", returnPackage);
+        SensorValue<Integer> sensorValue = getLightValue(inputValues);
+        if (sensorValue.valid) {
+          State currentState;
+          if (sensorValue.value < bottomOfRange) {
+            currentState = State.BELOW_RANGE;
+          } else if (sensorValue.value > topOfRange) {
+            currentState = State.ABOVE_RANGE;
+          } else {
+            currentState = State.WITHIN_RANGE;
+          }
 
-            previousState = currentState;
+          if (currentState != previousState) {
+            if (currentState == State.BELOW_RANGE && belowRangeEventEnabled) {
+              BelowRange();
+            }
+            if (currentState == State.WITHIN_RANGE && withinRangeEventEnabled) {
+              WithinRange();
+            }
+            if (currentState == State.ABOVE_RANGE && aboveRangeEventEnabled) {
+              AboveRange();
+            }
           }
-        }
-        if (isHandlerNeeded()) {
-          handler.post(sensorReader);
+
+          previousState = currentState;
         }
       }
     };
@@ -155,7 +154,10 @@ public class NxtLightSensor extends LegoMindstormsNxtSensor implements Deleteabl
   }
 
   private SensorValue<Integer> getLightValue(String functionName) {
-    byte[] returnPackage = getInputValues(functionName, port);
+    return getLightValue(getInputValues(functionName, port));
+  }
+
+  private SensorValue<Integer> getLightValue(byte[] returnPackage) {
     if (returnPackage != null) {
       boolean valid = getBooleanValueFromBytes(returnPackage, 4);
       if (valid) {
@@ -232,17 +234,17 @@ public class NxtLightSensor extends LegoMindstormsNxtSensor implements Deleteabl
   @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN, defaultValue = "False")
   @SimpleProperty
   public void BelowRangeEventEnabled(boolean enabled) {
-    boolean handlerWasNeeded = isHandlerNeeded();
+    boolean pollingWasNeeded = isPollingNeeded();
 
     belowRangeEventEnabled = enabled;
 
-    boolean handlerIsNeeded = isHandlerNeeded();
-    if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+    boolean pollingIsNeeded = isPollingNeeded();
+    if (pollingWasNeeded && !pollingIsNeeded) {
+      stopPolling();
     }
-    if (!handlerWasNeeded && handlerIsNeeded) {
+    if (!pollingWasNeeded && pollingIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -269,17 +271,17 @@ public class NxtLightSensor extends LegoMindstormsNxtSensor implements Deleteabl
   @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN, defaultValue = "False")
   @SimpleProperty
   public void WithinRangeEventEnabled(boolean enabled) {
-    boolean handlerWasNeeded = isHandlerNeeded();
+    boolean pollingWasNeeded = isPollingNeeded();
 
     withinRangeEventEnabled = enabled;
 
-    boolean handlerIsNeeded = isHandlerNeeded();
-    if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+    boolean pollingIsNeeded = isPollingNeeded();
+    if (pollingWasNeeded && !pollingIsNeeded) {
+      stopPolling();
     }
-    if (!handlerWasNeeded && handlerIsNeeded) {
+    if (!pollingWasNeeded && pollingIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -306,17 +308,17 @@ public class NxtLightSensor extends LegoMindstormsNxtSensor implements Deleteabl
   @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN, defaultValue = "False")
   @SimpleProperty
   public void AboveRangeEventEnabled(boolean enabled) {
-    boolean handlerWasNeeded = isHandlerNeeded();
+    boolean pollingWasNeeded = isPollingNeeded();
 
     aboveRangeEventEnabled = enabled;
 
-    boolean handlerIsNeeded = isHandlerNeeded();
-    if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+    boolean pollingIsNeeded = isPollingNeeded();
+    if (pollingWasNeeded && !pollingIsNeeded) {
+      stopPolling();
     }
-    if (!handlerWasNeeded && handlerIsNeeded) {
+    if (!pollingWasNeeded && pollingIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -325,7 +327,7 @@ public class NxtLightSensor extends LegoMindstormsNxtSensor implements Deleteabl
     EventDispatcher.dispatchEvent(this, "AboveRange");
   }
 
-  private boolean isHandlerNeeded() {
+  private boolean isPollingNeeded() {
     return belowRangeEventEnabled || withinRangeEventEnabled || aboveRangeEventEnabled;
   }
 
@@ -333,7 +335,7 @@ public class NxtLightSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
   @Override
   public void onDelete() {
-    handler.removeCallbacks(sensorReader);
+    stopPolling();
     super.onDelete();
   }
 }
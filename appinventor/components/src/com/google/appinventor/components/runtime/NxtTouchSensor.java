@@ -16,8 +16,6 @@ import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
 
-import android.os.Handler;
-
 /**
  * A component that provides a high-level interface to a touch sensor on a LEGO
  * MINDSTORMS NXT robot.
@@ -36,9 +34,8 @@ public class NxtTouchSensor extends LegoMindstormsNxtSensor implements Deleteabl
   private enum State { UNKNOWN, PRESSED, RELEASED }
   private static final String DEFAULT_SENSOR_PORT = "1";
 
-  private Handler handler;
   private State previousState;
-  private final Runnable sensorReader;
+  private final NxtTransport.Poller sensorReader;
   private boolean pressedEventEnabled;
   private boolean releasedEventEnabled;
 
@@ -47,29 +44,31 @@ public class NxtTouchSensor extends LegoMindstormsNxtSensor implements Deleteabl
    */
   public NxtTouchSensor(ComponentContainer container) {
     super(container, "NxtTouchSensor");
-    handler = new Handler();
     previousState = State.UNKNOWN;
-    sensorReader = new Runnable() {
-      public void run() {
-        if (bluetooth != null && bluetooth.IsConnected()) {
-          SensorValue<Boolean> sensorValue = getPressedValue("");
-          if (sensorValue.valid) {
-            State currentState = sensorValue.value ? State.PRESSED : State.RELEASED;
-
-            if (currentState != previousState) {
-              if (currentState == State.PRESSED && pressedEventEnabled) {
-                Pressed();
-              }
-              if (currentState == State.RELEASED && releasedEventEnabled) {
-                Released();
-              }
-            }
+    sensorReader = new NxtTransport.Poller() {
+      @Override
+      byte[] getCommand() {
+        return getInputValuesCommand(port);
+      }
 
-            previousState = currentState;
+      @Override
+      void onReply(byte[] returnPackage) {
+        checkReturnPackage("", returnPackage);
+        byte[] inputValues = checkInputValues("", returnPackage);
+        SensorValue<Boolean> sensorValue = getPressedValue(inputValues);
+        if (sensorValue.valid) {
+          State currentState = sensorValue.value ? State.PRESSED : State.RELEASED;
+
+          if (currentState != previousState) {
+            if (currentState == State.PRESSED && pressedEventEnabled) {
+              Pressed();
+            }
+            if (currentState == State.RELEASED && releasedEventEnabled) {
+              Released();
+            }
           }
-        }
-        if (isHandlerNeeded()) {
-          handler.post(sensorReader);
+
+          previousState = currentState;
         }
       }
     };
@@ -111,7 +110,10 @@ public class NxtTouchSensor extends LegoMindstormsNxtSensor implements Deleteabl
   }
 
   private SensorValue<Boolean> getPressedValue(String functionName) {
-    byte[] returnPackage = getInputValues(functionName, port);
+    return getPressedValue(getInputValues(functionName, port));
+  }
+
+  private SensorValue<Boolean> getPressedValue(byte[] returnPackage) {
     if (returnPackage != null) {
       boolean valid = getBooleanValueFromBytes(returnPackage, 4);
       if (valid) {
@@ -142,17 +144,17 @@ public class NxtTouchSensor extends LegoMindstormsNxtSensor implements Deleteabl
   @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN, defaultValue = "False")
   @SimpleProperty
   public void PressedEventEnabled(boolean enabled) {
-    boolean handlerWasNeeded = isHandlerNeeded();
+    boolean pollingWasNeeded = isPollingNeeded();
 
     pressedEventEnabled = enabled;
 
-    boolean handlerIsNeeded = isHandlerNeeded();
-    if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+    boolean pollingIsNeeded = isPollingNeeded();
+    if (pollingWasNeeded && !pollingIsNeeded) {
+      stopPolling();
     }
-    if (!handlerWasNeeded && handlerIsNeeded) {
+    if (!pollingWasNeeded && pollingIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -179,17 +181,17 @@ public class NxtTouchSensor extends LegoMindstormsNxtSensor implements Deleteabl
   @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN, defaultValue = "False")
   @SimpleProperty
   public void ReleasedEventEnabled(boolean enabled) {
-    boolean handlerWasNeeded = isHandlerNeeded();
+    boolean pollingWasNeeded = isPollingNeeded();
 
     releasedEventEnabled = enabled;
 
-    boolean handlerIsNeeded = isHandlerNeeded();
-    if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+    boolean pollingIsNeeded = isPollingNeeded();
+    if (pollingWasNeeded && !pollingIsNeeded) {
+      stopPolling();
     }
-    if (!handlerWasNeeded && handlerIsNeeded) {
+    if (!pollingWasNeeded && pollingIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -198,7 +200,7 @@ public class NxtTouchSensor extends LegoMindstormsNxtSensor implements Deleteabl
     EventDispatcher.dispatchEvent(this, "Released");
   }
 
-  private boolean isHandlerNeeded() {
+  private boolean isPollingNeeded() {
     return pressedEventEnabled || releasedEventEnabled;
   }
 
@@ -206,7 +208,7 @@ public class NxtTouchSensor extends LegoMindstormsNxtSensor implements Deleteabl
 
   @Override
   public void onDelete() {
-    handler.removeCallbacks(sensorReader);
+    stopPolling();
     super.onDelete();
   }
 }
@@ -0,0 +1,324 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+
+package com.google.appinventor.components.runtime;
+
+import android.os.Handler;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sends NXT direct commands over a Bluetooth connection for all the LEGO
+ * MINDSTORMS NXT components that use the connection, and receives their
+ * return packages.
+ *
+ * <p>Commands that don't need a response are collected and written together
+ * when the UI thread is done with its current work, or before the next
+ * command that needs a response.  Sensors that fire events are polled by one
+ * sweep, which writes the commands of all of them at once and then reads
+ * all the return packages, instead of each sensor making its own round trip
+ * over and over.</p>
+ *
+ * <p>A transport is used only on the UI thread.</p>
+ */
+final class NxtTransport {
+  /**
+   * A sensor that is polled by the sweep.
+   */
+  abstract static class Poller {
+    /**
+     * Returns the command whose return package is passed to
+     * {@link #onReply}, or null if {@link #poll} should be called instead.
+     */
+    byte[] getCommand() {
+      return null;
+    }
+
+    /**
+     * Called with the return package of the command, or an empty array if
+     * no valid return package was received.
+     */
+    void onReply(byte[] returnPackage) {
+    }
+
+    /**
+     * Called for a poller that has no command, to poll the sensor itself.
+     */
+    void poll() {
+    }
+  }
+
+  private static final String LOG_TAG = "NxtTransport";
+
+  // The time between two sweeps, in ms.
+  private static final long SWEEP_INTERVAL_MS = 20;
+
+  // Commands that don't need a response are written as soon as this many
+  // bytes have been collected.
+  private static final int MAX_PENDING_BYTES = 256;
+
+  // The GETINPUTVALUES command, whose return package contains its port.
+  private static final byte GETINPUTVALUES = (byte) 0x07;
+
+  private final BluetoothConnectionBase connection;
+  private Handler handler;
+
+  // The telegrams that haven't been written yet.
+  private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+  // The function that sent the first of those telegrams, used to report an
+  // error if they are written later.
+  private String pendingFunctionName;
+  private boolean flushPosted;
+
+  private final List<Poller> pollers = new ArrayList<Poller>();
+  private boolean sweepPosted;
+
+  private long commandsSent;
+  private long repliesReceived;
+  private long roundTrips;
+  private long roundTripNanos;
+
+  private final Runnable flushRunnable = new Runnable() {
+    public void run() {
+      flushPosted = false;
+      flush();
+    }
+  };
+
+  private final Runnable sweepRunnable = new Runnable() {
+    public void run() {
+      sweepPosted = false;
+      if (connection.IsConnected()) {
+        sweep();
+      }
+      scheduleSweep();
+    }
+  };
+
+  NxtTransport(BluetoothConnectionBase connection) {
+    this.connection = connection;
+  }
+
+  /**
+   * Sends a command that doesn't need a response.  The command is written
+   * later, together with the other commands sent meanwhile, but before any
+   * command that is sent after it, and before the connection is closed.
+   */
+  void send(String functionName, byte[] command) {
+    if (pending.size() == 0) {
+      pendingFunctionName = functionName;
+    }
+    appendTelegram(command);
+    if (pending.size() >= MAX_PENDING_BYTES) {
+      flush(functionName);
+    } else if (!flushPosted) {
+      flushPosted = true;
+      getHandler().post(flushRunnable);
+    }
+  }
+
+  /**
+   * Sends a command that needs a response, and returns its return package,
+   * or an empty array if no valid return package was received.
+   */
+  byte[] request(String functionName, byte[] command) {
+    return exchange(functionName, new byte[][] { command })[0];
+  }
+
+  /**
+   * Sends the given commands, which all need a response, in one write, and
+   * returns their return packages in the same order.  The package for a
+   * command is an empty array if no valid return package was received.
+   */
+  byte[][] exchange(String functionName, byte[][] commands) {
+    for (byte[] command : commands) {
+      appendTelegram(command);
+    }
+    long start = System.nanoTime();
+    flush(functionName);
+    byte[][] returnPackages = new byte[commands.length][];
+    for (int i = 0; i < commands.length; i++) {
+      byte[] returnPackage = readReturnPackage(functionName);
+      if (returnPackage == null) {
+        // The connection can't be trusted to be in step with the commands
+        // anymore, so don't wait for the other return packages.
+        break;
+      }
+      repliesReceived++;
+      returnPackages[findWaiter(commands, returnPackages, returnPackage)] = returnPackage;
+    }
+    for (int i = 0; i < commands.length; i++) {
+      if (returnPackages[i] == null) {
+        returnPackages[i] = new byte[0];
+      }
+    }
+    roundTrips++;
+    roundTripNanos += System.nanoTime() - start;
+    return returnPackages;
+  }
+
+  /*
+   * Returns the index of the command that the given return package answers:
+   * the first unanswered command with the same opcode, and for GETINPUTVALUES
+   * the same port.  If there is none, the package is given to the first
+   * unanswered command, so that the mismatch is reported when its status is
+   * evaluated.
+   */
+  private static int findWaiter(byte[][] commands, byte[][] returnPackages, byte[] returnPackage) {
+    int firstUnanswered = -1;
+    for (int i = 0; i < commands.length; i++) {
+      if (returnPackages[i] != null) {
+        continue;
+      }
+      if (firstUnanswered == -1) {
+        firstUnanswered = i;
+      }
+      byte[] command = commands[i];
+      if (returnPackage[1] == command[1]
+          && (command[1] != GETINPUTVALUES
+              || (returnPackage.length > 3 && returnPackage[3] == command[2]))) {
+        return i;
+      }
+    }
+    return firstUnanswered;
+  }
+
+  /**
+   * Writes the commands that haven't been written yet.  Errors are reported
+   * for the function that sent the first of them.
+   */
+  void flush() {
+    flush(pendingFunctionName);
+  }
+
+  /*
+   * Writes the commands that haven't been written yet, reporting errors for
+   * the given function.
+   */
+  private void flush(String functionName) {
+    if (pending.size() > 0) {
+      byte[] bytes = pending.toByteArray();
+      pending.reset();
+      pendingFunctionName = null;
+      connection.write(functionName, bytes);
+    }
+  }
+
+  /**
+   * Adds the given poller to the sweep, if it isn't already polled.
+   */
+  void addPoller(Poller poller) {
+    if (!pollers.contains(poller)) {
+      pollers.add(poller);
+      scheduleSweep();
+    }
+  }
+
+  /**
+   * Removes the given poller from the sweep.
+   */
+  void removePoller(Poller poller) {
+    pollers.remove(poller);
+    if (pollers.isEmpty() && sweepPosted) {
+      sweepPosted = false;
+      getHandler().removeCallbacks(sweepRunnable);
+    }
+  }
+
+  private void scheduleSweep() {
+    if (!sweepPosted && !pollers.isEmpty()) {
+      sweepPosted = true;
+      getHandler().postDelayed(sweepRunnable, SWEEP_INTERVAL_MS);
+    }
+  }
+
+  /*
+   * Polls all the sensors: those with a command in one exchange, and then
+   * the others one by one.
+   */
+  private void sweep() {
+    // A poller may remove itself, or another, when it fires an event.
+    Poller[] sweptPollers = pollers.toArray(new Poller[pollers.size()]);
+    List<Poller> batched = new ArrayList<Poller>();
+    List<byte[]> commands = new ArrayList<byte[]>();
+    for (Poller poller : sweptPollers) {
+      byte[] command = poller.getCommand();
+      if (command != null) {
+        batched.add(poller);
+        commands.add(command);
+      }
+    }
+    if (!commands.isEmpty()) {
+      byte[][] returnPackages = exchange("", commands.toArray(new byte[commands.size()][]));
+      for (int i = 0; i < returnPackages.length; i++) {
+        batched.get(i).onReply(returnPackages[i]);
+      }
+    }
+    for (Poller poller : sweptPollers) {
+      if (!batched.contains(poller) && pollers.contains(poller) && connection.IsConnected()) {
+        poller.poll();
+      }
+    }
+  }
+
+  /*
+   * Appends the given command, preceded by its length, to the telegrams that
+   * haven't been written yet.
+   */
+  private void appendTelegram(byte[] command) {
+    pending.write(command.length & 0xFF);
+    pending.write((command.length >> 8) & 0xFF);
+    pending.write(command, 0, command.length);
+    commandsSent++;
+  }
+
+  /*
+   * Reads one return package, or returns null if it can't be read.
+   */
+  private byte[] readReturnPackage(String functionName) {
+    byte[] header = connection.read(functionName, 2);
+    if (header.length == 2) {
+      int length = (header[0] & 0xFF) | ((header[1] & 0xFF) << 8);
+      byte[] returnPackage = connection.read(functionName, length);
+      if (returnPackage.length >= 3) {
+        return returnPackage;
+      }
+    }
+    Log.w(LOG_TAG, "Unable to read a return package");
+    return null;
+  }
+
+  private Handler getHandler() {
+    if (handler == null) {
+      handler = new Handler();
+    }
+    return handler;
+  }
+
+  /**
+   * Returns the number of commands that have been sent.
+   */
+  long getCommandsSent() {
+    return commandsSent;
+  }
+
+  /**
+   * Returns the number of return packages that have been received.
+   */
+  long getRepliesReceived() {
+    return repliesReceived;
+  }
+
+  /**
+   * Returns the average time, in ms, from writing the commands of an
+   * exchange until their return packages have been read.
+   */
+  double getAverageRoundTripTime() {
+    return (roundTrips == 0) ? 0 : roundTripNanos / 1e6 / roundTrips;
+  }
+}
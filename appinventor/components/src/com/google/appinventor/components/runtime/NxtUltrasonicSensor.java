@@ -16,8 +16,6 @@ import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
 
-import android.os.Handler;
-
 /**
  * A component that provides a high-level interface to an ultrasonic sensor on a LEGO
  * MINDSTORMS NXT robot.
@@ -37,8 +35,7 @@ public class NxtUltrasonicSensor extends LegoMindstormsNxtSensor implements Dele
   private static final int DEFAULT_BOTTOM_OF_RANGE = 30;
   private static final int DEFAULT_TOP_OF_RANGE = 90;
 
-  private Handler handler;
-  private final Runnable sensorReader;
+  private final NxtTransport.Poller sensorReader;
   private State previousState;
   private int bottomOfRange;
   private int topOfRange;
@@ -51,39 +48,36 @@ public class NxtUltrasonicSensor extends LegoMindstormsNxtSensor implements Dele
    */
   public NxtUltrasonicSensor(ComponentContainer container) {
     super(container, "NxtUltrasonicSensor");
-    handler = new Handler();
     previousState = State.UNKNOWN;
-    sensorReader = new Runnable() {
-      public void run() {
-        if (bluetooth != null && bluetooth.IsConnected()) {
-          SensorValue<Integer> sensorValue = getDistanceValue("");
-          if (sensorValue.valid) {
-            State currentState;
-            if (sensorValue.value < bottomOfRange) {
-              currentState = State.BELOW_RANGE;
-            } else if (sensorValue.value > topOfRange) {
-              currentState = State.ABOVE_RANGE;
-            } else {
-              currentState = State.WITHIN_RANGE;
-            }
+    sensorReader = new NxtTransport.Poller() {
+      // The distance is read with several commands that depend on each other's
+      // return packages, so the sensor is polled by itself.
+      @Override
+      void poll() {
+        SensorValue<Integer> sensorValue = getDistanceValue("");
+        if (sensorValue.valid) {
+          State currentState;
+          if (sensorValue.value < bottomOfRange) {
+            currentState = State.BELOW_RANGE;
+          } else if (sensorValue.value > topOfRange) {
+            currentState = State.ABOVE_RANGE;
+          } else {
+            currentState = State.WITHIN_RANGE;
+          }
 
-            if (currentState != previousState) {
-              if (currentState == State.BELOW_RANGE && belowRangeEventEnabled) {
-                BelowRange();
-              }
-              if (currentState == State.WITHIN_RANGE && withinRangeEventEnabled) {
-                WithinRange();
-              }
-              if (currentState == State.ABOVE_RANGE && aboveRangeEventEnabled) {
-                AboveRange();
-              }
+          if (currentState != previousState) {
+            if (currentState == State.BELOW_RANGE && belowRangeEventEnabled) {
+              BelowRange();
+            }
+            if (currentState == State.WITHIN_RANGE && withinRangeEventEnabled) {
+              WithinRange();
+            }
+            if (currentState == State.ABOVE_RANGE && aboveRangeEventEnabled) {
+              AboveRange();
             }
-
-            previousState = currentState;
           }
-        }
-        if (isHandlerNeeded()) {
-          handler.post(sensorReader);
+
+          previousState = currentState;
         }
       }
     };
@@ -229,17 +223,17 @@ public class NxtUltrasonicSensor extends LegoMindstormsNxtSensor implements Dele
   @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN, defaultValue = "False")
   @SimpleProperty
   public void BelowRangeEventEnabled(boolean enabled) {
-    boolean handlerWasNeeded = isHandlerNeeded();
+    boolean pollingWasNeeded = isPollingNeeded();
 
     belowRangeEventEnabled = enabled;
 
-    boolean handlerIsNeeded = isHandlerNeeded();
-    if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+    boolean pollingIsNeeded = isPollingNeeded();
+    if (pollingWasNeeded && !pollingIsNeeded) {
+      stopPolling();
     }
-    if (!handlerWasNeeded && handlerIsNeeded) {
+    if (!pollingWasNeeded && pollingIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -266,17 +260,17 @@ public class NxtUltrasonicSensor extends LegoMindstormsNxtSensor implements Dele
   @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN, defaultValue = "False")
   @SimpleProperty
   public void WithinRangeEventEnabled(boolean enabled) {
-    boolean handlerWasNeeded = isHandlerNeeded();
+    boolean pollingWasNeeded = isPollingNeeded();
 
     withinRangeEventEnabled = enabled;
 
-    boolean handlerIsNeeded = isHandlerNeeded();
-    if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+    boolean pollingIsNeeded = isPollingNeeded();
+    if (pollingWasNeeded && !pollingIsNeeded) {
+      stopPolling();
     }
-    if (!handlerWasNeeded && handlerIsNeeded) {
+    if (!pollingWasNeeded && pollingIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -303,17 +297,17 @@ public class NxtUltrasonicSensor extends LegoMindstormsNxtSensor implements Dele
   @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN, defaultValue = "False")
   @SimpleProperty
   public void AboveRangeEventEnabled(boolean enabled) {
-    boolean handlerWasNeeded = isHandlerNeeded();
+    boolean pollingWasNeeded = isPollingNeeded();
 
     aboveRangeEventEnabled = enabled;
 
-    boolean handlerIsNeeded = isHandlerNeeded();
-    if (handlerWasNeeded && !handlerIsNeeded) {
-      handler.removeCallbacks(sensorReader);
+    boolean pollingIsNeeded = isPollingNeeded();
+    if (pollingWasNeeded && !pollingIsNeeded) {
+      stopPolling();
     }
-    if (!handlerWasNeeded && handlerIsNeeded) {
+    if (!pollingWasNeeded && pollingIsNeeded) {
       previousState = State.UNKNOWN;
-      handler.post(sensorReader);
+      startPolling(sensorReader);
     }
   }
 
@@ -322,7 +316,7 @@ public class NxtUltrasonicSensor extends LegoMindstormsNxtSensor implements Dele
     EventDispatcher.dispatchEvent(this, "AboveRange");
   }
 
-  private boolean isHandlerNeeded() {
+  private boolean isPollingNeeded() {
     return belowRangeEventEnabled || withinRangeEventEnabled || aboveRangeEventEnabled;
   }
 
@@ -330,7 +324,7 @@ public class NxtUltrasonicSensor extends LegoMindstormsNxtSensor implements Dele
 
   @Override
   public void onDelete() {
-    handler.removeCallbacks(sensorReader);
+    stopPolling();
     super.onDelete();
   }
 }
@@ -15,7 +15,6 @@ import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.runtime.errors.AssertionFailure;
 import com.google.appinventor.components.runtime.errors.IllegalArgumentError;
 import com.google.appinventor.components.runtime.util.BoundingBox;
-import com.google.appinventor.components.runtime.util.TimerInternal;
 
 import android.os.Handler;
 import android.util.Log;
@@ -35,7 +34,7 @@ import java.util.Set;
  */
 @SimpleObject
 public abstract class Sprite extends VisibleComponent
-    implements AlarmHandler, OnDestroyListener, Deleteable {
+    implements OnDestroyListener, Deleteable {
   private static final String LOG_TAG = "Sprite";
   private static final boolean DEFAULT_ENABLED = true;  // Enable timer for movement
   private static final int DEFAULT_HEADING = 0;      // degrees
@@ -44,8 +43,11 @@ public abstract class Sprite extends VisibleComponent
   private static final boolean DEFAULT_VISIBLE = true;
   private static final double DEFAULT_Z = 1.0;
 
+  // How far outside the ends of a row computed by rowLeft() and rowRight()
+  // colliding() still checks points, to allow for rounding errors.
+  private static final double POINT_TOLERANCE = 1e-6;
+
   protected final Canvas canvas;              // enclosing Canvas
-  private final TimerInternal timerInternal;  // timer to control movement
   private final Handler androidUIHandler;     // for posting actions
 
   // Keeps track of which other sprites are currently colliding with this one.
@@ -60,6 +62,7 @@ public abstract class Sprite extends VisibleComponent
 
   // Properties: These are protected, instead of private, both so they
   // can be used by subclasses and tests.
+  protected boolean enabled;   // whether the sprite moves, driven by the canvas
   protected int interval;      // number of milliseconds until next move
   protected boolean visible = true;
   // TODO(user): Convert to have co-ordinates be center, not upper left.
@@ -109,10 +112,8 @@ public abstract class Sprite extends VisibleComponent
     // Maintain a list of collisions.
     registeredCollisions = new HashSet<Sprite>();
 
-    // Set in motion.
-    timerInternal = new TimerInternal(this, DEFAULT_ENABLED, DEFAULT_INTERVAL, handler);
-
-    // Set default property values.
+    // Set default property values.  Enabling the sprite sets it in motion:
+    // the canvas moves it on each interval.
     Heading(0);  // Default initial heading
     Enabled(DEFAULT_ENABLED);
     Interval(DEFAULT_INTERVAL);
@@ -153,7 +154,7 @@ public abstract class Sprite extends VisibleComponent
       description = "Controls whether the sprite moves when its speed is non-zero.",
       category = PropertyCategory.BEHAVIOR)
   public boolean Enabled() {
-    return timerInternal.Enabled();
+    return enabled;
   }
 
   /**
@@ -166,7 +167,12 @@ public abstract class Sprite extends VisibleComponent
       defaultValue = DEFAULT_ENABLED ? "True" : "False")
   @SimpleProperty
       public void Enabled(boolean enabled) {
-    timerInternal.Enabled(enabled);
+    this.enabled = enabled;
+    if (enabled) {
+      canvas.scheduleSprite(this);
+    } else {
+      canvas.unscheduleSprite(this);
+    }
   }
 
   /**
@@ -216,7 +222,7 @@ public abstract class Sprite extends VisibleComponent
       "then the sprite will move 10 pixels every 50 milliseconds.</p>",
       category = PropertyCategory.BEHAVIOR)
   public int Interval() {
-    return timerInternal.Interval();
+    return interval;
   }
 
   /**
@@ -229,7 +235,11 @@ public abstract class Sprite extends VisibleComponent
       defaultValue = DEFAULT_INTERVAL + "")
   @SimpleProperty
   public void Interval(int interval) {
-    timerInternal.Interval(interval);
+    this.interval = interval;
+    if (enabled) {
+      // Restart the wait for the next move, as a timer would.
+      canvas.scheduleSprite(this);
+    }
   }
 
   /**
@@ -578,6 +588,14 @@ public abstract class Sprite extends VisibleComponent
     return registeredCollisions.contains(other);
   }
 
+  /**
+   * Returns the sprites that a collision has been registered with.  The
+   * returned set must not be modified.
+   */
+  Set<Sprite> getRegisteredCollisions() {
+    return registeredCollisions;
+  }
+
   /**
    * Moves the sprite back in bounds if part of it extends out of bounds,
    * having no effect otherwise. If the sprite is too wide to fit on the
@@ -657,11 +675,38 @@ public abstract class Sprite extends VisibleComponent
       canvas.getView().invalidate();
       return;
     }
+    checkEdge();
+    canvas.registerChange(this);
+  }
+
+  /**
+   * Raises the {@link #EdgeReached(int)} event if the Sprite has reached the
+   * edge of the Canvas.
+   */
+  private void checkEdge() {
     int edge = hitEdge();
     if (edge != Component.DIRECTION_NONE) {
       EdgeReached(edge);
     }
-    canvas.registerChange(this);
+  }
+
+  /**
+   * Moves the sprite the given number of times, as the canvas' animation loop
+   * does once per frame.  This doesn't notify the canvas; the loop redraws
+   * it and checks for collisions once all sprites have moved.
+   *
+   * @param moves the number of intervals that have passed since the last move
+   * @return {@code true} if the sprite moved, {@code false} otherwise
+   */
+  boolean advance(int moves) {
+    if (!initialized || speed == 0 || moves <= 0) {
+      return false;
+    }
+    for (int i = 0; i < moves; i++) {
+      updateCoordinates();
+      checkEdge();
+    }
+    return true;
   }
 
   /**
@@ -844,11 +889,25 @@ public abstract class Sprite extends VisibleComponent
     }
 
     // If we get here, rect1 has been mutated to hold the intersection of the
-    // two bounding boxes.  Now check every point in the intersection to see if
-    // both sprites contain that point.
+    // two bounding boxes.  A collision is a point of the intersection, on the
+    // grid of whole pixels starting at its upper left corner, that both
+    // sprites contain.  Rather than testing every point, only the rows where
+    // both sprites can have points are checked, and on each of those rows
+    // only the points between the left and right ends of both sprites.
+    // containsPoint() still decides every point that is checked, so the
+    // result is the same as checking every point.
     // TODO(user): Handling abutting sprites properly
-    for (double x = rect1.getLeft(); x <= rect1.getRight(); x++) {
-      for (double y = rect1.getTop(); y <= rect1.getBottom(); y++) {
+    double left = rect1.getLeft();
+    double top = rect1.getTop();
+    double right = rect1.getRight();
+    double bottom = Math.min(rect1.getBottom(), Math.min(
+        sprite1.yTop + sprite1.Height(), sprite2.yTop + sprite2.Height()) + POINT_TOLERANCE);
+    double firstY = Math.max(sprite1.yTop, sprite2.yTop) - POINT_TOLERANCE;
+    for (double y = top + Math.max(0, Math.ceil(firstY - top)); y <= bottom; y++) {
+      double rowLeft = Math.max(sprite1.rowLeft(y), sprite2.rowLeft(y)) - POINT_TOLERANCE;
+      double rowRight = Math.min(Math.min(sprite1.rowRight(y), sprite2.rowRight(y))
+          + POINT_TOLERANCE, right);
+      for (double x = left + Math.max(0, Math.ceil(rowLeft - left)); x <= rowRight; x++) {
         if (sprite1.containsPoint(x, y) && sprite2.containsPoint(x, y)) {
           return true;
         }
@@ -896,22 +955,36 @@ public abstract class Sprite extends VisibleComponent
         qy >= yTop && qy < yTop + Height();
   }
 
-  // Convenience methods for dealing with hitting the screen edge and collisions
-
-  // AlarmHandler implementation
+  /**
+   * Returns an x-coordinate at or to the left of every point of this sprite
+   * on the row at the given y-coordinate.  This is used by
+   * {@link #colliding(Sprite, Sprite)} to skip points that can't be in the
+   * sprite.  Subclasses of Sprite that are narrower than their bounding box
+   * may override this method, together with {@link #rowRight(double)}.
+   *
+   * @param qy the y-coordinate
+   * @return the leftmost possible x-coordinate on the row, or positive
+   *         infinity if the row has no points of this sprite
+   */
+  double rowLeft(double qy) {
+    return xLeft;
+  }
 
   /**
-   * Moves and redraws sprite, registering changes.
+   * Returns an x-coordinate at or to the right of every point of this sprite
+   * on the row at the given y-coordinate.
+   *
+   * @param qy the y-coordinate
+   * @return the rightmost possible x-coordinate on the row, or negative
+   *         infinity if the row has no points of this sprite
+   * @see #rowLeft(double)
    */
-  public void alarm() {
-    // This check on initialized is currently redundant, since registerChange()
-    // checks it too.
-    if (initialized && speed != 0) {
-      updateCoordinates();
-      registerChange();
-    }
+  double rowRight(double qy) {
+    return xLeft + Width();
   }
 
+  // Convenience methods for dealing with hitting the screen edge and collisions
+
   // Component implementation
 
   @Override
@@ -923,14 +996,14 @@ public abstract class Sprite extends VisibleComponent
 
   @Override
   public void onDestroy() {
-    timerInternal.Enabled(false);
+    Enabled(false);
   }
 
   // Deleteable implementation
 
   @Override
   public void onDelete() {
-    timerInternal.Enabled(false);
+    Enabled(false);
     canvas.removeSprite(this);
   }
 
@@ -0,0 +1,127 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+
+package com.google.appinventor.components.runtime;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The animation loop of a {@link Canvas}, which moves all of its enabled
+ * sprites once per frame instead of each sprite running its own timer.
+ *
+ * <p>Each sprite still moves once per {@link Sprite#Interval()}: the clock
+ * keeps the time of each sprite's next move, and on every frame moves the
+ * sprite as many times as have come due since the last frame.  After all
+ * sprites have moved, the Canvas is redrawn once and collisions are checked
+ * once for each sprite that moved.</p>
+ */
+final class SpriteClock implements Runnable {
+  // The time between frames, in ms.
+  static final int FRAME_INTERVAL = 16;
+
+  // A sprite never moves more than this many times in one frame, so that a
+  // long pause (or a tiny interval) doesn't make it jump across the Canvas.
+  private static final int MAX_MOVES_PER_FRAME = 10;
+
+  private static class Entry {
+    final Sprite sprite;
+    // The uptime at which the sprite moves next, in ms.
+    long nextMoveTime;
+
+    Entry(Sprite sprite) {
+      this.sprite = sprite;
+    }
+  }
+
+  private final Canvas canvas;
+  private final Handler handler;
+
+  // The enabled sprites, in the order in which they were enabled.
+  private final Map<Sprite, Entry> entries = new LinkedHashMap<Sprite, Entry>();
+
+  private boolean running;
+
+  /**
+   * Creates a clock for the sprites of the given Canvas.
+   *
+   * @param canvas the Canvas to redraw after sprites have moved
+   * @param handler the handler to which frames are posted
+   */
+  SpriteClock(Canvas canvas, Handler handler) {
+    this.canvas = canvas;
+    this.handler = handler;
+  }
+
+  /**
+   * Starts moving the given sprite, or restarts the wait for its next move if
+   * it is already moving.  The sprite next moves after its interval.
+   *
+   * @param sprite the sprite to move
+   */
+  void schedule(Sprite sprite) {
+    Entry entry = entries.get(sprite);
+    if (entry == null) {
+      entry = new Entry(sprite);
+      entries.put(sprite, entry);
+    }
+    entry.nextMoveTime = SystemClock.uptimeMillis() + sprite.Interval();
+    if (!running) {
+      running = true;
+      handler.postDelayed(this, FRAME_INTERVAL);
+    }
+  }
+
+  /**
+   * Stops moving the given sprite.
+   *
+   * @param sprite the sprite to stop
+   */
+  void unschedule(Sprite sprite) {
+    entries.remove(sprite);
+    if (entries.isEmpty() && running) {
+      handler.removeCallbacks(this);
+      running = false;
+    }
+  }
+
+  // Runnable implementation
+
+  @Override
+  public void run() {
+    long now = SystemClock.uptimeMillis();
+    List<Sprite> movedSprites = new ArrayList<Sprite>();
+    for (Entry entry : entries.values()) {
+      if (entry.nextMoveTime > now) {
+        continue;
+      }
+      int interval = entry.sprite.Interval();
+      int moves;
+      if (interval <= 0) {
+        // Move once per frame, which is as often as the sprite can be redrawn.
+        moves = 1;
+        entry.nextMoveTime = now;
+      } else {
+        long dueMoves = (now - entry.nextMoveTime) / interval + 1;
+        moves = (int) Math.min(dueMoves, MAX_MOVES_PER_FRAME);
+        // Moves beyond MAX_MOVES_PER_FRAME are skipped, not postponed.
+        entry.nextMoveTime += dueMoves * interval;
+      }
+      if (entry.sprite.advance(moves)) {
+        movedSprites.add(entry.sprite);
+      }
+    }
+    canvas.registerChanges(movedSprites);
+
+    // Sprites are only disabled by event handlers, which run after this frame,
+    // so there is still at least one sprite to move.
+    handler.postDelayed(this, FRAME_INTERVAL);
+  }
+}
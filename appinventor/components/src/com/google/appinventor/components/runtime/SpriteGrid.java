@@ -0,0 +1,223 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+
+package com.google.appinventor.components.runtime;
+
+import com.google.appinventor.components.runtime.util.BoundingBox;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A uniform grid over the sprites of a {@link Canvas}, used to find the
+ * sprites that may be colliding with a sprite without checking every sprite.
+ *
+ * <p>Each sprite is kept in the cells covered by its bounding box (including
+ * the one-pixel border used by {@link Sprite#colliding(Sprite, Sprite)}), and
+ * is moved to its new cells when it changes.  Two sprites whose bounding
+ * boxes intersect always share a cell.  Sprites that are too big to be kept
+ * in cells, or haven't been placed yet, are returned for every sprite.</p>
+ */
+final class SpriteGrid {
+  // The width and height of a cell, in pixels.
+  private static final int CELL_SIZE = 64;
+
+  // Sprites that cover more cells than this are checked against every sprite.
+  private static final int MAX_CELLS_PER_SPRITE = 64;
+
+  private static class Entry {
+    final Sprite sprite;
+    // The position of the sprite in the Canvas' list of sprites.
+    int order;
+    // The cells covered by the sprite, or placed == false if it isn't in any.
+    boolean placed;
+    int minColumn;
+    int minRow;
+    int maxColumn;
+    int maxRow;
+    // The query that last returned this sprite.
+    int stamp;
+
+    Entry(Sprite sprite) {
+      this.sprite = sprite;
+    }
+  }
+
+  private static final Comparator<Entry> ORDER = new Comparator<Entry>() {
+    @Override
+    public int compare(Entry e1, Entry e2) {
+      return e1.order < e2.order ? -1 : (e1.order == e2.order ? 0 : 1);
+    }
+  };
+
+  private final Map<Sprite, Entry> entries = new HashMap<Sprite, Entry>();
+  private final Map<Long, List<Entry>> cells = new HashMap<Long, List<Entry>>();
+  // Sprites that are returned for every sprite.
+  private final List<Entry> unplaced = new ArrayList<Entry>();
+  private int stamp;
+
+  /**
+   * Makes the grid hold exactly the given sprites, in the given order.
+   * Sprites that are new to the grid aren't placed until they are updated.
+   *
+   * @param sprites the sprites of the Canvas, in the order in which collisions
+   *        are to be reported
+   */
+  void setSprites(List<Sprite> sprites) {
+    Map<Sprite, Entry> oldEntries = new HashMap<Sprite, Entry>(entries);
+    int order = 0;
+    for (Sprite sprite : sprites) {
+      Entry entry = oldEntries.remove(sprite);
+      if (entry == null) {
+        entry = new Entry(sprite);
+        entries.put(sprite, entry);
+        unplaced.add(entry);
+      }
+      entry.order = order++;
+    }
+    for (Entry removed : oldEntries.values()) {
+      unplace(removed);
+      unplaced.remove(removed);
+      entries.remove(removed.sprite);
+    }
+  }
+
+  /**
+   * Moves the given sprite to the cells covered by its current bounding box.
+   *
+   * @param sprite the sprite that has changed
+   */
+  void update(Sprite sprite) {
+    Entry entry = entries.get(sprite);
+    if (entry == null) {
+      return;
+    }
+    BoundingBox box = sprite.getBoundingBox(1);
+    int minColumn = cellIndex(box.getLeft());
+    int minRow = cellIndex(box.getTop());
+    int maxColumn = cellIndex(box.getRight());
+    int maxRow = cellIndex(box.getBottom());
+    long cellCount = ((long) maxColumn - minColumn + 1) * ((long) maxRow - minRow + 1);
+    if (cellCount > MAX_CELLS_PER_SPRITE) {
+      if (entry.placed) {
+        unplace(entry);
+        unplaced.add(entry);
+      }
+      return;
+    }
+    if (entry.placed) {
+      if (entry.minColumn == minColumn && entry.minRow == minRow
+          && entry.maxColumn == maxColumn && entry.maxRow == maxRow) {
+        return;
+      }
+      unplace(entry);
+    } else {
+      unplaced.remove(entry);
+    }
+    entry.placed = true;
+    entry.minColumn = minColumn;
+    entry.minRow = minRow;
+    entry.maxColumn = maxColumn;
+    entry.maxRow = maxRow;
+    for (int column = minColumn; column <= maxColumn; column++) {
+      for (int row = minRow; row <= maxRow; row++) {
+        Long key = cellKey(column, row);
+        List<Entry> cell = cells.get(key);
+        if (cell == null) {
+          cell = new ArrayList<Entry>(4);
+          cells.put(key, cell);
+        }
+        cell.add(entry);
+      }
+    }
+  }
+
+  /**
+   * Returns the sprites that may be colliding with the given sprite, or have
+   * a collision registered with it, in the order given to
+   * {@link #setSprites(List)}.  Every other sprite of the grid is certainly
+   * not colliding with the given sprite.  The given sprite is not returned.
+   *
+   * @param sprite the sprite whose collisions are to be checked
+   * @return the sprites that need to be checked against the given sprite
+   */
+  List<Sprite> getCandidates(Sprite sprite) {
+    Entry entry = entries.get(sprite);
+    List<Entry> found = new ArrayList<Entry>();
+    stamp++;
+    if (entry != null) {
+      entry.stamp = stamp;
+      if (entry.placed) {
+        for (int column = entry.minColumn; column <= entry.maxColumn; column++) {
+          for (int row = entry.minRow; row <= entry.maxRow; row++) {
+            List<Entry> cell = cells.get(cellKey(column, row));
+            if (cell != null) {
+              collect(cell, found);
+            }
+          }
+        }
+      } else {
+        // An unplaced sprite may be anywhere.
+        collect(entries.values(), found);
+      }
+    }
+    collect(unplaced, found);
+    for (Sprite other : sprite.getRegisteredCollisions()) {
+      Entry otherEntry = entries.get(other);
+      if (otherEntry != null) {
+        collect(otherEntry, found);
+      }
+    }
+
+    Collections.sort(found, ORDER);
+    List<Sprite> candidates = new ArrayList<Sprite>(found.size());
+    for (Entry candidate : found) {
+      candidates.add(candidate.sprite);
+    }
+    return candidates;
+  }
+
+  private void collect(Iterable<Entry> from, List<Entry> found) {
+    for (Entry entry : from) {
+      collect(entry, found);
+    }
+  }
+
+  private void collect(Entry entry, List<Entry> found) {
+    if (entry.stamp != stamp) {
+      entry.stamp = stamp;
+      found.add(entry);
+    }
+  }
+
+  private void unplace(Entry entry) {
+    if (!entry.placed) {
+      return;
+    }
+    for (int column = entry.minColumn; column <= entry.maxColumn; column++) {
+      for (int row = entry.minRow; row <= entry.maxRow; row++) {
+        Long key = cellKey(column, row);
+        List<Entry> cell = cells.get(key);
+        cell.remove(entry);
+        if (cell.isEmpty()) {
+          cells.remove(key);
+        }
+      }
+    }
+    entry.placed = false;
+  }
+
+  private static int cellIndex(double coordinate) {
+    return (int) Math.floor(coordinate / CELL_SIZE);
+  }
+
+  private static Long cellKey(int column, int row) {
+    return ((long) column << 32) | (row & 0xffffffffL);
+  }
+}
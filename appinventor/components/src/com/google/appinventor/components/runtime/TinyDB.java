@@ -15,22 +15,24 @@ import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.common.YaVersion;
 import com.google.appinventor.components.runtime.errors.YailRuntimeError;
 import com.google.appinventor.components.runtime.util.JsonUtil;
+import com.google.appinventor.components.runtime.util.YailList;
 
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.List;
+import java.util.HashMap;
 import java.util.Map;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 
 import org.json.JSONException;
 
 /**
  * Persistently store YAIL values on the phone using tags to store and retrieve.
  *
+ * <p>The values are kept in a {@link TinyDBStore}, which is shared by all the
+ * TinyDB components with the same Namespace.  Stored values are written to
+ * the phone's storage a little later, in one batch, and at the latest when
+ * the Form is paused or stopped.</p>
+ *
  * @author markf@google.com (Mark Friedman)
  */
 @DesignerComponent(version = YaVersion.TINYDB_COMPONENT_VERSION,
@@ -40,9 +42,14 @@ import org.json.JSONException;
     iconName = "images/tinyDB.png")
 
 @SimpleObject
-public class TinyDB extends AndroidNonvisibleComponent implements Component, Deleteable {
+public class TinyDB extends AndroidNonvisibleComponent
+    implements Component, Deleteable, OnPauseListener, OnStopListener {
+
+  // The namespace of apps made before there were namespaces.
+  public static final String DEFAULT_NAMESPACE = "TinyDB1";
 
-  private SharedPreferences sharedPreferences;
+  private String namespace;
+  private TinyDBStore store;
 
   private Context context;  // this was a local in constructor and final not private
 
@@ -55,7 +62,39 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
   public TinyDB(ComponentContainer container) {
     super(container.$form());
     context = (Context) container.$context();
-    sharedPreferences = context.getSharedPreferences("TinyDB1", Context.MODE_PRIVATE);
+    Namespace(DEFAULT_NAMESPACE);
+    form.registerForOnPause(this);
+    form.registerForOnStop(this);
+  }
+
+  /**
+   * Returns the namespace of the values of this TinyDB.
+   */
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR,
+      description = "Namespace for storing data. TinyDBs with different namespaces " +
+      "keep their values separately.")
+  public String Namespace() {
+    return namespace;
+  }
+
+  /**
+   * Specifies the namespace of the values of this TinyDB.  TinyDB components
+   * with the same namespace share their values, even on different screens.
+   * Each namespace is kept in its own file, so that storing a value doesn't
+   * rewrite the values of the other namespaces.
+   *
+   * @param namespace the namespace; it must not be empty or contain a slash
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_STRING,
+      defaultValue = DEFAULT_NAMESPACE)
+  @SimpleProperty
+  public void Namespace(String namespace) {
+    if (namespace.length() == 0 || namespace.indexOf('/') != -1) {
+      throw new YailRuntimeError("The namespace \"" + namespace + "\" is not valid. " +
+          "It must not be empty or contain a slash.", "Invalid Namespace");
+    }
+    this.namespace = namespace;
+    store = TinyDBStore.getStore(context, namespace);
   }
 
   /**
@@ -68,13 +107,30 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
    */
   @SimpleFunction
   public void StoreValue(final String tag, final Object valueToStore) {
-    final SharedPreferences.Editor sharedPrefsEditor = sharedPreferences.edit();
-    try {
-      sharedPrefsEditor.putString(tag, JsonUtil.getJsonRepresentation(valueToStore));
-      sharedPrefsEditor.commit();
-    } catch (JSONException e) {
-      throw new YailRuntimeError("Value failed to convert to JSON.", "JSON Creation Error.");
+    store.putText(tag, toJson(valueToStore));
+  }
+
+  /**
+   * Store several values at once.  Either all of the values are stored, or
+   * none of them are.
+   *
+   * @param tagsAndValues a list of two-item lists, each holding a tag and
+   * the value to store under it
+   */
+  @SimpleFunction(description = "Stores several values at once. The argument is a list " +
+      "of two-item lists, each holding a tag and the value to store under it.")
+  public void StoreValues(YailList tagsAndValues) {
+    Map<String, String> texts = new HashMap<String, String>();
+    for (int i = 0; i < tagsAndValues.size(); i++) {
+      Object item = tagsAndValues.getObject(i);
+      if (!(item instanceof YailList) || ((YailList) item).size() != 2) {
+        throw new YailRuntimeError("Item " + (i + 1) + " of the list given to StoreValues " +
+            "is not a list of a tag and a value.", "Invalid List");
+      }
+      YailList tagAndValue = (YailList) item;
+      texts.put(tagAndValue.getString(0), toJson(tagAndValue.getObject(1)));
     }
+    store.putTexts(texts);
   }
 
   /**
@@ -88,10 +144,7 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
   @SimpleFunction
   public Object GetValue(final String tag, final Object valueIfTagNotThere) {
     try {
-      String value = sharedPreferences.getString(tag, "");
-      // If there's no entry with tag as a key then return the empty string.
-      //    was  return (value.length() == 0) ? "" : JsonUtil.getObjectFromJson(value);
-      return (value.length() == 0) ? valueIfTagNotThere : JsonUtil.getObjectFromJson(value);
+      return store.getValue(tag, valueIfTagNotThere);
     } catch (JSONException e) {
       throw new YailRuntimeError("Value failed to convert from JSON.", "JSON Creation Error.");
     }
@@ -105,12 +158,7 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
    */
   @SimpleFunction
   public Object GetTags() {
-    List<String> keyList = new ArrayList<String>();
-    Map<String,?> keyValues = sharedPreferences.getAll();
-    // here is the simple way to get keys
-    keyList.addAll(keyValues.keySet());
-    java.util.Collections.sort(keyList);
-    return keyList;
+    return store.getTags();
   }
 
   /**
@@ -119,9 +167,7 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
    */
   @SimpleFunction
   public void ClearAll() {
-    final SharedPreferences.Editor sharedPrefsEditor = sharedPreferences.edit();
-    sharedPrefsEditor.clear();
-    sharedPrefsEditor.commit();
+    store.clear();
   }
 
   /**
@@ -131,15 +177,30 @@ public class TinyDB extends AndroidNonvisibleComponent implements Component, Del
    */
   @SimpleFunction
   public void ClearTag(final String tag) {
-    final SharedPreferences.Editor sharedPrefsEditor = sharedPreferences.edit();
-    sharedPrefsEditor.remove(tag);
-    sharedPrefsEditor.commit();
+    store.remove(tag);
+  }
+
+  @Override
+  public void onPause() {
+    store.flush();
+  }
+
+  @Override
+  public void onStop() {
+    store.flush();
   }
 
   @Override
   public void onDelete() {
-    final SharedPreferences.Editor sharedPrefsEditor = sharedPreferences.edit();
-    sharedPrefsEditor.clear();
-    sharedPrefsEditor.commit();
+    store.clear();
+    store.flush();
+  }
+
+  private static String toJson(Object value) {
+    try {
+      return JsonUtil.getJsonRepresentation(value);
+    } catch (JSONException e) {
+      throw new YailRuntimeError("Value failed to convert to JSON.", "JSON Creation Error.");
+    }
   }
 }
@@ -0,0 +1,272 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+
+package com.google.appinventor.components.runtime;
+
+import com.google.appinventor.components.runtime.util.GingerbreadUtil;
+import com.google.appinventor.components.runtime.util.JsonUtil;
+import com.google.appinventor.components.runtime.util.SdkLevel;
+import com.google.appinventor.components.runtime.util.YailList;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The values stored by the {@link TinyDB} components of an app under one
+ * namespace.  All the TinyDB components with the same namespace share one
+ * store, even if they are on different Forms.
+ *
+ * <p>Values are kept in a SharedPreferences file, as JSON text.  Changes are
+ * not written to the file right away: they are collected and written
+ * together a little later, when a Form is paused or stopped, or before the
+ * app is closed, so that an app that stores many values in a row writes the
+ * file once.  Values that
+ * have been read are kept decoded, so reading them again doesn't decode
+ * their text again.</p>
+ */
+final class TinyDBStore {
+  // How long changes are collected before they are written, in ms.
+  private static final long FLUSH_DELAY_MS = 500;
+
+  // The maximum number of decoded values that are kept.
+  private static final int MAX_CACHED_VALUES = 100;
+
+  // Guarded by TinyDBStore.class.
+  private static final Map<String, TinyDBStore> stores = new HashMap<String, TinyDBStore>();
+
+  private final SharedPreferences sharedPreferences;
+  private final Handler handler;
+  private final Runnable flushRunnable = new Runnable() {
+    @Override
+    public void run() {
+      flush();
+    }
+  };
+
+  // The rest is guarded by the store.
+
+  // The decoded values that were read last, by tag.
+  private final Map<String, Object> values =
+      new LinkedHashMap<String, Object>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+          return size() > MAX_CACHED_VALUES;
+        }
+      };
+  // The changes that haven't been written yet: the JSON text of each tag
+  // that was stored, or null for each tag that was removed.
+  private final Map<String, String> pending = new HashMap<String, String>();
+  // Whether all the values were removed before the pending changes.
+  private boolean clearPending;
+  private boolean flushScheduled;
+
+  private TinyDBStore(SharedPreferences sharedPreferences) {
+    this(sharedPreferences, new Handler(Looper.getMainLooper()));
+  }
+
+  /**
+   * Creates a store that isn't shared, which schedules its writes on the
+   * given handler.  For tests.
+   */
+  TinyDBStore(SharedPreferences sharedPreferences, Handler handler) {
+    this.sharedPreferences = sharedPreferences;
+    this.handler = handler;
+  }
+
+  /**
+   * Returns the store for the given namespace, creating it if necessary.
+   *
+   * @param context a context of the app
+   * @param namespace the namespace, which is also the name of the
+   *        SharedPreferences file
+   */
+  static synchronized TinyDBStore getStore(Context context, String namespace) {
+    TinyDBStore store = stores.get(namespace);
+    if (store == null) {
+      store = new TinyDBStore(context.getApplicationContext()
+          .getSharedPreferences(namespace, Context.MODE_PRIVATE));
+      stores.put(namespace, store);
+    }
+    return store;
+  }
+
+  /**
+   * Writes the pending changes of all the stores, and waits until they have
+   * been written.  Called before the app is ended without being paused or
+   * stopped.
+   */
+  static void flushAll() {
+    List<TinyDBStore> all;
+    synchronized (TinyDBStore.class) {
+      all = new ArrayList<TinyDBStore>(stores.values());
+    }
+    for (TinyDBStore store : all) {
+      store.flush(true);
+    }
+  }
+
+  /**
+   * Returns the value stored under the given tag.  The caller may change the
+   * value that is returned.
+   *
+   * @param tag the tag
+   * @param valueIfTagNotThere the value to return if there is no value
+   *        stored under the tag
+   * @throws JSONException if the stored text can't be decoded
+   */
+  synchronized Object getValue(String tag, Object valueIfTagNotThere) throws JSONException {
+    if (values.containsKey(tag)) {
+      return copy(values.get(tag));
+    }
+    String text;
+    if (pending.containsKey(tag)) {
+      text = pending.get(tag);
+    } else {
+      text = clearPending ? null : sharedPreferences.getString(tag, null);
+    }
+    if (text == null || text.length() == 0) {
+      return valueIfTagNotThere;
+    }
+    Object value = JsonUtil.getObjectFromJson(text);
+    values.put(tag, value);
+    return copy(value);
+  }
+
+  /**
+   * Stores the given JSON texts under their tags.
+   *
+   * @param texts the JSON text of each value, by tag
+   */
+  synchronized void putTexts(Map<String, String> texts) {
+    for (Map.Entry<String, String> entry : texts.entrySet()) {
+      values.remove(entry.getKey());
+      pending.put(entry.getKey(), entry.getValue());
+    }
+    scheduleFlush();
+  }
+
+  /**
+   * Stores the given JSON text under the given tag.
+   */
+  synchronized void putText(String tag, String text) {
+    values.remove(tag);
+    pending.put(tag, text);
+    scheduleFlush();
+  }
+
+  /**
+   * Removes the value stored under the given tag.
+   */
+  synchronized void remove(String tag) {
+    values.remove(tag);
+    pending.put(tag, null);
+    scheduleFlush();
+  }
+
+  /**
+   * Removes all the values.
+   */
+  synchronized void clear() {
+    values.clear();
+    pending.clear();
+    clearPending = true;
+    scheduleFlush();
+  }
+
+  /**
+   * Returns the tags that have values, sorted.
+   */
+  synchronized List<String> getTags() {
+    Set<String> tags = new TreeSet<String>();
+    if (!clearPending) {
+      tags.addAll(sharedPreferences.getAll().keySet());
+    }
+    for (Map.Entry<String, String> entry : pending.entrySet()) {
+      if (entry.getValue() == null) {
+        tags.remove(entry.getKey());
+      } else {
+        tags.add(entry.getKey());
+      }
+    }
+    return new ArrayList<String>(tags);
+  }
+
+  /**
+   * Writes the pending changes to the SharedPreferences file.  From
+   * Gingerbread on, the file is written in the background, and Android waits
+   * for it to be written before the app is stopped.
+   */
+  void flush() {
+    flush(false);
+  }
+
+  /*
+   * Writes the pending changes.  If wait is true, the file is written before
+   * this returns.
+   */
+  private synchronized void flush(boolean wait) {
+    if (flushScheduled) {
+      handler.removeCallbacks(flushRunnable);
+      flushScheduled = false;
+    }
+    if (!clearPending && pending.isEmpty()) {
+      return;
+    }
+    SharedPreferences.Editor editor = sharedPreferences.edit();
+    if (clearPending) {
+      editor.clear();
+    }
+    for (Map.Entry<String, String> entry : pending.entrySet()) {
+      if (entry.getValue() == null) {
+        editor.remove(entry.getKey());
+      } else {
+        editor.putString(entry.getKey(), entry.getValue());
+      }
+    }
+    pending.clear();
+    clearPending = false;
+    if (!wait && SdkLevel.getLevel() >= SdkLevel.LEVEL_GINGERBREAD) {
+      GingerbreadUtil.apply(editor);
+    } else {
+      editor.commit();
+    }
+  }
+
+  private void scheduleFlush() {
+    if (!flushScheduled) {
+      flushScheduled = true;
+      handler.postDelayed(flushRunnable, FLUSH_DELAY_MS);
+    }
+  }
+
+  /*
+   * Returns a copy of the given decoded value, so that changes that the app
+   * makes to a list it got don't change the cached value.
+   */
+  private static Object copy(Object value) {
+    if (!(value instanceof YailList)) {
+      return value;
+    }
+    YailList list = (YailList) value;
+    int size = list.size();
+    Object[] items = new Object[size];
+    for (int i = 0; i < size; i++) {
+      items[i] = copy(list.getObject(i));
+    }
+    return YailList.makeList(items);
+  }
+}
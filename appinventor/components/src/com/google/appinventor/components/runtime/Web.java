@@ -36,11 +36,13 @@ import org.json.JSONException;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.CookieHandler;
 import java.net.HttpURLConnection;
@@ -51,6 +53,9 @@ import java.net.URL;
 import java.net.URLEncoder;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
 
 /**
  * The Original Web component provided functions for HTTP GET and POST requests.
@@ -124,6 +129,8 @@ public class Web extends AndroidNonvisibleComponent implements Component {
     final String responseFileName;
     final Map<String, List<String>> requestHeaders;
     final Map<String, List<String>> cookies;
+    final int cacheMode;
+    final String cacheKey;
 
     CapturedProperties(Web web) throws MalformedURLException, InvalidRequestHeadersException {
       urlString = web.urlString;
@@ -132,6 +139,7 @@ public class Web extends AndroidNonvisibleComponent implements Component {
       saveResponse = web.saveResponse;
       responseFileName = web.responseFileName;
       requestHeaders = processRequestHeaders(web.requestHeaders);
+      cacheMode = web.cacheMode;
 
       Map<String, List<String>> cookiesTemp = null;
       if (allowCookies && web.cookieHandler != null) {
@@ -144,11 +152,26 @@ public class Web extends AndroidNonvisibleComponent implements Component {
         }
       }
       cookies = cookiesTemp;
+
+      // Responses to the same URL are cached separately if they were requested with different
+      // headers or cookies.
+      StringBuilder headers = new StringBuilder();
+      headers.append(new TreeMap<String, List<String>>(requestHeaders));
+      if (cookies != null) {
+        headers.append(new TreeMap<String, List<String>>(cookies));
+      }
+      cacheKey = WebResponseCache.key(urlString, headers.toString());
     }
   }
 
   private static final String LOG_TAG = "Web";
 
+  // The maximum total size of the response cache, in bytes.
+  private static final long MAX_CACHE_SIZE = 4 * 1024 * 1024;
+
+  // The response cache shared by all Web components, or null if it hasn't been created yet.
+  private static WebResponseCache responseCache;
+
   private static final Map<String, String> mimeTypeToExtension;
   static {
     mimeTypeToExtension = Maps.newHashMap();
@@ -175,6 +198,11 @@ public class Web extends AndroidNonvisibleComponent implements Component {
   private YailList requestHeaders = new YailList();
   private boolean saveResponse;
   private String responseFileName = "";
+  private int cacheMode = Component.WEB_CACHE_MODE_NORMAL;
+
+  // The number of GET requests that were answered from the cache, and that weren't.
+  private final AtomicInteger cacheHits = new AtomicInteger();
+  private final AtomicInteger cacheMisses = new AtomicInteger();
 
   /**
    * Creates a new Web component.
@@ -188,6 +216,21 @@ public class Web extends AndroidNonvisibleComponent implements Component {
     cookieHandler = (SdkLevel.getLevel() >= SdkLevel.LEVEL_GINGERBREAD)
         ? GingerbreadUtil.newCookieManager()
         : null;
+
+    // Before Froyo, reusing connections could corrupt responses. Connections are reused (kept
+    // alive) on later versions.
+    if (SdkLevel.getLevel() < SdkLevel.LEVEL_FROYO) {
+      System.setProperty("http.keepAlive", "false");
+    }
+
+    createResponseCache(activity);
+  }
+
+  private static synchronized void createResponseCache(Activity activity) {
+    if (responseCache == null) {
+      responseCache = new WebResponseCache(new File(activity.getCacheDir(), "web"),
+          MAX_CACHE_SIZE);
+    }
   }
 
   /**
@@ -314,6 +357,65 @@ public class Web extends AndroidNonvisibleComponent implements Component {
     this.responseFileName = responseFileName;
   }
 
+  /**
+   * Returns how responses to GET requests are cached.
+   *
+   * @return  one of {@link Component#WEB_CACHE_MODE_OFF},
+   *          {@link Component#WEB_CACHE_MODE_NORMAL} or
+   *          {@link Component#WEB_CACHE_MODE_PREFER_CACHE}
+   */
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR,
+      description = "How the responses to Get requests are cached on the device, when " +
+      "SaveResponse is false. 0 (off) never uses the cache. 1 (normal) uses a cached response " +
+      "while the server says it is fresh, and otherwise asks the server whether it has " +
+      "changed. 2 (prefer cache) uses any cached response without asking the server.")
+  public int CacheMode() {
+    return cacheMode;
+  }
+
+  /**
+   * Specifies how responses to GET requests are cached.
+   *
+   * @param cacheMode one of {@link Component#WEB_CACHE_MODE_OFF},
+   *          {@link Component#WEB_CACHE_MODE_NORMAL} or
+   *          {@link Component#WEB_CACHE_MODE_PREFER_CACHE}
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_WEB_CACHE_MODE,
+      defaultValue = Component.WEB_CACHE_MODE_NORMAL + "")
+  @SimpleProperty
+  public void CacheMode(int cacheMode) {
+    if (cacheMode == Component.WEB_CACHE_MODE_OFF
+        || cacheMode == Component.WEB_CACHE_MODE_NORMAL
+        || cacheMode == Component.WEB_CACHE_MODE_PREFER_CACHE) {
+      this.cacheMode = cacheMode;
+    } else {
+      form.dispatchErrorOccurredEvent(this, "CacheMode",
+          ErrorMessages.ERROR_WEB_BAD_CACHE_MODE, cacheMode);
+    }
+  }
+
+  /**
+   * Returns the number of GET requests that were answered from the cache.
+   */
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR,
+      description = "The number of Get requests of this Web component that were answered " +
+      "from the cache, including those for which the server said the cached response had not " +
+      "changed.")
+  public int CacheHits() {
+    return cacheHits.get();
+  }
+
+  /**
+   * Returns the number of GET requests that could have been, but weren't,
+   * answered from the cache.
+   */
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR,
+      description = "The number of Get requests of this Web component that had to be " +
+      "downloaded because there was no usable response in the cache.")
+  public int CacheMisses() {
+    return cacheMisses.get();
+  }
+
   @SimpleFunction(description = "Clears all cookies for this Web component.")
   public void ClearCookies() {
     if (cookieHandler != null) {
@@ -784,14 +886,34 @@ public class Web extends AndroidNonvisibleComponent implements Component {
   private void performRequest(final CapturedProperties webProps, byte[] postData, String postFile, String httpVerb)
       throws IOException {
 
+    // The cache is used for GET requests whose response is returned as text.
+    boolean useCache = httpVerb.equals("GET") && !saveResponse
+        && webProps.cacheMode != Component.WEB_CACHE_MODE_OFF && responseCache != null;
+    WebResponseCache.Entry cached = useCache ? responseCache.get(webProps.cacheKey) : null;
+    if (cached != null && (webProps.cacheMode == Component.WEB_CACHE_MODE_PREFER_CACHE
+        || cached.isFresh(System.currentTimeMillis()))) {
+      cacheHits.incrementAndGet();
+      dispatchGotText(webProps, HttpURLConnection.HTTP_OK, cached.contentType, cached.content);
+      return;
+    }
+
     // Open the connection.
     HttpURLConnection connection = openConnection(webProps, httpVerb);
     if (connection != null) {
+      boolean responseRead = false;
       try {
         if (postData != null) {
           writeRequestData(connection, postData);
         } else if (postFile != null) {
           writeRequestFile(connection, postFile);
+        } else if (cached != null && cached.canRevalidate()) {
+          // Ask the server to only send the response if it has changed.
+          if (cached.etag != null) {
+            connection.addRequestProperty("If-None-Match", cached.etag);
+          }
+          if (cached.lastModified != null) {
+            connection.addRequestProperty("If-Modified-Since", cached.lastModified);
+          }
         }
 
         // Get the response.
@@ -810,24 +932,78 @@ public class Web extends AndroidNonvisibleComponent implements Component {
               GotFile(webProps.urlString, responseCode, responseType, path);
             }
           });
+        } else if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+          // The cached response is still valid.
+          getResponseContent(connection);
+          cacheHits.incrementAndGet();
+          long freshUntil = getFreshUntil(connection);
+          if (freshUntil >= 0) {
+            responseCache.put(webProps.cacheKey, cached.withFreshUntil(freshUntil));
+          } else {
+            responseCache.remove(webProps.cacheKey);
+          }
+          dispatchGotText(webProps, HttpURLConnection.HTTP_OK, cached.contentType,
+              cached.content);
         } else {
-          final String responseContent = getResponseContent(connection);
-
-          // Dispatch the event.
-          activity.runOnUiThread(new Runnable() {
-            @Override
-            public void run() {
-              GotText(webProps.urlString, responseCode, responseType, responseContent);
-            }
-          });
+          byte[] responseContent = getResponseContent(connection);
+          if (useCache) {
+            cacheMisses.incrementAndGet();
+            cacheResponse(webProps.cacheKey, connection, responseCode, responseType,
+                responseContent);
+          }
+          dispatchGotText(webProps, responseCode, responseType, responseContent);
         }
+        responseRead = true;
 
       } finally {
-        connection.disconnect();
+        // A connection whose response has been read completely is left open, so that it can be
+        // reused by the next request to the same server.
+        if (!responseRead) {
+          connection.disconnect();
+        }
+      }
+    }
+  }
+
+  private void dispatchGotText(final CapturedProperties webProps, final int responseCode,
+      final String responseType, byte[] content) {
+    final String responseContent = decodeResponseContent(content, responseType);
+
+    // Dispatch the event.
+    activity.runOnUiThread(new Runnable() {
+      @Override
+      public void run() {
+        GotText(webProps.urlString, responseCode, responseType, responseContent);
       }
+    });
+  }
+
+  /*
+   * Puts the given response into the cache if it can be cached, or removes the cached response
+   * if the server says that it must not be cached.
+   */
+  private static void cacheResponse(String cacheKey, HttpURLConnection connection,
+      int responseCode, String responseType, byte[] content) {
+    if (responseCode != HttpURLConnection.HTTP_OK) {
+      return;
+    }
+    long freshUntil = getFreshUntil(connection);
+    WebResponseCache.Entry entry = new WebResponseCache.Entry(responseType, content,
+        connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"),
+        Math.max(freshUntil, 0));
+    if (freshUntil < 0 || content.length > WebResponseCache.MAX_ENTRY_SIZE
+        || (!entry.isFresh(System.currentTimeMillis()) && !entry.canRevalidate())) {
+      responseCache.remove(cacheKey);
+    } else {
+      responseCache.put(cacheKey, entry);
     }
   }
 
+  private static long getFreshUntil(HttpURLConnection connection) {
+    return WebResponseCache.freshUntil(connection.getHeaderField("Cache-Control"),
+        connection.getExpiration(), connection.getDate(), System.currentTimeMillis());
+  }
+
   /**
    * Open a connection to the resource and set the HTTP action to PUT or DELETE if it is one of
    * them. GET would be the default, and POST is set in writeRequestData or writeRequestFile
@@ -850,11 +1026,21 @@ public class Web extends AndroidNonvisibleComponent implements Component {
     }
 
     // Request Headers
+    boolean acceptEncodingSet = false;
     for (Map.Entry<String, List<String>> header : webProps.requestHeaders.entrySet()) {
       String name = header.getKey();
       for (String value : header.getValue()) {
         connection.addRequestProperty(name, value);
       }
+      if (name.equalsIgnoreCase("Accept-Encoding")) {
+        acceptEncodingSet = true;
+      }
+    }
+
+    // Ask for a compressed response, unless the request headers say otherwise. The response is
+    // decompressed in getConnectionStream.
+    if (!acceptEncodingSet) {
+      connection.setRequestProperty("Accept-Encoding", "gzip");
     }
 
     // Cookies
@@ -903,13 +1089,7 @@ public class Web extends AndroidNonvisibleComponent implements Component {
       connection.setChunkedStreamingMode(0);
       BufferedOutputStream out = new BufferedOutputStream(connection.getOutputStream());
       try {
-        while (true) {
-          int b = in.read();
-          if (b == -1) {
-            break;
-          }
-          out.write(b);
-        }
+        copy(in, out);
         out.flush();
       } finally {
         out.close();
@@ -937,26 +1117,45 @@ public class Web extends AndroidNonvisibleComponent implements Component {
     }
   }
 
-  private static String getResponseContent(HttpURLConnection connection) throws IOException {
-    // Use the content encoding to convert bytes to characters.
-    String encoding = connection.getContentEncoding();
-    if (encoding == null) {
-      encoding = "UTF-8";
+  private static byte[] getResponseContent(HttpURLConnection connection) throws IOException {
+    InputStream in = getConnectionStream(connection);
+    if (in == null) {
+      return new byte[0];
     }
-    InputStreamReader reader = new InputStreamReader(getConnectionStream(connection), encoding);
     try {
       int contentLength = connection.getContentLength();
-      StringBuilder sb = (contentLength != -1)
-          ? new StringBuilder(contentLength)
-          : new StringBuilder();
-      char[] buf = new char[1024];
-      int read;
-      while ((read = reader.read(buf)) != -1) {
-        sb.append(buf, 0, read);
-      }
-      return sb.toString();
+      ByteArrayOutputStream out = new ByteArrayOutputStream(
+          (contentLength > 0) ? contentLength : 1024);
+      copy(in, out);
+      return out.toByteArray();
     } finally {
-      reader.close();
+      in.close();
+    }
+  }
+
+  /*
+   * Converts the content of a response to characters, using the charset given in the response
+   * type. UTF-8 is used if the response type doesn't give a charset, or gives one that isn't
+   * supported.
+   */
+  // VisibleForTesting
+  static String decodeResponseContent(byte[] content, String responseType) {
+    String charset = "UTF-8";
+    for (String parameter : responseType.split(";")) {
+      parameter = parameter.trim();
+      if (parameter.regionMatches(true, 0, "charset=", 0, "charset=".length())) {
+        charset = parameter.substring("charset=".length()).replace("\"", "").trim();
+      }
+    }
+    try {
+      return new String(content, charset);
+    } catch (UnsupportedEncodingException e) {
+      try {
+        return new String(content, "UTF-8");
+      } catch (UnsupportedEncodingException e2) {
+        // UTF-8 is always supported.
+        throw new AssertionError(e2);
+      }
     }
   }
 
@@ -964,18 +1163,15 @@ public class Web extends AndroidNonvisibleComponent implements Component {
       String responseFileName, String responseType) throws IOException {
     File file = createFile(responseFileName, responseType);
 
-    BufferedInputStream in = new BufferedInputStream(getConnectionStream(connection), 0x1000);
+    InputStream in = getConnectionStream(connection);
+    if (in == null) {
+      in = new ByteArrayInputStream(new byte[0]);
+    }
     try {
       BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(file), 0x1000);
       try {
         // Copy the contents from the input stream to the output stream.
-        while (true) {
-          int b = in.read();
-          if (b == -1) {
-            break;
-          }
-          out.write(b);
-        }
+        copy(in, out);
         out.flush();
       } finally {
         out.close();
@@ -987,15 +1183,34 @@ public class Web extends AndroidNonvisibleComponent implements Component {
     return file.getAbsolutePath();
   }
 
-  private static InputStream getConnectionStream(HttpURLConnection connection) {
+  private static InputStream getConnectionStream(HttpURLConnection connection)
+      throws IOException {
     // According to the Android reference documentation for HttpURLConnection: If the HTTP response
     // indicates that an error occurred, getInputStream() will throw an IOException. Use
     // getErrorStream() to read the error response.
+    InputStream in;
     try {
-      return connection.getInputStream();
+      in = connection.getInputStream();
     } catch (IOException e1) {
       // Use the error response.
-      return connection.getErrorStream();
+      in = connection.getErrorStream();
+    }
+    // Decompress the response if the server compressed it because openConnection asked for it.
+    // Responses without a body are left alone, even if they have a Content-Encoding header.
+    if (in != null && "gzip".equalsIgnoreCase(connection.getContentEncoding())
+        && connection.getContentLength() != 0
+        && connection.getResponseCode() != HttpURLConnection.HTTP_NOT_MODIFIED
+        && connection.getResponseCode() != HttpURLConnection.HTTP_NO_CONTENT) {
+      in = new GZIPInputStream(in);
+    }
+    return in;
+  }
+
+  private static void copy(InputStream in, OutputStream out) throws IOException {
+    byte[] buffer = new byte[0x1000];
+    int read;
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
     }
   }
 
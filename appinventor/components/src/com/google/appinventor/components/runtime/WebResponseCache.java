@@ -0,0 +1,267 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+
+package com.google.appinventor.components.runtime;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * An on-device cache of the responses to the GET requests of {@link Web}
+ * components, kept in files in a directory.
+ *
+ * <p>A response is cached if the server says how long it stays fresh
+ * (Cache-Control: max-age, or Expires), or if it can be revalidated with a
+ * conditional GET (ETag or Last-Modified).  Responses with Cache-Control:
+ * no-store are never cached.  When the cache grows too large, the entries
+ * that were written least recently are removed.</p>
+ */
+final class WebResponseCache {
+  // The version of the format of the cache files.
+  private static final int FORMAT_VERSION = 1;
+
+  private static final String FILE_SUFFIX = ".response";
+
+  // Responses larger than this aren't cached.
+  static final int MAX_ENTRY_SIZE = 512 * 1024;
+
+  /**
+   * A cached response.
+   */
+  static final class Entry {
+    final String contentType;
+    final byte[] content;
+    // The validators of the response, or null if the server didn't send them.
+    final String etag;
+    final String lastModified;
+    // The time until which the response is fresh, in ms since the epoch.
+    final long freshUntil;
+
+    Entry(String contentType, byte[] content, String etag, String lastModified,
+        long freshUntil) {
+      this.contentType = contentType;
+      this.content = content;
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.freshUntil = freshUntil;
+    }
+
+    /**
+     * Returns whether the response can be used without asking the server.
+     */
+    boolean isFresh(long now) {
+      return now < freshUntil;
+    }
+
+    /**
+     * Returns whether the response can be revalidated with a conditional GET.
+     */
+    boolean canRevalidate() {
+      return etag != null || lastModified != null;
+    }
+
+    /**
+     * Returns a copy of this entry that is fresh until the given time.
+     */
+    Entry withFreshUntil(long freshUntil) {
+      return new Entry(contentType, content, etag, lastModified, freshUntil);
+    }
+  }
+
+  private static final Comparator<File> OLDEST_FIRST = new Comparator<File>() {
+    @Override
+    public int compare(File f1, File f2) {
+      long t1 = f1.lastModified();
+      long t2 = f2.lastModified();
+      return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+    }
+  };
+
+  private final File directory;
+  private final long maxSize;
+
+  /**
+   * Creates a cache that keeps its files in the given directory.
+   *
+   * @param directory the directory of the cache files, created if necessary
+   * @param maxSize the maximum total size of the cache files, in bytes
+   */
+  WebResponseCache(File directory, long maxSize) {
+    this.directory = directory;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Returns the cached response for the given key, or null if there is none.
+   *
+   * @param key the key of the request, from {@link #key(String, String)}
+   */
+  synchronized Entry get(String key) {
+    File file = fileFor(key);
+    if (!file.exists()) {
+      return null;
+    }
+    try {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      try {
+        if (in.readInt() != FORMAT_VERSION || !in.readUTF().equals(key)) {
+          // A file of an older version, or another key with the same hash.
+          return null;
+        }
+        String contentType = in.readUTF();
+        String etag = readOptionalString(in);
+        String lastModified = readOptionalString(in);
+        long freshUntil = in.readLong();
+        byte[] content = new byte[in.readInt()];
+        in.readFully(content);
+        return new Entry(contentType, content, etag, lastModified, freshUntil);
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      file.delete();
+      return null;
+    }
+  }
+
+  /**
+   * Caches the given response for the given key, replacing any cached
+   * response.  Failures to write the cache are ignored.
+   *
+   * @param key the key of the request, from {@link #key(String, String)}
+   * @param entry the response
+   */
+  synchronized void put(String key, Entry entry) {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      return;
+    }
+    File file = fileFor(key);
+    try {
+      DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(new FileOutputStream(file)));
+      try {
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(key);
+        out.writeUTF(entry.contentType);
+        writeOptionalString(out, entry.etag);
+        writeOptionalString(out, entry.lastModified);
+        out.writeLong(entry.freshUntil);
+        out.writeInt(entry.content.length);
+        out.write(entry.content);
+      } finally {
+        out.close();
+      }
+    } catch (IOException e) {
+      file.delete();
+      return;
+    }
+    trim();
+  }
+
+  /**
+   * Removes the cached response for the given key, if there is one.
+   */
+  synchronized void remove(String key) {
+    fileFor(key).delete();
+  }
+
+  /**
+   * Returns the key of a request for the given URL, with the given request
+   * headers.  Requests with different headers are cached separately.
+   *
+   * @param url the URL of the request
+   * @param requestHeaders the request headers, in a canonical order
+   */
+  static String key(String url, String requestHeaders) {
+    return url + "\n" + requestHeaders;
+  }
+
+  /**
+   * Returns the time until which a response is fresh, given its headers, or
+   * -1 if the response must not be cached.
+   *
+   * @param cacheControl the Cache-Control header of the response, or null
+   * @param expires the Expires header of the response, in ms since the epoch,
+   *        or 0 if it has none
+   * @param date the Date header of the response, in ms since the epoch, or 0
+   *        if it has none
+   * @param now the time at which the response was received
+   */
+  static long freshUntil(String cacheControl, long expires, long date, long now) {
+    if (cacheControl != null) {
+      String directives = cacheControl.toLowerCase(Locale.ENGLISH);
+      if (directives.contains("no-store")) {
+        return -1;
+      }
+      if (directives.contains("no-cache")) {
+        return 0;
+      }
+      for (String directive : directives.split(",")) {
+        directive = directive.trim();
+        if (directive.startsWith("max-age=")) {
+          try {
+            return now + Long.parseLong(directive.substring("max-age=".length()).trim()) * 1000;
+          } catch (NumberFormatException e) {
+            // A malformed max-age means the response is already stale.
+            return 0;
+          }
+        }
+      }
+    }
+    if (expires != 0) {
+      // Use the server's clock to find out how long the response stays fresh.
+      return now + expires - (date != 0 ? date : now);
+    }
+    return 0;
+  }
+
+  private File fileFor(String key) {
+    return new File(directory, Integer.toHexString(key.hashCode()) + FILE_SUFFIX);
+  }
+
+  private void trim() {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    long size = 0;
+    for (File file : files) {
+      size += file.length();
+    }
+    if (size <= maxSize) {
+      return;
+    }
+    Arrays.sort(files, OLDEST_FIRST);
+    for (File file : files) {
+      if (size <= maxSize) {
+        break;
+      }
+      long length = file.length();
+      if (file.delete()) {
+        size -= length;
+      }
+    }
+  }
+
+  private static String readOptionalString(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static void writeOptionalString(DataOutputStream out, String s) throws IOException {
+    out.writeBoolean(s != null);
+    if (s != null) {
+      out.writeUTF(s);
+    }
+  }
+}
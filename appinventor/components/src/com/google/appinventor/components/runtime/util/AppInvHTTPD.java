@@ -50,10 +50,11 @@ public class AppInvHTTPD extends NanoHTTPD {
   private static byte[] hmacKey;
   private static int seq;
   private static final String MIME_JSON = "application/json"; // Other mime types defined in NanoHTTPD
+  private static final String MIME_EVENT_STREAM = "text/event-stream";
 
   public AppInvHTTPD( int port, File wwwroot, boolean secure, ReplForm form) throws IOException
   {
-    super(port, wwwroot);
+    super(port, wwwroot, true);
     this.rootDir = wwwroot;
     this.scheme = Scheme.getInstance("scheme");
     this.form = form;
@@ -61,6 +62,15 @@ public class AppInvHTTPD extends NanoHTTPD {
     gnu.expr.ModuleExp.mustNeverCompile();
   }
 
+  /**
+   * Blocks are evaluated one request at a time, in the order they arrive,
+   * on the thread with the large stack.
+   */
+  @Override
+  protected boolean isOrderedRequest(String method, String uri) {
+    return uri.equals("/_newblocks");
+  }
+
   /**
    *
    * @param uri Percent-decoded URI without parameters, for example "/index.cgi"
@@ -108,7 +118,7 @@ public class AppInvHTTPD extends NanoHTTPD {
         }
       Response res = new Response(HTTP_OK, MIME_PLAINTEXT, "OK");
       res.addHeader("Access-Control-Allow-Origin", "*");
-      res.addHeader("Access-Control-Allow-Headers", "origin, content-type");
+      res.addHeader("Access-Control-Allow-Headers", "origin, content-type, last-event-id");
       res.addHeader("Access-Control-Allow-Methods", "POST,OPTIONS,GET,HEAD,PUT");
       res.addHeader("Allow", "POST,OPTIONS,GET,HEAD,PUT");
       return (res);
@@ -205,6 +215,18 @@ public class AppInvHTTPD extends NanoHTTPD {
       res.addHeader("Access-Control-Allow-Methods", "POST,OPTIONS,GET,HEAD,PUT");
       res.addHeader("Allow", "POST,OPTIONS,GET,HEAD,PUT");
       return(res);
+    } else if (uri.equals("/_events")) {
+      // Push values to the Blocks Editor as they are produced, instead of making it poll
+      // _values. The browser sends the id of the last event it got when it reconnects.
+      String lastEventId = header.getProperty("last-event-id", parms.getProperty("lastEventId"));
+      Response res = new Response(HTTP_OK, MIME_EVENT_STREAM, RetValManager.openStream(lastEventId));
+      res.streaming = true;
+      res.addHeader("Cache-Control", "no-cache");
+      res.addHeader("Access-Control-Allow-Origin", "*");
+      res.addHeader("Access-Control-Allow-Headers", "origin, content-type, last-event-id");
+      res.addHeader("Access-Control-Allow-Methods", "POST,OPTIONS,GET,HEAD,PUT");
+      res.addHeader("Allow", "POST,OPTIONS,GET,HEAD,PUT");
+      return(res);
     } else if (uri.equals("/_getversion")) {
       Response res;
       try {
@@ -5,24 +5,142 @@
 
 package com.google.appinventor.components.runtime.util;
 
+import com.google.appinventor.components.runtime.Form;
+
 import android.os.Handler;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Utilities for handling asynchronous calls.
  *
+ * <p>All asynchronous calls share one bounded pool of threads, so that an
+ * app that makes many calls (for example, from a Clock's Timer event)
+ * doesn't start a thread for each of them.  Calls that are made while a
+ * Form is active belong to that Form, and are cancelled when it is
+ * destroyed.</p>
+ *
  * @author markf@google.com (Mark Friedman)
  */
 
 public class AsynchUtil {
 
+  // The maximum number of calls that run at the same time.  Further calls wait
+  // in the queue until a thread is free.
+  private static final int MAX_THREADS = 8;
+
+  // How long an idle thread is kept before it is stopped, in seconds.
+  private static final int KEEP_ALIVE_SECONDS = 30;
+
+  /*
+   * A call that was made with runAsynchronously or runSerially.
+   */
+  private static class Task implements Runnable {
+    private final Object owner;
+    private final Runnable call;
+    private final Lane lane;
+    // Guarded by the task; the thread running the call, if it has started.
+    private Thread thread;
+    private boolean started;
+    private boolean cancelled;
+
+    Task(Object owner, Runnable call, Lane lane) {
+      this.owner = owner;
+      this.call = call;
+      this.lane = lane;
+    }
+
+    @Override
+    public void run() {
+      synchronized (this) {
+        if (!cancelled) {
+          started = true;
+          thread = Thread.currentThread();
+        }
+      }
+      if (!started) {
+        // Cancelled while queued.  Its lane may still be waiting for it.
+        finished(this);
+        return;
+      }
+      queuedCount.decrementAndGet();
+      activeCount.incrementAndGet();
+      try {
+        call.run();
+      } finally {
+        synchronized (this) {
+          thread = null;
+          // Clear an interrupt from cancel() so that it can't reach the next
+          // task run by this thread.
+          Thread.interrupted();
+        }
+        activeCount.decrementAndGet();
+        completedCount.incrementAndGet();
+        finished(this);
+      }
+    }
+
+    /*
+     * Cancels the task.  A task that is still queued never runs, and a task
+     * that is running is interrupted.  Returns true if the task was still
+     * queued.
+     */
+    synchronized boolean cancel() {
+      if (cancelled) {
+        return false;
+      }
+      cancelled = true;
+      if (thread != null) {
+        thread.interrupt();
+      }
+      return !started;
+    }
+  }
+
+  /*
+   * The calls that were made with runSerially for one lane.  At most one of
+   * them is in the pool at a time.
+   */
+  private static class Lane {
+    private final Object key;
+    // Guarded by AsynchUtil.class.
+    private final LinkedList<Task> waiting = new LinkedList<Task>();
+    private boolean busy;
+
+    Lane(Object key) {
+      this.key = key;
+    }
+  }
+
+  private static final AtomicInteger queuedCount = new AtomicInteger();
+  private static final AtomicInteger activeCount = new AtomicInteger();
+  private static final AtomicLong completedCount = new AtomicLong();
+
+  // Guarded by AsynchUtil.class.
+  private static ThreadPoolExecutor executor;
+  private static final Map<Object, Set<Task>> tasksByOwner = new HashMap<Object, Set<Task>>();
+  private static final Map<Object, Lane> lanes = new HashMap<Object, Lane>();
+
   /**
    * Make an asynchronous call in a separate thread.
    * @param call a {@link Runnable} to run in the thread.
    */
   public static void runAsynchronously(final Runnable call) {
-    Thread thread = new Thread(call);
-    thread.start();
+    submit(new Task(Form.getActiveForm(), call, null));
   }
+
   /**
    * Make an asynchronous call in a separate thread, with a callback that's run on the current
    * Android UI thread.
@@ -45,7 +163,152 @@ public class AsynchUtil {
         }
       }
     };
-    Thread thread = new Thread(runnable);
-    thread.start();
+    runAsynchronously(runnable);
+  }
+
+  /**
+   * Make an asynchronous call in a separate thread, after all earlier calls
+   * made with the same lane have returned.  Use this instead of
+   * {@link #runAsynchronously(Runnable)} when the calls must happen in the
+   * order in which they are made, for example messages sent to a server.
+   * @param lane the object, usually a component, whose calls are run in order
+   * @param call a {@link Runnable} to run in the thread.
+   */
+  public static void runSerially(Object lane, Runnable call) {
+    Task task;
+    synchronized (AsynchUtil.class) {
+      Lane serialLane = lanes.get(lane);
+      if (serialLane == null) {
+        serialLane = new Lane(lane);
+        lanes.put(lane, serialLane);
+      }
+      task = new Task(Form.getActiveForm(), call, serialLane);
+      track(task);
+      if (serialLane.busy) {
+        serialLane.waiting.add(task);
+        return;
+      }
+      serialLane.busy = true;
+    }
+    getExecutor().execute(task);
+  }
+
+  /**
+   * Cancels the calls that were made while the given Form was active.  Calls
+   * that haven't started yet are never run, and calls that are running are
+   * interrupted.
+   * @param form the Form that is being destroyed
+   */
+  public static void cancelTasks(Form form) {
+    List<Task> tasks;
+    synchronized (AsynchUtil.class) {
+      Set<Task> owned = tasksByOwner.remove(form);
+      if (owned == null) {
+        return;
+      }
+      tasks = new ArrayList<Task>(owned);
+    }
+    for (Task task : tasks) {
+      if (task.cancel()) {
+        queuedCount.decrementAndGet();
+        if (task.lane == null) {
+          getExecutor().remove(task);
+        } else {
+          // The task at the head of a lane is already in the pool, and moves
+          // the lane on when the pool gets to it.
+          synchronized (AsynchUtil.class) {
+            task.lane.waiting.remove(task);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the number of calls that are waiting for a thread.
+   */
+  public static int getQueuedTaskCount() {
+    return queuedCount.get();
+  }
+
+  /**
+   * Returns the number of calls that are running.
+   */
+  public static int getActiveTaskCount() {
+    return activeCount.get();
+  }
+
+  /**
+   * Returns the number of calls that have returned (or thrown) so far.
+   */
+  public static long getCompletedTaskCount() {
+    return completedCount.get();
+  }
+
+  private static void submit(Task task) {
+    track(task);
+    getExecutor().execute(task);
+  }
+
+  private static synchronized void track(Task task) {
+    queuedCount.incrementAndGet();
+    if (task.owner != null) {
+      Set<Task> owned = tasksByOwner.get(task.owner);
+      if (owned == null) {
+        owned = new HashSet<Task>();
+        tasksByOwner.put(task.owner, owned);
+      }
+      owned.add(task);
+    }
+  }
+
+  /*
+   * Called when a task has finished, to forget it and start the next task of
+   * its lane.
+   */
+  private static void finished(Task task) {
+    Task next = null;
+    synchronized (AsynchUtil.class) {
+      if (task.owner != null) {
+        Set<Task> owned = tasksByOwner.get(task.owner);
+        if (owned != null) {
+          owned.remove(task);
+          if (owned.isEmpty()) {
+            tasksByOwner.remove(task.owner);
+          }
+        }
+      }
+      if (task.lane != null) {
+        next = task.lane.waiting.poll();
+        if (next == null) {
+          task.lane.busy = false;
+          lanes.remove(task.lane.key);
+        }
+      }
+    }
+    if (next != null) {
+      getExecutor().execute(next);
+    }
+  }
+
+  private static synchronized ThreadPoolExecutor getExecutor() {
+    if (executor == null) {
+      ThreadFactory threadFactory = new ThreadFactory() {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+          return new Thread(runnable, "AsynchUtil-" + threadCount.incrementAndGet());
+        }
+      };
+      executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS,
+          KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+          threadFactory);
+      // Before Gingerbread the threads are kept once they have been started.
+      if (SdkLevel.getLevel() >= SdkLevel.LEVEL_GINGERBREAD) {
+        GingerbreadUtil.allowCoreThreadTimeOut(executor);
+      }
+    }
+    return executor;
   }
 }
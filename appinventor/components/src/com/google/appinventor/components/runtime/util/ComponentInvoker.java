@@ -0,0 +1,224 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+
+package com.google.appinventor.components.runtime.util;
+
+import gnu.kawa.reflect.Invoke;
+import gnu.mapping.Values;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Calls component methods and property getters and setters for the YAIL
+ * runtime when the type of the component isn't known until the call is made,
+ * as for the generic ("any component") blocks.
+ *
+ * <p>Kawa's invoke looks for the method by reflection on every call.  Here
+ * the method is looked up once for each class, method name and number of
+ * arguments, and is then called directly.  If a class has more than one
+ * public method with the name and number of arguments, or an argument can't
+ * be converted to the type of its parameter as described below, the call is
+ * left to Kawa's invoke, which chooses among overloaded methods and converts
+ * any other values.</p>
+ *
+ * <p>Numbers are converted to the numeric types of their parameters,
+ * Booleans to boolean, and CharSequences (which include FStrings) to String.
+ * Any other argument is passed as is if it is null or an instance of the type
+ * of its parameter.</p>
+ */
+public final class ComponentInvoker {
+  private static final String COMPONENT_PACKAGE = "com.google.appinventor.components.runtime.";
+
+  // The classes of the component types, by type name.
+  private static final ConcurrentMap<String, Class<?>> componentClasses =
+      new ConcurrentHashMap<String, Class<?>>();
+
+  // For each class, the methods by name.  Each array is indexed by the number
+  // of arguments, and has null where the class has either no public method
+  // or more than one.
+  private static final ConcurrentMap<Class<?>, ConcurrentMap<Object, Method[]>> methods =
+      new ConcurrentHashMap<Class<?>, ConcurrentMap<Object, Method[]>>();
+
+  private static final Object[] NO_ARGS = new Object[0];
+
+  private ComponentInvoker() {
+  }
+
+  /**
+   * Returns the class of the component type with the given name, such as
+   * "Button" or "Screen", or null if there is no such class.
+   *
+   * @param typeName the name of the component type, as a String or a Symbol
+   */
+  public static Class<?> getComponentClass(Object typeName) {
+    String name = typeName.toString();
+    Class<?> componentClass = componentClasses.get(name);
+    if (componentClass == null) {
+      // TODO(sharon): This will have to change when components may be
+      // defined in packages other than com.google.appinventor.components.runtime.
+      String className = COMPONENT_PACKAGE + (name.equals("Screen") ? "Form" : name);
+      try {
+        componentClass = Class.forName(className);
+      } catch (ClassNotFoundException e) {
+        return null;
+      }
+      componentClasses.put(name, componentClass);
+    }
+    return componentClass;
+  }
+
+  /**
+   * Returns whether the given value is a component of the type with the
+   * given name.
+   *
+   * @param value the value
+   * @param typeName the name of the component type, as a String or a Symbol
+   */
+  public static boolean isComponentOfType(Object value, Object typeName) {
+    Class<?> componentClass = getComponentClass(typeName);
+    return componentClass != null && componentClass.isInstance(value);
+  }
+
+  /**
+   * Returns the value of the given property of the given component.
+   */
+  public static Object getProperty(Object component, Object propertyName) throws Throwable {
+    return invoke(component, propertyName, NO_ARGS);
+  }
+
+  /**
+   * Sets the given property of the given component to the given value.
+   */
+  public static Object setProperty(Object component, Object propertyName, Object value)
+      throws Throwable {
+    return invoke(component, propertyName, new Object[] { value });
+  }
+
+  /**
+   * Calls the given method of the given component.
+   *
+   * @param component the component
+   * @param methodName the name of the method, as a String or a Symbol
+   * @param args the arguments; the array may be changed
+   * @return the result of the method, or {@link Values#empty} if the
+   *         method returns void
+   * @throws Throwable anything the method throws
+   */
+  public static Object invoke(Object component, Object methodName, Object[] args)
+      throws Throwable {
+    Method method = getMethod(component.getClass(), methodName, args.length);
+    if (method != null && convertArgs(method.getParameterTypes(), args)) {
+      Object result;
+      try {
+        result = method.invoke(component, args);
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+      return method.getReturnType() == Void.TYPE ? Values.empty : result;
+    }
+    Object[] invokeArgs = new Object[args.length + 2];
+    invokeArgs[0] = component;
+    invokeArgs[1] = methodName;
+    System.arraycopy(args, 0, invokeArgs, 2, args.length);
+    return Invoke.invoke.applyN(invokeArgs);
+  }
+
+  /*
+   * Returns the only public method of the given class with the given name
+   * and number of parameters, or null if there isn't exactly one.
+   */
+  private static Method getMethod(Class<?> componentClass, Object methodName, int arity) {
+    ConcurrentMap<Object, Method[]> classMethods = methods.get(componentClass);
+    if (classMethods == null) {
+      classMethods = new ConcurrentHashMap<Object, Method[]>();
+      ConcurrentMap<Object, Method[]> previous =
+          methods.putIfAbsent(componentClass, classMethods);
+      if (previous != null) {
+        classMethods = previous;
+      }
+    }
+    Method[] byArity = classMethods.get(methodName);
+    if (byArity == null) {
+      byArity = findMethods(componentClass, methodName.toString());
+      classMethods.put(methodName, byArity);
+    }
+    return arity < byArity.length ? byArity[arity] : null;
+  }
+
+  private static Method[] findMethods(Class<?> componentClass, String name) {
+    int maxArity = -1;
+    for (Method method : componentClass.getMethods()) {
+      if (method.getName().equals(name) && !Modifier.isStatic(method.getModifiers())) {
+        maxArity = Math.max(maxArity, method.getParameterTypes().length);
+      }
+    }
+    Method[] byArity = new Method[maxArity + 1];
+    boolean[] overloaded = new boolean[maxArity + 1];
+    for (Method method : componentClass.getMethods()) {
+      if (method.getName().equals(name) && !Modifier.isStatic(method.getModifiers())) {
+        int arity = method.getParameterTypes().length;
+        if (byArity[arity] != null || overloaded[arity]) {
+          byArity[arity] = null;
+          overloaded[arity] = true;
+        } else {
+          byArity[arity] = method;
+        }
+      }
+    }
+    for (Method method : byArity) {
+      if (method != null && !Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+        // A public method inherited from a class that isn't public.
+        method.setAccessible(true);
+      }
+    }
+    return byArity;
+  }
+
+  /*
+   * Converts the given arguments, in place, to the given parameter types.
+   * Returns false if an argument can't be converted.
+   */
+  private static boolean convertArgs(Class<?>[] types, Object[] args) {
+    for (int i = 0; i < args.length; i++) {
+      Class<?> type = types[i];
+      Object arg = args[i];
+      if (type.isPrimitive()) {
+        if (arg instanceof Number) {
+          Number number = (Number) arg;
+          if (type == Integer.TYPE) {
+            args[i] = number.intValue();
+          } else if (type == Double.TYPE) {
+            args[i] = number.doubleValue();
+          } else if (type == Float.TYPE) {
+            args[i] = number.floatValue();
+          } else if (type == Long.TYPE) {
+            args[i] = number.longValue();
+          } else if (type == Short.TYPE) {
+            args[i] = number.shortValue();
+          } else if (type == Byte.TYPE) {
+            args[i] = number.byteValue();
+          } else {
+            return false;
+          }
+        } else if (!(type == Boolean.TYPE && arg instanceof Boolean)) {
+          return false;
+        }
+      } else if (type == String.class) {
+        if (arg instanceof CharSequence) {
+          args[i] = arg.toString();
+        } else if (arg != null) {
+          return false;
+        }
+      } else if (arg != null && !type.isInstance(arg)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -8,6 +8,7 @@ package com.google.appinventor.components.runtime.util;
 import android.app.Activity;
 import android.content.Intent;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.nfc.NdefMessage;
 import android.nfc.NdefRecord;
 import android.nfc.NfcAdapter;
@@ -26,6 +27,7 @@ import java.net.CookieStore;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.Locale;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * Helper methods for calling methods added in Gingerbread (2.3, API level 9).
@@ -36,6 +38,26 @@ public class GingerbreadUtil {
   private GingerbreadUtil() {
   }
 
+  /**
+   * Lets the core threads of the given executor stop when they have been idle
+   * for its keep-alive time.
+   *
+   * @param executor the executor whose threads may stop
+   */
+  public static void allowCoreThreadTimeOut(ThreadPoolExecutor executor) {
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Commits the changes in the given editor to memory right away, and writes
+   * them to disk in the background.
+   *
+   * @param editor the editor whose changes are committed
+   */
+  public static void apply(SharedPreferences.Editor editor) {
+    editor.apply();
+  }
+
   /**
    * Creates a new CookieManager instance.
    */
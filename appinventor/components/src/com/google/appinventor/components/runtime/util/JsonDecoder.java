@@ -0,0 +1,521 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+
+package com.google.appinventor.components.runtime.util;
+
+import gnu.lists.LList;
+import gnu.lists.Pair;
+import gnu.math.DFloNum;
+import gnu.math.IntNum;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Decodes JSON text into App Inventor values in a single pass over its
+ * characters, without building org.json objects first.
+ *
+ * <p>The decoder accepts the same relaxed JSON as the org.json tokener that
+ * was used before: strings may be unquoted or single-quoted, comments are
+ * skipped, keys may be followed by '=' or '=>', and items may be separated
+ * by ';'.  Text after the first value is ignored.</p>
+ *
+ * <p>JSON arrays become YailLists, and JSON objects become YailLists of
+ * two-item (key value) lists, sorted by key.  The items of these lists are
+ * already sanitized: numbers are Kawa numbers, the strings "true" and
+ * "false" (in any case) are booleans, and null is the string "null".</p>
+ */
+final class JsonDecoder {
+  // Arrays and objects may not be nested deeper than this, so that the
+  // decoder can't run out of stack.
+  static final int MAX_DEPTH = 256;
+
+  private static final int BUFFER_SIZE = 4096;
+
+  // The characters that end an unquoted string, as in org.json.
+  private static final String LITERAL_END = ",:]}/\\\"[{;=#";
+
+  private static final int END = -1;
+
+  // Stands for a JSON null until it is converted.
+  private static final Object NULL = new Object();
+
+  private final Reader in;
+  private final long maxLength;
+  private final char[] buffer = new char[BUFFER_SIZE];
+  private int position;
+  private int limit;
+  // The number of characters read before the current buffer.
+  private long offset;
+  // A character returned by nextClean that was put back, or END.
+  private int pushedBack = END;
+  private int depth;
+  // Reused for each string.
+  private final StringBuilder chars = new StringBuilder();
+
+  /**
+   * Creates a decoder for the JSON text read from the given reader.
+   *
+   * @param in the reader of the JSON text
+   * @param maxLength the maximum number of characters to read
+   */
+  JsonDecoder(Reader in, long maxLength) {
+    this.in = in;
+    this.maxLength = maxLength;
+  }
+
+  /**
+   * Decodes the JSON value at the start of the text.  An empty text decodes
+   * to the empty string.  A value that isn't in an array or object is
+   * returned as it was decoded: null for null, and a String, Boolean,
+   * Integer, Long or Double otherwise.
+   *
+   * @return the decoded value
+   * @throws JSONException if the text isn't a legal JSON value, or is too
+   *         long or too deeply nested
+   * @throws IOException if the text can't be read
+   */
+  Object decode() throws JSONException, IOException {
+    if (peek() == END) {
+      return "";
+    }
+    Object value = nextValue(nextClean());
+    return (value == NULL) ? null : value;
+  }
+
+  private Object nextValue(int c) throws JSONException, IOException {
+    switch (c) {
+      case '"':
+      case '\'':
+        return nextString((char) c);
+      case '[':
+        return nextArray();
+      case '{':
+        return nextObject();
+      default:
+        return literalValue(nextLiteral(c));
+    }
+  }
+
+  /*
+   * Returns the value as an item of a YailList.
+   */
+  private static Object sanitize(Object value) {
+    if (value == NULL) {
+      return "null";
+    }
+    if (value instanceof String) {
+      String s = (String) value;
+      if (s.equalsIgnoreCase("true")) {
+        return Boolean.TRUE;
+      }
+      if (s.equalsIgnoreCase("false")) {
+        return Boolean.FALSE;
+      }
+      return s;
+    }
+    if (value instanceof Double) {
+      return DFloNum.make((Double) value);
+    }
+    if (value instanceof Number) {
+      return IntNum.make(((Number) value).longValue());
+    }
+    return value;
+  }
+
+  private YailList nextArray() throws JSONException, IOException {
+    enter();
+    Pair head = new Pair(null, LList.Empty);
+    Pair tail = head;
+    int c = nextClean();
+    if (c != ']') {
+      back(c);
+      while (true) {
+        c = nextClean();
+        Object item;
+        if (c == ',') {
+          // A missing item, as in [1,,2], is null.
+          back(c);
+          item = NULL;
+        } else {
+          item = nextValue(c);
+        }
+        Pair pair = new Pair(sanitize(item), LList.Empty);
+        tail.setCdr(pair);
+        tail = pair;
+
+        c = nextClean();
+        if (c == ',' || c == ';') {
+          c = nextClean();
+          if (c == ']') {
+            break;
+          }
+          back(c);
+        } else if (c == ']') {
+          break;
+        } else {
+          throw syntaxError("Expected a ',' or ']'");
+        }
+      }
+    }
+    depth--;
+    return YailList.makeListFromPairs((LList) head.getCdr());
+  }
+
+  private YailList nextObject() throws JSONException, IOException {
+    enter();
+    Map<String, Object> members = new TreeMap<String, Object>();
+    while (true) {
+      int c = nextClean();
+      if (c == END) {
+        throw syntaxError("A JSONObject text must end with '}'");
+      }
+      if (c == '}') {
+        break;
+      }
+      String key;
+      if (c == '"' || c == '\'') {
+        key = nextString((char) c);
+      } else if (c == '[' || c == '{') {
+        throw syntaxError("Expected a key");
+      } else {
+        key = nextLiteral(c);
+      }
+
+      c = nextClean();
+      if (c == '=') {
+        if (peek() == '>') {
+          next();
+        }
+      } else if (c != ':') {
+        throw syntaxError("Expected a ':' after a key");
+      }
+      // A later member with the same key replaces an earlier one.
+      members.put(key, sanitize(nextValue(nextClean())));
+
+      c = nextClean();
+      if (c == ',' || c == ';') {
+        c = nextClean();
+        if (c == '}') {
+          break;
+        }
+        back(c);
+      } else if (c == '}') {
+        break;
+      } else {
+        throw syntaxError("Expected a ',' or '}'");
+      }
+    }
+    depth--;
+
+    Pair head = new Pair(null, LList.Empty);
+    Pair tail = head;
+    for (Map.Entry<String, Object> member : members.entrySet()) {
+      YailList keyAndValue = YailList.makeListFromPairs(
+          new Pair(member.getKey(), new Pair(member.getValue(), LList.Empty)));
+      Pair pair = new Pair(keyAndValue, LList.Empty);
+      tail.setCdr(pair);
+      tail = pair;
+    }
+    return YailList.makeListFromPairs((LList) head.getCdr());
+  }
+
+  private void enter() throws JSONException {
+    if (++depth > MAX_DEPTH) {
+      throw syntaxError("JSON text is nested too deeply");
+    }
+  }
+
+  private String nextString(char quote) throws JSONException, IOException {
+    chars.setLength(0);
+    while (true) {
+      int c = next();
+      switch (c) {
+        case END:
+        case 0:
+        case '\n':
+        case '\r':
+          throw syntaxError("Unterminated string");
+        case '\\':
+          c = next();
+          switch (c) {
+            case 'b':
+              chars.append('\b');
+              break;
+            case 't':
+              chars.append('\t');
+              break;
+            case 'n':
+              chars.append('\n');
+              break;
+            case 'f':
+              chars.append('\f');
+              break;
+            case 'r':
+              chars.append('\r');
+              break;
+            case 'u':
+              chars.append((char) nextHex4());
+              break;
+            case END:
+              throw syntaxError("Unterminated string");
+            default:
+              // Including \", \', \\ and \/.
+              chars.append((char) c);
+              break;
+          }
+          break;
+        default:
+          if (c == quote) {
+            return chars.toString();
+          }
+          chars.append((char) c);
+          break;
+      }
+    }
+  }
+
+  private int nextHex4() throws JSONException, IOException {
+    int value = 0;
+    for (int i = 0; i < 4; i++) {
+      int digit = Character.digit(next(), 16);
+      if (digit < 0) {
+        throw syntaxError("Illegal escape.");
+      }
+      value = (value << 4) | digit;
+    }
+    return value;
+  }
+
+  /*
+   * Reads an unquoted string that starts with the given character, up to the
+   * next character that ends it.
+   */
+  private String nextLiteral(int c) throws JSONException, IOException {
+    chars.setLength(0);
+    while (c >= ' ' && LITERAL_END.indexOf(c) < 0) {
+      chars.append((char) c);
+      c = peek();
+      if (c >= ' ' && LITERAL_END.indexOf(c) < 0) {
+        next();
+      } else {
+        break;
+      }
+    }
+    String literal = chars.toString().trim();
+    if (literal.length() == 0) {
+      throw syntaxError("Missing value");
+    }
+    return literal;
+  }
+
+  /*
+   * Converts an unquoted string to the value it stands for.
+   */
+  // VisibleForTesting
+  static Object literalValue(String literal) {
+    if (literal.equalsIgnoreCase("true")) {
+      return Boolean.TRUE;
+    }
+    if (literal.equalsIgnoreCase("false")) {
+      return Boolean.FALSE;
+    }
+    if (literal.equalsIgnoreCase("null")) {
+      return NULL;
+    }
+    char first = literal.charAt(0);
+    if ((first >= '0' && first <= '9') || first == '-' || first == '+' || first == '.') {
+      Number number = parseNumber(literal);
+      if (number != null) {
+        return number;
+      }
+    }
+    return literal;
+  }
+
+  /*
+   * Parses a number, or returns null if the literal isn't one.  Integers fit
+   * in an Integer if they can, else in a Long, else in a Double.  Like
+   * org.json, integers may be hexadecimal (0x1F) or octal (017).
+   */
+  private static Number parseNumber(String literal) {
+    int start = (literal.charAt(0) == '-' || literal.charAt(0) == '+') ? 1 : 0;
+    boolean negative = literal.charAt(0) == '-';
+    int length = literal.length();
+    if (start == length) {
+      return null;
+    }
+
+    int radix = 10;
+    int digitsStart = start;
+    if (length - start > 2 && literal.charAt(start) == '0'
+        && (literal.charAt(start + 1) == 'x' || literal.charAt(start + 1) == 'X')) {
+      radix = 16;
+      digitsStart = start + 2;
+    } else if (start == 0 && length > 1 && literal.charAt(0) == '0') {
+      radix = 8;
+      digitsStart = 1;
+    }
+
+    boolean integer = isInteger(literal, digitsStart, radix);
+    if (!integer && radix == 8) {
+      // Not octal after all, as in 09 or 0.5.
+      radix = 10;
+      digitsStart = start;
+      integer = isInteger(literal, digitsStart, radix);
+    }
+    if (integer) {
+      String digits = literal.substring(digitsStart);
+      try {
+        long value = Long.parseLong(negative ? "-" + digits : digits, radix);
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+          return (int) value;
+        }
+        return value;
+      } catch (NumberFormatException e) {
+        if (radix != 10) {
+          return null;
+        }
+        // Too big for a Long.
+      }
+    } else if (radix == 16) {
+      return null;
+    }
+
+    // A decimal number, possibly with a fraction and an exponent.
+    int i = start;
+    int digits = 0;
+    while (i < length && Character.isDigit(literal.charAt(i))) {
+      i++;
+      digits++;
+    }
+    if (i < length && literal.charAt(i) == '.') {
+      i++;
+      while (i < length && Character.isDigit(literal.charAt(i))) {
+        i++;
+        digits++;
+      }
+    }
+    if (digits == 0) {
+      return null;
+    }
+    if (i < length && (literal.charAt(i) == 'e' || literal.charAt(i) == 'E')) {
+      i++;
+      if (i < length && (literal.charAt(i) == '-' || literal.charAt(i) == '+')) {
+        i++;
+      }
+      int exponentStart = i;
+      while (i < length && Character.isDigit(literal.charAt(i))) {
+        i++;
+      }
+      if (i == exponentStart) {
+        return null;
+      }
+    }
+    if (i != length) {
+      return null;
+    }
+    return Double.valueOf(literal);
+  }
+
+  private static boolean isInteger(String literal, int start, int radix) {
+    for (int i = start; i < literal.length(); i++) {
+      if (Character.digit(literal.charAt(i), radix) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /*
+   * Returns the next character that isn't white space or in a comment, or END.
+   */
+  private int nextClean() throws JSONException, IOException {
+    if (pushedBack != END) {
+      int c = pushedBack;
+      pushedBack = END;
+      return c;
+    }
+    while (true) {
+      int c = next();
+      if (c == '/') {
+        int c2 = peek();
+        if (c2 == '/') {
+          skipLine();
+        } else if (c2 == '*') {
+          next();
+          skipBlockComment();
+        } else {
+          return c;
+        }
+      } else if (c == '#') {
+        skipLine();
+      } else if (c == END || c > ' ') {
+        return c;
+      }
+    }
+  }
+
+  private void back(int c) {
+    pushedBack = c;
+  }
+
+  private void skipLine() throws JSONException, IOException {
+    int c;
+    do {
+      c = next();
+    } while (c != '\n' && c != '\r' && c != END);
+  }
+
+  private void skipBlockComment() throws JSONException, IOException {
+    while (true) {
+      int c = next();
+      if (c == END) {
+        throw syntaxError("Unclosed comment");
+      }
+      if (c == '*' && peek() == '/') {
+        next();
+        return;
+      }
+    }
+  }
+
+  private int peek() throws JSONException, IOException {
+    if (position == limit && !fill()) {
+      return END;
+    }
+    return buffer[position];
+  }
+
+  private int next() throws JSONException, IOException {
+    if (position == limit && !fill()) {
+      return END;
+    }
+    return buffer[position++];
+  }
+
+  private boolean fill() throws JSONException, IOException {
+    offset += limit;
+    position = 0;
+    limit = 0;
+    int read = in.read(buffer, 0, BUFFER_SIZE);
+    if (read <= 0) {
+      return false;
+    }
+    limit = read;
+    if (offset + limit > maxLength) {
+      throw new JSONException("JSON text is longer than " + maxLength + " characters");
+    }
+    return true;
+  }
+
+  private JSONException syntaxError(String message) {
+    return new JSONException(message + " at character " + (offset + position));
+  }
+}
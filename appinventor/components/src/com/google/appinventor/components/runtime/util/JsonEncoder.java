@@ -0,0 +1,185 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+
+package com.google.appinventor.components.runtime.util;
+
+import gnu.lists.Pair;
+import gnu.math.IntFraction;
+import gnu.math.IntNum;
+
+import org.json.JSONException;
+
+/**
+ * Encodes App Inventor values as JSON text, appending the whole text to one
+ * StringBuilder instead of building a string for each nested value.
+ *
+ * <p>The text is the same as the one Android's org.json produces: strings are
+ * quoted as by JSONObject.quote, and numbers are formatted as by
+ * JSONObject.numberToString.  Note that Android's org.json escapes
+ * differently from the json.org library used on the desktop.</p>
+ */
+final class JsonEncoder {
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private JsonEncoder() {
+  }
+
+  /**
+   * Appends the JSON text of the given value to the given builder.  Strings,
+   * FStrings, numbers, booleans, YailLists and arrays of these are supported;
+   * any other value is encoded as the quoted text of its toString.
+   *
+   * @param value the value to encode
+   * @param out the builder the text is appended to
+   * @throws JSONException if the value contains a number that JSON can't
+   *         represent
+   */
+  static void write(Object value, StringBuilder out) throws JSONException {
+    if (value == null || value.equals(null)) {
+      out.append("null");
+    } else if (value instanceof CharSequence) {
+      // This includes FString, which is quoted from its characters.
+      quote((CharSequence) value, out);
+    } else if (value instanceof YailList) {
+      writeList((YailList) value, out);
+    } else if (value instanceof IntFraction) {
+      // The Json decoder used in getObjectFromJson cannot handle
+      // fractions.  So we Json encode fractions by first converting
+      // them to doubles. This is an example of value with Kawa type any
+      // being exposed to the rest of App Inventor by the value being
+      // passed to a component method, in this case TinyDB or TinyWebDB
+      // StoreValue.  See the "warning" comment in runtime.scm at
+      // call-component-method.
+      writeNumber(((IntFraction) value).doubleValue(), out);
+    } else if (value instanceof Number) {
+      writeNumber((Number) value, out);
+    } else if (value instanceof Boolean) {
+      out.append(((Boolean) value).booleanValue());
+    } else if (value.getClass().isArray()) {
+      out.append('[');
+      boolean first = true;
+      for (Object item : (Object[]) value) {
+        if (!first) {
+          out.append(',');
+        }
+        write(item, out);
+        first = false;
+      }
+      out.append(']');
+    } else {
+      quote(value.toString(), out);
+    }
+  }
+
+  /**
+   * Appends the JSON text of the given list to the given builder.
+   */
+  static void writeList(YailList list, StringBuilder out) throws JSONException {
+    out.append('[');
+    // Walk the pairs of the list rather than indexing it.
+    Object items = list.getCdr();
+    boolean first = true;
+    while (items instanceof Pair) {
+      Pair pair = (Pair) items;
+      if (!first) {
+        out.append(',');
+      }
+      write(pair.getCar(), out);
+      first = false;
+      items = pair.getCdr();
+    }
+    out.append(']');
+  }
+
+  /*
+   * Appends the given number as Android's JSONObject.numberToString formats
+   * it: numbers with an integral value are written without a fraction.
+   */
+  private static void writeNumber(Number number, StringBuilder out) throws JSONException {
+    if (number instanceof Integer || number instanceof Long
+        || number instanceof Short || number instanceof Byte) {
+      out.append(number.longValue());
+      return;
+    }
+    if (number instanceof IntNum && ((IntNum) number).inLongRange()) {
+      out.append(number.longValue());
+      return;
+    }
+    double doubleValue = number.doubleValue();
+    if (Double.isInfinite(doubleValue) || Double.isNaN(doubleValue)) {
+      throw new JSONException("Forbidden numeric value: " + doubleValue);
+    }
+    if (number.equals(-0d)) {
+      out.append("-0");
+      return;
+    }
+    long longValue = number.longValue();
+    if (doubleValue == (double) longValue) {
+      out.append(longValue);
+    } else {
+      out.append(number.toString());
+    }
+  }
+
+  /**
+   * Appends the given text to the given builder as a quoted JSON string,
+   * escaping the same characters as Android's JSONObject.quote: quotes,
+   * backslashes, slashes and control characters.
+   */
+  static void quote(CharSequence text, StringBuilder out) {
+    out.append('"');
+    int length = text.length();
+    // The start of the characters that don't need escaping and haven't been
+    // appended yet.
+    int start = 0;
+    for (int i = 0; i < length; i++) {
+      char c = text.charAt(i);
+      String escape = null;
+      switch (c) {
+        case '"':
+          escape = "\\\"";
+          break;
+        case '\\':
+          escape = "\\\\";
+          break;
+        case '/':
+          escape = "\\/";
+          break;
+        case '\b':
+          escape = "\\b";
+          break;
+        case '\t':
+          escape = "\\t";
+          break;
+        case '\n':
+          escape = "\\n";
+          break;
+        case '\f':
+          escape = "\\f";
+          break;
+        case '\r':
+          escape = "\\r";
+          break;
+        default:
+          if (c < ' ') {
+            out.append(text, start, i);
+            out.append("\\u")
+                .append(HEX_DIGITS[(c >> 12) & 0xF])
+                .append(HEX_DIGITS[(c >> 8) & 0xF])
+                .append(HEX_DIGITS[(c >> 4) & 0xF])
+                .append(HEX_DIGITS[c & 0xF]);
+            start = i + 1;
+          }
+          break;
+      }
+      if (escape != null) {
+        out.append(text, start, i).append(escape);
+        start = i + 1;
+      }
+    }
+    out.append(text, start, length);
+    out.append('"');
+  }
+}
@@ -5,14 +5,13 @@
 
 package com.google.appinventor.components.runtime.util;
 
-import gnu.lists.FString;
-import gnu.math.IntFraction;
-
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.json.JSONTokener;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
@@ -150,69 +149,63 @@ public class JsonUtil {
     return o.toString();
   }
 
+  /**
+   * Returns the JSON text of the given value.  Strings, FStrings, numbers,
+   * booleans, YailLists and arrays of these are supported; any other value
+   * is encoded as the quoted text of its toString.
+   *
+   * <p>The whole text is built in one StringBuilder, so that encoding a
+   * large list doesn't create a string for each of its items.</p>
+   *
+   * @param value the value to encode
+   * @return the JSON text
+   * @throws JSONException if the value contains a number that JSON can't
+   *         represent
+   */
   public static String getJsonRepresentation(Object value) throws JSONException {
-    if (value == null || value.equals(null)) {
-      return "null";
-    }
-    if (value instanceof FString) {
-      return JSONObject.quote(value.toString());
-    }
-    if (value instanceof YailList) {
-      return ((YailList) value).toJSONString();
-    }
-    // The Json tokener used in getOnjectFromJson cannot handle
-    // fractions.  So we Json encode fractions by first converting
-    // them to doubles. This is an example of value with Kawa type any
-    // being exposed to the rest of App Inventor by the value being
-    // passed to a compoent method, in this case TinyDB or TinyWebDB
-    // StoreValue.  See the "warning" comment in runtime.scm at
-    // call-component-method.
-    if (value instanceof IntFraction) {
-      return JSONObject.numberToString((Number) ((IntFraction)value).doubleValue());
-    }
-    if (value instanceof Number) {
-      return JSONObject.numberToString((Number) value);
-    }
-    if (value instanceof Boolean) {
-      return value.toString();
-    }
-    if (value.getClass().isArray()) {
-      StringBuilder sb = new StringBuilder();
-      sb.append("[");
-      String separator = "";
-      for (Object o: (Object[]) value) {
-        sb.append(separator).append(getJsonRepresentation(o));
-        separator = ",";
-      }
-      sb.append("]");
-      return sb.toString();
-    }
-    return JSONObject.quote(value.toString());
+    StringBuilder json = new StringBuilder();
+    JsonEncoder.write(value, json);
+    return json.toString();
   }
 
+  /**
+   * Decodes the given JSON text. JSON arrays decode to YailLists, and JSON
+   * objects decode to YailLists of two-item (key value) lists, sorted by key,
+   * with their items converted as {@link #convertJsonItem} does. The empty
+   * string decodes to the empty string.
+   *
+   * @param jsonString the JSON text
+   * @return the decoded value
+   * @throws JSONException if the text isn't a legal JSON value
+   */
   public static Object getObjectFromJson(String jsonString) throws JSONException {
-      if ((jsonString == null) || jsonString.equals("")) {
+    if ((jsonString == null) || jsonString.equals("")) {
       // We'd like the empty string to decode to the empty string.  Form.java
       // relies on this for the case where there's an activity result with no intent data.
-      // We handle this case explicitly since nextValue() appears to throw an error
-      // when given the empty string.
       return "";
-    } else {
-      final Object value = (new JSONTokener(jsonString)).nextValue();
-      // Note that the JSONTokener may return a value equals() to null.
-      if (value == null || value.equals(null)) {
-        return null;
-      } else if ((value instanceof String) ||
-          (value instanceof Number) ||
-          (value instanceof Boolean)) {
-        return value;
-      } else if (value instanceof JSONArray) {
-        return getListFromJsonArray((JSONArray)value);
-      } else if (value instanceof JSONObject) {
-        return getListFromJsonObject((JSONObject)value);
-      }
-      throw new JSONException("Invalid JSON string.");
+    }
+    try {
+      return new JsonDecoder(new StringReader(jsonString), jsonString.length()).decode();
+    } catch (IOException e) {
+      // A StringReader doesn't throw IOException.
+      throw new JSONException(e.getMessage());
     }
   }
-}
 
+  /**
+   * Decodes the JSON text read from the given reader, as
+   * {@link #getObjectFromJson(String)} does, without reading the whole text
+   * into a string first. The reader is not closed.
+   *
+   * @param reader the reader of the JSON text
+   * @param maxLength the maximum number of characters to read
+   * @return the decoded value
+   * @throws JSONException if the text isn't a legal JSON value, is nested
+   *         too deeply, or is longer than maxLength
+   * @throws IOException if the text can't be read
+   */
+  public static Object getObjectFromJson(Reader reader, long maxLength)
+      throws JSONException, IOException {
+    return new JsonDecoder(reader, maxLength).decode();
+  }
+}
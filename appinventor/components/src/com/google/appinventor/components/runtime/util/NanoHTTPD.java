@@ -194,6 +194,14 @@ public class NanoHTTPD
                  * to add lines.
                  */
                 public Properties header = new Properties();
+
+                /**
+                 * Whether data is sent as it becomes readable, until it
+                 * ends, rather than only what is available when the
+                 * response starts. The response has no Content-Length,
+                 * so the client reads it until the connection closes.
+                 */
+                public boolean streaming;
         }
 
         /**
@@ -224,7 +232,7 @@ public class NanoHTTPD
         // Socket & server code
         // ==================================================
 
-        private static final int REPL_STACK_SIZE = 256*1024;
+        static final int REPL_STACK_SIZE = 256*1024;
 
         /**
          * Starts a HTTP server to given port.<p>
@@ -232,9 +240,33 @@ public class NanoHTTPD
          */
 
         public NanoHTTPD( int port, File wwwroot ) throws IOException
+        {
+                this( port, wwwroot, false );
+        }
+
+        /**
+         * Starts a HTTP server to given port, in selector mode if
+         * useSelector is true.<p>
+         *
+         * In selector mode, one thread reads all the connections without
+         * blocking, connections are kept alive between requests, and the
+         * body of a PUT is written to its temporary file as it arrives.
+         * Requests for which isOrderedRequest() returns true are served one
+         * at a time, in the order they arrive; other requests are served on
+         * a pool of threads that grows as needed, so that requests are never
+         * refused.<p>
+         *
+         * Throws an IOException if the socket is already in use
+         */
+        public NanoHTTPD( int port, File wwwroot, boolean useSelector ) throws IOException
         {
                 myTcpPort = port;
                 this.myRootDir = wwwroot;
+                if ( useSelector )
+                {
+                        mySelectorServer = new NioHTTPD( this, myTcpPort );
+                        return;
+                }
                 myServerSocket = new ServerSocket( myTcpPort );
                 myThread = new Thread(new Runnable()
                         {
@@ -258,6 +290,11 @@ public class NanoHTTPD
          */
         public void stop()
         {
+                if ( mySelectorServer != null )
+                {
+                        mySelectorServer.stop();
+                        return;
+                }
                 try
                 {
                         myServerSocket.close();
@@ -267,6 +304,19 @@ public class NanoHTTPD
                 catch ( InterruptedException e ) {}
         }
 
+        /**
+         * Override this to have some requests served in order, one at a
+         * time, in selector mode. These requests are served on a thread
+         * with a large stack, for example to evaluate code.
+         *
+         * @param method        "GET", "POST" etc.
+         * @param uri   Percent-decoded URI without parameters, for example "/index.cgi"
+         */
+        protected boolean isOrderedRequest( String method, String uri )
+        {
+                return false;
+        }
+
 
         /**
          * Starts as a standalone file server and waits for Enter.
@@ -320,7 +370,7 @@ public class NanoHTTPD
         /**
          * Our Thread Pool Executor which manages a pool of threads for handling requests.
          * We start with 2 threads (one for handling _newblocks calls and one for the long
-         * running _values call. Max of 10 (in case of a spike of some kind, should really never
+         * running _values or _events call. Max of 10 (in case of a spike of some kind, should really never
          * have more then 2 or 3). Shutdown any execess idle threads (above 2) after 5 seconds.
          */
 
@@ -471,7 +521,7 @@ public class NanoHTTPD
                                 if ( r == null )
                                         sendError( HTTP_INTERNALERROR, "SERVER INTERNAL ERROR: Serve() returned a null response." );
                                 else
-                                        sendResponse( r.status, r.mimeType, r.header, r.data );
+                                        sendResponse( r.status, r.mimeType, r.header, r.data, r.streaming );
 
                                 in.close();
                                 is.close();
@@ -771,14 +821,14 @@ public class NanoHTTPD
                  */
                 private void sendError( String status, String msg ) throws InterruptedException
                 {
-                        sendResponse( status, MIME_PLAINTEXT, null, new ByteArrayInputStream( msg.getBytes()));
+                        sendResponse( status, MIME_PLAINTEXT, null, new ByteArrayInputStream( msg.getBytes()), false );
                         throw new InterruptedException();
                 }
 
                 /**
                  * Sends given response to the socket.
                  */
-                private void sendResponse( String status, String mime, Properties header, InputStream data )
+                private void sendResponse( String status, String mime, Properties header, InputStream data, boolean streaming )
                 {
                         try
                         {
@@ -809,7 +859,19 @@ public class NanoHTTPD
                                 pw.print("\r\n");
                                 pw.flush();
 
-                                if ( data != null )
+                                if ( data != null && streaming )
+                                {
+                                        // Send each piece of data as soon as it can be read,
+                                        // until the stream ends or the client goes away.
+                                        byte[] buff = new byte[theBufferSize];
+                                        int read;
+                                        while (( read = data.read( buff, 0, theBufferSize )) > 0 )
+                                        {
+                                                out.write( buff, 0, read );
+                                                out.flush();
+                                        }
+                                }
+                                else if ( data != null )
                                 {
                                         int pending = data.available(); // This is to support partial sends, see serveFile()
                                         byte[] buff = new byte[theBufferSize];
@@ -862,7 +924,8 @@ public class NanoHTTPD
         }
 
         private int myTcpPort;
-        private final ServerSocket myServerSocket;
+        private ServerSocket myServerSocket;
+        private NioHTTPD mySelectorServer;
         private Thread myThread;
         private File myRootDir;
 
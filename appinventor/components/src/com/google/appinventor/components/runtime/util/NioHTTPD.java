@@ -0,0 +1,704 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2013 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+
+package com.google.appinventor.components.runtime.util;
+
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The selector mode of {@link NanoHTTPD}.
+ *
+ * <p>One thread accepts connections and reads requests from all of them
+ * without blocking.  The request line and headers are parsed once they have
+ * all arrived; the body of a PUT is written to a temporary file as it
+ * arrives, and other bodies are kept in memory.  A complete request is
+ * handed to a worker thread, which calls {@link NanoHTTPD#serve} and writes
+ * the response.  Then, unless the response was streamed or the client asked
+ * to close the connection, the connection goes back to the selector for the
+ * next request.</p>
+ *
+ * <p>Ordered requests (see {@link NanoHTTPD#isOrderedRequest}) are served by
+ * a single thread with a large stack, in the order they arrive.  Other
+ * requests are served by a pool that starts a thread whenever all of its
+ * threads are busy, since some requests (like the Companion's /_values) wait
+ * for a long time.</p>
+ */
+final class NioHTTPD {
+  private static final String LOG_TAG = "NioHTTPD";
+
+  private static final int READ_BUFFER_SIZE = 8192;
+
+  // Requests whose line and headers are longer than this are refused.
+  private static final int MAX_HEAD_SIZE = 64 * 1024;
+
+  // Bodies that aren't written to a file may not be longer than this.
+  private static final int MAX_BODY_SIZE = 16 * 1024 * 1024;
+
+  private static final int WRITE_BUFFER_SIZE = 16 * 1024;
+
+  // How long an idle pool thread is kept, in seconds.
+  private static final int KEEP_ALIVE_SECONDS = 5;
+
+  private static final byte[] HEAD_END = { '\r', '\n', '\r', '\n' };
+
+  private final NanoHTTPD server;
+  private final Selector selector;
+  private final ServerSocketChannel serverChannel;
+  private final Thread selectorThread;
+  private final ExecutorService orderedExecutor;
+  private final ExecutorService executor;
+
+  // Guarded by the list; connections to register with the selector again.
+  private final List<Connection> returning = new ArrayList<Connection>();
+  // Only used by the selector thread; connections with a complete request.
+  private final List<Connection> ready = new ArrayList<Connection>();
+
+  private volatile boolean stopped;
+
+  private static final SimpleDateFormat gmtFormat =
+      new SimpleDateFormat("E, d MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+  static {
+    gmtFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+  }
+
+  /**
+   * Starts serving requests on the given port.
+   *
+   * @throws IOException if the port is already in use
+   */
+  NioHTTPD(NanoHTTPD server, int port) throws IOException {
+    this.server = server;
+    selector = Selector.open();
+    serverChannel = ServerSocketChannel.open();
+    serverChannel.socket().setReuseAddress(true);
+    serverChannel.socket().bind(new InetSocketAddress(port));
+    serverChannel.configureBlocking(false);
+    serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+    orderedExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(new ThreadGroup("biggerstack"), runnable,
+                "HTTPD Evaluation", NanoHTTPD.REPL_STACK_SIZE);
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE_SECONDS,
+        TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+          private final AtomicInteger count = new AtomicInteger();
+
+          @Override
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "HTTPD Session " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+
+    selectorThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        select();
+      }
+    }, "HTTPD Selector");
+    selectorThread.setDaemon(true);
+    selectorThread.start();
+  }
+
+  /**
+   * Returns the port that the server is listening on.
+   */
+  int getPort() {
+    return serverChannel.socket().getLocalPort();
+  }
+
+  /**
+   * Stops accepting connections, and closes the connections that are
+   * waiting for a request.
+   */
+  void stop() {
+    stopped = true;
+    selector.wakeup();
+    try {
+      selectorThread.join();
+    } catch (InterruptedException e) {
+      // Give up waiting.
+    }
+    orderedExecutor.shutdown();
+    executor.shutdown();
+  }
+
+  private void select() {
+    try {
+      while (!stopped) {
+        selector.select();
+        registerReturning();
+        handleSelectedKeys();
+        while (!ready.isEmpty()) {
+          // The keys of the ready connections were cancelled; a selection
+          // operation deregisters their channels, so that they can block.
+          selector.selectNow();
+          dispatchReady();
+          handleSelectedKeys();
+        }
+      }
+    } catch (IOException e) {
+      Log.e(LOG_TAG, "Selector failed", e);
+    } finally {
+      for (SelectionKey key : selector.keys()) {
+        closeQuietly(key.channel());
+      }
+      closeQuietly(selector);
+    }
+  }
+
+  private void handleSelectedKeys() {
+    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+    while (keys.hasNext()) {
+      SelectionKey key = keys.next();
+      keys.remove();
+      if (!key.isValid()) {
+        continue;
+      }
+      if (key.isAcceptable()) {
+        accept();
+      } else if (key.isReadable()) {
+        Connection connection = (Connection) key.attachment();
+        try {
+          connection.read();
+        } catch (IOException e) {
+          connection.close();
+        } catch (RuntimeException e) {
+          // A bad request must not stop the selector, which serves every
+          // connection.
+          Log.w(LOG_TAG, "Failed to read a request", e);
+          connection.close();
+        }
+      }
+    }
+  }
+
+  private void accept() {
+    try {
+      SocketChannel channel;
+      while ((channel = serverChannel.accept()) != null) {
+        channel.configureBlocking(false);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+      }
+    } catch (IOException e) {
+      Log.w(LOG_TAG, "Failed to accept a connection", e);
+    }
+  }
+
+  private void registerReturning() {
+    List<Connection> connections;
+    synchronized (returning) {
+      if (returning.isEmpty()) {
+        return;
+      }
+      connections = new ArrayList<Connection>(returning);
+      returning.clear();
+    }
+    for (Connection connection : connections) {
+      try {
+        connection.key = connection.channel.register(selector, SelectionKey.OP_READ, connection);
+        // The client may have sent the next request with the last one.
+        connection.process();
+      } catch (IOException e) {
+        connection.close();
+      } catch (RuntimeException e) {
+        Log.w(LOG_TAG, "Failed to read a request", e);
+        connection.close();
+      }
+    }
+  }
+
+  private void dispatchReady() {
+    for (Connection connection : ready) {
+      try {
+        connection.channel.configureBlocking(true);
+      } catch (IOException e) {
+        connection.close();
+        continue;
+      }
+      if (server.isOrderedRequest(connection.method, connection.uri)) {
+        orderedExecutor.execute(connection);
+      } else {
+        executor.execute(connection);
+      }
+    }
+    ready.clear();
+  }
+
+  /*
+   * A connection, and the request that is being read from it.
+   */
+  private final class Connection implements Runnable {
+    private final SocketChannel channel;
+    private SelectionKey key;
+    // Bytes read but not consumed yet.  Kept in write mode.
+    private ByteBuffer input = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    // How many bytes at the start of input are known not to start the end
+    // of the head.
+    private int scanned;
+
+    // The request being read.
+    private boolean readingBody;
+    private String method;
+    private String uri;
+    private boolean http11;
+    private boolean keepAlive;
+    private Properties header;
+    private Properties parms;
+    private long bodyRemaining;
+    private ByteArrayOutputStream body;
+    private File bodyFile;
+    private FileChannel bodyChannel;
+
+    Connection(SocketChannel channel) {
+      this.channel = channel;
+    }
+
+    /*
+     * Reads what is available, and processes it.  Called on the selector
+     * thread.
+     */
+    void read() throws IOException {
+      if (!input.hasRemaining()) {
+        // The head doesn't fit yet.
+        if (input.capacity() >= MAX_HEAD_SIZE) {
+          refuse(NanoHTTPD.HTTP_BADREQUEST, "BAD REQUEST: Headers too long.");
+          return;
+        }
+        ByteBuffer larger = ByteBuffer.allocate(input.capacity() * 2);
+        input.flip();
+        larger.put(input);
+        input = larger;
+      }
+      if (channel.read(input) == -1) {
+        close();
+        return;
+      }
+      process();
+    }
+
+    /*
+     * Consumes the bytes that have been read, and hands the connection to a
+     * worker once a request is complete.
+     */
+    void process() throws IOException {
+      if (!readingBody) {
+        int end = findHeadEnd();
+        if (end == -1) {
+          return;
+        }
+        byte[] head = new byte[end];
+        input.flip();
+        input.get(head);
+        input.position(input.position() + HEAD_END.length);
+        input.compact();
+        scanned = 0;
+        if (!parseHead(head)) {
+          return;
+        }
+        readingBody = true;
+      }
+
+      if (input.position() > 0 && bodyRemaining > 0) {
+        input.flip();
+        int count = (int) Math.min(bodyRemaining, input.remaining());
+        ByteBuffer chunk = input.slice();
+        chunk.limit(count);
+        if (bodyChannel != null) {
+          while (chunk.hasRemaining()) {
+            bodyChannel.write(chunk);
+          }
+        } else {
+          body.write(chunk.array(), chunk.arrayOffset(), count);
+        }
+        input.position(input.position() + count);
+        input.compact();
+        bodyRemaining -= count;
+      }
+      if (bodyRemaining == 0) {
+        if (bodyChannel != null) {
+          bodyChannel.close();
+          bodyChannel = null;
+        }
+        key.cancel();
+        ready.add(this);
+      }
+    }
+
+    /*
+     * Returns the length of the head if all of it has been read, or -1.
+     */
+    private int findHeadEnd() {
+      byte[] bytes = input.array();
+      int limit = input.position();
+      for (int i = scanned; i + HEAD_END.length <= limit; i++) {
+        if (bytes[i] == '\r' && bytes[i + 1] == '\n' && bytes[i + 2] == '\r'
+            && bytes[i + 3] == '\n') {
+          return i;
+        }
+      }
+      scanned = Math.max(0, limit - HEAD_END.length + 1);
+      return -1;
+    }
+
+    /*
+     * Parses the request line and headers.  Returns false if the request was
+     * refused.
+     */
+    private boolean parseHead(byte[] head) throws IOException {
+      String text = new String(head, "ISO-8859-1");
+      int lineEnd = text.indexOf("\r\n");
+      String requestLine = (lineEnd == -1) ? text : text.substring(0, lineEnd);
+      int space1 = requestLine.indexOf(' ');
+      int space2 = requestLine.indexOf(' ', space1 + 1);
+      if (space1 <= 0) {
+        refuse(NanoHTTPD.HTTP_BADREQUEST, "BAD REQUEST: Syntax error.");
+        return false;
+      }
+      method = requestLine.substring(0, space1);
+      String target = (space2 == -1)
+          ? requestLine.substring(space1 + 1)
+          : requestLine.substring(space1 + 1, space2);
+      String protocol = (space2 == -1) ? "HTTP/1.0" : requestLine.substring(space2 + 1).trim();
+
+      header = new Properties();
+      int start = lineEnd + 2;
+      while (lineEnd != -1 && start < text.length()) {
+        lineEnd = text.indexOf("\r\n", start);
+        String line = (lineEnd == -1) ? text.substring(start) : text.substring(start, lineEnd);
+        int colon = line.indexOf(':');
+        if (colon >= 0) {
+          header.put(line.substring(0, colon).trim().toLowerCase(Locale.ENGLISH),
+              line.substring(colon + 1).trim());
+        }
+        start = lineEnd + 2;
+      }
+
+      parms = new Properties();
+      try {
+        int query = target.indexOf('?');
+        if (query >= 0) {
+          decodeParms(target.substring(query + 1), parms);
+          uri = decodePercent(target.substring(0, query));
+        } else {
+          uri = decodePercent(target);
+        }
+      } catch (IllegalArgumentException e) {
+        refuse(NanoHTTPD.HTTP_BADREQUEST, "BAD REQUEST: Bad percent-encoding.");
+        return false;
+      }
+
+      String connection = header.getProperty("connection", "");
+      http11 = protocol.equals("HTTP/1.1");
+      keepAlive = http11
+          ? !connection.equalsIgnoreCase("close")
+          : connection.equalsIgnoreCase("keep-alive");
+
+      if (header.getProperty("transfer-encoding") != null) {
+        refuse(NanoHTTPD.HTTP_NOTIMPLEMENTED, "NOT IMPLEMENTED: Transfer-Encoding.");
+        return false;
+      }
+      bodyRemaining = 0;
+      String contentLength = header.getProperty("content-length");
+      if (contentLength != null) {
+        try {
+          bodyRemaining = Long.parseLong(contentLength);
+        } catch (NumberFormatException e) {
+          refuse(NanoHTTPD.HTTP_BADREQUEST, "BAD REQUEST: Bad Content-Length.");
+          return false;
+        }
+        if (bodyRemaining < 0) {
+          refuse(NanoHTTPD.HTTP_BADREQUEST, "BAD REQUEST: Bad Content-Length.");
+          return false;
+        }
+      }
+      body = null;
+      bodyFile = null;
+      if (method.equalsIgnoreCase("PUT")) {
+        if (bodyRemaining > 0) {
+          bodyFile = File.createTempFile("NanoHTTPD", "",
+              new File(System.getProperty("java.io.tmpdir")));
+          bodyChannel = new FileOutputStream(bodyFile).getChannel();
+        }
+      } else if (bodyRemaining > MAX_BODY_SIZE) {
+        refuse("413 Request Entity Too Large", "Request body too large.");
+        return false;
+      } else {
+        body = new ByteArrayOutputStream((int) bodyRemaining);
+      }
+      return true;
+    }
+
+    /*
+     * Serves the request and writes the response.  Called on a worker
+     * thread, with the channel in blocking mode.
+     */
+    @Override
+    public void run() {
+      boolean reuse = false;
+      try {
+        Properties files = new Properties();
+        if (method.equalsIgnoreCase("PUT")) {
+          files.put("content", (bodyFile == null) ? "" : bodyFile.getAbsolutePath());
+        } else if (method.equalsIgnoreCase("POST") && body != null) {
+          String contentType = header.getProperty("content-type", "");
+          if (contentType.toLowerCase(Locale.ENGLISH).startsWith("multipart/form-data")) {
+            writeResponse(NanoHTTPD.HTTP_NOTIMPLEMENTED, NanoHTTPD.MIME_PLAINTEXT, null,
+                new ByteArrayInputStream(
+                    "NOT IMPLEMENTED: multipart/form-data. Use PUT.".getBytes()), false);
+            return;
+          }
+          decodeParms(new String(body.toByteArray(), "UTF-8").trim(), parms);
+        }
+        NanoHTTPD.Response response = server.serve(uri, method, header, parms, files,
+            channel.socket());
+        if (response == null) {
+          writeResponse(NanoHTTPD.HTTP_INTERNALERROR, NanoHTTPD.MIME_PLAINTEXT, null,
+              new ByteArrayInputStream(
+                  "SERVER INTERNAL ERROR: Serve() returned a null response.".getBytes()), false);
+          return;
+        }
+        reuse = writeResponse(response.status, response.mimeType, response.header,
+            response.data, response.streaming);
+      } catch (IllegalArgumentException e) {
+        // Bad percent-encoding in the body.
+        try {
+          writeResponse(NanoHTTPD.HTTP_BADREQUEST, NanoHTTPD.MIME_PLAINTEXT, null,
+              new ByteArrayInputStream("BAD REQUEST: Bad percent-encoding.".getBytes()),
+              false);
+        } catch (IOException e2) {
+          // Nothing more to do.
+        }
+      } catch (IOException e) {
+        Log.w(LOG_TAG, "Failed to serve " + uri, e);
+      } finally {
+        if (reuse && !stopped) {
+          readingBody = false;
+          try {
+            channel.configureBlocking(false);
+            synchronized (returning) {
+              returning.add(this);
+            }
+            selector.wakeup();
+          } catch (IOException e) {
+            close();
+          }
+        } else {
+          close();
+        }
+      }
+    }
+
+    /*
+     * Writes a response.  Returns whether the connection can be used for
+     * another request.
+     */
+    private boolean writeResponse(String status, String mimeType, Properties responseHeader,
+        InputStream data, boolean streaming) throws IOException {
+      try {
+        long length = -1;
+        if (!streaming) {
+          String contentLength = (responseHeader == null)
+              ? null : responseHeader.getProperty("Content-Length");
+          if (contentLength != null) {
+            length = Long.parseLong(contentLength);
+          } else {
+            length = (data == null) ? 0 : data.available();
+          }
+        }
+        boolean reuse = keepAlive && length != -1;
+
+        StringBuilder head = new StringBuilder();
+        head.append(http11 ? "HTTP/1.1 " : "HTTP/1.0 ").append(status).append("\r\n");
+        if (mimeType != null) {
+          head.append("Content-Type: ").append(mimeType).append("\r\n");
+        }
+        if (responseHeader == null || responseHeader.getProperty("Date") == null) {
+          synchronized (gmtFormat) {
+            head.append("Date: ").append(gmtFormat.format(new Date())).append("\r\n");
+          }
+        }
+        if (responseHeader != null) {
+          Enumeration<?> names = responseHeader.keys();
+          while (names.hasMoreElements()) {
+            String name = (String) names.nextElement();
+            if (!name.equalsIgnoreCase("Content-Length")) {
+              head.append(name).append(": ").append(responseHeader.getProperty(name))
+                  .append("\r\n");
+            }
+          }
+        }
+        if (length != -1) {
+          head.append("Content-Length: ").append(length).append("\r\n");
+        }
+        head.append(reuse ? "Connection: keep-alive\r\n" : "Connection: close\r\n");
+        head.append("\r\n");
+
+        OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel),
+            WRITE_BUFFER_SIZE);
+        out.write(head.toString().getBytes("ISO-8859-1"));
+        if (data != null) {
+          byte[] buffer = new byte[WRITE_BUFFER_SIZE];
+          if (streaming) {
+            out.flush();
+            int read;
+            while ((read = data.read(buffer, 0, buffer.length)) > 0) {
+              out.write(buffer, 0, read);
+              out.flush();
+            }
+          } else {
+            long pending = length;
+            while (pending > 0) {
+              int read = data.read(buffer, 0, (int) Math.min(pending, buffer.length));
+              if (read <= 0) {
+                // The response is shorter than it said.
+                reuse = false;
+                break;
+              }
+              out.write(buffer, 0, read);
+              pending -= read;
+            }
+          }
+        }
+        out.flush();
+        return reuse;
+      } finally {
+        if (data != null) {
+          data.close();
+        }
+      }
+    }
+
+    /*
+     * Sends an error response without blocking, as far as the socket takes
+     * it, and closes the connection.
+     */
+    private void refuse(String status, String message) {
+      try {
+        ByteBuffer response = ByteBuffer.wrap(("HTTP/1.0 " + status + "\r\n"
+            + "Content-Type: " + NanoHTTPD.MIME_PLAINTEXT + "\r\n"
+            + "Connection: close\r\n\r\n" + message).getBytes("ISO-8859-1"));
+        channel.write(response);
+      } catch (IOException e) {
+        // The connection is closed below anyway.
+      }
+      close();
+    }
+
+    void close() {
+      if (key != null) {
+        key.cancel();
+      }
+      if (bodyChannel != null) {
+        closeQuietly(bodyChannel);
+        bodyChannel = null;
+        bodyFile.delete();
+      }
+      closeQuietly(channel);
+    }
+  }
+
+  private static void closeQuietly(Closeable closeable) {
+    try {
+      closeable.close();
+    } catch (IOException e) {
+      // Nothing to do.
+    }
+  }
+
+  /*
+   * Decodes the percent encoding scheme, as NanoHTTPD does.  For example:
+   * "an+example%20string" -> "an example string".
+   *
+   * @throws IllegalArgumentException if the encoding is bad
+   */
+  static String decodePercent(String str) {
+    StringBuilder sb = new StringBuilder(str.length());
+    for (int i = 0; i < str.length(); i++) {
+      char c = str.charAt(i);
+      switch (c) {
+        case '+':
+          sb.append(' ');
+          break;
+        case '%':
+          if (i + 3 > str.length()) {
+            throw new IllegalArgumentException(str);
+          }
+          sb.append((char) Integer.parseInt(str.substring(i + 1, i + 3), 16));
+          i += 2;
+          break;
+        default:
+          sb.append(c);
+          break;
+      }
+    }
+    return sb.toString();
+  }
+
+  /*
+   * Decodes parameters in percent-encoded URI-format (e.g.
+   * "name=Jack%20Daniels&pass=Single%20Malt") and adds them to the given
+   * Properties, as NanoHTTPD does.
+   *
+   * @throws IllegalArgumentException if the encoding is bad
+   */
+  static void decodeParms(String parms, Properties p) {
+    int start = 0;
+    while (start <= parms.length()) {
+      int end = parms.indexOf('&', start);
+      if (end == -1) {
+        end = parms.length();
+      }
+      String e = parms.substring(start, end);
+      int sep = e.indexOf('=');
+      if (sep >= 0) {
+        p.put(decodePercent(e.substring(0, sep)).trim(), decodePercent(e.substring(sep + 1)));
+      }
+      start = end + 1;
+    }
+  }
+}
@@ -5,7 +5,11 @@
 // This work is licensed under a Creative Commons Attribution 3.0 Unported License.
 
 package com.google.appinventor.components.runtime.util;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -17,6 +21,11 @@ import android.util.Log;
  * A Class for managing return values from evaluating Repl Forms and
  * stashing them in a JSON Array for return to the Blocks Editor from the
  * Companion.
+ *
+ * The Blocks Editor gets the values either by polling (fetch) or from an
+ * event stream (openStream) that pushes them as soon as they are produced.
+ * Each value has a sequence number ("seq"), in the order the values were
+ * produced.
  */
 
 public class RetValManager {
@@ -25,6 +34,23 @@ public class RetValManager {
   private static final Object semaphore = new Object();
   private static final long TENSECONDS = 10000; // Ten Seconds (in milliseconds)
 
+  // How long an event stream waits for more values after the first one, so
+  // that values produced together are sent together (in milliseconds).
+  private static final long COALESCE_MILLIS = 20;
+
+  // How many values that were sent on an event stream are kept, so that
+  // they can be sent again if the Blocks Editor reconnects.
+  private static final int MAX_RESENDABLE = 64;
+
+  // The sequence number of the next value.
+  private static long nextSeq = 1;
+
+  // Values that were sent on event streams, oldest first.
+  private static final LinkedList<JSONObject> streamedValues = new LinkedList<JSONObject>();
+
+  // Incremented when an event stream is opened, which ends the older ones.
+  private static int streamGeneration = 0;
+
   // There can be only one!
   private static ArrayList<JSONObject> currentArray = new ArrayList<JSONObject>(10);
 
@@ -55,11 +81,7 @@ public class RetValManager {
         Log.e(LOG_TAG, "Error building retval", e);
         return;
       }
-      boolean sendNotify = currentArray.isEmpty();
-      currentArray.add(retval);
-      if (sendNotify) {
-        semaphore.notifyAll();
-      }
+      addValue(retval);
     }
   }
 
@@ -74,11 +96,7 @@ public class RetValManager {
         Log.e(LOG_TAG, "Error building retval", e);
         return;
       }
-      boolean sendNotify = currentArray.isEmpty();
-      currentArray.add(retval);
-      if (sendNotify) {
-        semaphore.notifyAll();
-      }
+      addValue(retval);
     }
   }
 
@@ -101,11 +119,7 @@ public class RetValManager {
         Log.e(LOG_TAG, "Error building retval", e);
         return;
       }
-      boolean sendNotify = currentArray.isEmpty();
-      currentArray.add(retval);
-      if (sendNotify) {
-        semaphore.notifyAll();
-      }
+      addValue(retval);
     }
   }
 
@@ -127,11 +141,24 @@ public class RetValManager {
         Log.e(LOG_TAG, "Error building retval", e);
         return;
       }
-      boolean sendNotify = currentArray.isEmpty();
-      currentArray.add(retval);
-      if (sendNotify) {
-        semaphore.notifyAll();
-      }
+      addValue(retval);
+    }
+  }
+
+  /*
+   * addValue -- Number a value and add it to the pending values. Must be
+   * called while holding the semaphore.
+   */
+  private static void addValue(JSONObject retval) {
+    try {
+      retval.put("seq", nextSeq++);
+    } catch (JSONException e) {
+      Log.e(LOG_TAG, "Error numbering retval", e);
+    }
+    boolean sendNotify = currentArray.isEmpty();
+    currentArray.add(retval);
+    if (sendNotify) {
+      semaphore.notifyAll();
     }
   }
 
@@ -167,4 +194,136 @@ public class RetValManager {
     }
   }
 
+  /*
+   * openStream -- Open an event stream of results, in the text/event-stream
+   * (Server-Sent Events) format. Each event holds the results that were
+   * pending, as the JSON encoded object that fetch returns, and its id is
+   * the sequence number of its last result. Opening a stream ends the
+   * streams that were opened before.
+   *
+   * @param lastEventId The id of the last event the Blocks Editor received
+   *   on an earlier stream, or null. Results after it that were sent on
+   *   that stream are sent again.
+   * @return InputStream The event stream. Reading it blocks until there are
+   *   results, or sends a comment every ten seconds to keep the connection open.
+   */
+  public static InputStream openStream(String lastEventId) {
+    synchronized (semaphore) {
+      streamGeneration++;
+      semaphore.notifyAll();      // End the older streams
+      List<JSONObject> resend = new ArrayList<JSONObject>();
+      if (lastEventId != null) {
+        try {
+          long lastSeq = Long.parseLong(lastEventId.trim());
+          for (JSONObject retval : streamedValues) {
+            if (retval.optLong("seq") > lastSeq) {
+              resend.add(retval);
+            }
+          }
+        } catch (NumberFormatException e) {
+          Log.w(LOG_TAG, "Ignoring bad Last-Event-ID " + lastEventId);
+        }
+      }
+      return new EventStream(streamGeneration, resend);
+    }
+  }
+
+  /*
+   * nextEvent -- Wait for results and return them as an event, or return a
+   * keep alive comment after ten seconds without results. Returns null when
+   * the stream has been ended by a newer one.
+   */
+  private static String nextEvent(EventStream stream) {
+    synchronized (semaphore) {
+      List<JSONObject> values;
+      if (stream.resend != null) {
+        values = stream.resend;
+        stream.resend = null;
+        if (values.isEmpty()) {
+          return ": open\n\n";
+        }
+      } else {
+        try {
+          long startTime = System.currentTimeMillis();
+          while (currentArray.isEmpty() && stream.generation == streamGeneration) {
+            long remaining = TENSECONDS - (System.currentTimeMillis() - startTime);
+            if (remaining <= 0) {
+              return ": keepalive\n\n";
+            }
+            semaphore.wait(remaining);
+          }
+          if (stream.generation != streamGeneration) {
+            return null;
+          }
+          // Give results that are produced together a chance to be sent together.
+          semaphore.wait(COALESCE_MILLIS);
+        } catch (InterruptedException e) {
+          return null;
+        }
+        if (stream.generation != streamGeneration) {
+          return null;
+        }
+        values = new ArrayList<JSONObject>(currentArray);
+        currentArray.clear();
+        streamedValues.addAll(values);
+        while (streamedValues.size() > MAX_RESENDABLE) {
+          streamedValues.removeFirst();
+        }
+      }
+      JSONObject output = new JSONObject();
+      try {
+        output.put("status", "OK");
+        output.put("values", new JSONArray(values));
+      } catch (JSONException e) {
+        Log.e(LOG_TAG, "Error streaming retvals", e);
+        return null;
+      }
+      long lastSeq = values.get(values.size() - 1).optLong("seq");
+      return "id: " + lastSeq + "\ndata: " + output.toString() + "\n\n";
+    }
+  }
+
+  /*
+   * The InputStream returned by openStream. NanoHTTPD sends what it reads
+   * from it as soon as it is read.
+   */
+  private static class EventStream extends InputStream {
+    private final int generation;
+    private List<JSONObject> resend;  // Guarded by semaphore
+    private byte[] event;
+    private int position;
+
+    EventStream(int generation, List<JSONObject> resend) {
+      this.generation = generation;
+      this.resend = resend;
+    }
+
+    @Override
+    public int available() {
+      return (event == null) ? 0 : event.length - position;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return (read(b, 0, 1) == -1) ? -1 : (b[0] & 0xff);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      if (event == null || position == event.length) {
+        String next = nextEvent(this);
+        if (next == null) {
+          return -1;
+        }
+        event = next.getBytes("UTF-8");
+        position = 0;
+      }
+      int count = Math.min(length, event.length - position);
+      System.arraycopy(event, position, buffer, offset, count);
+      position += count;
+      return count;
+    }
+  }
+
 }
@@ -20,9 +20,24 @@ import java.util.List;
  * by the Kawa framework. YailList is the main list primitive used
  * by App Inventor components.
  *
+ * <p>The items of a YailList are kept in Kawa pairs, so that Scheme code can
+ * walk it as a list.  A YailList also keeps an array of those pairs, so that
+ * getting the length of the list, or getting or setting an item by its
+ * index, doesn't walk the list.  The array is built the first time it is
+ * needed.  Code that changes which pairs make up the list must do so through
+ * the methods of this class ({@link #insertObject}, {@link #removeObject} and
+ * {@link #appendList}), which keep the array up to date.</p>
+ *
  */
 public class YailList extends Pair {
 
+  private static final int INITIAL_INDEX_CAPACITY = 8;
+
+  // The pairs holding the items of this list, in order, or null if they
+  // haven't been indexed yet.  Only the first itemCount elements are used.
+  private Pair[] itemPairs;
+  private int itemCount;
+
   // Component writers take note!
   // If you want to pass back a list to the blocks language, the
   // straightforward way to do this is simply to pass
@@ -52,6 +67,15 @@ public class YailList extends Pair {
     return new YailList(newCdr);
   }
 
+  /**
+   * Create a YailList whose items are the given chain of pairs, without
+   * copying it.  The pairs become part of the list, and must not be used
+   * elsewhere.
+   */
+  static YailList makeListFromPairs(LList items) {
+    return new YailList(items);
+  }
+
   /**
    * Create a YailList from a List.
    */
@@ -102,18 +126,8 @@ public class YailList extends Pair {
   public String toJSONString() {
     try {
       StringBuilder json = new StringBuilder();
-      String separator = "";
-      json.append('[');
-      int size = this.size();
-      for (int i = 1; i <= size; i++) {
-        Object value = get(i);
-        json.append(separator).append(JsonUtil.getJsonRepresentation(value));
-        separator = ",";
-      }
-      json.append(']');
-
+      JsonEncoder.writeList(this, json);
       return json.toString();
-
     } catch (JSONException e) {
       throw new YailRuntimeError("List failed to convert to JSON.", "JSON Creation Error.");
     }
@@ -124,7 +138,26 @@ public class YailList extends Pair {
    */
   @Override
   public int size() {
-    return super.size() - 1;
+    ensureIndex();
+    return itemCount;
+  }
+
+  /**
+   * Return the element at the given position, counting the YailList header
+   * as position 0.
+   */
+  @Override
+  public Object get(int index) {
+    if (index == 0) {
+      return car;
+    }
+    return itemPair(index - 1).getCar();
+  }
+
+  @Override
+  public void setCdr(Object cdr) {
+    super.setCdr(cdr);
+    itemPairs = null;
   }
 
   /**
@@ -154,4 +187,111 @@ public class YailList extends Pair {
   public Object getObject(int index) {
     return get(index + 1);
   }
+
+  /**
+   * Replace the Object at the given index.
+   */
+  public void setObject(int index, Object value) {
+    itemPair(index).setCar(value);
+  }
+
+  /**
+   * Insert an Object so that it is at the given index, which can be from 0
+   * through the size of this YailList.
+   */
+  public void insertObject(int index, Object value) {
+    ensureIndex();
+    if (index < 0 || index > itemCount) {
+      throw new IndexOutOfBoundsException("index " + index + " size " + itemCount);
+    }
+    Pair pair = new Pair(value, index < itemCount ? itemPairs[index] : LList.Empty);
+    if (index == 0) {
+      super.setCdr(pair);
+    } else {
+      itemPairs[index - 1].setCdr(pair);
+    }
+    growIndex(itemCount + 1);
+    System.arraycopy(itemPairs, index, itemPairs, index + 1, itemCount - index);
+    itemPairs[index] = pair;
+    itemCount++;
+  }
+
+  /**
+   * Remove the Object at the given index.
+   */
+  public void removeObject(int index) {
+    Pair pair = itemPair(index);
+    if (index == 0) {
+      super.setCdr(pair.getCdr());
+    } else {
+      itemPairs[index - 1].setCdr(pair.getCdr());
+    }
+    System.arraycopy(itemPairs, index + 1, itemPairs, index, itemCount - index - 1);
+    itemPairs[--itemCount] = null;
+  }
+
+  /**
+   * Append the items of the given YailList to this YailList.  The items are
+   * not copied, but the given list is left unchanged, so the lists don't
+   * share any pairs.
+   */
+  public void appendList(YailList other) {
+    // Take the items first, in case other is this list.
+    Object[] items = other.toArray();
+    ensureIndex();
+    growIndex(itemCount + items.length);
+    Pair last = itemCount == 0 ? this : itemPairs[itemCount - 1];
+    for (Object item : items) {
+      Pair pair = new Pair(item, LList.Empty);
+      if (last == this) {
+        super.setCdr(pair);
+      } else {
+        last.setCdr(pair);
+      }
+      itemPairs[itemCount++] = pair;
+      last = pair;
+    }
+  }
+
+  // Return the pair holding the item at the given index.
+  private Pair itemPair(int index) {
+    ensureIndex();
+    if (index < 0 || index >= itemCount) {
+      throw new IndexOutOfBoundsException("index " + index + " size " + itemCount);
+    }
+    return itemPairs[index];
+  }
+
+  // Build the array of pairs if it hasn't been built, or if the pairs at the
+  // ends of this list were changed without going through this class.
+  private void ensureIndex() {
+    if (itemPairs != null && (itemCount == 0
+        ? cdr == LList.Empty
+        : cdr == itemPairs[0] && itemPairs[itemCount - 1].getCdr() == LList.Empty)) {
+      return;
+    }
+    Pair[] pairs = new Pair[INITIAL_INDEX_CAPACITY];
+    int count = 0;
+    for (Object rest = cdr; rest instanceof Pair; rest = ((Pair) rest).getCdr()) {
+      if (count == pairs.length) {
+        pairs = copyOf(pairs, count * 2);
+      }
+      pairs[count++] = (Pair) rest;
+    }
+    itemPairs = pairs;
+    itemCount = count;
+  }
+
+  private void growIndex(int capacity) {
+    if (capacity > itemPairs.length) {
+      itemPairs = copyOf(itemPairs, Math.max(capacity, itemPairs.length * 2));
+    }
+  }
+
+  // Arrays.copyOf() isn't available on older versions of Android.
+  private static Pair[] copyOf(Pair[] pairs, int length) {
+    Pair[] copy = new Pair[length];
+    System.arraycopy(pairs, 0, copy, 0, Math.min(pairs.length, length));
+    return copy;
+  }
 }
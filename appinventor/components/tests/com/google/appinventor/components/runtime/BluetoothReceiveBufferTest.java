@@ -0,0 +1,72 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+
+package com.google.appinventor.components.runtime;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * Tests BluetoothReceiveBuffer.java.
+ */
+public class BluetoothReceiveBufferTest extends TestCase {
+  private static byte[] bytes(int... values) {
+    byte[] bytes = new byte[values.length];
+    for (int i = 0; i < values.length; i++) {
+      bytes[i] = (byte) values[i];
+    }
+    return bytes;
+  }
+
+  public void testReadWholeValuesOnly() {
+    BluetoothReceiveBuffer buffer = new BluetoothReceiveBuffer(8);
+    assertEquals(3, buffer.write(bytes(1, 2, 3), 0, 3));
+    assertNull(buffer.read(4));
+    assertEquals(3, buffer.available());
+    assertTrue(Arrays.equals(bytes(1, 2), buffer.read(2)));
+    assertEquals(1, buffer.available());
+  }
+
+  public void testReadThroughDelimiter() {
+    BluetoothReceiveBuffer buffer = new BluetoothReceiveBuffer(8);
+    buffer.write(bytes(5, 6, 10, 7), 0, 4);
+    assertTrue(Arrays.equals(bytes(5, 6, 10), buffer.readThrough((byte) 10)));
+    assertNull(buffer.readThrough((byte) 10));
+    assertTrue(Arrays.equals(bytes(7), buffer.read(1)));
+  }
+
+  public void testWrapAround() {
+    BluetoothReceiveBuffer buffer = new BluetoothReceiveBuffer(4);
+    buffer.write(bytes(1, 2, 3), 0, 3);
+    buffer.read(2);
+    // Only three of the four bytes fit.
+    assertEquals(3, buffer.write(bytes(4, 5, 6, 7), 0, 4));
+    assertEquals(4, buffer.available());
+    assertTrue(Arrays.equals(bytes(3, 4, 5, 6), buffer.readThrough((byte) 6)));
+    assertEquals(0, buffer.available());
+  }
+
+  public void testCloseStopsWriter() throws Exception {
+    final BluetoothReceiveBuffer buffer = new BluetoothReceiveBuffer(2);
+    buffer.write(bytes(1, 2), 0, 2);
+    final boolean[] result = { true };
+    Thread writer = new Thread(new Runnable() {
+      public void run() {
+        try {
+          result[0] = buffer.awaitSpace();
+        } catch (InterruptedException e) {
+          // Leave the result true, so that the test fails.
+        }
+      }
+    });
+    writer.start();
+    buffer.close();
+    writer.join(1000);
+    assertFalse(writer.isAlive());
+    assertFalse(result[0]);
+    assertEquals(0, buffer.write(bytes(3), 0, 1));
+  }
+}
@@ -0,0 +1,88 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+
+package com.google.appinventor.components.runtime;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Tests NxtTransport.java.
+ */
+public class NxtTransportTest extends TestCase {
+  private ByteArrayOutputStream outputStream;
+  private int writes;
+
+  private NxtTransport createTransport(byte[] input) {
+    outputStream = new ByteArrayOutputStream();
+    writes = 0;
+    BluetoothConnectionBase connection =
+        new BluetoothConnectionBase(outputStream, new ByteArrayInputStream(input)) {
+      @Override
+      protected void bluetoothError(String functionName, int errorNumber, Object... messageArgs) {
+      }
+      @Override
+      protected void write(String functionName, byte[] bytes) {
+        writes++;
+        super.write(functionName, bytes);
+      }
+    };
+    return new NxtTransport(connection);
+  }
+
+  private static byte[] getInputValuesCommand(int port) {
+    return new byte[] { 0x00, 0x07, (byte) port };
+  }
+
+  // Returns a GETINPUTVALUES return package for the given port, preceded by its length.
+  private static byte[] getInputValuesTelegram(int port) {
+    byte[] telegram = new byte[18];
+    telegram[0] = 16;
+    telegram[2] = 0x02;  // Reply telegram
+    telegram[3] = 0x07;  // GETINPUTVALUES command
+    telegram[5] = (byte) port;
+    return telegram;
+  }
+
+  private static byte[] concat(byte[] first, byte[] second) {
+    byte[] result = Arrays.copyOf(first, first.length + second.length);
+    System.arraycopy(second, 0, result, first.length, second.length);
+    return result;
+  }
+
+  public void testExchangeWritesCommandsTogether() {
+    NxtTransport transport = createTransport(
+        concat(getInputValuesTelegram(0), getInputValuesTelegram(1)));
+    transport.exchange("", new byte[][] { getInputValuesCommand(0), getInputValuesCommand(1) });
+    assertEquals(1, writes);
+    assertTrue(Arrays.equals(new byte[] { 3, 0, 0x00, 0x07, 0, 3, 0, 0x00, 0x07, 1 },
+        outputStream.toByteArray()));
+  }
+
+  public void testRepliesAreMatchedByPort() {
+    NxtTransport transport = createTransport(
+        concat(getInputValuesTelegram(2), getInputValuesTelegram(0)));
+    byte[][] returnPackages = transport.exchange("",
+        new byte[][] { getInputValuesCommand(0), getInputValuesCommand(2) });
+    assertEquals(16, returnPackages[0].length);
+    assertEquals(0, returnPackages[0][3]);
+    assertEquals(2, returnPackages[1][3]);
+    assertEquals(2, transport.getCommandsSent());
+    assertEquals(2, transport.getRepliesReceived());
+  }
+
+  public void testMissingReplyIsEmpty() {
+    NxtTransport transport = createTransport(getInputValuesTelegram(1));
+    byte[][] returnPackages = transport.exchange("",
+        new byte[][] { getInputValuesCommand(0), getInputValuesCommand(1) });
+    assertEquals(0, returnPackages[0].length);
+    assertEquals(1, returnPackages[1][3]);
+    assertEquals(1, transport.getRepliesReceived());
+    assertTrue(transport.getAverageRoundTripTime() >= 0);
+  }
+}
@@ -20,6 +20,8 @@ import org.powermock.api.easymock.PowerMock;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.util.Arrays;
+
 /**
  * Tests Sprite.java.
  *
@@ -273,6 +275,58 @@ public class SpriteTest {
     assertTrue(Sprite.colliding(mouse, cat));
   }
 
+  @Test
+  public void testAdvance() {
+    TestSprite sprite = TestSprite.createTestSprite(canvasMock, handlerMock, 10, 10);
+    sprite.MoveTo(50, 50);
+    sprite.Speed(10);
+
+    // Sprites don't move before they are initialized.
+    assertFalse(sprite.advance(1));
+    assertEquals(50.0, sprite.X(), DELTA);
+
+    sprite.Initialize();
+    assertTrue(sprite.advance(3));
+    assertEquals(80.0, sprite.X(), DELTA);
+    assertEquals(50.0, sprite.Y(), DELTA);
+
+    // Each move checks for the edge, which moves the sprite back in bounds.
+    assertTrue(sprite.advance(30));
+    assertEquals(sprite.canvasWidth - 10, sprite.X(), DELTA);
+
+    sprite.Speed(0);
+    assertFalse(sprite.advance(1));
+  }
+
+  @Test
+  public void testSpriteGridCandidates() {
+    TestSprite near = TestSprite.createTestSprite(canvasMock, handlerMock, 10, 10);
+    near.MoveTo(100, 100);
+    TestSprite far = TestSprite.createTestSprite(canvasMock, handlerMock, 10, 10);
+    far.MoveTo(300, 300);
+    TestSprite moved = TestSprite.createTestSprite(canvasMock, handlerMock, 10, 10);
+    moved.MoveTo(105, 105);
+
+    SpriteGrid grid = new SpriteGrid();
+    grid.setSprites(Arrays.<Sprite>asList(near, far, moved));
+    // Sprites that haven't been placed yet are candidates for every sprite.
+    assertEquals(Arrays.<Sprite>asList(near, far), grid.getCandidates(moved));
+
+    grid.update(near);
+    grid.update(far);
+    grid.update(moved);
+    assertEquals(Arrays.<Sprite>asList(near), grid.getCandidates(moved));
+
+    // Sprites whose bounding boxes only touch are still candidates.
+    moved.MoveTo(311, 300);
+    grid.update(moved);
+    assertEquals(Arrays.<Sprite>asList(far), grid.getCandidates(moved));
+
+    // Removed sprites are no longer candidates.
+    grid.setSprites(Arrays.<Sprite>asList(near, moved));
+    assertTrue(grid.getCandidates(moved).isEmpty());
+  }
+
   @Test
   public void testSpriteBiggerThanCanvas() throws Exception {
     // Declare cat
@@ -0,0 +1,253 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+
+package com.google.appinventor.components.runtime;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.SharedPreferences;
+import android.os.Handler;
+
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.easymock.PowerMock;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tests TinyDBStore.java.
+ */
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ Handler.class })
+public class TinyDBStoreTest {
+  /*
+   * SharedPreferences kept in memory, which counts the strings read and the
+   * edits committed.
+   */
+  private static class FakeSharedPreferences implements SharedPreferences {
+    final Map<String, Object> values = new HashMap<String, Object>();
+    int reads;
+    int commits;
+
+    @Override
+    public Map<String, ?> getAll() {
+      return new HashMap<String, Object>(values);
+    }
+
+    @Override
+    public String getString(String key, String defValue) {
+      reads++;
+      return values.containsKey(key) ? (String) values.get(key) : defValue;
+    }
+
+    @Override
+    public Set<String> getStringSet(String key, Set<String> defValues) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean contains(String key) {
+      return values.containsKey(key);
+    }
+
+    @Override
+    public Editor edit() {
+      return new FakeEditor();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(
+        OnSharedPreferenceChangeListener listener) {
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(
+        OnSharedPreferenceChangeListener listener) {
+    }
+
+    private class FakeEditor implements Editor {
+      private final Map<String, String> puts = new LinkedHashMap<String, String>();
+      private boolean clear;
+
+      @Override
+      public Editor putString(String key, String value) {
+        puts.put(key, value);
+        return this;
+      }
+
+      @Override
+      public Editor putStringSet(String key, Set<String> values) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public Editor putInt(String key, int value) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public Editor putLong(String key, long value) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public Editor putFloat(String key, float value) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public Editor putBoolean(String key, boolean value) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public Editor remove(String key) {
+        puts.put(key, null);
+        return this;
+      }
+
+      @Override
+      public Editor clear() {
+        clear = true;
+        return this;
+      }
+
+      @Override
+      public boolean commit() {
+        if (clear) {
+          values.clear();
+        }
+        for (Map.Entry<String, String> entry : puts.entrySet()) {
+          if (entry.getValue() == null) {
+            values.remove(entry.getKey());
+          } else {
+            values.put(entry.getKey(), entry.getValue());
+          }
+        }
+        commits++;
+        return true;
+      }
+
+      @Override
+      public void apply() {
+        commit();
+      }
+    }
+  }
+
+  private final Handler handlerMock = PowerMock.createNiceMock(Handler.class);
+  private FakeSharedPreferences sharedPreferences;
+  private TinyDBStore store;
+
+  @Before
+  public void setUp() throws Exception {
+    EasyMock.replay(handlerMock);
+    sharedPreferences = new FakeSharedPreferences();
+    store = new TinyDBStore(sharedPreferences, handlerMock);
+  }
+
+  @Test
+  public void testValuesAreReadThrough() throws Exception {
+    sharedPreferences.values.put("a", "\"abc\"");
+    assertEquals("abc", store.getValue("a", ""));
+    // The second read is answered from the decoded values.
+    sharedPreferences.values.put("a", "\"changed\"");
+    assertEquals("abc", store.getValue("a", ""));
+    assertEquals(1, sharedPreferences.reads);
+    assertEquals("none", store.getValue("b", "none"));
+  }
+
+  @Test
+  public void testPendingValuesAreRead() throws Exception {
+    sharedPreferences.values.put("a", "1");
+    store.getValue("a", "");
+    store.putText("a", "2");
+    assertEquals(2, ((Number) store.getValue("a", "")).intValue());
+    assertEquals("1", sharedPreferences.values.get("a"));
+
+    store.flush();
+    assertEquals("2", sharedPreferences.values.get("a"));
+    assertEquals(1, sharedPreferences.commits);
+  }
+
+  @Test
+  public void testClearAllHidesStoredValues() throws Exception {
+    sharedPreferences.values.put("a", "1");
+    sharedPreferences.values.put("b", "2");
+    store.putText("b", "3");
+    store.clear();
+    store.putText("c", "4");
+    assertEquals("none", store.getValue("a", "none"));
+    assertEquals("none", store.getValue("b", "none"));
+    assertEquals(Arrays.asList("c"), store.getTags());
+
+    store.flush();
+    assertEquals(Collections.singleton("c"), sharedPreferences.values.keySet());
+    assertEquals("4", sharedPreferences.values.get("c"));
+  }
+
+  @Test
+  public void testClearTagHidesStoredValue() throws Exception {
+    sharedPreferences.values.put("a", "1");
+    sharedPreferences.values.put("b", "2");
+    store.getValue("a", "");
+    store.remove("a");
+    assertEquals("none", store.getValue("a", "none"));
+    assertEquals(Arrays.asList("b"), store.getTags());
+
+    store.flush();
+    assertEquals(Collections.singleton("b"), sharedPreferences.values.keySet());
+  }
+
+  @Test
+  public void testStoreValuesIsWrittenInOneCommit() throws Exception {
+    Map<String, String> texts = new LinkedHashMap<String, String>();
+    texts.put("a", "1");
+    texts.put("b", "2");
+    store.putTexts(texts);
+    assertEquals(0, sharedPreferences.commits);
+    assertEquals(Arrays.asList("a", "b"), store.getTags());
+
+    store.flush();
+    assertEquals(1, sharedPreferences.commits);
+    assertEquals("1", sharedPreferences.values.get("a"));
+    assertEquals("2", sharedPreferences.values.get("b"));
+  }
+
+  @Test
+  public void testFlushWithoutChangesDoesNotWrite() throws Exception {
+    store.flush();
+    assertEquals(0, sharedPreferences.commits);
+  }
+}
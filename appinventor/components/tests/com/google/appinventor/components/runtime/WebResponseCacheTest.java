@@ -0,0 +1,96 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+
+package com.google.appinventor.components.runtime;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Tests WebResponseCache.java.
+ *
+ */
+public class WebResponseCacheTest extends TestCase {
+  private File directory;
+
+  @Override
+  protected void setUp() throws Exception {
+    directory = File.createTempFile("WebResponseCacheTest", "");
+    directory.delete();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    directory.delete();
+  }
+
+  public void testFreshUntil() throws Exception {
+    long now = 1000000;
+    assertEquals(-1, WebResponseCache.freshUntil("no-store", 0, 0, now));
+    assertEquals(-1, WebResponseCache.freshUntil("private, No-Store", 0, 0, now));
+    assertEquals(0, WebResponseCache.freshUntil("no-cache", now + 5000, 0, now));
+    assertEquals(now + 60000, WebResponseCache.freshUntil("public, max-age=60", 0, 0, now));
+    assertEquals(0, WebResponseCache.freshUntil("max-age=soon", 0, 0, now));
+    // max-age takes precedence over Expires.
+    assertEquals(now + 60000, WebResponseCache.freshUntil("max-age=60", now + 5000, 0, now));
+    // Expires is relative to the server's Date.
+    assertEquals(now + 5000, WebResponseCache.freshUntil(null, 25000, 20000, now));
+    assertEquals(now + 5000, WebResponseCache.freshUntil(null, now + 5000, 0, now));
+    assertEquals(0, WebResponseCache.freshUntil(null, 0, 0, now));
+  }
+
+  public void testPutAndGet() throws Exception {
+    WebResponseCache cache = new WebResponseCache(directory, 1024 * 1024);
+    String key = WebResponseCache.key("http://example.com/a", "{}");
+    assertNull(cache.get(key));
+
+    byte[] content = "{\"a\": 1}".getBytes("UTF-8");
+    cache.put(key, new WebResponseCache.Entry("application/json", content, "\"v1\"", null, 5000));
+    WebResponseCache.Entry entry = cache.get(key);
+    assertNotNull(entry);
+    assertEquals("application/json", entry.contentType);
+    assertTrue(Arrays.equals(content, entry.content));
+    assertEquals("\"v1\"", entry.etag);
+    assertNull(entry.lastModified);
+    assertTrue(entry.isFresh(4999));
+    assertFalse(entry.isFresh(5000));
+    assertTrue(entry.canRevalidate());
+
+    // Another key isn't found.
+    assertNull(cache.get(WebResponseCache.key("http://example.com/a", "{Accept=[text/xml]}")));
+
+    cache.remove(key);
+    assertNull(cache.get(key));
+  }
+
+  public void testTrim() throws Exception {
+    WebResponseCache cache = new WebResponseCache(directory, 3000);
+    byte[] content = new byte[1000];
+    for (int i = 0; i < 5; i++) {
+      cache.put(WebResponseCache.key("http://example.com/" + i, ""),
+          new WebResponseCache.Entry("", content, null, null, Long.MAX_VALUE));
+      // Make sure that the files are written at different times.
+      new File(directory, Integer.toHexString(
+          WebResponseCache.key("http://example.com/" + i, "").hashCode()) + ".response")
+          .setLastModified(1000L * (i + 1));
+    }
+    long size = 0;
+    for (File file : directory.listFiles()) {
+      size += file.length();
+    }
+    assertTrue(size <= 3000);
+    // The most recent response is kept.
+    assertNotNull(cache.get(WebResponseCache.key("http://example.com/4", "")));
+    assertNull(cache.get(WebResponseCache.key("http://example.com/0", "")));
+  }
+}
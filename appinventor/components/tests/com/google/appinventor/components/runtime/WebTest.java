@@ -54,32 +54,32 @@ public class WebTest extends TestCase {
 
     // A JSON encoded object.
     Object decodedObject = web.decodeJsonText("{\"YaVersion\":\"41\",\"Source\":\"Form\"}");
-    assertTrue(decodedObject instanceof ArrayList);
-    ArrayList outerList = (ArrayList) decodedObject;
+    assertTrue(decodedObject instanceof YailList);
+    YailList outerList = (YailList) decodedObject;
     assertEquals(2, outerList.size());
     // The items are sorted by the field name, so Source comes before YaVersion
-    Object item0 = outerList.get(0);
-    assertTrue(item0 instanceof ArrayList);
-    ArrayList firstNameValuePair = (ArrayList) item0;
+    Object item0 = outerList.getObject(0);
+    assertTrue(item0 instanceof YailList);
+    YailList firstNameValuePair = (YailList) item0;
     assertEquals(2, firstNameValuePair.size());
-    assertEquals("Source", firstNameValuePair.get(0));
-    assertEquals("Form", firstNameValuePair.get(1));
-    Object item1 = outerList.get(1);
-    assertTrue(item1 instanceof ArrayList);
-    ArrayList secondNameValuePair = (ArrayList) item1;
+    assertEquals("Source", firstNameValuePair.getObject(0));
+    assertEquals("Form", firstNameValuePair.getObject(1));
+    Object item1 = outerList.getObject(1);
+    assertTrue(item1 instanceof YailList);
+    YailList secondNameValuePair = (YailList) item1;
     assertEquals(2, secondNameValuePair.size());
-    assertEquals("YaVersion", secondNameValuePair.get(0));
-    assertEquals("41", secondNameValuePair.get(1));
+    assertEquals("YaVersion", secondNameValuePair.getObject(0));
+    assertEquals("41", secondNameValuePair.getObject(1));
 
     // A JSON encoded array.
     Object decodedArray = web.decodeJsonText("[\"Billy\",\"Sam\",\"Bobby\",\"Fred\"]");
-    assertTrue(decodedArray instanceof ArrayList);
-    ArrayList list = (ArrayList) decodedArray;
+    assertTrue(decodedArray instanceof YailList);
+    YailList list = (YailList) decodedArray;
     assertEquals(4, list.size());
-    assertEquals("Billy", list.get(0));
-    assertEquals("Sam", list.get(1));
-    assertEquals("Bobby", list.get(2));
-    assertEquals("Fred", list.get(3));
+    assertEquals("Billy", list.getObject(0));
+    assertEquals("Sam", list.getObject(1));
+    assertEquals("Bobby", list.getObject(2));
+    assertEquals("Fred", list.getObject(3));
 
     try {
       web.decodeJsonText("{\"not\":\"valid\":\"json\"}");
@@ -136,4 +136,17 @@ public class WebTest extends TestCase {
       assertEquals(4, e.index);
     }
   }
+
+  public void testDecodeResponseContent() throws Exception {
+    byte[] utf8 = "caf\u00e9".getBytes("UTF-8");
+    byte[] latin1 = "caf\u00e9".getBytes("ISO-8859-1");
+    assertEquals("caf\u00e9", Web.decodeResponseContent(utf8, ""));
+    assertEquals("caf\u00e9", Web.decodeResponseContent(utf8, "text/plain"));
+    assertEquals("caf\u00e9",
+        Web.decodeResponseContent(latin1, "text/html; charset=ISO-8859-1"));
+    assertEquals("caf\u00e9",
+        Web.decodeResponseContent(latin1, "text/html;Charset=\"iso-8859-1\""));
+    // An unsupported charset falls back to UTF-8.
+    assertEquals("caf\u00e9", Web.decodeResponseContent(utf8, "text/plain; charset=bogus"));
+  }
 }
@@ -0,0 +1,108 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+
+package com.google.appinventor.components.runtime.util;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests AsynchUtil.java.
+ */
+public class AsynchUtilTest extends TestCase {
+  private static final int CALLS = 50;
+
+  public void testSeriallyRunsCallsInOrder() throws Exception {
+    Object lane = new Object();
+    final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+    final CountDownLatch done = new CountDownLatch(CALLS);
+    for (int i = 0; i < CALLS; i++) {
+      final int index = i;
+      AsynchUtil.runSerially(lane, new Runnable() {
+        public void run() {
+          order.add(index);
+          done.countDown();
+        }
+      });
+    }
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    for (int i = 0; i < CALLS; i++) {
+      assertEquals(i, order.get(i).intValue());
+    }
+  }
+
+  public void testSeriallyRunsOneCallAtATime() throws Exception {
+    Object lane = new Object();
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicBoolean overlapped = new AtomicBoolean();
+    final CountDownLatch done = new CountDownLatch(CALLS);
+    for (int i = 0; i < CALLS; i++) {
+      AsynchUtil.runSerially(lane, new Runnable() {
+        public void run() {
+          if (running.incrementAndGet() > 1) {
+            overlapped.set(true);
+          }
+          try {
+            Thread.sleep(2);
+          } catch (InterruptedException e) {
+            // Ignore.
+          }
+          running.decrementAndGet();
+          done.countDown();
+        }
+      });
+    }
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+    assertFalse(overlapped.get());
+  }
+
+  public void testLanesRunConcurrently() throws Exception {
+    // The first lane's call can only return once the second lane's call has run.
+    final CountDownLatch secondRan = new CountDownLatch(1);
+    final AtomicBoolean firstSawSecond = new AtomicBoolean();
+    final CountDownLatch done = new CountDownLatch(2);
+    AsynchUtil.runSerially(new Object(), new Runnable() {
+      public void run() {
+        try {
+          firstSawSecond.set(secondRan.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+          // Ignore.
+        }
+        done.countDown();
+      }
+    });
+    AsynchUtil.runSerially(new Object(), new Runnable() {
+      public void run() {
+        secondRan.countDown();
+        done.countDown();
+      }
+    });
+    assertTrue(done.await(20, TimeUnit.SECONDS));
+    assertTrue(firstSawSecond.get());
+  }
+
+  public void testFailingCallDoesNotStopLane() throws Exception {
+    Object lane = new Object();
+    final CountDownLatch done = new CountDownLatch(1);
+    AsynchUtil.runSerially(lane, new Runnable() {
+      public void run() {
+        throw new IllegalStateException("Expected by the test");
+      }
+    });
+    AsynchUtil.runSerially(lane, new Runnable() {
+      public void run() {
+        done.countDown();
+      }
+    });
+    assertTrue(done.await(10, TimeUnit.SECONDS));
+  }
+}
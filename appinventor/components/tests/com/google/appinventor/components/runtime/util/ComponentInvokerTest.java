@@ -0,0 +1,92 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2012 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+
+package com.google.appinventor.components.runtime.util;
+
+import com.google.appinventor.components.runtime.Component;
+
+import gnu.lists.FString;
+import gnu.mapping.Values;
+import gnu.math.DFloNum;
+import gnu.math.IntNum;
+
+import junit.framework.TestCase;
+
+import kawa.standard.Scheme;
+
+/**
+ * Tests ComponentInvoker.java.
+ */
+public class ComponentInvokerTest extends TestCase {
+  public static class Target {
+    private int value;
+
+    public int Value() {
+      return value;
+    }
+
+    public void Value(int value) {
+      this.value = value;
+    }
+
+    public String Join(String text, double number, boolean flag) {
+      return text + ":" + number + ":" + flag;
+    }
+
+    public String Overloaded(String text) {
+      return "text " + text;
+    }
+
+    public String Overloaded(Object object) {
+      return "object " + object;
+    }
+
+    public void Fail() {
+      throw new IllegalStateException("failed");
+    }
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    // Kawa's invoke, which is called for overloaded methods, needs a language.
+    Scheme.registerEnvironment();
+  }
+
+  public void testInvoke() throws Throwable {
+    Target target = new Target();
+    assertEquals("abc:2.5:true", ComponentInvoker.invoke(target, "Join",
+        new Object[] { new FString("abc"), DFloNum.make(2.5), Boolean.TRUE }));
+    assertEquals("x:3.0:false", ComponentInvoker.invoke(target, "Join",
+        new Object[] { "x", IntNum.make(3), Boolean.FALSE }));
+  }
+
+  public void testProperties() throws Throwable {
+    Target target = new Target();
+    assertSame(Values.empty, ComponentInvoker.setProperty(target, "Value", IntNum.make(42)));
+    assertEquals(42, ComponentInvoker.getProperty(target, "Value"));
+  }
+
+  public void testOverloadedMethodsAreLeftToKawa() throws Throwable {
+    Target target = new Target();
+    assertEquals("text abc", ComponentInvoker.invoke(target, "Overloaded",
+        new Object[] { "abc" }).toString());
+  }
+
+  public void testExceptionIsUnwrapped() throws Throwable {
+    try {
+      ComponentInvoker.invoke(new Target(), "Fail", new Object[0]);
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("failed", e.getMessage());
+    }
+  }
+
+  public void testComponentClass() {
+    assertSame(Component.class, ComponentInvoker.getComponentClass("Component"));
+    assertNull(ComponentInvoker.getComponentClass("NoSuchComponent"));
+    assertFalse(ComponentInvoker.isComponentOfType("abc", "Component"));
+    assertFalse(ComponentInvoker.isComponentOfType("abc", "NoSuchComponent"));
+  }
+}
@@ -5,12 +5,17 @@
 
 package com.google.appinventor.components.runtime.util;
 
+import gnu.lists.FString;
+import gnu.math.DFloNum;
+import gnu.math.IntNum;
+
 import junit.framework.TestCase;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -124,4 +129,133 @@ public class JsonUtilTest extends TestCase {
     Object shouldBeEmpty = JsonUtil.getObjectFromJson("");
     assertEquals("", JsonUtil.getObjectFromJson(""));
   }
+
+  public void testGetObjectFromJson() throws JSONException {
+    // Values that aren't in a list aren't converted.
+    assertEquals("true", JsonUtil.getObjectFromJson("\"true\""));
+    assertEquals(Boolean.TRUE, JsonUtil.getObjectFromJson("True"));
+    assertEquals(9, JsonUtil.getObjectFromJson("9"));
+    assertEquals(123456789101112L, JsonUtil.getObjectFromJson("123456789101112"));
+    assertEquals(-9.5, JsonUtil.getObjectFromJson("-9.5"));
+    assertEquals(15, JsonUtil.getObjectFromJson("0xF"));
+    assertNull(JsonUtil.getObjectFromJson("null"));
+    assertEquals("A string without quotes", JsonUtil.getObjectFromJson(" A string without quotes "));
+
+    // Items of lists are converted to YAIL values.
+    YailList list = (YailList) JsonUtil.getObjectFromJson(
+        "[\"Hello\", 9, 9.5, true, \"faLse\", null, [], [\"a\", [1]]]");
+    assertEquals(8, list.size());
+    assertEquals("Hello", list.getObject(0));
+    assertEquals(IntNum.make(9), list.getObject(1));
+    assertEquals(DFloNum.make(9.5), list.getObject(2));
+    assertEquals(Boolean.TRUE, list.getObject(3));
+    assertEquals(Boolean.FALSE, list.getObject(4));
+    assertEquals("null", list.getObject(5));
+    assertEquals(0, ((YailList) list.getObject(6)).size());
+    YailList nested = (YailList) list.getObject(7);
+    assertEquals("a", nested.getObject(0));
+    assertEquals(IntNum.make(1), ((YailList) nested.getObject(1)).getObject(0));
+
+    // Objects are lists of (key value) lists, sorted by key.
+    YailList object = (YailList) JsonUtil.getObjectFromJson(
+        "{\"b\": \"boo\", \"a\": 1, \"c\": {\"e\": \"f\"}}");
+    assertEquals(3, object.size());
+    assertEquals("[[\"a\",1],[\"b\",\"boo\"],[\"c\",[[\"e\",\"f\"]]]]",
+        object.toJSONString());
+  }
+
+  public void testGetObjectFromRelaxedJson() throws JSONException {
+    // The relaxed syntax accepted by org.json is still accepted.
+    assertEquals("[[\"a\",\"b c\"],[\"d\",1]]",
+        ((YailList) JsonUtil.getObjectFromJson("{a:b c; 'd'=>1,}")).toJSONString());
+    assertEquals("[1,\"null\",2]",
+        ((YailList) JsonUtil.getObjectFromJson("[1,,2,] junk")).toJSONString());
+    assertEquals("[1,2]",
+        ((YailList) JsonUtil.getObjectFromJson("# comment\n[1 /* two */, 2]")).toJSONString());
+    assertEquals("\u00e9/'", JsonUtil.getObjectFromJson("\"\\u00e9\\/\\'\""));
+
+    String[] illegal = { " ", "[", "[1 2", "{\"a\"}", "{\"a\":1 \"b\":2}", "\"abc",
+        "\"a\nb\"", "[\"\\u00\"]", "{,}" };
+    for (String json : illegal) {
+      try {
+        JsonUtil.getObjectFromJson(json);
+        fail(json);
+      } catch (JSONException e) {
+        // Expected.
+      }
+    }
+  }
+
+  public void testGetObjectFromJsonLimits() throws Exception {
+    StringBuilder deep = new StringBuilder();
+    for (int i = 0; i < JsonDecoder.MAX_DEPTH + 1; i++) {
+      deep.append('[');
+    }
+    try {
+      JsonUtil.getObjectFromJson(deep.toString());
+      fail();
+    } catch (JSONException e) {
+      // Expected.
+    }
+
+    String json = "[\"a\", \"b\", \"c\"]";
+    assertEquals(3, ((YailList) JsonUtil.getObjectFromJson(new StringReader(json),
+        json.length())).size());
+    try {
+      JsonUtil.getObjectFromJson(new StringReader(json), json.length() - 1);
+      fail();
+    } catch (JSONException e) {
+      // Expected.
+    }
+  }
+
+  public void testGetJsonRepresentation() throws JSONException {
+    assertEquals("null", JsonUtil.getJsonRepresentation(null));
+    assertEquals("null", JsonUtil.getJsonRepresentation(JSONObject.NULL));
+    assertEquals("true", JsonUtil.getJsonRepresentation(Boolean.TRUE));
+    assertEquals("42", JsonUtil.getJsonRepresentation(42));
+    assertEquals("12345678910111213141516",
+        JsonUtil.getJsonRepresentation(IntNum.valueOf("12345678910111213141516")));
+    assertEquals("8", JsonUtil.getJsonRepresentation(DFloNum.make(8.0)));
+    assertEquals("0.5", JsonUtil.getJsonRepresentation(IntNum.make(1).div(IntNum.make(2))));
+    assertEquals("[\"a\",[1,2.5],[\"b\"],[]]", JsonUtil.getJsonRepresentation(
+        YailList.makeList(new Object[] { "a",
+            YailList.makeList(new Object[] { IntNum.make(1), DFloNum.make(2.5) }),
+            new Object[] { new FString("b") }, new YailList() })));
+    try {
+      JsonUtil.getJsonRepresentation(Double.NaN);
+      fail();
+    } catch (JSONException e) {
+      // Expected.
+    }
+  }
+
+  public void testGetJsonRepresentationEscapesAsAndroid() throws JSONException {
+    // Android's org.json always escapes slashes, and only escapes the
+    // control characters below U+0020.
+    String[][] strings = {
+        { "", "\"\"" },
+        { "plain", "\"plain\"" },
+        { "quote \" backslash \\ slash / </script>",
+          "\"quote \\\" backslash \\\\ slash \\/ <\\/script>\"" },
+        { "\b\t\n\f\r\u0000\u001f", "\"\\b\\t\\n\\f\\r\\u0000\\u001f\"" },
+        { "\u007f\u0080\u009f\u00a0\u00e9", "\"\u007f\u0080\u009f\u00a0\u00e9\"" },
+        { "\u1fff\u2000\u2028\u20ff\u2100", "\"\u1fff\u2000\u2028\u20ff\u2100\"" } };
+    for (String[] string : strings) {
+      assertEquals(string[1], JsonUtil.getJsonRepresentation(string[0]));
+      assertEquals(string[1], JsonUtil.getJsonRepresentation(new FString(string[0])));
+    }
+  }
+
+  public void testGetJsonRepresentationFormatsNumbersAsAndroid() throws JSONException {
+    // Android's org.json writes numbers with an integral value without a
+    // fraction.
+    Object[][] numbers = { { 0, "0" }, { -7, "-7" }, { Long.MAX_VALUE, "9223372036854775807" },
+        { 1.0, "1" }, { 1.5, "1.5" }, { -0.25, "-0.25" }, { -0.0, "-0" }, { 100.0, "100" },
+        { 1.0e15, "1000000000000000" }, { 1.0e21, "1.0E21" }, { 1.0e-7, "1.0E-7" },
+        { DFloNum.make(3.14), "3.14" }, { IntNum.make(Long.MIN_VALUE), "-9223372036854775808" } };
+    for (Object[] number : numbers) {
+      assertEquals(number[1], JsonUtil.getJsonRepresentation(number[0]));
+    }
+  }
 }
@@ -0,0 +1,156 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2009-2011 Google, All Rights reserved
+// Copyright 2011-2013 MIT, All rights reserved
+// Released under the MIT License https://raw.github.com/mit-cml/app-inventor/master/mitlicense.txt
+
+package com.google.appinventor.components.runtime.util;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Properties;
+
+/**
+ * Tests NioHTTPD.java.
+ */
+public class NioHTTPDTest extends TestCase {
+  private NioHTTPD httpd;
+
+  @Override
+  protected void setUp() throws Exception {
+    File root = new File(System.getProperty("java.io.tmpdir"));
+    // The server that serves the requests; its own socket isn't used.
+    NanoHTTPD server = new NanoHTTPD(0, root) {
+      @Override
+      public Response serve(String uri, String method, Properties header, Properties parms,
+          Properties files, Socket socket) {
+        StringBuilder text = new StringBuilder(method + " " + uri);
+        if (parms.getProperty("x") != null) {
+          text.append(" x=").append(parms.getProperty("x"));
+        }
+        String content = files.getProperty("content");
+        if (content != null && content.length() > 0) {
+          try {
+            text.append(" ").append(readAll(new FileInputStream(content), -1));
+          } catch (IOException e) {
+            text.append(" unreadable");
+          }
+        }
+        return new Response(HTTP_OK, MIME_PLAINTEXT, text.toString());
+      }
+    };
+    server.stop();
+    httpd = new NioHTTPD(server, 0);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    httpd.stop();
+  }
+
+  public void testPipelinedRequests() throws Exception {
+    Socket socket = connect();
+    send(socket, "GET /a HTTP/1.1\r\n\r\nGET /b HTTP/1.1\r\n\r\n");
+    assertEquals("HTTP/1.1 200 OK|GET /a", readResponse(socket));
+    assertEquals("HTTP/1.1 200 OK|GET /b", readResponse(socket));
+    socket.close();
+  }
+
+  public void testKeepAlive() throws Exception {
+    Socket socket = connect();
+    send(socket, "POST /a HTTP/1.1\r\nContent-Length: 3\r\n\r\nx=1");
+    assertEquals("HTTP/1.1 200 OK|POST /a x=1", readResponse(socket));
+    send(socket, "GET /b?x=2 HTTP/1.1\r\n\r\n");
+    assertEquals("HTTP/1.1 200 OK|GET /b x=2", readResponse(socket));
+    socket.close();
+  }
+
+  public void testPutWritesBodyToFile() throws Exception {
+    Socket socket = connect();
+    send(socket, "PUT /file HTTP/1.1\r\nContent-Length: 11\r\n\r\nhello");
+    send(socket, " world");
+    assertEquals("HTTP/1.1 200 OK|PUT /file hello world", readResponse(socket));
+    socket.close();
+  }
+
+  public void testMalformedHeads() throws Exception {
+    assertRefused("GARBAGE\r\n\r\n");
+    assertRefused("GET /%zz HTTP/1.1\r\n\r\n");
+    assertRefused("POST /x HTTP/1.1\r\nContent-Length: abc\r\n\r\n");
+  }
+
+  public void testNegativeContentLength() throws Exception {
+    assertRefused("POST /x HTTP/1.1\r\nContent-Length: -1\r\n\r\n");
+    assertRefused("PUT /x HTTP/1.1\r\nContent-Length: -1\r\n\r\n");
+    // The server still serves other connections.
+    Socket socket = connect();
+    send(socket, "GET /a HTTP/1.1\r\n\r\n");
+    assertEquals("HTTP/1.1 200 OK|GET /a", readResponse(socket));
+    socket.close();
+  }
+
+  private void assertRefused(String request) throws IOException {
+    Socket socket = connect();
+    send(socket, request);
+    assertTrue(readResponse(socket).startsWith("HTTP/1.0 400 Bad Request|"));
+    socket.close();
+  }
+
+  private Socket connect() throws IOException {
+    Socket socket = new Socket("localhost", httpd.getPort());
+    socket.setSoTimeout(5000);
+    return socket;
+  }
+
+  private static void send(Socket socket, String text) throws IOException {
+    OutputStream out = socket.getOutputStream();
+    out.write(text.getBytes("ISO-8859-1"));
+    out.flush();
+  }
+
+  /*
+   * Reads a response and returns its status line and body, separated by
+   * "|".  A response without a Content-Length is read until the end of the
+   * stream.
+   */
+  private static String readResponse(Socket socket) throws IOException {
+    InputStream in = socket.getInputStream();
+    StringBuilder head = new StringBuilder();
+    while (!head.toString().endsWith("\r\n\r\n")) {
+      int b = in.read();
+      if (b == -1) {
+        throw new IOException("Unexpected end of response: " + head);
+      }
+      head.append((char) b);
+    }
+    String[] lines = head.toString().split("\r\n");
+    int length = -1;
+    for (String line : lines) {
+      if (line.toLowerCase().startsWith("content-length:")) {
+        length = Integer.parseInt(line.substring("content-length:".length()).trim());
+      }
+    }
+    return lines[0] + "|" + readAll(in, length);
+  }
+
+  private static String readAll(InputStream in, int length) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    while (length == -1 || bytes.size() < length) {
+      int b = in.read();
+      if (b == -1) {
+        break;
+      }
+      bytes.write(b);
+    }
+    if (length == -1) {
+      in.close();
+    }
+    return new String(bytes.toByteArray(), "UTF-8");
+  }
+}
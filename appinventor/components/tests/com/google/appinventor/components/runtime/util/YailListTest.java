@@ -6,6 +6,8 @@
 package com.google.appinventor.components.runtime.util;
 
 import gnu.lists.FString;
+import gnu.lists.LList;
+import gnu.lists.Pair;
 
 import junit.framework.TestCase;
 
@@ -202,4 +204,57 @@ public class YailListTest extends TestCase {
       // this is the intended behavior
     }
   }
+
+  public void testSetInsertRemoveObject() {
+    YailList yailList = YailList.makeList(new Object[] {"a", "b", "c"});
+    yailList.setObject(1, "B");
+    assertEquals("(a B c)", yailList.toString());
+    yailList.insertObject(0, "first");
+    yailList.insertObject(2, "middle");
+    yailList.insertObject(5, "last");
+    assertEquals("(first a middle B c last)", yailList.toString());
+    assertEquals(6, yailList.size());
+    yailList.removeObject(0);
+    yailList.removeObject(4);
+    yailList.removeObject(1);
+    assertEquals("(a B c)", yailList.toString());
+    assertEquals(3, yailList.size());
+    assertEquals("c", yailList.getObject(2));
+    try {
+      yailList.setObject(3, "d");
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // this is the intended behavior
+    }
+    try {
+      yailList.insertObject(4, "d");
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // this is the intended behavior
+    }
+  }
+
+  public void testAppendList() {
+    YailList yailList = new YailList();
+    YailList other = YailList.makeList(new Object[] {"a", "b"});
+    yailList.appendList(other);
+    yailList.appendList(yailList);
+    assertEquals("(a b a b)", yailList.toString());
+    assertEquals(4, yailList.size());
+    // The lists don't share pairs.
+    yailList.setObject(0, "A");
+    assertEquals("(a b)", other.toString());
+    assertEquals(YailList.makeList(new Object[] {"A", "b", "a", "b"}), yailList);
+  }
+
+  public void testChangedContents() {
+    YailList yailList = YailList.makeList(new Object[] {"a", "b"});
+    assertEquals(2, yailList.size());
+    // Changes to the ends of the list made without YailList's methods are noticed.
+    ((Pair) ((Pair) yailList.getCdr()).getCdr()).setCdr(new Pair("c", LList.Empty));
+    assertEquals(3, yailList.size());
+    assertEquals("c", yailList.getObject(2));
+    yailList.setCdr(LList.Empty);
+    assertEquals(0, yailList.size());
+  }
 }